@@ -24,9 +24,12 @@ import io.onedev.k8shelper.OsInfo;
 import io.onedev.server.attachment.AttachmentManager;
 import io.onedev.server.attachment.DefaultAttachmentManager;
 import io.onedev.server.buildspec.job.log.instruction.LogInstruction;
+import io.onedev.server.cluster.CacheLoader;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.cluster.ClusterResource;
 import io.onedev.server.cluster.DefaultClusterManager;
+import io.onedev.server.cluster.DefaultClusterTransport;
 import io.onedev.server.codequality.CodeProblemContribution;
 import io.onedev.server.codequality.LineCoverageContribution;
 import io.onedev.server.commandhandler.*;
@@ -39,10 +42,15 @@ import io.onedev.server.entityreference.EntityReferenceManager;
 import io.onedev.server.event.DefaultListenerRegistry;
 import io.onedev.server.event.ListenerRegistry;
 import io.onedev.server.exception.ExceptionHandler;
+import io.onedev.server.git.BlameCache;
+import io.onedev.server.git.CatFileBatchPool;
 import io.onedev.server.git.GitFilter;
 import io.onedev.server.git.GitLfsFilter;
 import io.onedev.server.git.GoGetFilter;
+import io.onedev.server.git.LfsObjectCache;
+import io.onedev.server.git.MergePreviewEngine;
 import io.onedev.server.git.SshCommandCreator;
+import io.onedev.server.git.UploadPackCache;
 import io.onedev.server.git.exception.GitException;
 import io.onedev.server.git.hook.GitPostReceiveCallback;
 import io.onedev.server.git.hook.GitPreReceiveCallback;
@@ -99,6 +107,7 @@ import io.onedev.server.util.concurrent.BatchWorkManager;
 import io.onedev.server.util.concurrent.DefaultBatchWorkManager;
 import io.onedev.server.util.concurrent.DefaultWorkExecutor;
 import io.onedev.server.util.concurrent.WorkExecutor;
+import io.onedev.server.util.diff.DiffCache;
 import io.onedev.server.util.jackson.ObjectMapperConfigurator;
 import io.onedev.server.util.jackson.ObjectMapperProvider;
 import io.onedev.server.util.jackson.git.GitObjectMapperConfigurator;
@@ -220,6 +229,8 @@ public class CoreModule extends AbstractPluginModule {
 		bind(PullRequestCommentManager.class).to(DefaultPullRequestCommentManager.class);
 		bind(CodeCommentManager.class).to(DefaultCodeCommentManager.class);
 		bind(PullRequestManager.class).to(DefaultPullRequestManager.class);
+		bind(PullRequestCheckScheduler.class);
+		bind(EntityCountCache.class);
 		bind(PullRequestUpdateManager.class).to(DefaultPullRequestUpdateManager.class);
 		bind(ProjectManager.class).to(DefaultProjectManager.class);
 		bind(ProjectLastEventDateManager.class).to(DefaultProjectLastEventDateManager.class);
@@ -282,6 +293,8 @@ public class CoreModule extends AbstractPluginModule {
 		bind(GpgKeyManager.class).to(DefaultGpgKeyManager.class);
 		bind(IssueTextManager.class).to(DefaultIssueTextManager.class);
 		bind(PendingSuggestionApplyManager.class).to(DefaultPendingSuggestionApplyManager.class);
+		bind(PendingMailManager.class).to(DefaultPendingMailManager.class);
+		bind(PendingWebHookDeliveryManager.class).to(DefaultPendingWebHookDeliveryManager.class);
 		bind(IssueAuthorizationManager.class).to(DefaultIssueAuthorizationManager.class);
 		bind(DashboardManager.class).to(DefaultDashboardManager.class);
 		bind(DashboardUserShareManager.class).to(DefaultDashboardUserShareManager.class);
@@ -292,12 +305,21 @@ public class CoreModule extends AbstractPluginModule {
 		bind(BuildLabelManager.class).to(DefaultBuildLabelManager.class);
 		bind(PullRequestLabelManager.class).to(DefaultPullRequestLabelManager.class);
 		bind(ClusterManager.class).to(DefaultClusterManager.class);
+		bind(ClusterTransport.class).to(DefaultClusterTransport.class);
 		bind(StorageManager.class).to(DefaultStorageManager.class);
 		bind(IssueTouchManager.class).to(DefaultIssueTouchManager.class);
 		bind(AlertManager.class).to(DefaultAlertManager.class);
 		bind(FeatureManager.class).to(DefaultFeatureManager.class);
 		
 		bind(WebHookManager.class);
+		bind(EnvironmentPool.class);
+		bind(LfsObjectCache.class);
+		bind(UploadPackCache.class);
+		bind(CatFileBatchPool.class);
+		bind(MergePreviewEngine.class);
+		bind(DiffCache.class);
+		bind(BlameCache.class);
+		bind(CacheLoader.class);
 		
 		contribute(CodePullAuthorizationSource.class, DefaultJobManager.class);
         
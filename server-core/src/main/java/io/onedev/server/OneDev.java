@@ -8,7 +8,10 @@ import io.onedev.commons.loader.AppLoader;
 import io.onedev.commons.loader.ManagedSerializedForm;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.k8shelper.KubernetesHelper;
+import io.onedev.server.cluster.CacheLoader;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.data.DataManager;
 import io.onedev.server.event.ListenerRegistry;
 import io.onedev.server.event.system.SystemStarted;
@@ -33,8 +36,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
@@ -72,10 +73,14 @@ public class OneDev extends AbstractPlugin implements Serializable, Runnable {
 	
 	private final ClusterManager clusterManager;
 	
+	private final ClusterTransport clusterTransport;
+	
 	private final IdManager idManager;
 	
 	private final SessionFactoryManager sessionFactoryManager;
 	
+	private final CacheLoader cacheLoader;
+	
 	private final Date bootDate = new Date();
 	
 	private volatile InitStage initStage;
@@ -89,8 +94,8 @@ public class OneDev extends AbstractPlugin implements Serializable, Runnable {
 	public OneDev(Provider<JettyLauncher> jettyLauncherProvider, TaskScheduler taskScheduler,
                   SessionManager sessionManager, Provider<ServerConfig> serverConfigProvider,
                   DataManager dataManager, ExecutorService executorService,
-                  ListenerRegistry listenerRegistry, ClusterManager clusterManager,
-                  IdManager idManager, SessionFactoryManager sessionFactoryManager) {
+                  ListenerRegistry listenerRegistry, ClusterManager clusterManager, ClusterTransport clusterTransport,
+                  IdManager idManager, SessionFactoryManager sessionFactoryManager, CacheLoader cacheLoader) {
 		this.jettyLauncherProvider = jettyLauncherProvider;
 		this.taskScheduler = taskScheduler;
 		this.sessionManager = sessionManager;
@@ -99,8 +104,10 @@ public class OneDev extends AbstractPlugin implements Serializable, Runnable {
 		this.executorService = executorService;
 		this.listenerRegistry = listenerRegistry;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
 		this.idManager = idManager;
 		this.sessionFactoryManager = sessionFactoryManager;
+		this.cacheLoader = cacheLoader;
 		
 		try {
 			wrapperManagerClass = Class.forName("org.tanukisoftware.wrapper.WrapperManager");
@@ -143,6 +150,7 @@ public class OneDev extends AbstractPlugin implements Serializable, Runnable {
 		idManager.init();
 
 		sessionManager.run(() -> listenerRegistry.post(new SystemStarting()));
+		cacheLoader.awaitLoaded();
 		jettyLauncherProvider.get().start();
 
 		var manualConfigs = checkData();
@@ -174,10 +182,9 @@ public class OneDev extends AbstractPlugin implements Serializable, Runnable {
 		var leadServer = clusterManager.getLeaderServerAddress();
 		if (!leadServer.equals(clusterManager.getLocalServerAddress())) {
 			logger.info("Syncing assets...");
-			Client client = ClientBuilder.newClient();
+			ClusterConnection connection = clusterTransport.connect(leadServer);
 			try {
-				String fromServerUrl = clusterManager.getServerUrl(leadServer);
-				WebTarget target = client.target(fromServerUrl).path("/~api/cluster/assets");
+				WebTarget target = connection.target().path("/~api/cluster/assets");
 				Invocation.Builder builder = target.request();
 				builder.header(AUTHORIZATION,
 						BEARER + " " + clusterManager.getCredential());
@@ -191,7 +198,7 @@ public class OneDev extends AbstractPlugin implements Serializable, Runnable {
 					}
 				}
 			} finally {
-				client.close();
+				connection.close();
 			}
 		}
 		
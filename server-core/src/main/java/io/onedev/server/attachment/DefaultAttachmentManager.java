@@ -6,9 +6,11 @@ import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.k8shelper.KubernetesHelper;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.cluster.ClusterRunnable;
 import io.onedev.server.cluster.ClusterTask;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.event.Listen;
@@ -72,6 +74,8 @@ public class DefaultAttachmentManager implements AttachmentManager, SchedulableT
 	
 	private final ClusterManager clusterManager;
 	
+	private final ClusterTransport clusterTransport;
+	
 	private final SettingManager settingManager;
 	
     private String taskId;
@@ -79,13 +83,14 @@ public class DefaultAttachmentManager implements AttachmentManager, SchedulableT
 	@Inject
 	public DefaultAttachmentManager(Dao dao, TransactionManager transactionManager,
 									TaskScheduler taskScheduler, SettingManager settingManager, 
-									ProjectManager projectManager, ClusterManager clusterManager) {
+									ProjectManager projectManager, ClusterManager clusterManager, ClusterTransport clusterTransport) {
 		this.dao = dao;
 		this.transactionManager = transactionManager;
 		this.taskScheduler = taskScheduler;
 		this.settingManager = settingManager;
 		this.projectManager = projectManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
 	}
 	
 	public Object writeReplace() throws ObjectStreamException {
@@ -263,10 +268,9 @@ public class DefaultAttachmentManager implements AttachmentManager, SchedulableT
 	
 	private void downloadAttachments(File targetDir, String sourceActiveServer,
 									 Long sourceProjectId, String sourceAttachmentGroup) {
-		Client client = ClientBuilder.newClient();
+		ClusterConnection connection = clusterTransport.connect(sourceActiveServer);
 		try {
-			String fromServerUrl = clusterManager.getServerUrl(sourceActiveServer);
-			WebTarget target = client.target(fromServerUrl).path("/~api/cluster/attachments")
+			WebTarget target = connection.target().path("/~api/cluster/attachments")
 					.queryParam("projectId", sourceProjectId)
 					.queryParam("attachmentGroup", sourceAttachmentGroup);
 			Invocation.Builder builder = target.request();
@@ -282,7 +286,7 @@ public class DefaultAttachmentManager implements AttachmentManager, SchedulableT
 				}
 			}
 		} finally {
-			client.close();
+			connection.close();
 		}
 	}
 
@@ -423,11 +427,10 @@ public class DefaultAttachmentManager implements AttachmentManager, SchedulableT
 		if (activeServer.equals(clusterManager.getLocalServerAddress())) {
 			return saveAttachmentLocal(projectId, attachmentGroup, suggestedAttachmentName, attachmentStream);
 		} else {
-			Client client = ClientBuilder.newClient();
-			client.property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
+			ClusterConnection connection = clusterTransport.connect(activeServer);
+			connection.target().property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
 			try {
-				String serverUrl = clusterManager.getServerUrl(activeServer);
-				WebTarget target = client.target(serverUrl)
+				WebTarget target = connection.target()
 						.path("~api/cluster/attachment")
 						.queryParam("projectId", projectId)
 						.queryParam("attachmentGroup", attachmentGroup)
@@ -449,7 +452,7 @@ public class DefaultAttachmentManager implements AttachmentManager, SchedulableT
 					return response.readEntity(String.class);
 				}
 			} finally {
-				client.close();
+				connection.close();
 			}
 		}
 	}
@@ -0,0 +1,220 @@
+package io.onedev.server.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hibernate.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hazelcast.cp.IAtomicLong;
+
+import io.onedev.commons.bootstrap.Bootstrap;
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.persistence.SessionManager;
+
+/**
+ * Loads cluster-wide entity caches on system starting. Independent caches can be loaded
+ * concurrently, and loading time of each cache is recorded. Caches may also be saved as
+ * binary snapshots on system stopped, so that next startup only needs to load entities
+ * changed since the snapshot instead of scanning whole tables.
+ */
+@Singleton
+public class CacheLoader {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheLoader.class);
+
+	private static final int SNAPSHOT_VERSION = 2;
+
+	/*
+	 * Each row is hashed as product of two linear combinations of its id, project id and 
+	 * number modulo different primes. Hashes are kept below 2^32 so that their sum does not 
+	 * overflow
+	 */
+	private static final String ROW_HASH = "mod(id*%d + project.id*%d + number*%d, %d) "
+			+ "* mod(id*%d + project.id*%d + number*%d, %d)";
+	
+	private static final String ROW_CHECKSUMS = "sum(" 
+			+ String.format(ROW_HASH, 40503, 52711, 30011, 65521, 28657, 46351, 60013, 65519) + "), sum(" 
+			+ String.format(ROW_HASH, 17011, 33013, 53003, 65497, 61027, 24571, 41227, 65479) + ")";
+
+	private final ClusterManager clusterManager;
+
+	private final SessionManager sessionManager;
+
+	private final ExecutorService executorService;
+
+	private final Map<String, Long> loadTimes = new LinkedHashMap<>();
+
+	private final Collection<Future<?>> pendingLoads = new ArrayList<>();
+
+	@Inject
+	public CacheLoader(ClusterManager clusterManager, SessionManager sessionManager,
+					   ExecutorService executorService) {
+		this.clusterManager = clusterManager;
+		this.sessionManager = sessionManager;
+		this.executorService = executorService;
+	}
+
+	/**
+	 * Load specified cache in current thread. The loader only runs on leader server, and
+	 * other servers wait until it is finished, as is done by {@link ClusterManager#init(IAtomicLong, Callable)}
+	 */
+	public void load(String name, IAtomicLong inited, Callable<Long> loader) {
+		long time = System.currentTimeMillis();
+		clusterManager.init(inited, loader);
+		recordLoadTime(name, System.currentTimeMillis() - time);
+	}
+
+	/**
+	 * Load specified cache in a separate thread with its own session. Caller should make
+	 * sure that nothing accesses the cache before {@link #awaitLoaded()} returns
+	 */
+	public synchronized void loadAsync(String name, IAtomicLong inited, Callable<Long> loader) {
+		pendingLoads.add(executorService.submit(() -> sessionManager.run(() -> load(name, inited, loader))));
+	}
+
+	/**
+	 * Wait until all caches submitted via {@link #loadAsync(String, IAtomicLong, Callable)}
+	 * are loaded
+	 */
+	public void awaitLoaded() {
+		Collection<Future<?>> pendingLoads;
+		synchronized (this) {
+			pendingLoads = new ArrayList<>(this.pendingLoads);
+			this.pendingLoads.clear();
+		}
+		for (var pendingLoad: pendingLoads) {
+			try {
+				pendingLoad.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw ExceptionUtils.unchecked(e.getCause());
+			}
+		}
+		synchronized (this) {
+			for (var entry: loadTimes.entrySet())
+				logger.info("Loaded {} cache in {} ms", entry.getKey(), entry.getValue());
+		}
+	}
+
+	private synchronized void recordLoadTime(String name, long time) {
+		loadTimes.put(name, time);
+	}
+
+	public synchronized Map<String, Long> getLoadTimes() {
+		return new LinkedHashMap<>(loadTimes);
+	}
+
+	/**
+	 * Get fingerprint of specified project scoped numbered entity. The fingerprint consists of 
+	 * max id, count, and two checksums of id, project id and number of entity rows, and it 
+	 * changes if any row is created, deleted, moved to other project or renumbered. Unlike 
+	 * sums of these columns, the checksums can not be compensated by swapping projects or 
+	 * numbers between rows
+	 * 
+	 * @param entityName
+	 * 			name of entity with properties <tt>project</tt> and <tt>number</tt>
+	 * @param maxId
+	 * 			only rows with id not greater than this are included if not <tt>null</tt>
+	 */
+	public long[] getFingerprint(String entityName, @Nullable Long maxId) {
+		String queryString = "select max(id), count(id), " + ROW_CHECKSUMS + " from " + entityName;
+		if (maxId != null)
+			queryString += " where id <= :maxId";
+		Query<?> query = sessionManager.getSession().createQuery(queryString);
+		if (maxId != null)
+			query.setParameter("maxId", maxId);
+		Object[] fields = (Object[]) query.uniqueResult();
+		long[] fingerprint = new long[fields.length];
+		for (int i=0; i<fields.length; i++)
+			fingerprint[i] = fields[i] != null? ((Number) fields[i]).longValue(): 0;
+		return fingerprint;
+	}
+	
+	protected File getSnapshotDir() {
+		return new File(Bootstrap.getSiteDir(), "cache-snapshots");
+	}
+
+	private File getSnapshotFile(String name) {
+		return new File(getSnapshotDir(), name);
+	}
+
+	/**
+	 * Read snapshot of specified name. The snapshot is removed after being read so that it
+	 * is only used by the startup following the stop writing it
+	 *
+	 * @return
+	 * 			result of the reader, or <tt>null</tt> if snapshot does not exist or can not
+	 * 			be read
+	 */
+	@Nullable
+	public <T> T readSnapshot(String name, SnapshotReader<T> reader) {
+		File snapshotFile = getSnapshotFile(name);
+		if (snapshotFile.exists()) {
+			try (var is = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+				if (is.readInt() == SNAPSHOT_VERSION)
+					return reader.read(is);
+			} catch (Exception e) {
+				logger.warn("Error reading cache snapshot '" + name + "'", e);
+			} finally {
+				FileUtils.deleteFile(snapshotFile);
+			}
+		}
+		return null;
+	}
+
+	public void writeSnapshot(String name, SnapshotWriter writer) {
+		File snapshotFile = getSnapshotFile(name);
+		File tempFile = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+		try {
+			FileUtils.createDir(snapshotFile.getParentFile());
+			try (var os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+				os.writeInt(SNAPSHOT_VERSION);
+				writer.write(os);
+			}
+			Files.move(tempFile.toPath(), snapshotFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			logger.warn("Error writing cache snapshot '" + name + "'", e);
+			FileUtils.deleteFile(tempFile);
+		}
+	}
+
+	public static interface SnapshotReader<T> {
+
+		T read(DataInput input) throws IOException;
+
+	}
+
+	public static interface SnapshotWriter {
+
+		void write(DataOutput output) throws IOException;
+
+	}
+
+}
@@ -0,0 +1,16 @@
+package io.onedev.server.cluster;
+
+import javax.ws.rs.client.WebTarget;
+
+public interface ClusterConnection extends AutoCloseable {
+
+	/**
+	 * @return
+	 * 			target pointing to url of connected server
+	 */
+	WebTarget target();
+	
+	@Override
+	void close();
+	
+}
@@ -10,6 +10,7 @@ import io.onedev.server.git.CommandUtils;
 import io.onedev.server.git.GitFilter;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.LfsObject;
+import io.onedev.server.git.UploadPackCache;
 import io.onedev.server.git.command.AdvertiseReceiveRefsCommand;
 import io.onedev.server.git.command.AdvertiseUploadRefsCommand;
 import io.onedev.server.git.hook.HookUtils;
@@ -20,6 +21,7 @@ import io.onedev.server.model.Project;
 import io.onedev.server.rest.annotation.Api;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.LongRange;
 import io.onedev.server.util.concurrent.PrioritizedRunnable;
 import io.onedev.server.util.concurrent.WorkExecutor;
 import io.onedev.server.util.patternset.PatternSet;
@@ -31,6 +33,7 @@ import org.eclipse.jgit.lib.Repository;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.*;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
@@ -44,7 +47,10 @@ import static io.onedev.commons.utils.LockUtils.read;
 import static io.onedev.commons.utils.LockUtils.write;
 import static io.onedev.server.model.Build.getArtifactsLockName;
 import static io.onedev.server.model.Project.SHARE_TEST_DIR;
+import static io.onedev.server.util.HttpRangeUtils.*;
 import static javax.ws.rs.core.Response.Status.NO_CONTENT;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static javax.ws.rs.core.Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE;
 import static javax.ws.rs.core.Response.ok;
 import static javax.ws.rs.core.Response.status;
 
@@ -66,16 +72,20 @@ public class ClusterResource {
 	
 	private final WorkExecutor workExecutor;
 	
+	private final UploadPackCache uploadPackCache;
+	
 	@Inject
 	public ClusterResource(ProjectManager projectManager, CommitInfoManager commitInfoManager, 
 						   AttachmentManager attachmentManager, VisitInfoManager visitInfoManager, 
-						   WorkExecutor workExecutor, StorageManager storageManager) {
+						   WorkExecutor workExecutor, StorageManager storageManager, 
+						   UploadPackCache uploadPackCache) {
 		this.commitInfoManager = commitInfoManager;
 		this.projectManager = projectManager;
 		this.workExecutor = workExecutor;
 		this.attachmentManager = attachmentManager;
 		this.visitInfoManager = visitInfoManager;
 		this.storageManager = storageManager;
+		this.uploadPackCache = uploadPackCache;
 	}
 
 	@Path("/project-files")
@@ -242,7 +252,7 @@ public class ClusterResource {
 						
 						@Override
 						public void run() {
-							CommandUtils.uploadPack(gitDir, hookEnvs, protocol, is, output);
+							uploadPackCache.uploadPack(projectId, gitDir, hookEnvs, protocol, is, output);
 						}
 						
 					}).get();
@@ -304,16 +314,32 @@ public class ClusterResource {
 	@Path("/lfs")
 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
 	@GET
-	public Response downloadLfs(@QueryParam("projectId") Long projectId, @QueryParam("objectId") String objectId) {
+	public Response downloadLfs(@QueryParam("projectId") Long projectId, @QueryParam("objectId") String objectId, 
+			@HeaderParam(RANGE) String rangeHeader) {
 		if (!SecurityUtils.getUser().isSystem()) 
 			throw new UnauthorizedException("This api can only be accessed via cluster credential");
 		
+		LfsObject lfsObject = new LfsObject(projectId, objectId);
+		long length = lfsObject.getLength();
+		LongRange range = parseRange(rangeHeader, length);
+		if (range != null && !isSatisfiable(range, length)) {
+			return status(REQUESTED_RANGE_NOT_SATISFIABLE)
+					.header(CONTENT_RANGE, getUnsatisfiedContentRange(length))
+					.build();
+		}
+		
+		LongRange rangeToSend = range != null? range: new LongRange(0, length - 1);
 		StreamingOutput os = output -> {
-			try (output; InputStream is = new LfsObject(projectId, objectId).getInputStream()) {
-				IOUtils.copy(is, output, BUFFER_SIZE);
+			try (output) {
+				if (rangeToSend.getEnd() >= rangeToSend.getStart())
+					lfsObject.transferTo(output, rangeToSend);
 			}
-	   };
-		return ok(os).build();
+		};
+		Response.ResponseBuilder builder = range != null? status(PARTIAL_CONTENT): ok();
+		builder.entity(os).header(HttpHeaders.CONTENT_LENGTH, rangeToSend.getEnd() - rangeToSend.getStart() + 1);
+		if (range != null)
+			builder.header(CONTENT_RANGE, getContentRange(range, length));
+		return builder.build();
 	}
 	
 	@Path("/lfs")
@@ -0,0 +1,28 @@
+package io.onedev.server.cluster;
+
+import java.util.Map;
+
+/**
+ * Transport of http calls to cluster api of other servers. Connections are pooled and 
+ * kept alive across calls, and number of concurrent calls to a single server is limited.
+ */
+public interface ClusterTransport {
+
+	/**
+	 * Connect to specified server. Calls to the server should be made via target of 
+	 * returned connection, and the connection should be closed after response is 
+	 * consumed to release it for other calls
+	 * 
+	 * @param server
+	 * 			address of the server to connect to
+	 */
+	ClusterConnection connect(String server);
+	
+	/**
+	 * @return
+	 * 			traffic of current server to other servers since current server is started, 
+	 * 			keyed by server address
+	 */
+	Map<String, PeerTraffic> getPeerTraffics();
+	
+}
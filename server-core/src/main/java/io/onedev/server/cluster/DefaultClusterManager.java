@@ -19,6 +19,13 @@ import io.onedev.server.event.ListenerRegistry;
 import io.onedev.server.event.cluster.ConnectionLost;
 import io.onedev.server.event.cluster.ConnectionRestored;
 import io.onedev.server.exception.ServerNotFoundException;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.EmailAddress;
+import io.onedev.server.model.IssueAuthorization;
+import io.onedev.server.model.Membership;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.User;
+import io.onedev.server.model.UserAuthorization;
 import io.onedev.server.persistence.HibernateConfig;
 import io.onedev.server.replica.ProjectReplica;
 import org.eclipse.jetty.server.session.SessionData;
@@ -47,6 +54,12 @@ public class DefaultClusterManager implements ClusterManager, Serializable {
 	
 	private static final String TABLE_SERVER = "o_ClusterServer";
 	
+	private static final int CACHE_REGION_MAX_SIZE = 50000;
+	
+	private static final int LARGE_CACHE_REGION_MAX_SIZE = 200000;
+	
+	private static final int CACHE_REGION_TIME_TO_LIVE = 3600;
+	
 	private static final String COLUMN_ADDRESS = "o_address";
 	
 	private final ServerConfig serverConfig;
@@ -127,6 +140,20 @@ public class DefaultClusterManager implements ClusterManager, Serializable {
 		config.setProperty("hazelcast.shutdownhook.enabled", "false");
 		config.getExecutorConfig(EXECUTOR_SERVICE_NAME).setPoolSize(Integer.MAX_VALUE);
 		config.getMapConfig("default").setStatisticsEnabled(false);
+		
+		// Hibernate second level cache regions are named after entity classes and collection 
+		// roles. They are kept locally on each server with invalidations broadcasted via cluster, 
+		// and their config is consulted to bound memory usage and age of cached entries, so that 
+		// an invalidation missed for whatever reason does not leave stale entry forever
+		var cacheRegionConfig = config.getMapConfig(AbstractEntity.class.getPackage().getName() + ".*");
+		cacheRegionConfig.getEvictionConfig().setSize(CACHE_REGION_MAX_SIZE);
+		cacheRegionConfig.setTimeToLiveSeconds(CACHE_REGION_TIME_TO_LIVE);
+		for (var entityClass: new Class<?>[] {User.class, EmailAddress.class, Project.class, Membership.class, 
+				UserAuthorization.class, IssueAuthorization.class}) {
+			cacheRegionConfig = config.getMapConfig(entityClass.getName());
+			cacheRegionConfig.getEvictionConfig().setSize(LARGE_CACHE_REGION_MAX_SIZE);
+			cacheRegionConfig.setTimeToLiveSeconds(CACHE_REGION_TIME_TO_LIVE);
+		}
 		config.getNetworkConfig().setPort(serverConfig.getClusterPort()).setPortAutoIncrement(false);
 		config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true);
 		SerializerConfig sc = new SerializerConfig()
@@ -0,0 +1,259 @@
+package io.onedev.server.cluster;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.glassfish.jersey.client.ClientProperties;
+
+import io.onedev.commons.bootstrap.Bootstrap;
+import io.onedev.commons.utils.ExplicitException;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.system.SystemStopped;
+
+@Singleton
+public class DefaultClusterTransport implements ClusterTransport {
+
+	private static final int MAX_CONNECTIONS_PER_PEER = 32;
+	
+	private static final long CONNECTION_WAIT_TIMEOUT = 60;
+
+	private static final String PROP_CONNECTION = "onedev.cluster.connection";
+
+	private static final String PROP_REQUEST_TIME = "onedev.cluster.requestTime";
+
+	private final ClusterManager clusterManager;
+
+	private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+	private volatile Client client;
+
+	@Inject
+	public DefaultClusterTransport(ClusterManager clusterManager) {
+		this.clusterManager = clusterManager;
+	}
+
+	private Client getClient() {
+		if (client == null) {
+			synchronized (this) {
+				if (client == null) {
+					Client client = ClientBuilder.newClient();
+					client.property(ClientProperties.CONNECT_TIMEOUT, Bootstrap.SOCKET_CONNECT_TIMEOUT);
+					client.register(new TrafficRecorder());
+					this.client = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	@Override
+	public ClusterConnection connect(String server) {
+		Peer peer = peers.computeIfAbsent(server, k -> new Peer());
+		try {
+			if (!peer.permits.tryAcquire(CONNECTION_WAIT_TIMEOUT, TimeUnit.SECONDS)) {
+				throw new ExplicitException("Timed out waiting for connection to server '" + server 
+						+ "' as " + MAX_CONNECTIONS_PER_PEER + " connections are in use");
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			var connection = new DefaultClusterConnection(peer);
+			connection.target = getClient().target(clusterManager.getServerUrl(server))
+					.property(PROP_CONNECTION, connection);
+			return connection;
+		} catch (Exception e) {
+			peer.permits.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public Map<String, PeerTraffic> getPeerTraffics() {
+		Map<String, PeerTraffic> traffics = new LinkedHashMap<>();
+		for (var entry: new TreeMap<>(peers).entrySet()) {
+			var peer = entry.getValue();
+			long calls = peer.calls.get();
+			long responses = peer.responses.get();
+			traffics.put(entry.getKey(), new PeerTraffic(calls, peer.errors.get(),
+					peer.bytesSent.get(), peer.bytesReceived.get(),
+					responses != 0? peer.totalLatency.get() / responses: 0,
+					peer.maxLatency.get()));
+		}
+		return traffics;
+	}
+
+	@Listen
+	public void on(SystemStopped event) {
+		synchronized (this) {
+			if (client != null) {
+				client.close();
+				client = null;
+			}
+		}
+	}
+
+	private static class Peer {
+
+		final Semaphore permits = new Semaphore(MAX_CONNECTIONS_PER_PEER);
+
+		final AtomicLong calls = new AtomicLong();
+
+		final AtomicLong responses = new AtomicLong();
+
+		final AtomicLong errors = new AtomicLong();
+
+		final AtomicLong bytesSent = new AtomicLong();
+
+		final AtomicLong bytesReceived = new AtomicLong();
+
+		final AtomicLong totalLatency = new AtomicLong();
+
+		final AtomicLong maxLatency = new AtomicLong();
+
+	}
+
+	private static class DefaultClusterConnection implements ClusterConnection {
+
+		final Peer peer;
+
+		WebTarget target;
+
+		int pendingCalls;
+
+		boolean closed;
+
+		DefaultClusterConnection(Peer peer) {
+			this.peer = peer;
+		}
+
+		@Override
+		public WebTarget target() {
+			return target;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				// Calls sent without response failed to connect or to read response
+				if (pendingCalls > 0)
+					peer.errors.addAndGet(pendingCalls);
+				peer.permits.release();
+			}
+		}
+
+	}
+
+	private static class TrafficRecorder implements ClientRequestFilter, ClientResponseFilter,
+			WriterInterceptor, ReaderInterceptor {
+
+		@Override
+		public void filter(ClientRequestContext requestContext) {
+			var connection = (DefaultClusterConnection) requestContext.getConfiguration().getProperty(PROP_CONNECTION);
+			if (connection != null) {
+				// Make connection accessible to response filter and interceptors 
+				requestContext.setProperty(PROP_CONNECTION, connection);
+				requestContext.setProperty(PROP_REQUEST_TIME, System.currentTimeMillis());
+				synchronized (connection) {
+					connection.pendingCalls++;
+				}
+				connection.peer.calls.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+			var connection = (DefaultClusterConnection) requestContext.getProperty(PROP_CONNECTION);
+			var requestTime = (Long) requestContext.getProperty(PROP_REQUEST_TIME);
+			if (connection != null && requestTime != null) {
+				var peer = connection.peer;
+				synchronized (connection) {
+					connection.pendingCalls--;
+				}
+				long latency = System.currentTimeMillis() - requestTime;
+				peer.responses.incrementAndGet();
+				peer.totalLatency.addAndGet(latency);
+				peer.maxLatency.accumulateAndGet(latency, Math::max);
+				if (responseContext.getStatus() >= 400)
+					peer.errors.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+			var connection = (DefaultClusterConnection) context.getProperty(PROP_CONNECTION);
+			if (connection != null) {
+				var counter = connection.peer.bytesSent;
+				context.setOutputStream(new FilterOutputStream(context.getOutputStream()) {
+
+					@Override
+					public void write(int b) throws IOException {
+						out.write(b);
+						counter.incrementAndGet();
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						out.write(b, off, len);
+						counter.addAndGet(len);
+					}
+
+				});
+			}
+			context.proceed();
+		}
+
+		@Override
+		public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+			var connection = (DefaultClusterConnection) context.getProperty(PROP_CONNECTION);
+			if (connection != null) {
+				var counter = connection.peer.bytesReceived;
+				context.setInputStream(new FilterInputStream(context.getInputStream()) {
+
+					@Override
+					public int read() throws IOException {
+						int b = in.read();
+						if (b != -1)
+							counter.incrementAndGet();
+						return b;
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						int count = in.read(b, off, len);
+						if (count > 0)
+							counter.addAndGet(count);
+						return count;
+					}
+
+				});
+			}
+			return context.proceed();
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+package io.onedev.server.cluster;
+
+import java.io.Serializable;
+
+/**
+ * Traffic of http calls from current server to another server
+ */
+public class PeerTraffic implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long calls;
+	
+	private final long errors;
+	
+	private final long bytesSent;
+	
+	private final long bytesReceived;
+	
+	private final long averageLatency;
+	
+	private final long maxLatency;
+	
+	public PeerTraffic(long calls, long errors, long bytesSent, long bytesReceived, 
+			long averageLatency, long maxLatency) {
+		this.calls = calls;
+		this.errors = errors;
+		this.bytesSent = bytesSent;
+		this.bytesReceived = bytesReceived;
+		this.averageLatency = averageLatency;
+		this.maxLatency = maxLatency;
+	}
+
+	public long getCalls() {
+		return calls;
+	}
+
+	/**
+	 * @return
+	 * 			number of calls failed to connect or responded with error status
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * @return
+	 * 			average time in milliseconds from sending request to receiving response 
+	 * 			headers
+	 */
+	public long getAverageLatency() {
+		return averageLatency;
+	}
+
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+	
+}
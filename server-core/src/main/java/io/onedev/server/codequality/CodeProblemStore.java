@@ -0,0 +1,178 @@
+package io.onedev.server.codequality;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.PlanarRange;
+import io.onedev.server.codequality.CodeProblem.Severity;
+import io.onedev.server.util.pathindex.PathIndexReader;
+import io.onedev.server.util.pathindex.PathIndexWriter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Problems of all files in a problem report are stored in a single path indexed file.
+ * Record of each file is columnar: number of problems, distinct problem types, then
+ * columns of severity, type index, range fields, and finally messages.
+ */
+public class CodeProblemStore {
+
+	public static final String FILE = "problems.bin";
+
+	// Problems were stored as serialized list per blob path under this directory
+	private static final String LEGACY_FILES = "files";
+
+	public static PathIndexWriter newWriter(File reportDir) {
+		return new PathIndexWriter(new File(reportDir, FILE));
+	}
+
+	public static void write(PathIndexWriter writer, String blobPath, List<CodeProblem> problems) {
+		writer.write(blobPath, encode(problems));
+	}
+
+	@Nullable
+	public static List<CodeProblem> read(File reportDir, String blobPath) {
+		File file = new File(reportDir, FILE);
+		if (file.exists()) {
+			ByteBuffer record = PathIndexReader.read(file, blobPath);
+			return record != null? decode(blobPath, record): null;
+		}
+		File legacyFile = new File(reportDir, LEGACY_FILES + "/" + blobPath);
+		if (legacyFile.exists())
+			return readLegacy(legacyFile);
+		else
+			return null;
+	}
+
+	/**
+	 * Convert problems stored in legacy format under specified report directory
+	 */
+	public static void migrate(File reportDir) {
+		File legacyDir = new File(reportDir, LEGACY_FILES);
+		if (legacyDir.exists()) {
+			int baseLen = legacyDir.getAbsolutePath().length() + 1;
+			try (var writer = newWriter(reportDir)) {
+				for (File file: FileUtils.listFiles(legacyDir, Lists.newArrayList("**"), Lists.newArrayList())) {
+					String blobPath = file.getAbsolutePath().substring(baseLen).replace('\\', '/');
+					write(writer, blobPath, readLegacy(file));
+				}
+			}
+			FileUtils.deleteDir(legacyDir);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<CodeProblem> readLegacy(File legacyFile) {
+		try (InputStream is = new BufferedInputStream(new FileInputStream(legacyFile))) {
+			return (List<CodeProblem>) SerializationUtils.deserialize(is);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static byte[] encode(List<CodeProblem> problems) {
+		Map<String, Integer> types = new LinkedHashMap<>();
+		for (var problem: problems)
+			types.putIfAbsent(problem.getType(), types.size());
+
+		var baos = new ByteArrayOutputStream();
+		try (var os = new DataOutputStream(baos)) {
+			os.writeInt(problems.size());
+			os.writeInt(types.size());
+			for (var type: types.keySet())
+				writeString(os, type);
+			for (var problem: problems)
+				os.writeByte(problem.getSeverity().ordinal());
+			for (var problem: problems)
+				os.writeInt(types.get(problem.getType()));
+			for (var problem: problems)
+				os.writeInt(problem.getRange().getFromRow());
+			for (var problem: problems)
+				os.writeInt(problem.getRange().getFromColumn());
+			for (var problem: problems)
+				os.writeInt(problem.getRange().getToRow());
+			for (var problem: problems)
+				os.writeInt(problem.getRange().getToColumn());
+			for (var problem: problems)
+				os.writeInt(problem.getRange().getTabWidth());
+			for (var problem: problems)
+				writeString(os, problem.getMessage());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	static List<CodeProblem> decode(String blobPath, ByteBuffer record) {
+		int count = record.getInt();
+		int typeCount = record.getInt();
+		List<String> types = new ArrayList<>(typeCount);
+		for (int i=0; i<typeCount; i++)
+			types.add(readString(record));
+
+		var severityValues = Severity.values();
+		var severities = new Severity[count];
+		for (int i=0; i<count; i++)
+			severities[i] = severityValues[record.get()];
+		var typeIndexes = readInts(record, count);
+		var fromRows = readInts(record, count);
+		var fromColumns = readInts(record, count);
+		var toRows = readInts(record, count);
+		var toColumns = readInts(record, count);
+		var tabWidths = readInts(record, count);
+
+		List<CodeProblem> problems = new ArrayList<>(count);
+		for (int i=0; i<count; i++) {
+			var range = new PlanarRange(fromRows[i], fromColumns[i], toRows[i], toColumns[i], tabWidths[i]);
+			problems.add(new CodeProblem(severities[i], types.get(typeIndexes[i]), blobPath, range, readString(record)));
+		}
+		return problems;
+	}
+
+	private static int[] readInts(ByteBuffer record, int count) {
+		var ints = new int[count];
+		record.asIntBuffer().get(ints);
+		record.position(record.position() + count*4);
+		return ints;
+	}
+
+	private static void writeString(DataOutputStream os, @Nullable String value) throws IOException {
+		if (value != null) {
+			byte[] bytes = value.getBytes(UTF_8);
+			os.writeInt(bytes.length);
+			os.write(bytes);
+		} else {
+			os.writeInt(-1);
+		}
+	}
+
+	@Nullable
+	private static String readString(ByteBuffer record) {
+		int length = record.getInt();
+		if (length != -1) {
+			byte[] bytes = new byte[length];
+			record.get(bytes);
+			return new String(bytes, UTF_8);
+		} else {
+			return null;
+		}
+	}
+
+}
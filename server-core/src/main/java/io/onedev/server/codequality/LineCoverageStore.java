@@ -0,0 +1,110 @@
+package io.onedev.server.codequality;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.util.pathindex.PathIndexReader;
+import io.onedev.server.util.pathindex.PathIndexWriter;
+
+/**
+ * Line coverages of all files in a coverage report are stored in a single path indexed
+ * file. Record of each file is columnar: number of lines, followed by line numbers in
+ * ascending order, followed by coverage status ordinal of each line.
+ */
+public class LineCoverageStore {
+
+	public static final String FILE = "line-coverages.bin";
+
+	// Line coverages were stored as serialized map per blob path under this directory
+	private static final String LEGACY_FILES = "files";
+
+	public static PathIndexWriter newWriter(File reportDir) {
+		return new PathIndexWriter(new File(reportDir, FILE));
+	}
+
+	public static void write(PathIndexWriter writer, String blobPath, Map<Integer, CoverageStatus> lineCoverages) {
+		writer.write(blobPath, encode(lineCoverages));
+	}
+
+	@Nullable
+	public static Map<Integer, CoverageStatus> read(File reportDir, String blobPath) {
+		File file = new File(reportDir, FILE);
+		if (file.exists()) {
+			ByteBuffer record = PathIndexReader.read(file, blobPath);
+			return record != null? decode(record): null;
+		}
+		File legacyFile = new File(reportDir, LEGACY_FILES + "/" + blobPath);
+		if (legacyFile.exists())
+			return readLegacy(legacyFile);
+		else
+			return null;
+	}
+
+	/**
+	 * Convert line coverages stored in legacy format under specified report directory
+	 */
+	public static void migrate(File reportDir) {
+		File legacyDir = new File(reportDir, LEGACY_FILES);
+		if (legacyDir.exists()) {
+			int baseLen = legacyDir.getAbsolutePath().length() + 1;
+			try (var writer = newWriter(reportDir)) {
+				for (File file: FileUtils.listFiles(legacyDir, Lists.newArrayList("**"), Lists.newArrayList())) {
+					String blobPath = file.getAbsolutePath().substring(baseLen).replace('\\', '/');
+					write(writer, blobPath, readLegacy(file));
+				}
+			}
+			FileUtils.deleteDir(legacyDir);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<Integer, CoverageStatus> readLegacy(File legacyFile) {
+		try (InputStream is = new BufferedInputStream(new FileInputStream(legacyFile))) {
+			return (Map<Integer, CoverageStatus>) SerializationUtils.deserialize(is);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static byte[] encode(Map<Integer, CoverageStatus> lineCoverages) {
+		var sorted = new TreeMap<>(lineCoverages);
+		var baos = new ByteArrayOutputStream(4 + sorted.size()*5);
+		try (var os = new DataOutputStream(baos)) {
+			os.writeInt(sorted.size());
+			for (int line: sorted.keySet())
+				os.writeInt(line);
+			for (var status: sorted.values())
+				os.writeByte(status.ordinal());
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	static Map<Integer, CoverageStatus> decode(ByteBuffer record) {
+		int count = record.getInt(0);
+		int statusOffset = 4 + count*4;
+		var statuses = CoverageStatus.values();
+		Map<Integer, CoverageStatus> lineCoverages = new HashMap<>();
+		for (int i=0; i<count; i++)
+			lineCoverages.put(record.getInt(4 + i*4), statuses[record.get(statusOffset + i)]);
+		return lineCoverages;
+	}
+
+}
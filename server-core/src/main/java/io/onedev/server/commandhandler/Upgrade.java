@@ -9,6 +9,8 @@ import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.command.Commandline;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.OneDev;
+import io.onedev.server.codequality.CodeProblemStore;
+import io.onedev.server.codequality.LineCoverageStore;
 import io.onedev.server.data.migration.DataMigrator;
 import io.onedev.server.data.migration.MigrationHelper;
 import io.onedev.server.persistence.HibernateConfig;
@@ -550,6 +552,17 @@ public class Upgrade extends AbstractPlugin {
 		}
 	}
 	
+	private List<File> listReportDirs(File reportsDir, String directoryVersion) {
+		var reportDirs = new ArrayList<File>();
+		if (reportsDir.exists()) {
+			for (var reportDir : reportsDir.listFiles()) {
+				if (reportDir.isDirectory() && !reportDir.getName().equals(directoryVersion))
+					reportDirs.add(reportDir);
+			}
+		}
+		return reportDirs;
+	}
+	
 	protected void updateProgramFiles(File upgradeDir, int oldAppDataVersion) {
 		cleanAndCopy(new File(Bootstrap.installDir, "3rdparty-licenses"), new File(upgradeDir, "3rdparty-licenses"));
 
@@ -837,6 +850,30 @@ public class Upgrade extends AbstractPlugin {
 			}
 		}
 
+		if (oldAppDataVersion <= 136) {
+			logger.info("Converting coverage and problem reports...");
+			var projectsDir = new File(upgradeDir, "site/projects");
+			if (projectsDir.exists()) {
+				for (var projectDir : projectsDir.listFiles()) {
+					var buildsDir = new File(projectDir, "builds");
+					if (projectDir.getName().equals(directoryVersion) || !buildsDir.exists())
+						continue;
+					for (var suffixDir : buildsDir.listFiles()) {
+						if (suffixDir.getName().equals(directoryVersion))
+							continue;
+						for (var buildDir : suffixDir.listFiles()) {
+							if (buildDir.getName().equals(directoryVersion))
+								continue;
+							for (var reportDir : listReportDirs(new File(buildDir, "coverage"), directoryVersion))
+								LineCoverageStore.migrate(reportDir);
+							for (var reportDir : listReportDirs(new File(buildDir, "problem"), directoryVersion))
+								CodeProblemStore.migrate(reportDir);
+						}
+					}
+				}
+			}
+		}
+
 		try {
 			File wrapperConfFile = new File(upgradeDir, "conf/wrapper.conf");
 			String wrapperConf = FileUtils.readFileToString(wrapperConfFile, UTF_8);
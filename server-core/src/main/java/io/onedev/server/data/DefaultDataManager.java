@@ -31,6 +31,7 @@ import io.onedev.server.model.support.issue.LinkSpecOpposite;
 import io.onedev.server.persistence.HibernateConfig;
 import io.onedev.server.persistence.PersistenceUtils;
 import io.onedev.server.persistence.SessionFactoryManager;
+import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
@@ -38,12 +39,17 @@ import io.onedev.server.persistence.dao.Dao;
 import io.onedev.server.ssh.SshKeyUtils;
 import io.onedev.server.util.BeanUtils;
 import io.onedev.server.util.init.ManualConfig;
+import io.onedev.server.util.xml.SanitizingXmlReader;
+import io.onedev.server.util.xml.StreamingXmlReader;
 import io.onedev.server.util.schedule.SchedulableTask;
 import io.onedev.server.util.schedule.TaskScheduler;
 import io.onedev.server.web.util.editablebean.NewUserBean;
 import org.apache.shiro.authc.credential.PasswordService;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.hibernate.CacheMode;
 import org.hibernate.ReplicationMode;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
@@ -65,9 +71,6 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import java.io.*;
@@ -79,6 +82,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Throwables.*;
@@ -104,6 +114,10 @@ public class DefaultDataManager implements DataManager, Serializable {
 	
 	private static final int BACKUP_BATCH_SIZE = 1000;
 	
+	private static final int IMPORT_BATCH_SIZE = 100;
+	
+	private static final int MAX_DATA_WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+	
 	private final PhysicalNamingStrategy physicalNamingStrategy;
 
 	private final HibernateConfig hibernateConfig;
@@ -136,6 +150,10 @@ public class DefaultDataManager implements DataManager, Serializable {
 	
 	private final AlertManager alertManager;
 	
+	private final SessionManager sessionManager;
+	
+	private final ExecutorService executorService;
+	
 	private String backupTaskId;
 
 	@Inject
@@ -144,7 +162,8 @@ public class DefaultDataManager implements DataManager, Serializable {
 							  SettingManager settingManager, MailManager mailManager, TaskScheduler taskScheduler,
 							  PasswordService passwordService, RoleManager roleManager, LinkSpecManager linkSpecManager,
 							  EmailAddressManager emailAddressManager, UserManager userManager, ClusterManager clusterManager,
-							  TransactionManager transactionManager, AlertManager alertManager) {
+							  TransactionManager transactionManager, AlertManager alertManager, 
+							  SessionManager sessionManager, ExecutorService executorService) {
 		this.physicalNamingStrategy = physicalNamingStrategy;
 		this.hibernateConfig = hibernateConfig;
 		this.validator = validator;
@@ -162,6 +181,8 @@ public class DefaultDataManager implements DataManager, Serializable {
 		this.clusterManager = clusterManager;
 		this.transactionManager = transactionManager;
 		this.alertManager = alertManager;
+		this.sessionManager = sessionManager;
+		this.executorService = executorService;
 	}
 
 	private Metadata getMetadata() {
@@ -381,95 +402,213 @@ public class DefaultDataManager implements DataManager, Serializable {
 		exportData(exportDir, BACKUP_BATCH_SIZE);
 	}
 
-	@Sessional
+	/**
+	 * Tables are exported in parallel as they are independent of each other. Rows of each 
+	 * table are read with keyset pagination, and each batch of rows is streamed into its 
+	 * own file, which has the same format as before so that data migration still works
+	 */
 	@Override
 	public void exportData(File exportDir, int batchSize) {
-		for (Class<?> entityType: getEntityTypes()) {
-			logger.info("Exporting table '" + entityType.getSimpleName() + "'...");
-			
-			logger.info("Querying table ids...");
-			
-			Session session = dao.getSession();
-			CriteriaBuilder builder = session.getCriteriaBuilder();
-			CriteriaQuery<Number> query = builder.createQuery(Number.class);
-			Root<?> root = query.from(entityType);
-			query.select(root.get("id")).orderBy(builder.asc(root.get("id")));
+		var entityTypes = getEntityTypes();
+		logger.info("Exporting {} tables...", entityTypes.size());
+		var exportedTables = new AtomicInteger(0);
+		runInParallel(entityTypes, entityType -> sessionManager.run(() -> {
+			long count = exportEntities(entityType, batchSize, exportDir);
+			logger.info("Exported table '{}' ({} rows, {}/{} tables)", entityType.getSimpleName(), 
+					count, exportedTables.incrementAndGet(), entityTypes.size());
+		}));
+	}
+
+	private long exportEntities(Class<?> entityType, int batchSize, File exportDir) {
+		Session session = dao.getSession();
+		session.setDefaultReadOnly(true);
+		session.setCacheMode(CacheMode.IGNORE);
+		
+		String entityName = entityType.getSimpleName();
+		long count = 0;
+		int batch = 0;
+		Long lastId = null;
+		while (true) {
+			Query<?> query;
+			if (lastId != null) {
+				query = session.createQuery("from " + entityName + " where id>:lastId order by id");
+				query.setParameter("lastId", lastId);
+			} else {
+				query = session.createQuery("from " + entityName + " order by id");
+			}
+			query.setMaxResults(batchSize);
+			List<?> entities = query.list();
+			if (entities.isEmpty())
+				break;
 			
-			List<Number> ids = session.createQuery(query).list();
+			String fileName;
+			if (batch == 0)
+				fileName = entityName + "s.xml";
+			else
+				fileName = entityName + "s.xml." + (batch + 1);
+			writeEntities(entities, new File(exportDir, fileName));
 			
-			int count = ids.size();
+			lastId = ((AbstractEntity) entities.get(entities.size()-1)).getId();
+			count += entities.size();
+			batch++;
 			
-			for (int i=0; i<count/batchSize; i++) {
-				exportEntity(session, entityType, ids, i*batchSize, batchSize, batchSize, exportDir);
-				// clear session to free memory
-				session.clear();
-			}
+			// clear session to free memory
+			session.clear();
 			
-			if (count%batchSize != 0) {
-				exportEntity(session, entityType, ids, count/batchSize*batchSize, count%batchSize, batchSize, exportDir);
-			}
-			logger.info("");
+			if (entities.size() < batchSize)
+				break;
+			logger.info("Exported {} rows of table '{}'...", count, entityName);
 		}
+		return count;
 	}
+	
+	private void writeEntities(List<?> entities, File file) {
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+			OutputFormat format = new OutputFormat();
+			format.setIndent(true);
+			format.setNewlines(true);
+			format.setEncoding(StandardCharsets.UTF_8.name());
+			XMLWriter writer = new XMLWriter(os, format);
+			writer.startDocument();
+			Element rootElement = DocumentHelper.createElement("list");
+			writer.writeOpen(rootElement);
+			for (Object entity: entities) 
+				writer.write(VersionedXmlDoc.fromBean(entity).getRootElement());
+			writer.writeClose(rootElement);
+			writer.endDocument();
+		} catch (Exception e) {
+			throw ExceptionUtils.unchecked(e);
+		}
+	}
+	
+	private void readEntities(File file, Consumer<AbstractEntity> consumer) {
+		try (Reader reader = new SanitizingXmlReader(new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+			new StreamingXmlReader(true, "list/*").read(reader, element -> {
+				element.detach();
+				consumer.accept((AbstractEntity) new VersionedXmlDoc(DocumentHelper.createDocument(element)).toBean());
+			});
+		} catch (Exception e) {
+			throw ExceptionUtils.unchecked(e);
+		}
+	}
+	
+	private List<File> getDataFiles(File dataDir, Class<?> entityType) {
+		String prefix = entityType.getSimpleName() + "s.xml";
+		File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
 
-	private void exportEntity(Session session, Class<?> entityType, List<Number> ids, int start, int count, int batchSize, File exportDir) {
-		logger.info("Loading table rows ({}->{}) from database...", String.valueOf(start+1), (start + count));
-		
-		Query<?> query = session.createQuery("from " + entityType.getSimpleName() + " where id>=:fromId and id<=:toId order by id");
-		query.setParameter("fromId", ids.get(start));
-		query.setParameter("toId", ids.get(start+count-1));
-		
-		logger.info("Converting table rows to XML...");
-		VersionedXmlDoc dom = new VersionedXmlDoc();
-		Element rootElement = dom.addElement("list");
-		for (Object entity: query.list())
-			rootElement.appendContent(VersionedXmlDoc.fromBean(entity));
-		String fileName;
-
-		if (start == 0)
-			fileName = entityType.getSimpleName() + "s.xml";
-		else
-			fileName = entityType.getSimpleName() + "s.xml." + (start/batchSize + 1);
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix);
+			}
+			
+		});
+		return Arrays.stream(dataFiles)
+				.sorted(Comparator.comparingInt(it -> {
+					String suffix = it.getName().substring(prefix.length());
+					return suffix.length() != 0? Integer.parseInt(suffix.substring(1)): 1;
+				}))
+				.collect(Collectors.toList());
+	}
+	
+	/**
+	 * Group entity types so that types of a group only reference types of preceding 
+	 * groups, and types in the same group can be imported in parallel 
+	 */
+	private List<List<Class<?>>> getImportGroups() {
+		var entityTypes = getEntityTypes();
+		Collections.reverse(entityTypes);
 		
-		logger.info("Writing resulting XML to file '" + fileName + "...");
-		dom.writeToFile(new File(exportDir, fileName), true);
+		Map<Class<?>, Integer> levels = new HashMap<>();
+		List<List<Class<?>>> groups = new ArrayList<>();
+		for (int i=0; i<entityTypes.size(); i++) {
+			var entityType = entityTypes.get(i);
+			int level = 0;
+			for (int j=0; j<i; j++) {
+				var dependency = entityTypes.get(j);
+				if (hasForeignKeyDependency(entityType, dependency))
+					level = Math.max(level, levels.get(dependency) + 1);
+			}
+			levels.put(entityType, level);
+			if (groups.size() == level)
+				groups.add(new ArrayList<>());
+			groups.get(level).add(entityType);
+		}
+		return groups;
 	}
 	
-	@Sessional
 	@Override
 	public void importData(File dataDir) {
-		var entityTypes = getEntityTypes();
-		Collections.reverse(entityTypes);
-		for (Class<?> entityType: entityTypes) {
-			File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
-
-				@Override
-				public boolean accept(File dir, String name) {
-					return name.startsWith(entityType.getSimpleName() + "s.xml");
-				}
-				
-			});
-			for (File file: dataFiles) {
-				Session session = dao.getSession();
-				Transaction transaction = session.beginTransaction();
-				try {
-					logger.info("Importing from data file '" + file.getName() + "'...");
-					VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-					
-					for (Element element: dom.getRootElement().elements()) {
-						element.detach();
-						AbstractEntity entity = (AbstractEntity) new VersionedXmlDoc(DocumentHelper.createDocument(element)).toBean();
-						session.replicate(entity, ReplicationMode.EXCEPTION);
+		var groups = getImportGroups();
+		int tableCount = groups.stream().mapToInt(List::size).sum();
+		logger.info("Importing {} tables...", tableCount);
+		var importedTables = new AtomicInteger(0);
+		for (var group: groups) {
+			runInParallel(group, entityType -> sessionManager.run(() -> {
+				long count = importEntities(entityType, getDataFiles(dataDir, entityType));
+				logger.info("Imported table '{}' ({} rows, {}/{} tables)", entityType.getSimpleName(), 
+						count, importedTables.incrementAndGet(), tableCount);
+			}));
+		}
+	}
+	
+	private long importEntities(Class<?> entityType, List<File> dataFiles) {
+		Session session = dao.getSession();
+		session.setJdbcBatchSize(IMPORT_BATCH_SIZE);
+		session.setCacheMode(CacheMode.IGNORE);
+		
+		long[] count = new long[] {0};
+		for (File file: dataFiles) {
+			Transaction transaction = session.beginTransaction();
+			try {
+				logger.info("Importing from data file '" + file.getName() + "'...");
+				readEntities(file, entity -> {
+					session.replicate(entity, ReplicationMode.EXCEPTION);
+					if (++count[0] % IMPORT_BATCH_SIZE == 0) {
+						session.flush();
+						session.clear();
 					}
-					session.flush();
-					session.clear();
-					transaction.commit();
-				} catch (Exception e) {
-					transaction.rollback();
-					throw ExceptionUtils.unchecked(e);
-				}
+				});
+				session.flush();
+				session.clear();
+				transaction.commit();
+			} catch (Exception e) {
+				transaction.rollback();
+				throw ExceptionUtils.unchecked(e);
 			}
 		}
+		return count[0];
+	}
+	
+	private void runInParallel(List<Class<?>> entityTypes, Consumer<Class<?>> task) {
+		int parallelism = Math.min(entityTypes.size(), MAX_DATA_WORKERS);
+		Queue<Class<?>> pendingEntityTypes = new ConcurrentLinkedQueue<>(entityTypes);
+		AtomicReference<Throwable> error = new AtomicReference<>(null);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i=0; i<parallelism; i++) {
+			futures.add(executorService.submit(() -> {
+				Class<?> entityType;
+				while (error.get() == null && (entityType = pendingEntityTypes.poll()) != null) {
+					try {
+						task.accept(entityType);
+					} catch (Throwable e) {
+						error.compareAndSet(null, e);
+					}
+				}
+			}));
+		}
+		try {
+			for (var future: futures)
+				future.get();
+		} catch (InterruptedException e) {
+			for (var future: futures)
+				future.cancel(true);
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+		if (error.get() != null)
+			throw ExceptionUtils.unchecked(error.get());
 	}
 	
 	@Override
@@ -477,30 +616,14 @@ public class DefaultDataManager implements DataManager, Serializable {
 		var entityTypes = getEntityTypes();
 		Collections.reverse(entityTypes);
 		for (Class<?> entityType: entityTypes) {
-			File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
-
-				@Override
-				public boolean accept(File dir, String name) {
-					return name.startsWith(entityType.getSimpleName() + "s.xml");
-				}
-				
-			});
-			for (File file: dataFiles) {
-				try {
-					logger.info("Validating data file '" + file.getName() + "'...");
-					VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-					
-					for (Element element: dom.getRootElement().elements()) {
-						element.detach();
-						AbstractEntity entity = (AbstractEntity) new VersionedXmlDoc(DocumentHelper.createDocument(element)).toBean();
-						if (entity.getId() > 0) {
-							for (ConstraintViolation<?> violation: validator.validate(entity)) 
-								reportError(entity, violation);
-						}
+			for (File file: getDataFiles(dataDir, entityType)) {
+				logger.info("Validating data file '" + file.getName() + "'...");
+				readEntities(file, entity -> {
+					if (entity.getId() > 0) {
+						for (ConstraintViolation<?> violation: validator.validate(entity)) 
+							reportError(entity, violation);
 					}
-				} catch (Exception e) {
-					throw ExceptionUtils.unchecked(e);
-				}
+				});
 			}
 		}	
 	}
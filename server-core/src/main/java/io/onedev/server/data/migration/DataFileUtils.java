@@ -0,0 +1,177 @@
+package io.onedev.server.data.migration;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.server.OneDev;
+import io.onedev.server.util.xml.SanitizingXmlReader;
+import io.onedev.server.util.xml.StreamingXmlReader;
+
+/**
+ * Helpers for data migration steps to process files of a table in parallel. Each
+ * table is exported as multiple files each containing a bounded number of rows, and
+ * these files are independent of each other.
+ */
+public class DataFileUtils {
+
+	private static final int MAX_DATA_WORKERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Get data files of specified table, including the first file named as the prefix,
+	 * and subsequent batch files named as prefix followed by batch number
+	 */
+	public static List<File> getFiles(File dataDir, String fileNamePrefix) {
+		List<File> files = new ArrayList<>();
+		for (File file: dataDir.listFiles()) {
+			if (file.getName().startsWith(fileNamePrefix))
+				files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * Load each data file of specified table as a document, migrate it, and write it
+	 * back. Files are processed in parallel.
+	 */
+	public static void migrateDocs(File dataDir, String fileNamePrefix, Consumer<VersionedXmlDoc> migration) {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (File file: getFiles(dataDir, fileNamePrefix)) {
+			tasks.add(() -> {
+				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
+				migration.accept(dom);
+				dom.writeToFile(file, false);
+				return null;
+			});
+		}
+		runInParallel(tasks);
+	}
+
+	/**
+	 * Migrate rows of specified table in a streaming pass, so that only one row is held
+	 * in memory at a time for each file. Files are processed in parallel. A row detached
+	 * by the migration is removed.
+	 */
+	public static void migrateRows(File dataDir, String fileNamePrefix, Consumer<Element> migration) {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (File file: getFiles(dataDir, fileNamePrefix)) {
+			tasks.add(() -> {
+				migrateRows(file, migration);
+				return null;
+			});
+		}
+		runInParallel(tasks);
+	}
+
+	private static void migrateRows(File file, Consumer<Element> migration) {
+		File tempFile = new File(file.getParentFile(), "." + file.getName() + ".migrating");
+		try {
+			try (	Reader reader = new SanitizingXmlReader(new BufferedReader(
+							new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)));
+					OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+				OutputFormat format = new OutputFormat();
+				format.setIndent(false);
+				format.setNewlines(false);
+				format.setEncoding(StandardCharsets.UTF_8.name());
+				XMLWriter writer = new XMLWriter(os, format);
+				writer.startDocument();
+				Element[] openedRoot = new Element[1];
+				Element root = new StreamingXmlReader(true, "list/*").read(reader, row -> {
+					try {
+						if (openedRoot[0] == null) {
+							openedRoot[0] = row.getParent();
+							writer.writeOpen(openedRoot[0]);
+						}
+						migration.accept(row);
+						if (row.getParent() != null) {
+							row.setParent(null);
+							writer.write(row);
+						}
+					} catch (Exception e) {
+						throw ExceptionUtils.unchecked(e);
+					}
+				});
+				if (openedRoot[0] != null)
+					writer.writeClose(openedRoot[0]);
+				else if (root != null)
+					writer.write(root);
+				writer.endDocument();
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (Exception e) {
+			tempFile.delete();
+			throw ExceptionUtils.unchecked(e);
+		}
+	}
+
+	/*
+	 * Run tasks with bounded number of workers, as there can be thousands of data files,
+	 * and the shared executor creates a thread for each submitted task
+	 */
+	static void runInParallel(Collection<Callable<Void>> tasks) {
+		int parallelism = Math.min(tasks.size(), MAX_DATA_WORKERS);
+		if (parallelism > 1) {
+			ExecutorService executorService = OneDev.getInstance(ExecutorService.class);
+			Queue<Callable<Void>> pendingTasks = new ConcurrentLinkedQueue<>(tasks);
+			AtomicReference<Throwable> error = new AtomicReference<>(null);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i=0; i<parallelism; i++) {
+				futures.add(executorService.submit(() -> {
+					Callable<Void> task;
+					while (error.get() == null && (task = pendingTasks.poll()) != null) {
+						try {
+							task.call();
+						} catch (Throwable e) {
+							error.compareAndSet(null, e);
+						}
+					}
+				}));
+			}
+			try {
+				for (var future: futures)
+					future.get();
+			} catch (InterruptedException e) {
+				for (var future: futures)
+					future.cancel(true);
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw ExceptionUtils.unchecked(e.getCause());
+			}
+			if (error.get() != null)
+				throw ExceptionUtils.unchecked(error.get());
+		} else {
+			for (var task: tasks) {
+				try {
+					task.call();
+				} catch (Exception e) {
+					throw ExceptionUtils.unchecked(e);
+				}
+			}
+		}
+	}
+
+}
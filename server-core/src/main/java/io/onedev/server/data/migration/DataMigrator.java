@@ -5288,6 +5288,7 @@ public class DataMigrator {
 	private void migrate119(File dataDir, Stack<Integer> versions) {
 	}
 
+	@MigratedFiles({"ClusterServers.xml"})
 	private void migrate120(File dataDir, Stack<Integer> versions) {
 		for (File file : dataDir.listFiles()) {
 			if (file.getName().startsWith("ClusterServers.xml"))
@@ -5295,61 +5296,49 @@ public class DataMigrator {
 		}
 	}
 
+	@MigratedFiles({"Projects.xml", "Settings.xml"})
 	private void migrate121(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Projects.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					for (Element branchProtectionElement : element.element("branchProtections").elements()) {
-						branchProtectionElement.element("signatureRequired").setName("commitSignatureRequired");
-						branchProtectionElement.addElement("enforceConventionalCommits").setText("false");
-						branchProtectionElement.addElement("commitTypes");
-						branchProtectionElement.addElement("commitScopes");
-					}
-					for (Element tagProtectionElement : element.element("tagProtections").elements()) {
-						tagProtectionElement.element("signatureRequired").setName("commitSignatureRequired");
-					}
-				}
-				dom.writeToFile(file, false);
-			} else if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					if (element.elementTextTrim("key").equals("ISSUE")) {
-						Element valueElement = element.element("value");
-						if (valueElement != null) {
-							var commitMessageFixPatternsElement = valueElement.addElement("commitMessageFixPatterns");
-							var entriesElement = commitMessageFixPatternsElement.addElement("entries");
-							var entryElement = entriesElement.addElement("io.onedev.server.model.support.issue.CommitMessageFixPatterns_-Entry");
-							entryElement.addElement("prefix").setText("(^|\\W)(fix|fixed|fixes|fixing|resolve|resolved|resolves|resolving|close|closed|closes|closing)[\\s:]+");
-							entryElement.addElement("suffix").setText("(?=$|\\W)");
-							entryElement = entriesElement.addElement("io.onedev.server.model.support.issue.CommitMessageFixPatterns_-Entry");
-							entryElement.addElement("prefix").setText("\\(\\s*");
-							entryElement.addElement("suffix").setText("\\s*\\)\\s*$");
-						}
-					}
-				}
-				dom.writeToFile(file, false);
-			}
-		}
-	}
-
+		DataFileUtils.migrateRows(dataDir, "Projects.xml", element -> {
+			for (Element branchProtectionElement : element.element("branchProtections").elements()) {
+				branchProtectionElement.element("signatureRequired").setName("commitSignatureRequired");
+				branchProtectionElement.addElement("enforceConventionalCommits").setText("false");
+				branchProtectionElement.addElement("commitTypes");
+				branchProtectionElement.addElement("commitScopes");
+			}
+			for (Element tagProtectionElement : element.element("tagProtections").elements()) {
+				tagProtectionElement.element("signatureRequired").setName("commitSignatureRequired");
+			}
+		});
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			if (element.elementTextTrim("key").equals("ISSUE")) {
+				Element valueElement = element.element("value");
+				if (valueElement != null) {
+					var commitMessageFixPatternsElement = valueElement.addElement("commitMessageFixPatterns");
+					var entriesElement = commitMessageFixPatternsElement.addElement("entries");
+					var entryElement = entriesElement.addElement("io.onedev.server.model.support.issue.CommitMessageFixPatterns_-Entry");
+					entryElement.addElement("prefix").setText("(^|\\W)(fix|fixed|fixes|fixing|resolve|resolved|resolves|resolving|close|closed|closes|closing)[\\s:]+");
+					entryElement.addElement("suffix").setText("(?=$|\\W)");
+					entryElement = entriesElement.addElement("io.onedev.server.model.support.issue.CommitMessageFixPatterns_-Entry");
+					entryElement.addElement("prefix").setText("\\(\\s*");
+					entryElement.addElement("suffix").setText("\\s*\\)\\s*$");
+				}
+			}
+		});
+	}
+
+	@MigratedFiles({"Settings.xml"})
 	private void migrate122(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					String key = element.elementTextTrim("key");
-					if (key.equals("SECURITY")) {
-						Element valueElement = element.element("value");
-						if (valueElement != null)
-							valueElement.addElement("enableSelfDeregister").setText("false");
-					}
-				}
-				dom.writeToFile(file, false);
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			String key = element.elementTextTrim("key");
+			if (key.equals("SECURITY")) {
+				Element valueElement = element.element("value");
+				if (valueElement != null)
+					valueElement.addElement("enableSelfDeregister").setText("false");
 			}
-		}
+		});
 	}
 
+	@MigratedFiles({"Issues.xml", "PullRequests.xml", "CodeComments.xml", "IssueTouchs.xml", "PullRequestTouchs.xml", "CodeCommentTouchs.xml"})
 	private void migrate123(File dataDir, Stack<Integer> versions) {
 		var issueTouchesDoc = new VersionedXmlDoc();
 		var issueTouchesElement = issueTouchesDoc.addElement("list");
@@ -5401,132 +5390,104 @@ public class DataMigrator {
 		codeCommentTouchesDoc.writeToFile(new File(dataDir, "CodeCommentTouchs.xml"), true);
 	}
 	
+	@MigratedFiles({"Users.xml"})
 	private void migrate124(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Users.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					var accessTokenElement = element.element("accessToken");
-					var accessTokensElement = element.addElement("accessTokens");
-					var newAccessTokenElement = accessTokensElement.addElement("io.onedev.server.model.support.AccessToken");
-					newAccessTokenElement.addElement("value").setText(accessTokenElement.getText().trim());
-					newAccessTokenElement.addElement("createDate").setText("2023-05-28T22:07:56.311+01:00");
-					accessTokenElement.detach();
-				}
-				dom.writeToFile(file, false);
-			}
-		}
+		DataFileUtils.migrateRows(dataDir, "Users.xml", element -> {
+			var accessTokenElement = element.element("accessToken");
+			var accessTokensElement = element.addElement("accessTokens");
+			var newAccessTokenElement = accessTokensElement.addElement("io.onedev.server.model.support.AccessToken");
+			newAccessTokenElement.addElement("value").setText(accessTokenElement.getText().trim());
+			newAccessTokenElement.addElement("createDate").setText("2023-05-28T22:07:56.311+01:00");
+			accessTokenElement.detach();
+		});
 	}
 
+	@MigratedFiles({"Settings.xml"})
 	private void migrate125(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					String key = element.elementTextTrim("key");
-					if (key.equals("JOB_EXECUTORS")) {
-						Element valueElement = element.element("value");
-						if (valueElement != null) {
-							for (Element executorElement: valueElement.elements()) {
-								if (executorElement.getName().contains("KubernetesExecutor"))
-									executorElement.element("mountContainerSock").detach();
-							}
-						}
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			String key = element.elementTextTrim("key");
+			if (key.equals("JOB_EXECUTORS")) {
+				Element valueElement = element.element("value");
+				if (valueElement != null) {
+					for (Element executorElement: valueElement.elements()) {
+						if (executorElement.getName().contains("KubernetesExecutor"))
+							executorElement.element("mountContainerSock").detach();
 					}
 				}
-				dom.writeToFile(file, false);
 			}
-		}
+		});
 	}
 
+	@MigratedFiles({"Settings.xml"})
 	private void migrate126(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					String key = element.elementTextTrim("key");
-					if (key.equals("JOB_EXECUTORS")) {
-						Element valueElement = element.element("value");
-						if (valueElement != null) {
-							for (Element executorElement: valueElement.elements()) {
-								if (executorElement.getName().contains("KubernetesExecutor")
-										|| executorElement.getName().contains("DockerExecutor")) {
-									executorElement.addElement("imageMappings");
-								}
-							}
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			String key = element.elementTextTrim("key");
+			if (key.equals("JOB_EXECUTORS")) {
+				Element valueElement = element.element("value");
+				if (valueElement != null) {
+					for (Element executorElement: valueElement.elements()) {
+						if (executorElement.getName().contains("KubernetesExecutor")
+								|| executorElement.getName().contains("DockerExecutor")) {
+							executorElement.addElement("imageMappings");
 						}
 					}
 				}
-				dom.writeToFile(file, false);
 			}
-		}
+		});
 	}
 
+	@MigratedFiles({"SshKeys.xml"})
 	private void migrate127(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("SshKeys.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					PublicKey publicKey = null;
-					try {
-						publicKey = SshKeyUtils.decodeSshPublicKey(element.elementText("content"));
-					} catch (IOException | GeneralSecurityException e) {
-						throw new RuntimeException(e);
-					}
-					var digest = KeyUtils.getFingerPrint(BuiltinDigests.sha256, publicKey);
-					var digestElement = element.element("digest");
-					digestElement.setName("fingerprint");
-					digestElement.setText(digest);
-				}
-				dom.writeToFile(file, false);
+		DataFileUtils.migrateRows(dataDir, "SshKeys.xml", element -> {
+			PublicKey publicKey = null;
+			try {
+				publicKey = SshKeyUtils.decodeSshPublicKey(element.elementText("content"));
+			} catch (IOException | GeneralSecurityException e) {
+				throw new RuntimeException(e);
 			}
-		}
+			var digest = KeyUtils.getFingerPrint(BuiltinDigests.sha256, publicKey);
+			var digestElement = element.element("digest");
+			digestElement.setName("fingerprint");
+			digestElement.setText(digest);
+		});
 	}
 	
+	@MigratedFiles({"Settings.xml"})
 	private void migrate128(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					String key = element.elementTextTrim("key");
-					if (key.equals("JOB_EXECUTORS")) {
-						Element valueElement = element.element("value");
-						if (valueElement != null) {
-							for (Element executorElement: valueElement.elements()) {
-								if (executorElement.getName().contains("KubernetesExecutor")
-										|| executorElement.getName().contains("DockerExecutor")) {
-									for (var registryLoginElement: executorElement.element("registryLogins").elements()) {
-										registryLoginElement.setName("io.onedev.server.model.support.administration.jobexecutor.RegistryLogin");										
-									}
-								}
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			String key = element.elementTextTrim("key");
+			if (key.equals("JOB_EXECUTORS")) {
+				Element valueElement = element.element("value");
+				if (valueElement != null) {
+					for (Element executorElement: valueElement.elements()) {
+						if (executorElement.getName().contains("KubernetesExecutor")
+								|| executorElement.getName().contains("DockerExecutor")) {
+							for (var registryLoginElement: executorElement.element("registryLogins").elements()) {
+								registryLoginElement.setName("io.onedev.server.model.support.administration.jobexecutor.RegistryLogin");										
 							}
 						}
 					}
 				}
-				dom.writeToFile(file, false);
 			}
-		}
+		});
 	}
 
+	@MigratedFiles({})
 	private void migrate129(File dataDir, Stack<Integer> versions) {
 		
 	}
 
+	@MigratedFiles({"Projects.xml"})
 	private void migrate130(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Projects.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements()) {
-					for (Element branchProtectionElement : element.element("branchProtections").elements()) {
-						branchProtectionElement.addElement("checkCommitMessageFooter").setText("false");
-						branchProtectionElement.addElement("commitTypesForFooterCheck");
-					}
-				}
-				dom.writeToFile(file, false);
+		DataFileUtils.migrateRows(dataDir, "Projects.xml", element -> {
+			for (Element branchProtectionElement : element.element("branchProtections").elements()) {
+				branchProtectionElement.addElement("checkCommitMessageFooter").setText("false");
+				branchProtectionElement.addElement("commitTypesForFooterCheck");
 			}
-		}
+		});
 	}
 
+	@MigratedFiles({"CodeCommentTouchs.xml", "PullRequestTouchs.xml", "Alerts.xml", "Settings.xml"})
 	private void migrate131(File dataDir, Stack<Integer> versions) {
 		for (File file: dataDir.listFiles()) {
 			if (file.getName().startsWith("CodeCommentTouchs.xml") || file.getName().startsWith("PullRequestTouchs.xml")) {
@@ -5582,31 +5543,27 @@ public class DataMigrator {
 		}
 	}
 
+	@MigratedFiles({"Settings.xml"})
 	private void migrate132(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element : dom.getRootElement().elements()) {
-					var keyElement = element.element("key");
-					if (keyElement.getTextTrim().equals("ALERT")) {
-						var valueElement = element.element("value");
-						valueElement.element("trialExpireInOneWeekAlerted").setName("trialEnterpriseLicenseExpireInOneWeekAlerted");
-						valueElement.element("trialExpiredAlerted").setName("trialEnterpriseLicenseExpiredAlerted");
-						valueElement.element("subscriptionExpireInOneMonthAlerted").setName("enterpriseLicenseExpireInOneMonthAlerted");
-						valueElement.element("subscriptionExpireInOneWeekAlerted").setName("enterpriseLicenseExpireInOneWeekAlerted");
-						valueElement.element("subscriptionExpiredAlerted").setName("enterpriseLicenseExpiredAlerted");
-						valueElement.element("subscriptionExpiredBeforeReleaseDateAlerted").detach();
-						valueElement.element("userLimitApproachingAlerted").setName("enterpriseLicenseUserLimitApproachingAlerted");
-						valueElement.element("userLimitExceededAlerted").setName("enterpriseLicenseUserLimitExceededAlerted");
-					} else if (keyElement.getTextTrim().equals("SUBSCRIPTION_DATA")) {
-						keyElement.setText("LICENSE_DATA");
-					}
-				}
-				dom.writeToFile(file, false);
-			}
-		}
-	}
-
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			var keyElement = element.element("key");
+			if (keyElement.getTextTrim().equals("ALERT")) {
+				var valueElement = element.element("value");
+				valueElement.element("trialExpireInOneWeekAlerted").setName("trialEnterpriseLicenseExpireInOneWeekAlerted");
+				valueElement.element("trialExpiredAlerted").setName("trialEnterpriseLicenseExpiredAlerted");
+				valueElement.element("subscriptionExpireInOneMonthAlerted").setName("enterpriseLicenseExpireInOneMonthAlerted");
+				valueElement.element("subscriptionExpireInOneWeekAlerted").setName("enterpriseLicenseExpireInOneWeekAlerted");
+				valueElement.element("subscriptionExpiredAlerted").setName("enterpriseLicenseExpiredAlerted");
+				valueElement.element("subscriptionExpiredBeforeReleaseDateAlerted").detach();
+				valueElement.element("userLimitApproachingAlerted").setName("enterpriseLicenseUserLimitApproachingAlerted");
+				valueElement.element("userLimitExceededAlerted").setName("enterpriseLicenseUserLimitExceededAlerted");
+			} else if (keyElement.getTextTrim().equals("SUBSCRIPTION_DATA")) {
+				keyElement.setText("LICENSE_DATA");
+			}
+		});
+	}
+
+	@MigratedFiles({"Projects.xml", "Settings.xml"})
 	private void migrate133(File dataDir, Stack<Integer> versions) {
 		for (File file : dataDir.listFiles()) {
 			if (file.getName().startsWith("Projects.xml")) {
@@ -5636,97 +5593,81 @@ public class DataMigrator {
 		}
 	}
 
+	@MigratedFiles({"Settings.xml"})
 	private void migrate134(File dataDir, Stack<Integer> versions) {
-		for (File file : dataDir.listFiles()) {
-			if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element : dom.getRootElement().elements()) {
-					if (element.elementTextTrim("key").equals("MAIL")) {
-						Element valueElement = element.element("value");
-						if (valueElement != null) {
-							if (valueElement.attributeValue("class").contains("OtherMailSetting")) {
-								var enableStartTLSElement = valueElement.element("enableStartTLS");
-								var sslSettingElement = valueElement.addElement("sslSetting");
-								if (enableStartTLSElement.getTextTrim().equals("true")) {
-									sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.SmtpExplicitSsl");
-									sslSettingElement.addElement("trustAll").setText("false");
-								} else {
-									sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.SmtpWithoutSsl");
-								}
-								enableStartTLSElement.detach();
-								var portElement = valueElement.element("smtpPort");
-								portElement.detach();
-								portElement.setName("port");
-								sslSettingElement.add(portElement);
-
-								var pollSettingElement = valueElement.element("otherInboxPollSetting");
-								if (pollSettingElement != null) {
-									var enableSSLElement = pollSettingElement.element("enableSSL");
-									sslSettingElement = pollSettingElement.addElement("sslSetting");
-									if (enableSSLElement.getTextTrim().equals("true")) {
-										sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.ImapImplicitSsl");
-										sslSettingElement.addElement("trustAll").setText("false");
-									} else {
-										sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.ImapWithoutSsl");
-									}
-									enableSSLElement.detach();
-									portElement = pollSettingElement.element("imapPort");
-									portElement.detach();
-									portElement.setName("port");
-									sslSettingElement.add(portElement);
-								}
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			if (element.elementTextTrim("key").equals("MAIL")) {
+				Element valueElement = element.element("value");
+				if (valueElement != null) {
+					if (valueElement.attributeValue("class").contains("OtherMailSetting")) {
+						var enableStartTLSElement = valueElement.element("enableStartTLS");
+						var sslSettingElement = valueElement.addElement("sslSetting");
+						if (enableStartTLSElement.getTextTrim().equals("true")) {
+							sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.SmtpExplicitSsl");
+							sslSettingElement.addElement("trustAll").setText("false");
+						} else {
+							sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.SmtpWithoutSsl");
+						}
+						enableStartTLSElement.detach();
+						var portElement = valueElement.element("smtpPort");
+						portElement.detach();
+						portElement.setName("port");
+						sslSettingElement.add(portElement);
+
+						var pollSettingElement = valueElement.element("otherInboxPollSetting");
+						if (pollSettingElement != null) {
+							var enableSSLElement = pollSettingElement.element("enableSSL");
+							sslSettingElement = pollSettingElement.addElement("sslSetting");
+							if (enableSSLElement.getTextTrim().equals("true")) {
+								sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.ImapImplicitSsl");
+								sslSettingElement.addElement("trustAll").setText("false");
+							} else {
+								sslSettingElement.addAttribute("class", "io.onedev.server.model.support.administration.mailsetting.ImapWithoutSsl");
 							}
+							enableSSLElement.detach();
+							portElement = pollSettingElement.element("imapPort");
+							portElement.detach();
+							portElement.setName("port");
+							sslSettingElement.add(portElement);
 						}
 					}
 				}
-				dom.writeToFile(file, false);
 			}
-		}
+		});
 	}
 	
+	@MigratedFiles({"Settings.xml"})
 	private void migrate135(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Settings.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element : dom.getRootElement().elements()) {
-					var keyElement = element.element("key");
-					if (keyElement.getTextTrim().equals("ALERT")) {
-						var valueElement = element.element("value");
-						valueElement.element("trialEnterpriseLicenseExpireInOneWeekAlerted").setName("trialSubscriptionExpireInOneWeekAlerted");
-						valueElement.element("trialEnterpriseLicenseExpiredAlerted").setName("trialSubscriptionExpiredAlerted");
-						valueElement.element("enterpriseLicenseExpireInOneMonthAlerted").setName("subscriptionExpireInOneMonthAlerted");
-						valueElement.element("enterpriseLicenseExpireInOneWeekAlerted").setName("subscriptionExpireInOneWeekAlerted");
-						valueElement.element("enterpriseLicenseExpiredAlerted").setName("subscriptionExpiredAlerted");
-					} else if (keyElement.getTextTrim().equals("LICENSE_DATA")) {
-						keyElement.setText("SUBSCRIPTION_DATA");
-					} else if (keyElement.getTextTrim().equals("PERFORMANCE")) {
-						var valueElement = element.element("value");
-						var cpuIntensiveTaskConcurrencyElement = valueElement.element("cpuIntensiveTaskConcurrency");
-						var cpuIntensiveTaskConcurrency = Integer.parseInt(cpuIntensiveTaskConcurrencyElement.getTextTrim()) / 2;
-						if (cpuIntensiveTaskConcurrency == 0)
-							cpuIntensiveTaskConcurrency = 1;
-						cpuIntensiveTaskConcurrencyElement.setText(String.valueOf(cpuIntensiveTaskConcurrency));																		
-					}
-				}
-				dom.writeToFile(file, false);
-			}
-		}
-	}
-
+		DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+			var keyElement = element.element("key");
+			if (keyElement.getTextTrim().equals("ALERT")) {
+				var valueElement = element.element("value");
+				valueElement.element("trialEnterpriseLicenseExpireInOneWeekAlerted").setName("trialSubscriptionExpireInOneWeekAlerted");
+				valueElement.element("trialEnterpriseLicenseExpiredAlerted").setName("trialSubscriptionExpiredAlerted");
+				valueElement.element("enterpriseLicenseExpireInOneMonthAlerted").setName("subscriptionExpireInOneMonthAlerted");
+				valueElement.element("enterpriseLicenseExpireInOneWeekAlerted").setName("subscriptionExpireInOneWeekAlerted");
+				valueElement.element("enterpriseLicenseExpiredAlerted").setName("subscriptionExpiredAlerted");
+			} else if (keyElement.getTextTrim().equals("LICENSE_DATA")) {
+				keyElement.setText("SUBSCRIPTION_DATA");
+			} else if (keyElement.getTextTrim().equals("PERFORMANCE")) {
+				var valueElement = element.element("value");
+				var cpuIntensiveTaskConcurrencyElement = valueElement.element("cpuIntensiveTaskConcurrency");
+				var cpuIntensiveTaskConcurrency = Integer.parseInt(cpuIntensiveTaskConcurrencyElement.getTextTrim()) / 2;
+				if (cpuIntensiveTaskConcurrency == 0)
+					cpuIntensiveTaskConcurrency = 1;
+				cpuIntensiveTaskConcurrencyElement.setText(String.valueOf(cpuIntensiveTaskConcurrency));																		
+			}
+		});
+	}
+
+	@MigratedFiles({"Builds.xml", "CoverageMetrics.xml", "UnitTestMetrics.xml", "ProblemMetrics.xml"})
 	private void migrate136(File dataDir, Stack<Integer> versions) {
-		for (File file: dataDir.listFiles()) {
-			if (file.getName().startsWith("Builds.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
-				for (Element element: dom.getRootElement().elements())
-					element.addElement("checkoutPaths");
-				dom.writeToFile(file, false);
-			} else if (file.getName().startsWith("CoverageMetrics.xml")
-					|| file.getName().startsWith("UnitTestMetrics.xml")
-					|| file.getName().startsWith("ProblemMetrics.xml")) {
-				VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
+		DataFileUtils.migrateRows(dataDir, "Builds.xml", element -> element.addElement("checkoutPaths"));
+		for (var fileNamePrefix: new String[] {"CoverageMetrics.xml", "UnitTestMetrics.xml", "ProblemMetrics.xml"}) {
+			DataFileUtils.migrateDocs(dataDir, fileNamePrefix, dom -> {
 				var buildAndReports = new HashSet<String>();
 				for (Element element: dom.getRootElement().elements()) {
-					if (file.getName().startsWith("CoverageMetrics.xml")) {
+					if (fileNamePrefix.equals("CoverageMetrics.xml")) {
 						element.element("totalMethods").detach();
 						element.element("totalStatements").detach();
 						element.element("totalBranches").detach();
@@ -5737,8 +5678,24 @@ public class DataMigrator {
 					if (!buildAndReports.add(buildId + ":" + reportName))
 						element.detach();
 				}
-				dom.writeToFile(file, false);
-			}
+			});
 		}
 	}
+
+	// Per-file coverage and problem data of build reports are converted to path indexed
+	// files by the upgrade command
+	@MigratedFiles({})
+	private void migrate137(File dataDir, Stack<Integer> versions) {
+	}
+
+	// Table of pending mails is added
+	@MigratedFiles({})
+	private void migrate138(File dataDir, Stack<Integer> versions) {
+	}
+
+	// Table of pending web hook deliveries is added
+	@MigratedFiles({})
+	private void migrate139(File dataDir, Stack<Integer> versions) {
+	}
+	
 }
@@ -0,0 +1,19 @@
+package io.onedev.server.data.migration;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declare name prefixes of data files read or written by a data migration step. 
+ * Consecutive steps declaring disjoint files are run concurrently. Steps without 
+ * this annotation are assumed to touch all files and are run alone.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MigratedFiles {
+	
+	String[] value();
+	
+}
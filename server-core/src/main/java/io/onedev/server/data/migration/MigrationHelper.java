@@ -3,11 +3,15 @@ package io.onedev.server.data.migration;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -25,6 +29,8 @@ public class MigrationHelper {
 	private static final Pattern migrateMethodPattern = 
 		Pattern.compile("^migrate(\\d+)$");
 	
+	private static final long SLOW_STEP_THRESHOLD = 1000;
+	
 	private static Map<String, MigratorAnalyzeResult> migratorAnalyzeResults = 
 		new ConcurrentHashMap<String, MigratorAnalyzeResult>();
 
@@ -92,6 +98,16 @@ public class MigrationHelper {
 		return StringUtils.join(versionParts, '.');
 	}
 	
+	private static boolean isDisjoint(Set<String> migratedFiles, String[] fileNamePrefixes) {
+		for (String fileNamePrefix: fileNamePrefixes) {
+			for (String migratedFile: migratedFiles) {
+				if (migratedFile.startsWith(fileNamePrefix) || fileNamePrefix.startsWith(migratedFile))
+					return false;
+			}
+		}
+		return true;
+	}
+	
 	public static boolean migrate(String fromVersion, Object migrator, Object customData) {
 		Stack<Integer> versionParts = new Stack<Integer>();
 		for (String part: StringUtils.split(fromVersion, "."))
@@ -128,28 +144,45 @@ public class MigrationHelper {
 				start = 0;
 			}
 			
-			for (int i=start; i<size; i++) {
-				Method migrateMethod = migratorAnalyzeResult.getMigrateMethods().get(i);
-				int previousVersion;
-				if (i != 0) {
-					Method previousMigrateMethod =
-						migratorAnalyzeResult.getMigrateMethods().get(i-1);
-					previousVersion = migratorAnalyzeResult.getMigrateVersions()
-							.get(previousMigrateMethod.getName());
-				} else {
-					previousVersion = 0;
-				}
-				int currentVersion = migratorAnalyzeResult.getMigrateVersions()
-						.get(migrateMethod.getName());
-				Object[] params = new String[]{current.getName(), 
-						String.valueOf(previousVersion), 
-						String.valueOf(currentVersion)};
-				logger.debug("Migrating data (migrator: {}, from version: {}, " + "to version: {})", params);
-				try {
-					migrateMethod.invoke(migrator, customData, versionParts);
-				} catch (Exception e) {
-					throw ExceptionUtils.unchecked(e);
+			for (int i=start; i<size;) {
+				// Run consecutive steps declaring disjoint files together
+				List<Method> concurrentMethods = new ArrayList<>();
+				Set<String> migratedFiles = new HashSet<>();
+				do {
+					Method migrateMethod = migratorAnalyzeResult.getMigrateMethods().get(i);
+					MigratedFiles annotation = migrateMethod.getAnnotation(MigratedFiles.class);
+					if (!concurrentMethods.isEmpty() 
+							&& (annotation == null || !isDisjoint(migratedFiles, annotation.value()))) {
+						break;
+					}
+					concurrentMethods.add(migrateMethod);
+					i++;
+					if (annotation == null)
+						break;
+					migratedFiles.addAll(Arrays.asList(annotation.value()));
+				} while (i < size);
+
+				Class<?> migratorClass = current;
+				List<Callable<Void>> tasks = new ArrayList<>();
+				for (Method migrateMethod: concurrentMethods) {
+					tasks.add(() -> {
+						int toVersion = migratorAnalyzeResult.getMigrateVersions().get(migrateMethod.getName());
+						logger.debug("Migrating data (migrator: {}, to version: {})", migratorClass.getName(), toVersion);
+						long time = System.currentTimeMillis();
+						try {
+							migrateMethod.invoke(migrator, customData, versionParts);
+						} catch (Exception e) {
+							throw ExceptionUtils.unchecked(e);
+						}
+						long elapsed = System.currentTimeMillis() - time;
+						if (elapsed >= SLOW_STEP_THRESHOLD) {
+							logger.info("Migrated data (migrator: {}, to version: {}, took: {} ms)", 
+									migratorClass.getName(), toVersion, elapsed);
+						}
+						return null;
+					});
 				}
+				DataFileUtils.runInParallel(tasks);
 				migrated = true;
 			}
 			current = current.getSuperclass();
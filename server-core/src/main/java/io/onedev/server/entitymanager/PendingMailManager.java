@@ -0,0 +1,19 @@
+package io.onedev.server.entitymanager;
+
+import java.util.List;
+
+import io.onedev.server.model.PendingMail;
+import io.onedev.server.persistence.dao.EntityManager;
+
+public interface PendingMailManager extends EntityManager<PendingMail> {
+	
+	void create(PendingMail mail);
+	
+	void update(PendingMail mail);
+	
+	/**
+	 * Query mails due to be sent, in the order they are queued
+	 */
+	List<PendingMail> queryDue(int count);
+	
+}
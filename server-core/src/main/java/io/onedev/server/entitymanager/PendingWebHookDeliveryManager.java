@@ -0,0 +1,54 @@
+package io.onedev.server.entitymanager;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.model.PendingWebHookDelivery;
+import io.onedev.server.persistence.dao.EntityManager;
+
+public interface PendingWebHookDeliveryManager extends EntityManager<PendingWebHookDelivery> {
+	
+	void create(PendingWebHookDelivery delivery);
+	
+	/**
+	 * Find last queued delivery of specified endpoint
+	 */
+	@Nullable
+	PendingWebHookDelivery findLast(String postUrl);
+	
+	/**
+	 * Replace payload of specified delivery if it is not yet attempted
+	 * 
+	 * @return
+	 * 			<tt>true</tt> if the delivery exists and is replaced
+	 */
+	boolean coalesce(Long deliveryId, String secret, String payload);
+	
+	/**
+	 * Query deliveries due to be sent, in the order they are queued
+	 * 
+	 * @param excludedPostUrls
+	 * 			deliveries to these endpoints will not be returned
+	 */
+	List<PendingWebHookDelivery> queryDue(Collection<String> excludedPostUrls, int count);
+	
+	/**
+	 * Delete specified delivery, unless it is coalesced with a later delivery since loaded
+	 */
+	void delete(Long deliveryId, int revision);
+	
+	void scheduleRetry(Long deliveryId, int attempts, Date scheduledDate, @Nullable String lastError);
+	
+	/**
+	 * Delete oldest deliveries of endpoints having more than specified number of 
+	 * pending deliveries
+	 * 
+	 * @return
+	 * 			number of deleted deliveries
+	 */
+	int trim(int maxDeliveriesPerEndpoint);
+	
+}
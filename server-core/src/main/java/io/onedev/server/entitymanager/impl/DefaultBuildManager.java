@@ -3,18 +3,22 @@ package io.onedev.server.entitymanager.impl;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.cp.IAtomicLong;
 import com.hazelcast.map.IMap;
 import edu.emory.mathcs.backport.java.util.Collections;
 import io.onedev.commons.loader.ManagedSerializedForm;
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.CacheLoader;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.entitymanager.*;
 import io.onedev.server.event.Listen;
 import io.onedev.server.event.entity.EntityPersisted;
 import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.project.build.BuildEvent;
 import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.event.system.SystemStopped;
 import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.git.service.GitService;
 import io.onedev.server.model.*;
@@ -38,6 +42,7 @@ import io.onedev.server.security.permission.JobPermission;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.ProjectBuildStats;
 import io.onedev.server.util.ProjectScopedNumber;
+import io.onedev.server.util.ProjectStatsCache;
 import io.onedev.server.util.StatusInfo;
 import io.onedev.server.util.artifact.ArtifactInfo;
 import io.onedev.server.util.artifact.DirectoryInfo;
@@ -87,6 +92,8 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	
 	private static final int CLEANUP_BATCH = 5000;
 	
+	private static final String CACHE_SNAPSHOT = "builds";
+	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultBuildManager.class);
 	
 	private final BuildParamManager buildParamManager;
@@ -109,12 +116,20 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	
 	private final Set<BuildStorageSyncer> storageSyncers;
 	
+	private final CacheLoader cacheLoader;
+	
+	private final EntityCountCache countCache;
+	
 	private final SequenceGenerator numberGenerator;
 	
+	private final ProjectStatsCache<ProjectBuildStats> statsCache;
+	
 	private volatile IMap<Long, BuildFacade> cache;
 	
 	private volatile Map<Long, Collection<String>> jobNames;
 	
+	private volatile IAtomicLong cacheInited;
+	
 	private volatile String taskId;
 	
 	@Inject
@@ -123,7 +138,8 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 							   ProjectManager projectManager, SessionManager sessionManager, 
 							   TransactionManager transactionManager, SettingManager settingManager, 
 							   ClusterManager clusterManager, StorageManager storageManager, 
-							   Set<BuildStorageSyncer> storageSyncers) {
+							   Set<BuildStorageSyncer> storageSyncers, CacheLoader cacheLoader, 
+							   EntityCountCache countCache) {
 		super(dao);
 		this.buildParamManager = buildParamManager;
 		this.buildDependenceManager = buildDependenceManager;
@@ -135,8 +151,11 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		this.clusterManager = clusterManager;
 		this.storageManager = storageManager;
 		this.storageSyncers = storageSyncers;
+		this.cacheLoader = cacheLoader;
+		this.countCache = countCache;
 
 		numberGenerator = new SequenceGenerator(Build.class, clusterManager, dao);
+		statsCache = new ProjectStatsCache<>(clusterManager, "buildStats", ProjectBuildStats::getProjectId);
 	}
 
 	public Object writeReplace() throws ObjectStreamException {
@@ -198,10 +217,18 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 			transactionManager.runAfterCommit(() -> {
 				cache.put(facade.getId(), facade);
 				populateJobNames(facade.getProjectId(), jobName);
+				statsCache.invalidate(facade.getProjectId());
 			});
 		}
 	}
 	
+	@Sessional
+	@Listen
+	public void on(BuildEvent event) {
+		Long projectId = event.getProject().getId();
+		transactionManager.runAfterCommit(() -> statsCache.invalidate(projectId));
+	}
+	
 	@Transactional
 	@Listen
 	public void on(EntityRemoved event) {
@@ -214,17 +241,19 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 			transactionManager.runAfterCommit(() -> {
 				cache.removeAll(entry -> entry.getValue().getProjectId().equals(projectId));
 				jobNames.remove(projectId);
+				statsCache.invalidate(projectId);
 			});
 		} else if (event.getEntity() instanceof Build) {
 			Build build = (Build) event.getEntity();
 			Long projectId = build.getProject().getId();
-			Long buildId = build.getProject().getId();
+			Long buildId = build.getId();
 			Long buildNumber = build.getNumber();
 
 			String activeServer = projectManager.getActiveServer(projectId, false);
 			
 			transactionManager.runAfterCommit(() -> {
 				cache.remove(buildId);
+				statsCache.invalidate(projectId);
 				if (activeServer != null) {
 					clusterManager.submitToServer(activeServer, () -> {
 						try {
@@ -590,14 +619,18 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 	@Sessional
 	@Override
 	public int count(@Nullable Project project, Criteria<Build> buildCriteria) {
-		CriteriaBuilder builder = getSession().getCriteriaBuilder();
-		CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
-		Root<Build> root = criteriaQuery.from(Build.class);
+		Collection<Long> projectIds = project != null? List.of(project.getId()): null;
+		String scope = project != null? project.getId().toString(): "";
+		return countCache.count(Build.class, projectIds, scope, buildCriteria, () -> {
+			CriteriaBuilder builder = getSession().getCriteriaBuilder();
+			CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+			Root<Build> root = criteriaQuery.from(Build.class);
 
-		criteriaQuery.where(getPredicates(project, buildCriteria, criteriaQuery, root, builder));
+			criteriaQuery.where(getPredicates(project, buildCriteria, criteriaQuery, root, builder));
 
-		criteriaQuery.select(builder.count(root));
-		return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+			criteriaQuery.select(builder.count(root));
+			return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+		});
 	}
 	
 	@Sessional
@@ -720,7 +753,6 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		return CronScheduleBuilder.dailyAtHourAndMinute(0, 0);
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Listen
 	public void on(SystemStarting event) {
 		logger.info("Caching build info...");
@@ -729,21 +761,93 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
         cache = hazelcastInstance.getMap("buildCache");
         jobNames = hazelcastInstance.getMap("jobNames");
 
-		var buildCacheInited = hazelcastInstance.getCPSubsystem().getAtomicLong("buildCacheInited");
-		clusterManager.init(buildCacheInited, () -> {
-			Query<?> query = dao.getSession().createQuery("select id, project.id, number, commitHash, jobName from Build");
-			for (Object[] fields : (List<Object[]>) query.list()) {
-				Long buildId = (Long) fields[0];
-				Long projectId = (Long) fields[1];
-				Long buildNumber = (Long) fields[2];
-				cache.put(buildId, new BuildFacade(buildId, projectId, buildNumber, (String) fields[3]));
-				populateJobNames(projectId, (String) fields[4]);
+		cacheInited = hazelcastInstance.getCPSubsystem().getAtomicLong("buildCacheInited");
+		cacheLoader.loadAsync("build", cacheInited, () -> {
+			Boolean loaded = cacheLoader.readSnapshot(CACHE_SNAPSHOT, input -> {
+				long[] fingerprint = new long[4];
+				for (int i=0; i<fingerprint.length; i++)
+					fingerprint[i] = input.readLong();
+				if (!Arrays.equals(fingerprint, cacheLoader.getFingerprint("Build", fingerprint[0])))
+					return false;
+				
+				Map<Long, BuildFacade> facades = new HashMap<>();
+				for (int i=input.readInt(); i>0; i--) {
+					Long buildId = input.readLong();
+					Long projectId = input.readLong();
+					Long buildNumber = input.readLong();
+					String commitHash = input.readBoolean()? input.readUTF(): null;
+					facades.put(buildId, new BuildFacade(buildId, projectId, buildNumber, commitHash));
+				}
+				cache.putAll(facades);
+				
+				Map<Long, Collection<String>> jobNames = new HashMap<>();
+				for (int i=input.readInt(); i>0; i--) {
+					Long projectId = input.readLong();
+					Collection<String> jobNamesOfProject = new HashSet<>();
+					for (int j=input.readInt(); j>0; j--)
+						jobNamesOfProject.add(input.readUTF());
+					jobNames.put(projectId, jobNamesOfProject);
+				}
+				this.jobNames.putAll(jobNames);
+				
+				// Builds created after the snapshot
+				cacheBuilds(fingerprint[0]);
+				return true;
+			});
+			if (loaded == null || !loaded) {
+				cache.clear();
+				jobNames.clear();
+				cacheBuilds(0);
 			}
 			return 1L;			
 		});
 		
 		taskId = taskScheduler.schedule(this);
 	}
+	
+	@Sessional
+	@Listen
+	public void on(SystemStopped event) {
+		if (cacheInited != null && cacheInited.get() != 0 && clusterManager.isLeaderServer()) {
+			cacheLoader.writeSnapshot(CACHE_SNAPSHOT, output -> {
+				// Take fingerprint before dumping cache, so that builds changed in between 
+				// will either be loaded again or invalidate the snapshot  
+				for (long field: cacheLoader.getFingerprint("Build", null))
+					output.writeLong(field);
+				var facades = cache.values();
+				output.writeInt(facades.size());
+				for (var facade: facades) {
+					output.writeLong(facade.getId());
+					output.writeLong(facade.getProjectId());
+					output.writeLong(facade.getNumber());
+					output.writeBoolean(facade.getCommitHash() != null);
+					if (facade.getCommitHash() != null)
+						output.writeUTF(facade.getCommitHash());
+				}
+				var jobNameEntries = jobNames.entrySet();
+				output.writeInt(jobNameEntries.size());
+				for (var entry: jobNameEntries) {
+					output.writeLong(entry.getKey());
+					output.writeInt(entry.getValue().size());
+					for (var jobName: entry.getValue())
+						output.writeUTF(jobName);
+				}
+			});
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void cacheBuilds(long afterId) {
+		Query<?> query = dao.getSession().createQuery("select id, project.id, number, commitHash, jobName from Build where id > :afterId");
+		query.setParameter("afterId", afterId);
+		for (Object[] fields : (List<Object[]>) query.list()) {
+			Long buildId = (Long) fields[0];
+			Long projectId = (Long) fields[1];
+			Long buildNumber = (Long) fields[2];
+			cache.put(buildId, new BuildFacade(buildId, projectId, buildNumber, (String) fields[3]));
+			populateJobNames(projectId, (String) fields[4]);
+		}
+	}
 
 	@Listen
 	public void on(SystemStopping event) {
@@ -964,21 +1068,26 @@ public class DefaultBuildManager extends BaseEntityManager<Build> implements Bui
 		if (projects.isEmpty()) {
 			return new ArrayList<>();
 		} else {
-			CriteriaBuilder builder = getSession().getCriteriaBuilder();
-			CriteriaQuery<ProjectBuildStats> criteriaQuery = builder.createQuery(ProjectBuildStats.class);
-			Root<Build> root = criteriaQuery.from(Build.class);
-			criteriaQuery.multiselect(
-					root.get(Build.PROP_PROJECT).get(Project.PROP_ID), 
-					root.get(Build.PROP_STATUS), 
-					builder.count(root));
-			criteriaQuery.groupBy(root.get(Build.PROP_PROJECT), root.get(Build.PROP_STATUS));
-			
-			criteriaQuery.where(root.get(Build.PROP_PROJECT).in(projects));
-			criteriaQuery.orderBy(builder.asc(root.get(Build.PROP_STATUS)));
-			
-			return getSession().createQuery(criteriaQuery).getResultList();
+			List<Long> projectIds = projects.stream().map(Project::getId).collect(Collectors.toList());
+			List<ProjectBuildStats> stats = statsCache.get(projectIds, this::queryStats);
+			stats.sort(Comparator.comparing(ProjectBuildStats::getBuildStatus));
+			return stats;
 		}
 	}
+	
+	private List<ProjectBuildStats> queryStats(Collection<Long> projectIds) {
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<ProjectBuildStats> criteriaQuery = builder.createQuery(ProjectBuildStats.class);
+		Root<Build> root = criteriaQuery.from(Build.class);
+		criteriaQuery.multiselect(
+				root.get(Build.PROP_PROJECT).get(Project.PROP_ID), 
+				root.get(Build.PROP_STATUS), 
+				builder.count(root));
+		criteriaQuery.groupBy(root.get(Build.PROP_PROJECT), root.get(Build.PROP_STATUS));
+		
+		criteriaQuery.where(root.get(Build.PROP_PROJECT).get(Project.PROP_ID).in(projectIds));
+		return getSession().createQuery(criteriaQuery).getResultList();
+	}
 
 	@Override
 	public Build findByUUID(String uuid) {
@@ -1,6 +1,8 @@
 package io.onedev.server.entitymanager.impl;
 
 import com.google.common.base.Preconditions;
+import com.hazelcast.map.IMap;
+import io.onedev.server.cluster.CacheLoader;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.event.Listen;
@@ -9,16 +11,22 @@ import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.system.SystemStarting;
 import io.onedev.server.model.*;
 import io.onedev.server.model.support.BuildMetric;
+import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.persistence.dao.Dao;
 import io.onedev.server.persistence.dao.EntityCriteria;
+import io.onedev.server.search.buildmetric.AndBuildMetricCriteria;
+import io.onedev.server.search.buildmetric.BuildMetricCriteria;
 import io.onedev.server.search.buildmetric.BuildMetricQuery;
+import io.onedev.server.search.buildmetric.BuildMetricQueryLexer;
+import io.onedev.server.search.buildmetric.DateCriteria;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.AccessBuildReports;
 import io.onedev.server.security.permission.JobPermission;
 import io.onedev.server.util.BeanUtils;
+import io.onedev.server.util.Day;
 import io.onedev.server.util.MetricIndicator;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -36,6 +44,8 @@ import javax.persistence.metamodel.EntityType;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
 import static io.onedev.commons.utils.ExceptionUtils.unchecked;
@@ -53,15 +63,30 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 	
 	private final TransactionManager transactionManager;
 	
+	private final SessionManager sessionManager;
+	
 	private final ClusterManager clusterManager;
 	
+	private final CacheLoader cacheLoader;
+	
+	private final Map<Class<?>, Indicators> indicators = new ConcurrentHashMap<>();
+	
 	private volatile Map<Key, Map<String, Collection<String>>> reportNames;
 	
+	private volatile IMap<Key, TreeSet<Integer>> rollupDays;
+	
+	private volatile IMap<DayKey, ArrayList<Rollup>> rollups;
+	
+	private volatile Collection<Class<?>> metricClasses;
+	
 	@Inject
-	public DefaultBuildMetricManager(Dao dao, TransactionManager transactionManager, ClusterManager clusterManager) {
+	public DefaultBuildMetricManager(Dao dao, TransactionManager transactionManager, 
+			SessionManager sessionManager, ClusterManager clusterManager, CacheLoader cacheLoader) {
 		this.dao = dao;
 		this.transactionManager = transactionManager;
+		this.sessionManager = sessionManager;
 		this.clusterManager = clusterManager;
+		this.cacheLoader = cacheLoader;
 	}
 
 	@Nullable
@@ -74,10 +99,122 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 		return dao.find(criteria);
 	}
 
-	@SuppressWarnings("resource")
 	@Sessional
 	@Override
 	public <T extends AbstractEntity> Map<Integer, T> queryStats(Project project, Class<T> metricClass, BuildMetricQuery query) {
+		List<BuildMetricCriteria> criterias = new ArrayList<>();
+		if (query.getCriteria() instanceof AndBuildMetricCriteria)
+			criterias.addAll(((AndBuildMetricCriteria) query.getCriteria()).getCriterias());
+		else if (query.getCriteria() != null)
+			criterias.add(query.getCriteria());
+		
+		Date sinceDate = null;
+		Date untilDate = null;
+		List<BiPredicate<String, String>> rollupMatchers = new ArrayList<>();
+		for (var criteria: criterias) {
+			if (criteria instanceof DateCriteria) {
+				var dateCriteria = (DateCriteria) criteria;
+				if (dateCriteria.getOperator() == BuildMetricQueryLexer.Since) {
+					if (sinceDate == null || sinceDate.before(dateCriteria.getDate()))
+						sinceDate = dateCriteria.getDate();
+				} else if (untilDate == null || untilDate.after(dateCriteria.getDate())) {
+					untilDate = dateCriteria.getDate();
+				}
+			} else {
+				var rollupMatcher = criteria.getRollupMatcher();
+				if (rollupMatcher != null)
+					rollupMatchers.add(rollupMatcher);
+				else
+					return queryStats(project, metricClass, query, null);
+			}
+		}
+		
+		Integer sinceDay = sinceDate != null? new Day(sinceDate).getValue(): null;
+		Integer untilDay = untilDate != null? new Day(untilDate).getValue(): null;
+		
+		Collection<Integer> rollupDaysToQuery = new ArrayList<>();
+		Collection<Integer> rawDaysToQuery = new HashSet<>();
+		splitDays(getRollupDays(project.getId(), metricClass), sinceDay, untilDay, 
+				rollupDaysToQuery, rawDaysToQuery);
+		
+		Map<String, Collection<String>> accessibleReportNames;
+		if (!SecurityUtils.canManageBuilds(project))
+			accessibleReportNames = getAccessibleReportNames(project, metricClass);
+		else 
+			accessibleReportNames = null;
+		
+		var indicatorsOfClass = getIndicators(metricClass);
+		Map<Integer, T> metrics = new HashMap<>();
+		var keys = rollupDaysToQuery.stream()
+				.map(it -> new DayKey(project.getId(), metricClass, it))
+				.collect(Collectors.toSet());
+		for (var entry: rollups.getAll(keys).entrySet()) {
+			double[] values = average(entry.getValue(), indicatorsOfClass.setters.size(), (jobName, reportName) -> {
+				if (accessibleReportNames != null) {
+					var accessibleReportNamesOfJob = accessibleReportNames.get(jobName);
+					if (accessibleReportNamesOfJob == null || !accessibleReportNamesOfJob.contains(reportName))
+						return false;
+				}
+				return rollupMatchers.stream().allMatch(it -> it.test(jobName, reportName));
+			});
+			if (values != null)
+				metrics.put(entry.getKey().day, newMetric(metricClass, indicatorsOfClass, values));
+		}
+		
+		if (!rawDaysToQuery.isEmpty())
+			metrics.putAll(queryStats(project, metricClass, query, rawDaysToQuery));
+		
+		return metrics;
+	}
+	
+	/**
+	 * Split specified days into days covered by rollups completely, and days to be calculated 
+	 * from raw metrics. Days strictly between since and until day are covered by rollups, 
+	 * while since and until day themselves only partially match the query
+	 */
+	static void splitDays(Collection<Integer> days, @Nullable Integer sinceDay, @Nullable Integer untilDay, 
+			Collection<Integer> rollupDays, Collection<Integer> rawDays) {
+		for (int day: days) {
+			if ((sinceDay == null || day >= sinceDay) && (untilDay == null || day <= untilDay)) {
+				if (sinceDay != null && day == sinceDay || untilDay != null && day == untilDay)
+					rawDays.add(day);
+				else
+					rollupDays.add(day);
+			}
+		}
+	}
+	
+	/**
+	 * Calculate average indicator values of rollups accepted by specified matcher
+	 * 
+	 * @return
+	 * 			average value of each indicator, or <tt>null</tt> if no rollups are accepted
+	 */
+	@Nullable
+	static double[] average(Collection<Rollup> rollupsOfDay, int indicatorCount, 
+			BiPredicate<String, String> matcher) {
+		int count = 0;
+		long[] sums = new long[indicatorCount];
+		for (var rollup: rollupsOfDay) {
+			if (matcher.test(rollup.jobName, rollup.reportName)) {
+				count += rollup.count;
+				for (int i=0; i<sums.length; i++)
+					sums[i] += rollup.sums[i];
+			}
+		}
+		if (count != 0) {
+			double[] values = new double[sums.length];
+			for (int i=0; i<sums.length; i++)
+				values[i] = (double)sums[i] / count;
+			return values;
+		} else {
+			return null;
+		}
+	}
+	
+	@SuppressWarnings("resource")
+	private <T extends AbstractEntity> Map<Integer, T> queryStats(Project project, Class<T> metricClass, 
+			BuildMetricQuery query, @Nullable Collection<Integer> days) {
 		CriteriaBuilder builder = dao.getSession().getCriteriaBuilder();
 		CriteriaQuery<Object[]> criteriaQuery = builder.createQuery(Object[].class);
 		Root<T> metricRoot = criteriaQuery.from(metricClass);
@@ -118,18 +255,16 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 		
 		if (query.getCriteria() != null)
 			predicates.add(query.getCriteria().getPredicate(metricRoot, buildJoin, builder));
+		if (days != null)
+			predicates.add(buildJoin.get(Build.PROP_FINISH_DAY).in(days));
 		
 		criteriaQuery.where(predicates.toArray(new Predicate[0]));
 		criteriaQuery.groupBy(buildJoin.get(Build.PROP_FINISH_DAY));
 		
-		List<Method> setters = new ArrayList<>();
+		var indicatorsOfClass = getIndicators(metricClass);
 		List<Selection<?>> selections = new ArrayList<>();
-		for (Method getter: BeanUtils.findGetters(metricClass)) {
-			if (getter.getAnnotation(MetricIndicator.class) != null) {
-				selections.add(builder.avg(metricRoot.get(BeanUtils.getPropertyName(getter))));
-				setters.add(Preconditions.checkNotNull(BeanUtils.findSetter(getter)));
-			}
-		}
+		for (var property: indicatorsOfClass.properties) 
+			selections.add(builder.avg(metricRoot.get(property)));
 		
 		selections.add(buildJoin.get(Build.PROP_FINISH_DAY));
 		
@@ -138,20 +273,127 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 		Map<Integer, T> metrics = new HashMap<>();
 		
 		for (Object[] fields: dao.getSession().createQuery(criteriaQuery).list()) {
+			double[] values = new double[indicatorsOfClass.properties.size()];
+			for (int i=0; i<values.length; i++)
+				values[i] = (double)fields[i];
+			metrics.put((int)fields[values.length], newMetric(metricClass, indicatorsOfClass, values));
+		}
+		return metrics;
+	}
+	
+	private <T> T newMetric(Class<T> metricClass, Indicators indicatorsOfClass, double[] values) {
+		try {
+			T metric = metricClass.getDeclaredConstructor().newInstance();
+			for (int i=0; i<values.length; i++) 
+				indicatorsOfClass.setters.get(i).invoke(metric, (int)values[i]);
+			return metric;
+		} catch (Exception e) {
+			throw unchecked(e);
+		}
+	}
+	
+	private Indicators getIndicators(Class<?> metricClass) {
+		return indicators.computeIfAbsent(metricClass, k -> {
+			var indicatorsOfClass = new Indicators();
+			for (Method getter: BeanUtils.findGetters(metricClass)) {
+				if (getter.getAnnotation(MetricIndicator.class) != null) {
+					indicatorsOfClass.properties.add(BeanUtils.getPropertyName(getter));
+					indicatorsOfClass.setters.add(Preconditions.checkNotNull(BeanUtils.findSetter(getter)));
+				}
+			}
+			return indicatorsOfClass;
+		});
+	}
+	
+	private Collection<Integer> getRollupDays(Long projectId, Class<?> metricClass) {
+		var key = new Key(projectId, metricClass);
+		var days = rollupDays.get(key);
+		if (days == null) {
+			rollupDays.lock(key);
 			try {
-				T metric = metricClass.getDeclaredConstructor().newInstance();
-				int index = 0;
-				for (Method setter: setters) {
-					double value = (double)fields[index++];
-					setter.invoke(metric, (int)value);
+				days = rollupDays.get(key);
+				if (days == null) {
+					var rollupsOfProject = queryRollups(projectId, metricClass, null);
+					for (var entry: rollupsOfProject.entrySet()) 
+						rollups.put(new DayKey(projectId, metricClass, entry.getKey()), entry.getValue());
+					days = new TreeSet<>(rollupsOfProject.keySet());
+					rollupDays.put(key, days);
 				}
-				metrics.put((int)fields[setters.size()], metric);
-			} catch (Exception e) {
-				throw unchecked(e);
+			} finally {
+				rollupDays.unlock(key);
 			}
 		}
-		return metrics;
+		return days;
 	}
+	
+	/**
+	 * Re-calculate rollups of specified day from raw metrics. Rollups of a project are 
+	 * only maintained after they are loaded by a stats query
+	 */
+	private void updateRollups(Long projectId, Class<?> metricClass, int day) {
+		var key = new Key(projectId, metricClass);
+		if (rollupDays.containsKey(key)) {
+			rollupDays.lock(key);
+			try {
+				var days = rollupDays.get(key);
+				if (days != null) {
+					var dayKey = new DayKey(projectId, metricClass, day);
+					var rollupsOfDay = queryRollups(projectId, metricClass, day).get(day);
+					if (rollupsOfDay != null) {
+						rollups.put(dayKey, rollupsOfDay);
+						days.add(day);
+					} else {
+						rollups.remove(dayKey);
+						days.remove(day);
+					}
+					rollupDays.put(key, days);
+				}
+			} finally {
+				rollupDays.unlock(key);
+			}
+		}
+	}
+	
+	private void updateRollupsAfterCommit(Long projectId, Class<?> metricClass, int day) {
+		sessionManager.runAsyncAfterCommit(() -> updateRollups(projectId, metricClass, day));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Map<Integer, ArrayList<Rollup>> queryRollups(Long projectId, Class<?> metricClass, @Nullable Integer day) {
+		var indicatorsOfClass = getIndicators(metricClass);
+		StringBuilder queryString = new StringBuilder(String.format(
+				"select build.%s, build.%s, metric.%s, count(metric)", 
+				Build.PROP_FINISH_DAY, PROP_JOB, PROP_REPORT));
+		for (var property: indicatorsOfClass.properties)
+			queryString.append(", sum(metric.").append(property).append(")");
+		queryString.append(String.format(" from %s metric inner join metric.%s build where build.%s.id=:projectId", 
+				metricClass.getSimpleName(), PROP_BUILD, PROP_PROJECT));
+		if (day != null)
+			queryString.append(String.format(" and build.%s=:day", Build.PROP_FINISH_DAY));
+		else 
+			queryString.append(String.format(" and build.%s is not null", Build.PROP_FINISH_DAY));
+		queryString.append(String.format(" group by build.%s, build.%s, metric.%s", 
+				Build.PROP_FINISH_DAY, PROP_JOB, PROP_REPORT));
+		
+		Query<?> query = dao.getSession().createQuery(queryString.toString());
+		query.setParameter("projectId", projectId);
+		if (day != null)
+			query.setParameter("day", day);
+		
+		Map<Integer, ArrayList<Rollup>> rollupsOfProject = new HashMap<>();
+		for (Object[] fields: (List<Object[]>)query.list()) {
+			var rollup = new Rollup();
+			rollup.jobName = (String) fields[1];
+			rollup.reportName = (String) fields[2];
+			rollup.count = ((Number) fields[3]).intValue();
+			rollup.sums = new long[indicatorsOfClass.properties.size()];
+			for (int i=0; i<rollup.sums.length; i++)
+				rollup.sums[i] = ((Number) fields[i+4]).longValue();
+			rollupsOfProject.computeIfAbsent((Integer) fields[0], k -> new ArrayList<>()).add(rollup);
+		}
+		return rollupsOfProject;
+	}
+	
 
 	@SuppressWarnings("unchecked")
 	@Listen
@@ -160,19 +402,25 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 		
 		var hazelcastInstance = clusterManager.getHazelcastInstance();
 		reportNames = hazelcastInstance.getMap("buildReportNames");
+		rollupDays = hazelcastInstance.getMap("buildMetricRollupDays");
+		rollups = hazelcastInstance.getMap("buildMetricRollups");
+		
+		metricClasses = new ArrayList<>();
+		EntityManagerFactory emf = dao.getSession().getEntityManagerFactory();
+		for (EntityType<?> entityType: emf.getMetamodel().getEntities()) {
+			Class<?> entityClass = entityType.getJavaType();
+			if (BuildMetric.class.isAssignableFrom(entityClass)) 
+				metricClasses.add(entityClass);
+		}
 		
 		var cacheInited = hazelcastInstance.getCPSubsystem().getAtomicLong("buildMetricCacheInited");
-		clusterManager.init(cacheInited, () -> {
-			EntityManagerFactory emf = dao.getSession().getEntityManagerFactory();
-			for (EntityType<?> entityType: emf.getMetamodel().getEntities()) {
-				Class<?> entityClass = entityType.getJavaType();
-				if (BuildMetric.class.isAssignableFrom(entityClass)) {
-					String queryString = String.format("select build.%s.id, build.%s, metric.%s from %s metric inner join metric.%s build",
-							PROP_PROJECT, PROP_JOB, PROP_REPORT, entityClass.getSimpleName(), PROP_BUILD);
-					Query<?> query = dao.getSession().createQuery(queryString);
-					for (Object[] fields: (List<Object[]>)query.list())
-						populateReportNames(new Key((Long)fields[0], entityClass), (String)fields[1], (String)fields[2]);
-				}
+		cacheLoader.loadAsync("build metric", cacheInited, () -> {
+			for (Class<?> entityClass: metricClasses) {
+				String queryString = String.format("select build.%s.id, build.%s, metric.%s from %s metric inner join metric.%s build",
+						PROP_PROJECT, PROP_JOB, PROP_REPORT, entityClass.getSimpleName(), PROP_BUILD);
+				Query<?> query = dao.getSession().createQuery(queryString);
+				for (Object[] fields: (List<Object[]>)query.list())
+					populateReportNames(new Key((Long)fields[0], entityClass), (String)fields[1], (String)fields[2]);
 			}
 			return 1L;			
 		});
@@ -190,7 +438,22 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 						.collect(Collectors.toSet())) {
 					reportNames.remove(key);
 				}
+				for (var key: rollupDays.keySet().stream()
+						.filter(it->it.projectId.equals(projectId))
+						.collect(Collectors.toSet())) {
+					var days = rollupDays.remove(key);
+					if (days != null) {
+						for (var day: days)
+							rollups.remove(new DayKey(projectId, key.metricClass, day));
+					}
+				}
 			});
+		} else if (event.getEntity() instanceof Build) {
+			Build build = (Build) event.getEntity();
+			if (build.getFinishDay() != null) {
+				for (var metricClass: metricClasses)
+					updateRollupsAfterCommit(build.getProject().getId(), metricClass, build.getFinishDay());
+			}
 		}
 	}
 	
@@ -203,6 +466,17 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 			String jobName = buildMetric.getBuild().getJobName();
 			Key key = new Key(buildMetric.getBuild().getProject().getId(), event.getEntity().getClass());
 			transactionManager.runAfterCommit(() -> populateReportNames(key, jobName, reportName));
+			if (buildMetric.getBuild().getFinishDay() != null)
+				updateRollupsAfterCommit(key.projectId, key.metricClass, buildMetric.getBuild().getFinishDay());
+		} else if (event.getEntity() instanceof Build) {
+			Build build = (Build) event.getEntity();
+			if (!build.getChangedFinishDays().isEmpty()) {
+				for (var day: build.getChangedFinishDays()) {
+					for (var metricClass: metricClasses)
+						updateRollupsAfterCommit(build.getProject().getId(), metricClass, day);
+				}
+				build.getChangedFinishDays().clear();
+			}
 		}
 	}
 	
@@ -308,4 +582,71 @@ public class DefaultBuildMetricManager implements BuildMetricManager {
 		
 	}
 	
+	private static class DayKey implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+
+		private final Long projectId;
+		
+		private final Class<?> metricClass;
+		
+		private final int day;
+		
+		public DayKey(Long projectId, Class<?> metricClass, int day) {
+			this.projectId = projectId;
+			this.metricClass = metricClass;
+			this.day = day;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof DayKey)) 
+				return false;
+			if (this == other)
+				return true;
+			DayKey otherKey = (DayKey) other;
+			return new EqualsBuilder()
+				.append(projectId, otherKey.projectId)
+				.append(metricClass, otherKey.metricClass)
+				.append(day, otherKey.day)
+				.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+				.append(projectId)
+				.append(metricClass)
+				.append(day)
+				.toHashCode();
+		}		
+		
+	}
+	
+	/**
+	 * Aggregation of metrics of a particular job and report in a particular day. Sums 
+	 * instead of averages are kept so that rollups can be combined exactly
+	 */
+	static class Rollup implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		String jobName;
+		
+		String reportName;
+		
+		int count;
+		
+		long[] sums;
+		
+	}
+	
+	private static class Indicators {
+		
+		final List<String> properties = new ArrayList<>();
+		
+		final List<Method> setters = new ArrayList<>();
+		
+	}
+	
 }
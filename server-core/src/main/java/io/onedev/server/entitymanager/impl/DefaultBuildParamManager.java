@@ -1,6 +1,7 @@
 package io.onedev.server.entitymanager.impl;
 
 import com.google.common.base.Preconditions;
+import io.onedev.server.cluster.CacheLoader;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.entitymanager.BuildParamManager;
 import io.onedev.server.event.Listen;
@@ -33,13 +34,17 @@ public class DefaultBuildParamManager extends BaseEntityManager<BuildParam> impl
 	
 	private final ClusterManager clusterManager;
 	
+	private final CacheLoader cacheLoader;
+	
 	private volatile Map<Long, Collection<String>> paramNames;
 	
 	@Inject
-	public DefaultBuildParamManager(Dao dao, TransactionManager transactionManager, ClusterManager clusterManager) {
+	public DefaultBuildParamManager(Dao dao, TransactionManager transactionManager, ClusterManager clusterManager, 
+									CacheLoader cacheLoader) {
 		super(dao);
 		this.transactionManager = transactionManager;
 		this.clusterManager = clusterManager;
+		this.cacheLoader = cacheLoader;
 	}
 
 	@Transactional
@@ -61,7 +66,7 @@ public class DefaultBuildParamManager extends BaseEntityManager<BuildParam> impl
 		paramNames = hazelcastInstance.getMap("buildParamNames");
 		
 		var cacheInited = hazelcastInstance.getCPSubsystem().getAtomicLong("buildParamCacheInited");
-		clusterManager.init(cacheInited, () -> {
+		cacheLoader.loadAsync("build param", cacheInited, () -> {
 			Map<Long, Long> projectIds = new HashMap<>();
 			Query<?> query = dao.getSession().createQuery("select id, project.id from Build");
 			for (Object[] fields: (List<Object[]>)query.list())
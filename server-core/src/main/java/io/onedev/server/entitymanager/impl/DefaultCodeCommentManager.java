@@ -10,6 +10,7 @@ import io.onedev.server.event.Listen;
 import io.onedev.server.event.ListenerRegistry;
 import io.onedev.server.event.project.codecomment.*;
 import io.onedev.server.event.project.pullrequest.PullRequestCodeCommentCreated;
+import io.onedev.server.git.Blob;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.git.command.RevListOptions;
 import io.onedev.server.git.service.GitService;
@@ -31,6 +32,7 @@ import io.onedev.server.search.entity.EntitySort.Direction;
 import io.onedev.server.search.entity.codecomment.CodeCommentQuery;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.util.criteria.Criteria;
+import io.onedev.server.util.diff.DiffCache;
 import io.onedev.server.util.diff.DiffUtils;
 import io.onedev.server.util.diff.WhitespaceOption;
 import org.apache.commons.lang3.time.DateUtils;
@@ -59,16 +61,36 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 	
 	private final int MAX_HISTORY_FILES_TO_CHECK = 500;
 	
+	private static final int MAX_MAPPED_POSITIONS = 1000;
+	
 	private final ListenerRegistry listenerRegistry;
 	
 	private final CommitInfoManager commitInfoManager;
 	
+	private final DiffCache diffCache;
+	
+	private final EntityCountCache countCache;
+	
+	private final Map<String, MappedPositions> mappedPositionsCache = new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, MappedPositions> eldest) {
+			return size() > MAX_MAPPED_POSITIONS;
+		}
+		
+	};
+	
 	@Inject
 	public DefaultCodeCommentManager(Dao dao, ListenerRegistry listenerRegistry, 
-									 CommitInfoManager commitInfoManager) {
+									 CommitInfoManager commitInfoManager, DiffCache diffCache, 
+									 EntityCountCache countCache) {
 		super(dao);
 		this.listenerRegistry = listenerRegistry;
 		this.commitInfoManager = commitInfoManager;
+		this.diffCache = diffCache;
+		this.countCache = countCache;
 	}
 
 	@Transactional
@@ -137,35 +159,142 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 	
 	@Override
 	public Map<CodeComment, PlanarRange> queryInHistory(Project project, ObjectId commitId, String path) {
-		Map<CodeComment, PlanarRange> comments = new HashMap<>();
-		
-		Map<String, Map<String, List<CodeComment>>> possibleComments = new HashMap<>();
 		Collection<String> possiblePaths = Sets.newHashSet(path);
 		possiblePaths.addAll(commitInfoManager.getHistoryPaths(project.getId(), path));
 		
 		EntityCriteria<CodeComment> criteria = EntityCriteria.of(CodeComment.class);
 		criteria.add(Restrictions.eq(CodeComment.PROP_PROJECT, project));
 		criteria.add(Restrictions.in(CodeComment.PROP_MARK + "." + Mark.PROP_PATH, possiblePaths));
+		List<CodeComment> candidateComments = query(criteria);
 		
-		for (CodeComment comment: query(criteria)) {
-			String possiblePath = comment.getMark().getPath();
-			if (comment.getMark().getCommitHash().equals(commitId.name()) && possiblePath.equals(path)) {
-				comments.put(comment, comment.getMark().getRange());
-			} else {
-				Map<String, List<CodeComment>> commentsOnCommit = 
-						possibleComments.get(comment.getMark().getCommitHash());
-				if (commentsOnCommit == null) {
-					commentsOnCommit = new HashMap<>();
-					possibleComments.put(comment.getMark().getCommitHash(), commentsOnCommit);
+		long signature = getSignature(candidateComments);
+		String key = getMappedPositionsKey(project, commitId, path);
+		MappedPositions mappedPositions;
+		synchronized (mappedPositionsCache) {
+			mappedPositions = mappedPositionsCache.get(key);
+		}
+		if (mappedPositions == null || mappedPositions.signature != signature) {
+			mappedPositions = mapFromParent(project, commitId, path, candidateComments, signature);
+			if (mappedPositions == null) 
+				mappedPositions = mapInHistory(project, commitId, path, candidateComments, signature);
+			synchronized (mappedPositionsCache) {
+				mappedPositionsCache.put(key, mappedPositions);
+			}
+		}
+		
+		Map<CodeComment, PlanarRange> comments = new HashMap<>();
+		for (CodeComment comment: candidateComments) {
+			PlanarRange position = mappedPositions.positions.get(comment.getId());
+			if (position != null)
+				comments.put(comment, position);
+		}
+		return comments;
+	}
+	
+	private String getMappedPositionsKey(Project project, ObjectId commitId, String path) {
+		return project.getId() + ":" + commitId.name() + ":" + path;
+	}
+	
+	/*
+	 * Signature of candidate comments. Mapped positions are only valid if candidate comments 
+	 * are not changed since they are calculated
+	 */
+	private long getSignature(List<CodeComment> candidateComments) {
+		List<CodeComment> sortedComments = new ArrayList<>(candidateComments);
+		sortedComments.sort(Comparator.comparing(CodeComment::getId));
+		long signature = 1;
+		for (CodeComment comment: sortedComments) {
+			signature = 31*signature + comment.getId();
+			signature = 31*signature + comment.getMark().getCommitHash().hashCode();
+			signature = 31*signature + comment.getMark().getPath().hashCode();
+			signature = 31*signature + comment.getMark().getRange().toString().hashCode();
+		}
+		return signature;
+	}
+	
+	/*
+	 * Map comment positions from cached positions of parent commit, so that history does not 
+	 * need to be walked each time a new commit arrives. Returns null if this is not possible 
+	 */
+	@Nullable
+	private MappedPositions mapFromParent(Project project, ObjectId commitId, String path, 
+			List<CodeComment> candidateComments, long signature) {
+		RevCommit commit = project.getRevCommit(commitId, false);
+		// Comments on history of other parents of merge commit are not covered by first parent
+		if (commit == null || commit.getParentCount() != 1)
+			return null;
+		ObjectId parentId = commit.getParent(0).copy();
+		MappedPositions parentPositions;
+		synchronized (mappedPositionsCache) {
+			parentPositions = mappedPositionsCache.get(getMappedPositionsKey(project, parentId, path));
+		}
+		if (parentPositions == null || parentPositions.signature != signature)
+			return null;
+		
+		BlobIdent blobIdent = new BlobIdent(commitId.name(), path, FileMode.REGULAR_FILE.getBits());
+		Blob blob = project.getBlob(blobIdent, true);
+		BlobIdent parentBlobIdent = new BlobIdent(parentId.name(), path, FileMode.REGULAR_FILE.getBits());
+		Blob parentBlob = project.getBlob(parentBlobIdent, false);
+		
+		MappedPositions mappedPositions = new MappedPositions(signature);
+		List<CodeComment> commentsToMap = new ArrayList<>();
+		if (parentBlob != null && parentBlob.getBlobId().equals(blob.getBlobId())) {
+			mappedPositions.historyCommentIds.addAll(parentPositions.historyCommentIds);
+			mappedPositions.positions.putAll(parentPositions.positions);
+		} else {
+			/*
+			 * Map comments on history of parent from files they are made on instead of from 
+			 * parent positions, as lines removed in parent might be added back in this commit
+			 */
+			for (CodeComment comment: candidateComments) {
+				if (parentPositions.historyCommentIds.contains(comment.getId()))
+					commentsToMap.add(comment);
+			}
+		}
+		for (CodeComment comment: candidateComments) {
+			if (comment.getMark().getCommitHash().equals(commitId.name())) {
+				if (comment.getMark().getPath().equals(path)) {
+					mappedPositions.historyCommentIds.add(comment.getId());
+					mappedPositions.positions.put(comment.getId(), comment.getMark().getRange());
+				} else {
+					commentsToMap.add(comment);
 				}
-				List<CodeComment> commentsOnPath = commentsOnCommit.get(possiblePath);
-				if (commentsOnPath == null) {
-					commentsOnPath = new ArrayList<>();
-					commentsOnCommit.put(possiblePath, commentsOnPath);
+			}
+		}
+		
+		if (!commentsToMap.isEmpty()) {
+			List<String> lines = Preconditions.checkNotNull(project.readLines(
+					blobIdent, WhitespaceOption.DEFAULT, true));
+			for (Map.Entry<String, Map<String, List<CodeComment>>> commitEntry: groupByFile(commentsToMap).entrySet()) {
+				for (Map.Entry<String, List<CodeComment>> pathEntry: commitEntry.getValue().entrySet()) {
+					BlobIdent oldBlobIdent = new BlobIdent(commitEntry.getKey(), pathEntry.getKey(), 
+							FileMode.REGULAR_FILE.getBits());
+					List<String> oldLines = project.readLines(oldBlobIdent, WhitespaceOption.DEFAULT, false);
+					if (oldLines != null) {
+						mapComments(project, oldBlobIdent, oldLines, blob.getBlobId(), lines, 
+								pathEntry.getValue(), mappedPositions);
+					}
 				}
-				commentsOnPath.add(comment);
 			}
 		}
+		return mappedPositions;
+	}
+	
+	private MappedPositions mapInHistory(Project project, ObjectId commitId, String path, 
+			List<CodeComment> candidateComments, long signature) {
+		MappedPositions mappedPositions = new MappedPositions(signature);
+		
+		List<CodeComment> commentsToMap = new ArrayList<>();
+		for (CodeComment comment: candidateComments) {
+			if (comment.getMark().getCommitHash().equals(commitId.name()) 
+					&& comment.getMark().getPath().equals(path)) {
+				mappedPositions.historyCommentIds.add(comment.getId());
+				mappedPositions.positions.put(comment.getId(), comment.getMark().getRange());
+			} else {
+				commentsToMap.add(comment);
+			}
+		}
+		Map<String, Map<String, List<CodeComment>>> possibleComments = groupByFile(commentsToMap);
 
 		var possibleCommitIds = possibleComments.keySet().stream()
 				.map(it->ObjectId.fromString(it)).collect(Collectors.toSet());
@@ -189,9 +318,10 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 			
 			var revisions = new HashSet<>(getGitService().revList(project, options));
 			
+			BlobIdent newBlobIdent = new BlobIdent(commitId.name(), path, FileMode.REGULAR_FILE.getBits());
 			List<String> newLines = Preconditions.checkNotNull(project.readLines(
-					new BlobIdent(commitId.name(), path, FileMode.REGULAR_FILE.getBits()), 
-					WhitespaceOption.DEFAULT, true));
+					newBlobIdent, WhitespaceOption.DEFAULT, true));
+			ObjectId newBlobId = project.getBlob(newBlobIdent, true).getBlobId();
 
 			Collections.sort(historyCommits, new Comparator<RevCommit>() {
 
@@ -207,22 +337,14 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 					Map<String, List<CodeComment>> commentsOnCommit = 
 							Preconditions.checkNotNull(possibleComments.get(historyCommit.name()));
 					for (Map.Entry<String, List<CodeComment>> pathEntry: commentsOnCommit.entrySet()) {
-						List<String> oldLines = project.readLines( 
-								new BlobIdent(historyCommit.name(), pathEntry.getKey(), FileMode.REGULAR_FILE.getBits()), 
-								WhitespaceOption.DEFAULT, false);
+						BlobIdent oldBlobIdent = new BlobIdent(historyCommit.name(), pathEntry.getKey(), 
+								FileMode.REGULAR_FILE.getBits());
+						List<String> oldLines = project.readLines(oldBlobIdent, WhitespaceOption.DEFAULT, false);
 						if (oldLines != null) {
-							Map<Integer, Integer> lineMapping;
-							if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE)
-								lineMapping = DiffUtils.mapLines(oldLines, newLines);
-							else
-								lineMapping = new HashMap<>();
-							for (CodeComment comment: pathEntry.getValue()) {
-								PlanarRange newRange = DiffUtils.mapRange(lineMapping, comment.getMark().getRange());
-								if (newRange != null) 
-									comments.put(comment, newRange);
-							}
+							mapComments(project, oldBlobIdent, oldLines, newBlobId, newLines, 
+									pathEntry.getValue(), mappedPositions);
 							if (++checkedHistoryFiles == MAX_HISTORY_FILES_TO_CHECK) {
-								return comments;
+								return mappedPositions;
 							}
 						}
 					}
@@ -230,7 +352,42 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 			}
 		} 
 		
-		return comments;
+		return mappedPositions;
+	}
+	
+	/*
+	 * Group comments by commit hash and path of their marks
+	 */
+	private Map<String, Map<String, List<CodeComment>>> groupByFile(Collection<CodeComment> comments) {
+		Map<String, Map<String, List<CodeComment>>> commentsByFile = new HashMap<>();
+		for (CodeComment comment: comments) {
+			commentsByFile
+					.computeIfAbsent(comment.getMark().getCommitHash(), it -> new HashMap<>())
+					.computeIfAbsent(comment.getMark().getPath(), it -> new ArrayList<>())
+					.add(comment);
+		}
+		return commentsByFile;
+	}
+	
+	/*
+	 * Map positions of comments made on specified old file to new file
+	 */
+	private void mapComments(Project project, BlobIdent oldBlobIdent, List<String> oldLines, 
+			ObjectId newBlobId, List<String> newLines, List<CodeComment> comments, 
+			MappedPositions mappedPositions) {
+		Map<Integer, Integer> lineMapping;
+		if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
+			lineMapping = diffCache.mapLines(project.getBlob(oldBlobIdent, true).getBlobId(), 
+					oldLines, newBlobId, newLines);
+		} else {
+			lineMapping = new HashMap<>();
+		}
+		for (CodeComment comment: comments) {
+			mappedPositions.historyCommentIds.add(comment.getId());
+			PlanarRange newRange = DiffUtils.mapRange(lineMapping, comment.getMark().getRange());
+			if (newRange != null) 
+				mappedPositions.positions.put(comment.getId(), newRange);
+		}
 	}
 
 	private Predicate[] getPredicates(Project project, @Nullable Criteria<CodeComment> criteria, @Nullable PullRequest request, 
@@ -282,14 +439,18 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 	@Sessional
 	@Override
 	public int count(Project project, PullRequest request,  Criteria<CodeComment> commentCriteria) {
-		CriteriaBuilder builder = getSession().getCriteriaBuilder();
-		CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
-		Root<CodeComment> root = criteriaQuery.from(CodeComment.class);
+		Collection<Long> projectIds = List.of(project.getId());
+		String scope = project.getId() + ":" + (request != null? request.getId(): "");
+		return countCache.count(CodeComment.class, projectIds, scope, commentCriteria, () -> {
+			CriteriaBuilder builder = getSession().getCriteriaBuilder();
+			CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+			Root<CodeComment> root = criteriaQuery.from(CodeComment.class);
 
-		criteriaQuery.where(getPredicates(project, commentCriteria, request, criteriaQuery, root, builder));
+			criteriaQuery.where(getPredicates(project, commentCriteria, request, criteriaQuery, root, builder));
 
-		criteriaQuery.select(builder.count(root));
-		return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+			criteriaQuery.select(builder.count(root));
+			return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+		});
 	}
 
 	@Transactional
@@ -315,4 +476,19 @@ public class DefaultCodeCommentManager extends BaseEntityManager<CodeComment> im
 		return find(criteria);
 	}
 
+	private static class MappedPositions {
+		
+		final long signature;
+		
+		// Ids of comments made on history of the commit, including those can not be mapped
+		final Set<Long> historyCommentIds = new HashSet<>();
+		
+		final Map<Long, PlanarRange> positions = new HashMap<>();
+		
+		MappedPositions(long signature) {
+			this.signature = signature;
+		}
+		
+	}
+	
 }
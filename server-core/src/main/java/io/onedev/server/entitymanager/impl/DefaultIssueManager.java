@@ -1,12 +1,20 @@
 package io.onedev.server.entitymanager.impl;
 
 import com.google.common.base.Preconditions;
+import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.cp.IAtomicLong;
 import com.hazelcast.map.IMap;
+import com.hazelcast.map.MapEvent;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
 import edu.emory.mathcs.backport.java.util.Collections;
 import io.onedev.commons.loader.ManagedSerializedForm;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.buildspecmodel.inputspec.choiceinput.choiceprovider.SpecifiedChoices;
+import io.onedev.server.cluster.CacheLoader;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.data.migration.VersionedXmlDoc;
 import io.onedev.server.entitymanager.*;
@@ -16,7 +24,9 @@ import io.onedev.server.event.ListenerRegistry;
 import io.onedev.server.event.entity.EntityPersisted;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.project.issue.*;
+import io.onedev.server.event.system.SystemStarted;
 import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.event.system.SystemStopped;
 import io.onedev.server.model.*;
 import io.onedev.server.model.support.LastActivity;
 import io.onedev.server.model.support.administration.GlobalIssueSetting;
@@ -41,8 +51,10 @@ import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.AccessProject;
 import io.onedev.server.util.MilestoneAndIssueState;
 import io.onedev.server.util.ProjectIssueStats;
+import io.onedev.server.util.ProjectNumberIndex;
 import io.onedev.server.util.ProjectScope;
 import io.onedev.server.util.ProjectScopedNumber;
+import io.onedev.server.util.ProjectStatsCache;
 import io.onedev.server.util.criteria.Criteria;
 import io.onedev.server.web.component.issue.workflowreconcile.UndefinedFieldResolution;
 import io.onedev.server.web.component.issue.workflowreconcile.UndefinedFieldValue;
@@ -69,6 +81,10 @@ import static java.util.stream.Collectors.*;
 public class DefaultIssueManager extends BaseEntityManager<Issue> implements IssueManager, Serializable {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultIssueManager.class);
+	
+	private static final String IDS_SNAPSHOT = "issueIds";
+	
+	private static final int CACHE_BATCH_SIZE = 10000;
     
 	private final IssueFieldManager fieldManager;
 	
@@ -96,17 +112,33 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 	
 	private final IssueTouchManager touchManager;
 	
+	private final CacheLoader cacheLoader;
+	
+	private final EntityCountCache countCache;
+	
 	private final SequenceGenerator numberGenerator;
 	
+	private final ProjectStatsCache<ProjectIssueStats> statsCache;
+	
+	private final ProjectStatsCache<ProjectIssueStats> confidentialStatsCache;
+	
 	private volatile IMap<String, Long> ids;
 	
+	private volatile IAtomicLong cacheInited;
+	
+	// Local copy of ids for fast lookup, kept in sync via entry events of the map
+	private final ProjectNumberIndex numberIndex = new ProjectNumberIndex();
+	
+	private volatile boolean numberIndexReady;
+	
 	@Inject
 	public DefaultIssueManager(Dao dao, IssueFieldManager fieldManager, TransactionManager transactionManager, 
 							   IssueQueryPersonalizationManager queryPersonalizationManager, 
 							   SettingManager settingManager, ListenerRegistry listenerRegistry,
 							   ProjectManager projectManager, UserManager userManager, ClusterManager clusterManager,
 							   RoleManager roleManager, LinkSpecManager linkSpecManager, IssueLinkManager linkManager, 
-							   IssueAuthorizationManager authorizationManager, IssueTouchManager touchManager) {
+							   IssueAuthorizationManager authorizationManager, IssueTouchManager touchManager,
+							   CacheLoader cacheLoader, EntityCountCache countCache) {
 		super(dao);
 		this.fieldManager = fieldManager;
 		this.queryPersonalizationManager = queryPersonalizationManager;
@@ -121,15 +153,19 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 		this.authorizationManager = authorizationManager;
 		this.clusterManager = clusterManager;
 		this.touchManager = touchManager;
+		this.cacheLoader = cacheLoader;
+		this.countCache = countCache;
 		
 		numberGenerator = new SequenceGenerator(Issue.class, clusterManager, dao);
+		statsCache = new ProjectStatsCache<>(clusterManager, "issueStats", ProjectIssueStats::getProjectId);
+		confidentialStatsCache = new ProjectStatsCache<>(clusterManager, "confidentialIssueStats", 
+				ProjectIssueStats::getProjectId);
 	}
 
 	public Object writeReplace() throws ObjectStreamException {
 		return new ManagedSerializedForm(IssueManager.class);
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Sessional
 	@Listen
 	public void on(SystemStarting event) {
@@ -138,19 +174,81 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 		HazelcastInstance hazelcastInstance = clusterManager.getHazelcastInstance();
         ids = hazelcastInstance.getMap("issueIds");
         
-		var cacheInited = hazelcastInstance.getCPSubsystem().getAtomicLong("issueCacheInited");
-		clusterManager.init(cacheInited, () -> {
-			Query<?> query = dao.getSession().createQuery("select id, project.id, number from Issue");
-			for (Object[] fields: (List<Object[]>)query.list()) {
-				Long issueId = (Long) fields[0];
-				Long projectId = (Long)fields[1];
-				Long issueNumber = (Long) fields[2];
-				ids.put(getCacheKey(projectId, issueNumber), issueId);
+		cacheInited = hazelcastInstance.getCPSubsystem().getAtomicLong("issueCacheInited");
+		cacheLoader.loadAsync("issue", cacheInited, () -> {
+			Boolean loaded = cacheLoader.readSnapshot(IDS_SNAPSHOT, input -> {
+				long[] fingerprint = new long[4];
+				for (int i=0; i<fingerprint.length; i++)
+					fingerprint[i] = input.readLong();
+				if (!Arrays.equals(fingerprint, cacheLoader.getFingerprint("Issue", fingerprint[0])))
+					return false;
+				
+				Map<String, Long> batch = new HashMap<>();
+				for (int i=input.readInt(); i>0; i--) {
+					Long projectId = input.readLong();
+					Long issueNumber = input.readLong();
+					batch.put(getCacheKey(projectId, issueNumber), input.readLong());
+					if (batch.size() == CACHE_BATCH_SIZE) {
+						ids.putAll(batch);
+						batch.clear();
+					}
+				}
+				ids.putAll(batch);
+				
+				// Issues created after the snapshot
+				cacheIds(fingerprint[0]);
+				return true;
+			});
+			if (loaded == null || !loaded) {
+				ids.clear();
+				cacheIds(0);
 			}
 			return 1L;
 		});
 	}
 	
+	@Listen
+	public void on(SystemStarted event) {
+		var numberIndexUpdater = new NumberIndexUpdater();
+		ids.addEntryListener(numberIndexUpdater, true);
+		numberIndexUpdater.fill();
+		numberIndexReady = true;
+	}
+	
+	@Sessional
+	@Listen
+	public void on(SystemStopped event) {
+		if (cacheInited != null && cacheInited.get() != 0 && clusterManager.isLeaderServer()) {
+			cacheLoader.writeSnapshot(IDS_SNAPSHOT, output -> {
+				// Take fingerprint before dumping ids, so that ids changed in between 
+				// will either be loaded again or invalidate the snapshot  
+				for (long field: cacheLoader.getFingerprint("Issue", null))
+					output.writeLong(field);
+				var entries = ids.entrySet();
+				output.writeInt(entries.size());
+				for (var entry: entries) {
+					var key = entry.getKey();
+					int index = key.indexOf(':');
+					output.writeLong(Long.parseLong(key.substring(0, index)));
+					output.writeLong(Long.parseLong(key.substring(index + 1)));
+					output.writeLong(entry.getValue());
+				}
+			});
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void cacheIds(long afterId) {
+		Query<?> query = dao.getSession().createQuery("select id, project.id, number from Issue where id > :afterId");
+		query.setParameter("afterId", afterId);
+		for (Object[] fields: (List<Object[]>)query.list()) {
+			Long issueId = (Long) fields[0];
+			Long projectId = (Long)fields[1];
+			Long issueNumber = (Long) fields[2];
+			ids.put(getCacheKey(projectId, issueNumber), issueId);
+		}
+	}
+	
 	@Sessional
 	@Override
 	public Issue find(Project project, long number) {
@@ -280,14 +378,35 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 	@Sessional
 	@Override
 	public int count(@Nullable ProjectScope projectScope, Criteria<Issue> issueCriteria) {
-		CriteriaBuilder builder = getSession().getCriteriaBuilder();
-		CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
-		Root<Issue> root = criteriaQuery.from(Issue.class);
+		Collection<Long> projectIds;
+		String scope;
+		if (projectScope == null) {
+			projectIds = null;
+			scope = "";
+		} else if (projectScope.isRecursive()) {
+			projectIds = projectManager.getSubtreeIds(projectScope.getProject().getId());
+			scope = projectScope.getProject().getId() + "/**";
+		} else {
+			projectIds = List.of(projectScope.getProject().getId());
+			scope = projectScope.getProject().getId().toString();
+		}
+		if (projectScope != null && projectScope.isInherited()) {
+			// Issues of ancestor projects are also counted
+			projectIds = new ArrayList<>(projectIds);
+			for (Project ancestor: projectScope.getProject().getAncestors())
+				projectIds.add(ancestor.getId());
+			scope += ":inherited";
+		}
+		return countCache.count(Issue.class, projectIds, scope, issueCriteria, () -> {
+			CriteriaBuilder builder = getSession().getCriteriaBuilder();
+			CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+			Root<Issue> root = criteriaQuery.from(Issue.class);
 
-		criteriaQuery.where(getPredicates(projectScope, issueCriteria, criteriaQuery, builder, root));
+			criteriaQuery.where(getPredicates(projectScope, issueCriteria, criteriaQuery, builder, root));
 
-		criteriaQuery.select(builder.count(root));
-		return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+			criteriaQuery.select(builder.count(root));
+			return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+		});
 	}
 	
 	private Predicate[] getPredicates(@Nullable ProjectScope projectScope, @Nullable Criteria<Issue> issueCriteria, 
@@ -549,6 +668,8 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 	@Override
 	public void fixUndefinedStates(Map<String, UndefinedStateResolution> resolutions) {
 		getIssueSetting().fixUndefinedStates(resolutions);
+		transactionManager.runAfterCommit(() -> invalidateStats(null));
+		countCache.invalidateAll();
 		
 		for (Map.Entry<String, UndefinedStateResolution> entry: resolutions.entrySet()) {
 			if (entry.getValue().getFixType() == UndefinedStateResolution.FixType.CHANGE_TO_ANOTHER_STATE) {
@@ -739,6 +860,8 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 	@Transactional
 	@Override
 	public void fixStateAndFieldOrdinals() {
+		transactionManager.runAfterCommit(() -> invalidateStats(null));
+		countCache.invalidateAll();
 		int stateOrdinal = 0;
 		for (StateSpec state: getIssueSetting().getStateSpecs()) {
 			Query query = getSession().createQuery("update Issue set stateOrdinal=:stateOrdinal "
@@ -862,6 +985,16 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 	private String getCacheKey(Long projectId, Long issueNumber) {
 		return projectId + ":" + issueNumber;
 	}
+	
+	private void updateNumberIndex(String cacheKey, @Nullable Long issueId) {
+		int index = cacheKey.indexOf(':');
+		Long projectId = Long.valueOf(cacheKey.substring(0, index));
+		long issueNumber = Long.parseLong(cacheKey.substring(index + 1));
+		if (issueId != null)
+			numberIndex.put(projectId, issueNumber, issueId);
+		else
+			numberIndex.remove(projectId, issueNumber);
+	}
 
 	@Transactional
 	@Listen
@@ -870,7 +1003,16 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 			Issue issue = (Issue) event.getEntity();
 			var issueKey = getCacheKey(issue);
 			var issueId = issue.getId();
-			transactionManager.runAfterCommit(() -> ids.put(issueKey, issueId));
+			var projectId = issue.getProject().getId();
+			transactionManager.runAfterCommit(() -> {
+				ids.put(issueKey, issueId);
+				updateNumberIndex(issueKey, issueId);
+				invalidateStats(projectId);
+			});
+		} else if (event.getEntity() instanceof IssueChange) {
+			// State and confidentiality of issue are changed along with an issue change
+			var projectId = ((IssueChange) event.getEntity()).getIssue().getProject().getId();
+			transactionManager.runAfterCommit(() -> invalidateStats(projectId));
 		}
 	}
 	
@@ -879,7 +1021,12 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 	public void on(EntityRemoved event) {
 		if (event.getEntity() instanceof Issue) {
 			var cacheKey = getCacheKey((Issue) event.getEntity());
-			transactionManager.runAfterCommit(() -> ids.remove(cacheKey));
+			var projectId = ((Issue) event.getEntity()).getProject().getId();
+			transactionManager.runAfterCommit(() -> {
+				ids.remove(cacheKey);
+				updateNumberIndex(cacheKey, null);
+				invalidateStats(projectId);
+			});
 			
 		} else if (event.getEntity() instanceof Project) {
 			Project project = (Project) event.getEntity();
@@ -887,12 +1034,78 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 	    		numberGenerator.removeNextSequence(project);
 			
 			Long projectId = project.getId();
-			transactionManager.runAfterCommit(() -> ids.removeAll(entry -> entry.getKey().startsWith(projectId + ":")));
+			transactionManager.runAfterCommit(() -> {
+				ids.removeAll(entry -> entry.getKey().startsWith(projectId + ":"));
+				numberIndex.remove(projectId);
+				invalidateStats(projectId);
+			});
+		}
+	}
+	
+	private void invalidateStats(@Nullable Long projectId) {
+		if (projectId != null) {
+			statsCache.invalidate(projectId);
+			confidentialStatsCache.invalidate(projectId);
+		} else {
+			statsCache.invalidateAll();
+			confidentialStatsCache.invalidateAll();
 		}
 	}
 	
+	@Nullable
 	private Long getIssueId(Long projectId, Long issueNumber) {
-		return ids.get(getCacheKey(projectId, issueNumber));
+		if (numberIndexReady)
+			return numberIndex.get(projectId, issueNumber);
+		else
+			return ids.get(getCacheKey(projectId, issueNumber));
+	}
+	
+	private class NumberIndexUpdater implements EntryAddedListener<String, Long>, 
+			EntryUpdatedListener<String, Long>, EntryRemovedListener<String, Long>, MapClearedListener {
+
+		/*
+		 * Events received while filling the index from a copy of the map. They are applied
+		 * after the fill, as the copy may be older than them
+		 */
+		private List<Runnable> pendingUpdates = new ArrayList<>();
+		
+		void fill() {
+			for (var entry: ids.entrySet())
+				updateNumberIndex(entry.getKey(), entry.getValue());
+			synchronized (this) {
+				for (var update: pendingUpdates)
+					update.run();
+				pendingUpdates = null;
+			}
+		}
+		
+		private synchronized void update(Runnable update) {
+			if (pendingUpdates != null)
+				pendingUpdates.add(update);
+			else
+				update.run();
+		}
+		
+		@Override
+		public void entryAdded(EntryEvent<String, Long> event) {
+			update(() -> updateNumberIndex(event.getKey(), event.getValue()));
+		}
+
+		@Override
+		public void entryUpdated(EntryEvent<String, Long> event) {
+			update(() -> updateNumberIndex(event.getKey(), event.getValue()));
+		}
+
+		@Override
+		public void entryRemoved(EntryEvent<String, Long> event) {
+			update(() -> updateNumberIndex(event.getKey(), null));
+		}
+
+		@Override
+		public void mapCleared(MapEvent event) {
+			update(() -> numberIndex.clear());
+		}
+		
 	}
 	
 	@Sessional
@@ -1086,6 +1299,10 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 		for (var issue: issues)
 			touchManager.touch(sourceProject, issue.getId());
 		
+		Long sourceProjectId = sourceProject.getId();
+		transactionManager.runAfterCommit(() -> invalidateStats(sourceProjectId));
+		countCache.invalidate(sourceProjectId);
+		
 		listenerRegistry.post(new IssuesMoved(sourceProject, targetProject, issues));
 	}
 	
@@ -1135,41 +1352,108 @@ public class DefaultIssueManager extends BaseEntityManager<Issue> implements Iss
 		if (projects.isEmpty()) {
 			return new ArrayList<>();
 		} else {
-			CriteriaBuilder builder = getSession().getCriteriaBuilder();
-			CriteriaQuery<ProjectIssueStats> criteriaQuery = builder.createQuery(ProjectIssueStats.class);
-			Root<Issue> root = criteriaQuery.from(Issue.class);
-			
-			criteriaQuery.multiselect(
-					root.get(Issue.PROP_PROJECT).get(Project.PROP_ID), 
-					root.get(Issue.PROP_STATE_ORDINAL), 
-					builder.count(root));
-			criteriaQuery.groupBy(root.get(Issue.PROP_PROJECT), root.get(Issue.PROP_STATE_ORDINAL));
-			
-			Collection<Project> projectsWithConfidentialIssuePermission = new ArrayList<>();
-			Collection<Project> projectsWithoutConfidentialIssuePermission = new ArrayList<>();
 			List<Long> projectIds = new ArrayList<>();
+			List<Long> projectIdsWithoutConfidentialIssuePermission = new ArrayList<>();
 			for (Project project: projects) {
-				if (SecurityUtils.canAccessConfidentialIssues(project))
-					projectsWithConfidentialIssuePermission.add(project);
-				else
-					projectsWithoutConfidentialIssuePermission.add(project);
 				projectIds.add(project.getId());
+				if (!SecurityUtils.canAccessConfidentialIssues(project))
+					projectIdsWithoutConfidentialIssuePermission.add(project.getId());
 			}
 			
-			List<Predicate> predicates = new ArrayList<>();
-			if (!projectsWithConfidentialIssuePermission.isEmpty())
-				predicates.add(root.get(Issue.PROP_PROJECT).in(projectsWithConfidentialIssuePermission));
-			if (!projectsWithoutConfidentialIssuePermission.isEmpty()) {
-				predicates.add(builder.and(
-						builder.equal(root.get(Issue.PROP_CONFIDENTIAL), false),
-						root.get(Issue.PROP_PROJECT).in(projectsWithoutConfidentialIssuePermission)));
+			var stats = statsCache.get(projectIds, it -> queryStats(it, false));
+			List<ProjectIssueStats> confidentialStats;
+			List<ProjectIssueStats> authorizedConfidentialStats;
+			if (!projectIdsWithoutConfidentialIssuePermission.isEmpty()) {
+				confidentialStats = confidentialStatsCache.get(
+						projectIdsWithoutConfidentialIssuePermission, it -> queryStats(it, true));
+				authorizedConfidentialStats = queryAuthorizedConfidentialStats(projectIdsWithoutConfidentialIssuePermission);
+			} else {
+				confidentialStats = new ArrayList<>();
+				authorizedConfidentialStats = new ArrayList<>();
+			}
+			return combineStats(stats, confidentialStats, authorizedConfidentialStats);
+		}
+	}
+	
+	/**
+	 * Combine issue statistics visible to current user
+	 * 
+	 * @param stats
+	 * 			statistics of all issues of projects
+	 * @param confidentialStats
+	 * 			statistics of confidential issues of projects current user can not access 
+	 * 			confidential issues
+	 * @param authorizedConfidentialStats
+	 * 			statistics of confidential issues of above projects current user is authorized 
+	 * 			to access
+	 */
+	static List<ProjectIssueStats> combineStats(List<ProjectIssueStats> stats, 
+			List<ProjectIssueStats> confidentialStats, List<ProjectIssueStats> authorizedConfidentialStats) {
+		Map<Long, Map<Integer, Long>> stateCounts = new HashMap<>();
+		for (var each: stats) 
+			addStateCount(stateCounts, each, 1);
+		for (var each: confidentialStats) 
+			addStateCount(stateCounts, each, -1);
+		for (var each: authorizedConfidentialStats)
+			addStateCount(stateCounts, each, 1);
+		
+		List<ProjectIssueStats> combinedStats = new ArrayList<>();
+		for (var projectEntry: stateCounts.entrySet()) {
+			for (var stateEntry: projectEntry.getValue().entrySet()) {
+				if (stateEntry.getValue() > 0) 
+					combinedStats.add(new ProjectIssueStats(projectEntry.getKey(), stateEntry.getKey(), stateEntry.getValue()));
 			}
-			predicates.add(getAuthorizationPredicate(criteriaQuery, builder, root, projectIds));
+		}
+		combinedStats.sort(Comparator.comparing(ProjectIssueStats::getStateOrdinal));
+		return combinedStats;
+	}
+	
+	private static void addStateCount(Map<Long, Map<Integer, Long>> stateCounts, ProjectIssueStats stats, int sign) {
+		stateCounts.computeIfAbsent(stats.getProjectId(), it -> new HashMap<>())
+				.merge(stats.getStateOrdinal(), sign * stats.getStateCount(), Long::sum);
+	}
+	
+	private List<ProjectIssueStats> queryStats(Collection<Long> projectIds, boolean confidentialOnly) {
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<ProjectIssueStats> criteriaQuery = builder.createQuery(ProjectIssueStats.class);
+		Root<Issue> root = criteriaQuery.from(Issue.class);
+		
+		criteriaQuery.multiselect(
+				root.get(Issue.PROP_PROJECT).get(Project.PROP_ID), 
+				root.get(Issue.PROP_STATE_ORDINAL), 
+				builder.count(root));
+		criteriaQuery.groupBy(root.get(Issue.PROP_PROJECT), root.get(Issue.PROP_STATE_ORDINAL));
+		
+		Predicate predicate = root.get(Issue.PROP_PROJECT).get(Project.PROP_ID).in(projectIds);
+		if (confidentialOnly)
+			predicate = builder.and(predicate, builder.equal(root.get(Issue.PROP_CONFIDENTIAL), true));
+		criteriaQuery.where(predicate);
+		
+		return getSession().createQuery(criteriaQuery).getResultList();
+	}
+	
+	private List<ProjectIssueStats> queryAuthorizedConfidentialStats(Collection<Long> projectIds) {
+		User user = SecurityUtils.getUser();
+		if (user != null) {
+			CriteriaBuilder builder = getSession().getCriteriaBuilder();
+			CriteriaQuery<ProjectIssueStats> criteriaQuery = builder.createQuery(ProjectIssueStats.class);
+			Root<IssueAuthorization> root = criteriaQuery.from(IssueAuthorization.class);
+			Join<IssueAuthorization, Issue> issueJoin = root.join(IssueAuthorization.PROP_ISSUE, JoinType.INNER);
+			
+			criteriaQuery.multiselect(
+					issueJoin.get(Issue.PROP_PROJECT).get(Project.PROP_ID), 
+					issueJoin.get(Issue.PROP_STATE_ORDINAL), 
+					builder.count(root));
+			criteriaQuery.groupBy(issueJoin.get(Issue.PROP_PROJECT), issueJoin.get(Issue.PROP_STATE_ORDINAL));
 			
-			criteriaQuery.where(builder.or(predicates.toArray(new Predicate[0])));
-			criteriaQuery.orderBy(builder.asc(root.get(Issue.PROP_STATE_ORDINAL)));
+			criteriaQuery.where(
+					builder.equal(root.get(IssueAuthorization.PROP_USER), user), 
+					builder.equal(issueJoin.get(Issue.PROP_CONFIDENTIAL), true), 
+					issueJoin.get(Issue.PROP_PROJECT).get(Project.PROP_ID).in(projectIds));
 			
 			return getSession().createQuery(criteriaQuery).getResultList();
+		} else {
+			return new ArrayList<>();
 		}
 	}
 
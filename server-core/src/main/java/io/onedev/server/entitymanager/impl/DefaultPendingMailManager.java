@@ -0,0 +1,54 @@
+package io.onedev.server.entitymanager.impl;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+
+import com.google.common.base.Preconditions;
+
+import io.onedev.server.entitymanager.PendingMailManager;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.PendingMail;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.BaseEntityManager;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.persistence.dao.EntityCriteria;
+
+@Singleton
+public class DefaultPendingMailManager extends BaseEntityManager<PendingMail> implements PendingMailManager {
+
+	@Inject
+	public DefaultPendingMailManager(Dao dao) {
+		super(dao);
+	}
+
+	@Transactional
+	@Override
+	public void create(PendingMail mail) {
+		Preconditions.checkState(mail.isNew());
+		dao.persist(mail);
+	}
+
+	@Transactional
+	@Override
+	public void update(PendingMail mail) {
+		Preconditions.checkState(!mail.isNew());
+		dao.persist(mail);
+	}
+
+	@Sessional
+	@Override
+	public List<PendingMail> queryDue(int count) {
+		EntityCriteria<PendingMail> criteria = newCriteria();
+		criteria.add(Restrictions.le(PendingMail.PROP_SCHEDULED_DATE, new Date()));
+		criteria.addOrder(Order.asc(AbstractEntity.PROP_ID));
+		return query(criteria, 0, count);
+	}
+
+}
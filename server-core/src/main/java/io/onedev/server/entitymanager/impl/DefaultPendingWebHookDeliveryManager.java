@@ -0,0 +1,126 @@
+package io.onedev.server.entitymanager.impl;
+
+import static io.onedev.server.model.PendingWebHookDelivery.MAX_ERROR_LEN;
+import static io.onedev.server.model.PendingWebHookDelivery.PROP_POST_URL;
+import static io.onedev.server.model.PendingWebHookDelivery.PROP_SCHEDULED_DATE;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+
+import com.google.common.base.Preconditions;
+
+import io.onedev.server.entitymanager.PendingWebHookDeliveryManager;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.PendingWebHookDelivery;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.persistence.dao.BaseEntityManager;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.persistence.dao.EntityCriteria;
+
+@Singleton
+public class DefaultPendingWebHookDeliveryManager extends BaseEntityManager<PendingWebHookDelivery> 
+		implements PendingWebHookDeliveryManager {
+
+	@Inject
+	public DefaultPendingWebHookDeliveryManager(Dao dao) {
+		super(dao);
+	}
+
+	@Transactional
+	@Override
+	public void create(PendingWebHookDelivery delivery) {
+		Preconditions.checkState(delivery.isNew());
+		dao.persist(delivery);
+	}
+
+	@Sessional
+	@Override
+	public PendingWebHookDelivery findLast(String postUrl) {
+		EntityCriteria<PendingWebHookDelivery> criteria = newCriteria();
+		criteria.add(Restrictions.eq(PROP_POST_URL, postUrl));
+		criteria.addOrder(Order.desc(AbstractEntity.PROP_ID));
+		List<PendingWebHookDelivery> deliveries = query(criteria, 0, 1);
+		return !deliveries.isEmpty()? deliveries.get(0): null;
+	}
+
+	@Transactional
+	@Override
+	public boolean coalesce(Long deliveryId, String secret, String payload) {
+		return getSession().createQuery("update PendingWebHookDelivery set secret = :secret, payload = :payload, "
+				+ "queueDate = :queueDate, revision = revision + 1 "
+				+ "where id = :id and attempts = 0")
+				.setParameter("secret", secret)
+				.setParameter("payload", payload)
+				.setParameter("queueDate", new Date())
+				.setParameter("id", deliveryId)
+				.executeUpdate() != 0;
+	}
+
+	@Sessional
+	@Override
+	public List<PendingWebHookDelivery> queryDue(Collection<String> excludedPostUrls, int count) {
+		EntityCriteria<PendingWebHookDelivery> criteria = newCriteria();
+		criteria.add(Restrictions.le(PROP_SCHEDULED_DATE, new Date()));
+		if (!excludedPostUrls.isEmpty())
+			criteria.add(Restrictions.not(Restrictions.in(PROP_POST_URL, excludedPostUrls)));
+		criteria.addOrder(Order.asc(AbstractEntity.PROP_ID));
+		return query(criteria, 0, count);
+	}
+
+	@Transactional
+	@Override
+	public void delete(Long deliveryId, int revision) {
+		getSession().createQuery("delete from PendingWebHookDelivery where id = :id and revision = :revision")
+				.setParameter("id", deliveryId)
+				.setParameter("revision", revision)
+				.executeUpdate();
+	}
+
+	@Transactional
+	@Override
+	public void scheduleRetry(Long deliveryId, int attempts, Date scheduledDate, String lastError) {
+		getSession().createQuery("update PendingWebHookDelivery set attempts = :attempts, "
+				+ "scheduledDate = :scheduledDate, lastError = :lastError where id = :id")
+				.setParameter("attempts", attempts)
+				.setParameter("scheduledDate", scheduledDate)
+				.setParameter("lastError", StringUtils.abbreviate(lastError, MAX_ERROR_LEN))
+				.setParameter("id", deliveryId)
+				.executeUpdate();
+	}
+
+	@Transactional
+	@Override
+	public int trim(int maxDeliveriesPerEndpoint) {
+		int deleted = 0;
+		var postUrls = getSession().createQuery("select postUrl from PendingWebHookDelivery "
+				+ "group by postUrl having count(*) > :max", String.class)
+				.setParameter("max", (long) maxDeliveriesPerEndpoint)
+				.list();
+		for (var postUrl: postUrls) {
+			var lastDeletedId = getSession().createQuery("select id from PendingWebHookDelivery "
+					+ "where postUrl = :postUrl order by id desc", Long.class)
+					.setParameter("postUrl", postUrl)
+					.setFirstResult(maxDeliveriesPerEndpoint)
+					.setMaxResults(1)
+					.uniqueResult();
+			if (lastDeletedId != null) {
+				deleted += getSession().createQuery("delete from PendingWebHookDelivery "
+						+ "where postUrl = :postUrl and id <= :lastDeletedId")
+						.setParameter("postUrl", postUrl)
+						.setParameter("lastDeletedId", lastDeletedId)
+						.executeUpdate();
+			}
+		}
+		return deleted;
+	}
+
+}
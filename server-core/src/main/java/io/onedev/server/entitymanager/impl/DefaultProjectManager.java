@@ -16,8 +16,10 @@ import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.k8shelper.KubernetesHelper;
 import io.onedev.server.OneDev;
 import io.onedev.server.attachment.AttachmentManager;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.cluster.ClusterTask;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.*;
 import io.onedev.server.event.Listen;
 import io.onedev.server.event.ListenerRegistry;
@@ -96,8 +98,6 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.criteria.*;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
@@ -170,6 +170,8 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 	private final UserAuthorizationManager userAuthorizationManager;
 
 	private final ClusterManager clusterManager;
+
+	private final ClusterTransport clusterTransport;
 	
 	private final BatchWorkManager batchWorkManager;
 	
@@ -203,7 +205,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 								 SessionManager sessionManager, ListenerRegistry listenerRegistry,
 								 UserAuthorizationManager userAuthorizationManager, RoleManager roleManager,
 								 JobManager jobManager, IssueManager issueManager, LinkSpecManager linkSpecManager,
-								 ClusterManager clusterManager, GitService gitService, TaskScheduler taskScheduler,
+								 ClusterManager clusterManager, ClusterTransport clusterTransport, GitService gitService, TaskScheduler taskScheduler,
 								 ProjectLastEventDateManager lastEventDateManager, PullRequestManager pullRequestManager,
 								 AttachmentManager attachmentManager, BatchWorkManager batchWorkManager,
 								 VisitInfoManager visitInfoManager, StorageManager storageManager, 
@@ -223,6 +225,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 		this.issueManager = issueManager;
 		this.linkSpecManager = linkSpecManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
 		this.gitService = gitService;
 		this.taskScheduler = taskScheduler;
 		this.lastEventDateManager = lastEventDateManager;
@@ -1595,10 +1598,9 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 
 		if (version < remoteVersion) {
 			FileUtils.cleanDir(directory);
-			Client client = ClientBuilder.newClient();
+			ClusterConnection connection = clusterTransport.connect(activeServer);
 			try {
-				String fromServerUrl = clusterManager.getServerUrl(activeServer);
-				WebTarget target = client.target(fromServerUrl).path("/~api/cluster/project-files")
+				WebTarget target = connection.target().path("/~api/cluster/project-files")
 						.queryParam("projectId", projectId)
 						.queryParam("path", path)
 						.queryParam("patterns", "** -" + FILE_VERSION)
@@ -1616,7 +1618,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 					}
 				}
 			} finally {
-				client.close();
+				connection.close();
 			}
 			writeVersion(directory, remoteVersion);
 		}
@@ -1625,10 +1627,9 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 	@Override
 	public void syncFile(Long projectId, String path, String readLock, String activeServer) {
 		var file = new File(getStorageDir(projectId), path);
-		Client client = ClientBuilder.newClient();
+		ClusterConnection connection = clusterTransport.connect(activeServer);
 		try {
-			String fromServerUrl = clusterManager.getServerUrl(activeServer);
-			WebTarget target = client.target(fromServerUrl).path("/~api/cluster/project-file")
+			WebTarget target = connection.target().path("/~api/cluster/project-file")
 					.queryParam("projectId", projectId)
 					.queryParam("path", path)
 					.queryParam("readLock", readLock);
@@ -1651,7 +1652,7 @@ public class DefaultProjectManager extends BaseEntityManager<Project>
 				}
 			}
 		} finally {
-			client.close();
+			connection.close();
 		}
 	}
 	
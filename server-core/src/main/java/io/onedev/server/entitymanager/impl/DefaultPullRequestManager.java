@@ -13,6 +13,7 @@ import io.onedev.server.cluster.ClusterTask;
 import io.onedev.server.entitymanager.*;
 import io.onedev.server.event.Listen;
 import io.onedev.server.event.ListenerRegistry;
+import io.onedev.server.event.entity.EntityPersisted;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.project.RefUpdated;
 import io.onedev.server.event.project.build.BuildEvent;
@@ -46,6 +47,7 @@ import io.onedev.server.security.permission.ReadCode;
 import io.onedev.server.util.ProjectAndBranch;
 import io.onedev.server.util.ProjectPullRequestStats;
 import io.onedev.server.util.ProjectScopedNumber;
+import io.onedev.server.util.ProjectStatsCache;
 import io.onedev.server.util.criteria.Criteria;
 import io.onedev.server.util.facade.EmailAddressFacade;
 import io.onedev.server.util.reviewrequirement.ReviewRequirement;
@@ -108,6 +110,12 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 	
 	private final SequenceGenerator numberGenerator;
 	
+	private final PullRequestCheckScheduler checkScheduler;
+	
+	private final EntityCountCache countCache;
+	
+	private final ProjectStatsCache<ProjectPullRequestStats> statsCache;
+	
 	@Inject
 	public DefaultPullRequestManager(Dao dao, PullRequestUpdateManager updateManager, 
 									 PullRequestReviewManager reviewManager, ListenerRegistry listenerRegistry, 
@@ -116,7 +124,8 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 									 CommitInfoManager commitInfoManager, ClusterManager clusterManager, 
 									 UserManager userManager, GitService gitService, 
 									 PendingSuggestionApplyManager pendingSuggestionApplyManager, 
-									 PullRequestInfoManager pullRequestInfoManager) {
+									 PullRequestInfoManager pullRequestInfoManager, 
+									 PullRequestCheckScheduler checkScheduler, EntityCountCache countCache) {
 		super(dao);
 		
 		this.updateManager = updateManager;
@@ -131,8 +140,11 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 		this.userManager = userManager;
 		this.gitService = gitService;
 		this.pullRequestInfoManager = pullRequestInfoManager;
+		this.checkScheduler = checkScheduler;
+		this.countCache = countCache;
 		
 		numberGenerator = new SequenceGenerator(PullRequest.class, clusterManager, dao);
+		statsCache = new ProjectStatsCache<>(clusterManager, "pullRequestStats", ProjectPullRequestStats::getProjectId);
 	}
 	
 	public Object writeReplace() throws ObjectStreamException {
@@ -505,6 +517,15 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 		}
 	}
 
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		if (event.getEntity() instanceof PullRequest) 
+			invalidateStats(((PullRequest) event.getEntity()).getTargetProject());
+		else if (event.getEntity() instanceof PullRequestChange) 
+			invalidateStats(((PullRequestChange) event.getEntity()).getRequest().getTargetProject());
+	}
+	
 	@Transactional
 	@Listen
 	public void on(EntityRemoved event) {
@@ -512,9 +533,17 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 			Project project = (Project) event.getEntity();
 	    	if (project.getForkRoot().equals(project))
 	    		numberGenerator.removeNextSequence(project);
+	    	invalidateStats(project);
+		} else if (event.getEntity() instanceof PullRequest) {
+			invalidateStats(((PullRequest) event.getEntity()).getTargetProject());
 		}
 	}
 	
+	private void invalidateStats(Project project) {
+		Long projectId = project.getId();
+		transactionManager.runAfterCommit(() -> statsCache.invalidate(projectId));
+	}
+	
 	@Sessional
 	@Listen
 	public void on(RefUpdated event) {
@@ -524,11 +553,15 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 			Criterion criterion = Restrictions.and(
 					ofOpen(), 
 					Restrictions.or(ofSource(projectAndBranch), ofTarget(projectAndBranch)));
+			Map<Long, Collection<CheckRequest>> checkRequests = new HashMap<>();
 			for (PullRequest request: query(EntityCriteria.of(PullRequest.class).add(criterion))) {
 				boolean sourceUpdated = request.getSource() != null 
 						&& request.getSource().equals(projectAndBranch);
-				checkAsync(request, sourceUpdated, sourceUpdated);
+				checkRequests.computeIfAbsent(request.getTargetProject().getId(), k -> new ArrayList<>())
+						.add(new CheckRequest(request, sourceUpdated, sourceUpdated));
 			}
+			for (Map.Entry<Long, Collection<CheckRequest>> entry: checkRequests.entrySet())
+				checkAsync(entry.getKey(), entry.getValue(), false);
 		}
 	}
 
@@ -647,9 +680,15 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 	
 	@Sessional
 	public void checkAsync(PullRequest request, boolean sourceUpdated, boolean updateBuildCommit) {
-		Long projectId = request.getTargetProject().getId();
-		Long requestId = request.getId();
-		
+		checkAsync(request.getTargetProject().getId(), 
+				Lists.newArrayList(new CheckRequest(request, sourceUpdated, updateBuildCommit)), true);
+	}
+	
+	/*
+	 * Checks are scheduled on active server of target project, where multiple checks of 
+	 * same pull request are coalesced, and concurrent checks of the project are limited
+	 */
+	private void checkAsync(Long projectId, Collection<CheckRequest> checkRequests, boolean urgent) {
 		transactionManager.runAfterCommit(new ClusterRunnable() {
 
 			private static final long serialVersionUID = 1L;
@@ -662,30 +701,11 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 
 					@Override
 					public Void call() {
-						try {
-							LockUtils.call(getSerialLockName(requestId), true, new ClusterTask<Void>() {
-
-								private static final long serialVersionUID = 1L;
-
-								@Override
-								public Void call() {
-									transactionManager.run(new ClusterRunnable() {
-
-										private static final long serialVersionUID = 1L;
-
-										@Override
-										public void run() {
-											PullRequest request = load(requestId);
-											check(request, sourceUpdated, updateBuildCommit);
-										}
-
-									});
-									return null;
-								}
-
-							});
-						} catch (Exception e) {
-							logger.error("Error checking pull request", e);
+						for (CheckRequest checkRequest: checkRequests) {
+							Long requestId = checkRequest.requestId;
+							checkScheduler.schedule(projectId, requestId, checkRequest.sourceUpdated, 
+									checkRequest.updateBuildCommit, checkRequest.lastActivityDate, urgent, 
+									(sourceUpdated, updateBuildCommit) -> lockAndCheck(requestId, sourceUpdated, updateBuildCommit));
 						}
 						return null;
 					}
@@ -697,6 +717,54 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 		
 	}
 	
+	private void lockAndCheck(Long requestId, boolean sourceUpdated, boolean updateBuildCommit) {
+		LockUtils.call(getSerialLockName(requestId), true, new ClusterTask<Void>() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Void call() {
+				transactionManager.run(new ClusterRunnable() {
+
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public void run() {
+						PullRequest request = load(requestId);
+						check(request, sourceUpdated, updateBuildCommit);
+					}
+
+				});
+				return null;
+			}
+
+		});
+	}
+	
+	private static class CheckRequest implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+
+		final Long requestId;
+		
+		final boolean sourceUpdated;
+		
+		final boolean updateBuildCommit;
+		
+		final Long lastActivityDate;
+		
+		CheckRequest(PullRequest request, boolean sourceUpdated, boolean updateBuildCommit) {
+			requestId = request.getId();
+			this.sourceUpdated = sourceUpdated;
+			this.updateBuildCommit = updateBuildCommit;
+			if (request.getLastActivity() != null)
+				lastActivityDate = request.getLastActivity().getDate().getTime();
+			else
+				lastActivityDate = null;
+		}
+		
+	}
+	
 	@Transactional
 	@Override
 	public void checkReviews(PullRequest request, boolean sourceUpdated) {
@@ -888,14 +956,18 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 	@Sessional
 	@Override
 	public int count(@Nullable Project targetProject,  Criteria<PullRequest> requestCriteria) {
-		CriteriaBuilder builder = getSession().getCriteriaBuilder();
-		CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
-		Root<PullRequest> root = criteriaQuery.from(PullRequest.class);
+		Collection<Long> projectIds = targetProject != null? List.of(targetProject.getId()): null;
+		String scope = targetProject != null? targetProject.getId().toString(): "";
+		return countCache.count(PullRequest.class, projectIds, scope, requestCriteria, () -> {
+			CriteriaBuilder builder = getSession().getCriteriaBuilder();
+			CriteriaQuery<Long> criteriaQuery = builder.createQuery(Long.class);
+			Root<PullRequest> root = criteriaQuery.from(PullRequest.class);
 
-		criteriaQuery.where(getPredicates(targetProject, requestCriteria, criteriaQuery, root, builder));
+			criteriaQuery.where(getPredicates(targetProject, requestCriteria, criteriaQuery, root, builder));
 
-		criteriaQuery.select(builder.count(root));
-		return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+			criteriaQuery.select(builder.count(root));
+			return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
+		});
 	}
 	
 	@Sessional
@@ -990,19 +1062,25 @@ public class DefaultPullRequestManager extends BaseEntityManager<PullRequest>
 		if (projects.isEmpty()) {
 			return new ArrayList<>();
 		} else {
-			CriteriaBuilder builder = getSession().getCriteriaBuilder();
-			CriteriaQuery<ProjectPullRequestStats> criteriaQuery = builder.createQuery(ProjectPullRequestStats.class);
-			Root<PullRequest> root = criteriaQuery.from(PullRequest.class);
-			criteriaQuery.multiselect(
-					root.get(PullRequest.PROP_TARGET_PROJECT).get(Project.PROP_ID), 
-					root.get(PullRequest.PROP_STATUS), builder.count(root));
-			criteriaQuery.groupBy(root.get(PullRequest.PROP_TARGET_PROJECT), root.get(PullRequest.PROP_STATUS));
-			
-			criteriaQuery.where(root.get(PullRequest.PROP_TARGET_PROJECT).in(projects));
-			criteriaQuery.orderBy(builder.asc(root.get(PullRequest.PROP_STATUS)));
-			return getSession().createQuery(criteriaQuery).getResultList();
+			List<Long> projectIds = projects.stream().map(Project::getId).collect(Collectors.toList());
+			List<ProjectPullRequestStats> stats = statsCache.get(projectIds, this::queryStats);
+			stats.sort(Comparator.comparing(ProjectPullRequestStats::getPullRequestStatus));
+			return stats;
 		}
 	}
+	
+	private List<ProjectPullRequestStats> queryStats(Collection<Long> projectIds) {
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<ProjectPullRequestStats> criteriaQuery = builder.createQuery(ProjectPullRequestStats.class);
+		Root<PullRequest> root = criteriaQuery.from(PullRequest.class);
+		criteriaQuery.multiselect(
+				root.get(PullRequest.PROP_TARGET_PROJECT).get(Project.PROP_ID), 
+				root.get(PullRequest.PROP_STATUS), builder.count(root));
+		criteriaQuery.groupBy(root.get(PullRequest.PROP_TARGET_PROJECT), root.get(PullRequest.PROP_STATUS));
+		
+		criteriaQuery.where(root.get(PullRequest.PROP_TARGET_PROJECT).get(Project.PROP_ID).in(projectIds));
+		return getSession().createQuery(criteriaQuery).getResultList();
+	}
 
 	private Criterion ofOpen() {
 		return Restrictions.eq(PullRequest.PROP_STATUS, Status.OPEN);
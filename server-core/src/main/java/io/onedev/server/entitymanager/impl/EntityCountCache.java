@@ -0,0 +1,271 @@
+package io.onedev.server.entitymanager.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.google.common.collect.Sets;
+import com.hazelcast.map.IMap;
+
+import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.project.build.BuildEvent;
+import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Group;
+import io.onedev.server.model.GroupAuthorization;
+import io.onedev.server.model.LabelSpec;
+import io.onedev.server.model.LinkAuthorization;
+import io.onedev.server.model.LinkSpec;
+import io.onedev.server.model.Membership;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.Role;
+import io.onedev.server.model.Setting;
+import io.onedev.server.model.User;
+import io.onedev.server.model.UserAuthorization;
+import io.onedev.server.model.support.ProjectBelonging;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
+import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.util.criteria.Criteria;
+
+/**
+ * Caches entity counts used by paginated entity lists, so that paging, sorting and polling
+ * a list does not count matched entities again and again. A count is keyed by entity type,
+ * project scope, query string and current user, and is valid as long as versions of related
+ * projects do not change. Version of a project changes whenever an entity belonging to it is
+ * persisted or removed, and a global version changes when permissions or settings change.
+ */
+@Singleton
+public class EntityCountCache {
+
+	private static final int MAX_ENTRIES = 10000;
+
+	private static final long EXPIRE_TIME = 300000;
+
+	// Version changed with any project, used for counts not limited to some projects
+	private static final Long ANY_PROJECT = 0L;
+
+	// Version changed with permissions and settings, used for all counts
+	private static final Long GLOBAL = -1L;
+
+	// Authorizations are global as roles in a project also apply to its descendant projects
+	private static final Set<Class<?>> GLOBAL_CLASSES = Sets.newHashSet(Project.class, User.class,
+			Group.class, Membership.class, Role.class, UserAuthorization.class, GroupAuthorization.class,
+			LinkAuthorization.class, LinkSpec.class, LabelSpec.class, Setting.class);
+
+	private final ClusterManager clusterManager;
+
+	private final TransactionManager transactionManager;
+
+	private final Map<Class<?>, List<Field>> projectFields = new ConcurrentHashMap<>();
+
+	private final Map<String, CachedCount> counts = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+
+	});
+
+	private volatile IMap<Long, Long> versions;
+
+	@Inject
+	public EntityCountCache(ClusterManager clusterManager, TransactionManager transactionManager) {
+		this.clusterManager = clusterManager;
+		this.transactionManager = transactionManager;
+	}
+
+	@Listen
+	public void on(SystemStarting event) {
+		versions = clusterManager.getHazelcastInstance().getMap("entityCountVersions");
+	}
+
+	/**
+	 * Get count of entities from cache, or calculate it if not cached or related projects
+	 * have been changed since it is cached
+	 *
+	 * @param entityClass
+	 * 			class of entities to count
+	 * @param projectIds
+	 * 			ids of projects entities to count belong to, or <tt>null</tt> if entities of
+	 * 			all projects are counted
+	 * @param scope
+	 * 			string identifying scope of the count other than the criteria, for instance
+	 * 			project and pull request
+	 * @param criteria
+	 * 			criteria of entities to count
+	 * @param counter
+	 * 			counter to calculate the count if not cached
+	 * @return
+	 * 			count of entities
+	 */
+	public int count(Class<? extends AbstractEntity> entityClass, @Nullable Collection<Long> projectIds,
+			String scope, @Nullable Criteria<?> criteria, Supplier<Integer> counter) {
+		if (versions == null || criteria != null && !criteria.isCacheable())
+			return counter.get();
+
+		User me = User.get();
+		String key = entityClass.getName() + ":" + scope + ":" + SecurityUtils.getUserId() + ":"
+				+ (me != null? me.getId(): null) + ":" + (criteria != null? criteria.toString(): "");
+
+		Set<Long> versionKeys = new TreeSet<>();
+		versionKeys.add(GLOBAL);
+		if (projectIds != null)
+			versionKeys.addAll(projectIds);
+		else
+			versionKeys.add(ANY_PROJECT);
+
+		// Versions should be read before counting, so that changes made while counting
+		// invalidate the cached count
+		long fingerprint = getFingerprint(versionKeys);
+		long now = System.currentTimeMillis();
+		CachedCount cached = counts.get(key);
+		if (cached != null && cached.fingerprint == fingerprint && now - cached.timestamp < EXPIRE_TIME)
+			return cached.count;
+
+		int count = counter.get();
+		counts.put(key, new CachedCount(fingerprint, now, count));
+		return count;
+	}
+
+	private long getFingerprint(Set<Long> versionKeys) {
+		Map<Long, Long> versionsOfKeys = versions.getAll(versionKeys);
+		long fingerprint = 1;
+		for (Long versionKey: versionKeys) {
+			Long version = versionsOfKeys.get(versionKey);
+			fingerprint = 31 * fingerprint + (version != null? version: 0);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Invalidate cached counts of specified project. This should be called if entities of
+	 * the project are changed without firing entity events, for instance via bulk update
+	 */
+	public void invalidate(Long projectId) {
+		transactionManager.runAfterCommit(() -> bump(Sets.newHashSet(projectId, ANY_PROJECT)));
+	}
+
+	/**
+	 * Invalidate all cached counts
+	 */
+	public void invalidateAll() {
+		transactionManager.runAfterCommit(() -> bump(Sets.newHashSet(GLOBAL)));
+	}
+
+	private void bump(Collection<Long> versionKeys) {
+		if (versions != null) {
+			for (Long versionKey: versionKeys)
+				versions.set(versionKey, ThreadLocalRandom.current().nextLong());
+		}
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityPersisted event) {
+		onChange(event.getEntity());
+	}
+
+	@Transactional
+	@Listen
+	public void on(EntityRemoved event) {
+		onChange(event.getEntity());
+	}
+
+	@Sessional
+	@Listen
+	public void on(BuildEvent event) {
+		// Build status may be updated without persisting the build entity
+		invalidate(event.getProject().getId());
+	}
+
+	private void onChange(AbstractEntity entity) {
+		Set<Long> versionKeys = new HashSet<>();
+		if (GLOBAL_CLASSES.contains(entity.getClass())) {
+			versionKeys.add(GLOBAL);
+		} else {
+			for (Project project: getProjects(entity))
+				versionKeys.add(project.getId());
+			if (!versionKeys.isEmpty())
+				versionKeys.add(ANY_PROJECT);
+		}
+		if (!versionKeys.isEmpty())
+			transactionManager.runAfterCommit(() -> bump(versionKeys));
+	}
+
+	private Collection<Project> getProjects(AbstractEntity entity) {
+		Collection<Project> projects = new ArrayList<>();
+		if (entity instanceof ProjectBelonging)
+			projects.add(((ProjectBelonging) entity).getProject());
+		for (Field field: getProjectFields(entity.getClass())) {
+			Object value;
+			try {
+				value = field.get(entity);
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+			if (value instanceof Project)
+				projects.add((Project) value);
+			else if (value instanceof ProjectBelonging)
+				projects.add(((ProjectBelonging) value).getProject());
+		}
+		projects.removeIf(it -> it == null || it.getId() == null);
+		return projects;
+	}
+
+	private List<Field> getProjectFields(Class<?> entityClass) {
+		return projectFields.computeIfAbsent(entityClass, key -> {
+			List<Field> fields = new ArrayList<>();
+			for (Class<?> clazz = key; clazz != null && clazz != AbstractEntity.class; clazz = clazz.getSuperclass()) {
+				for (Field field: clazz.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers())
+							&& (Project.class.isAssignableFrom(field.getType())
+									|| ProjectBelonging.class.isAssignableFrom(field.getType()))) {
+						field.setAccessible(true);
+						fields.add(field);
+					}
+				}
+			}
+			return fields;
+		});
+	}
+
+	private static class CachedCount {
+
+		final long fingerprint;
+
+		final long timestamp;
+
+		final int count;
+
+		CachedCount(long fingerprint, long timestamp, int count) {
+			this.fingerprint = fingerprint;
+			this.timestamp = timestamp;
+			this.count = count;
+		}
+
+	}
+
+}
@@ -0,0 +1,312 @@
+package io.onedev.server.entitymanager.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+
+/**
+ * Schedules pull request checks on active server of target project. Checks of same pull
+ * request submitted within a short window are coalesced into one, checks of pull requests
+ * being viewed or recently active run first, and concurrent checks of a project are limited
+ * so that a push to a busy branch does not occupy all cpus calculating merge previews.
+ */
+@Singleton
+public class PullRequestCheckScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(PullRequestCheckScheduler.class);
+
+	private static final long DEBOUNCE_WINDOW = 3000;
+
+	private static final long MAX_DELAY = 30000;
+
+	private static final int MAX_CONCURRENCY_PER_PROJECT = 2;
+
+	private static final long VIEW_NOTIFY_INTERVAL = 60000;
+
+	private static final long VIEW_PRIORITY_WINDOW = 300000;
+
+	private static final int MAX_VIEWS = 10000;
+
+	private final ProjectManager projectManager;
+
+	private final ClusterManager clusterManager;
+
+	private final ExecutorService executorService;
+
+	private final Map<Long, PendingCheck> pendingChecks = new HashMap<>();
+
+	private final Set<Long> runningRequestIds = new HashSet<>();
+
+	private final Map<Long, Integer> runningCounts = new HashMap<>();
+
+	private final Map<Long, Long> viewTimes = new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+			return size() > MAX_VIEWS;
+		}
+
+	};
+
+	private long scheduledChecks;
+
+	private long coalescedChecks;
+
+	private long completedChecks;
+
+	private long totalQueueLatency;
+
+	private Thread thread;
+
+	@Inject
+	public PullRequestCheckScheduler(ProjectManager projectManager, ClusterManager clusterManager,
+			ExecutorService executorService) {
+		this.projectManager = projectManager;
+		this.clusterManager = clusterManager;
+		this.executorService = executorService;
+	}
+
+	/**
+	 * Schedule check of specified pull request. This should be called on active server of
+	 * target project of the pull request
+	 *
+	 * @param projectId
+	 * 			id of target project of the pull request
+	 * @param requestId
+	 * 			id of the pull request
+	 * @param lastActivityDate
+	 * 			last activity date of the pull request, used to run checks of recently
+	 * 			active pull requests first
+	 * @param urgent
+	 * 			whether or not the check is requested by user, in which case it is run
+	 * 			without delay and before other checks
+	 * @param checker
+	 * 			checker to run the check. If multiple checks of same pull request are
+	 * 			coalesced, checker of first check will be used with merged options
+	 */
+	public synchronized void schedule(Long projectId, Long requestId, boolean sourceUpdated,
+			boolean updateBuildCommit, @Nullable Long lastActivityDate, boolean urgent,
+			Checker checker) {
+		long now = System.currentTimeMillis();
+		PendingCheck check = pendingChecks.get(requestId);
+		if (check != null) {
+			check.sourceUpdated |= sourceUpdated;
+			check.updateBuildCommit |= updateBuildCommit;
+			check.urgent |= urgent;
+			if (lastActivityDate != null && (check.lastActivityDate == null || check.lastActivityDate < lastActivityDate))
+				check.lastActivityDate = lastActivityDate;
+			check.dueTime = check.urgent? now: Math.min(now + DEBOUNCE_WINDOW, check.scheduleTime + MAX_DELAY);
+			coalescedChecks++;
+		} else {
+			check = new PendingCheck(projectId, requestId, checker);
+			check.sourceUpdated = sourceUpdated;
+			check.updateBuildCommit = updateBuildCommit;
+			check.urgent = urgent;
+			check.lastActivityDate = lastActivityDate;
+			check.scheduleTime = now;
+			check.dueTime = urgent? now: now + DEBOUNCE_WINDOW;
+			pendingChecks.put(requestId, check);
+		}
+		scheduledChecks++;
+		notify();
+	}
+
+	/**
+	 * Record that specified pull request is being viewed, so that its pending check runs
+	 * before others. This can be called on any server
+	 */
+	public void viewed(Long projectId, Long requestId) {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Long viewTime = viewTimes.get(requestId);
+			if (viewTime != null && now - viewTime < VIEW_NOTIFY_INTERVAL)
+				return;
+			viewTimes.put(requestId, now);
+			notify();
+		}
+		String activeServer = projectManager.getActiveServer(projectId, false);
+		if (activeServer != null && !activeServer.equals(clusterManager.getLocalServerAddress())) {
+			clusterManager.submitToServer(activeServer, () -> {
+				OneDev.getInstance(PullRequestCheckScheduler.class).viewed(projectId, requestId);
+				return null;
+			});
+		}
+	}
+
+	private int getPriority(PendingCheck check, long now) {
+		if (check.urgent) {
+			return 0;
+		} else {
+			Long viewTime = viewTimes.get(check.requestId);
+			if (viewTime != null && now - viewTime < VIEW_PRIORITY_WINDOW)
+				return 1;
+			else
+				return 2;
+		}
+	}
+
+	private void dispatch() {
+		while (thread != null) {
+			long now = System.currentTimeMillis();
+			long nextDueTime = Long.MAX_VALUE;
+			List<PendingCheck> dueChecks = new ArrayList<>();
+			for (PendingCheck check: pendingChecks.values()) {
+				if (!runningRequestIds.contains(check.requestId)) {
+					if (check.dueTime <= now)
+						dueChecks.add(check);
+					else
+						nextDueTime = Math.min(nextDueTime, check.dueTime);
+				}
+			}
+
+			Map<PendingCheck, Integer> priorities = new HashMap<>();
+			for (PendingCheck check: dueChecks)
+				priorities.put(check, getPriority(check, now));
+			dueChecks.sort(Comparator.<PendingCheck>comparingInt(priorities::get)
+					.thenComparingLong(it -> it.lastActivityDate!=null? -it.lastActivityDate: 0)
+					.thenComparingLong(it -> it.dueTime));
+
+			for (PendingCheck check: dueChecks) {
+				int runningCount = runningCounts.getOrDefault(check.projectId, 0);
+				if (runningCount < MAX_CONCURRENCY_PER_PROJECT) {
+					pendingChecks.remove(check.requestId);
+					runningRequestIds.add(check.requestId);
+					runningCounts.put(check.projectId, runningCount + 1);
+					totalQueueLatency += now - check.scheduleTime;
+					run(check);
+				}
+			}
+
+			try {
+				if (nextDueTime != Long.MAX_VALUE)
+					wait(nextDueTime - now);
+				else
+					wait();
+			} catch (InterruptedException ignored) {
+			}
+		}
+	}
+
+	private void run(PendingCheck check) {
+		executorService.execute(() -> {
+			try {
+				check.checker.check(check.sourceUpdated, check.updateBuildCommit);
+			} catch (Exception e) {
+				logger.error("Error checking pull request", e);
+			} finally {
+				synchronized (PullRequestCheckScheduler.this) {
+					runningRequestIds.remove(check.requestId);
+					int runningCount = runningCounts.get(check.projectId) - 1;
+					if (runningCount != 0)
+						runningCounts.put(check.projectId, runningCount);
+					else
+						runningCounts.remove(check.projectId);
+					completedChecks++;
+					PullRequestCheckScheduler.this.notify();
+				}
+			}
+		});
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		thread = new Thread(() -> {
+			synchronized (PullRequestCheckScheduler.this) {
+				dispatch();
+			}
+		});
+		thread.start();
+	}
+
+	@Listen
+	public synchronized void on(SystemStopping event) {
+		thread = null;
+		notify();
+	}
+
+	public synchronized int getPendingChecks() {
+		return pendingChecks.size();
+	}
+
+	public synchronized int getRunningChecks() {
+		return runningRequestIds.size();
+	}
+
+	public synchronized long getScheduledChecks() {
+		return scheduledChecks;
+	}
+
+	public synchronized long getCoalescedChecks() {
+		return coalescedChecks;
+	}
+
+	public synchronized long getCompletedChecks() {
+		return completedChecks;
+	}
+
+	/**
+	 * @return
+	 * 			average time in milliseconds checks waited in queue before running
+	 */
+	public synchronized long getAverageQueueLatency() {
+		long startedChecks = completedChecks + runningRequestIds.size();
+		return startedChecks != 0? totalQueueLatency / startedChecks: 0;
+	}
+
+	public static interface Checker {
+
+		void check(boolean sourceUpdated, boolean updateBuildCommit);
+
+	}
+
+	private static class PendingCheck {
+
+		final Long projectId;
+
+		final Long requestId;
+
+		final Checker checker;
+
+		boolean sourceUpdated;
+
+		boolean updateBuildCommit;
+
+		boolean urgent;
+
+		Long lastActivityDate;
+
+		long scheduleTime;
+
+		long dueTime;
+
+		PendingCheck(Long projectId, Long requestId, Checker checker) {
+			this.projectId = projectId;
+			this.requestId = requestId;
+			this.checker = checker;
+		}
+
+	}
+
+}
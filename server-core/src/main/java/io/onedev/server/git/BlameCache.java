@@ -0,0 +1,410 @@
+package io.onedev.server.git;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.bootstrap.Bootstrap;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.project.ProjectDeleted;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.git.command.BlameCommand;
+import io.onedev.server.git.command.ListLineEditsCommand;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+/**
+ * Caches full blame of files by project, commit and path, and serves blame of ranges from
+ * the cached result. Blame of a commit with single parent is derived from cached blame of
+ * the parent and diff of the file against the parent: unchanged lines keep blame of the
+ * parent, and changed lines are blamed to the commit itself. The diff is calculated by git
+ * with same options as git blame, so that both agree on changed lines. Only if derivation
+ * is not possible history is walked again with git blame, in which case blame of requested
+ * range is not cached, as it is much faster than blame of whole file. Blames of large files
+ * are also persisted in site directory with bounded size, so that blame of next commit can
+ * be derived after restart.
+ */
+@Singleton
+public class BlameCache implements SchedulableTask {
+
+	private static final Logger logger = LoggerFactory.getLogger(BlameCache.class);
+
+	private static final int MAX_MEMORY_ENTRIES = 500;
+
+	private static final int MIN_PERSIST_LINES = 200;
+
+	private static final long MAX_DISK_SIZE = 512L*1024*1024;
+
+	private final TaskScheduler taskScheduler;
+
+	private final Map<String, FileBlame> memoryCache = new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FileBlame> eldest) {
+			return size() > MAX_MEMORY_ENTRIES;
+		}
+
+	};
+
+	private long hits;
+
+	private long derives;
+
+	private long misses;
+
+	private String taskId;
+
+	@Inject
+	public BlameCache(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	protected File getCacheDir() {
+		return new File(Bootstrap.getSiteDir(), "blame-cache");
+	}
+
+	/**
+	 * Get blame of specified file. This should be called on server storing the project
+	 *
+	 * @param range
+	 * 			range of lines to blame, 0-indexed and inclusive for from and to. Blame of
+	 * 			whole file will be returned if <tt>null</tt>
+	 */
+	public Collection<BlameBlock> blame(Long projectId, Repository repository, ObjectId commitId,
+			String file, @Nullable LinearRange range) {
+		FileBlame blame = getCachedFileBlame(projectId, commitId, file);
+		if (blame != null) {
+			synchronized (this) {
+				hits++;
+			}
+			return blame.getBlocks(range);
+		}
+
+		try {
+			blame = deriveFromParent(projectId, repository, commitId, file);
+		} catch (IOException e) {
+			logger.error("Error deriving blame from parent commit", e);
+		}
+		if (blame != null) {
+			synchronized (this) {
+				derives++;
+			}
+		} else {
+			synchronized (this) {
+				misses++;
+			}
+			BlameCommand blameCommand = new BlameCommand(repository.getDirectory(), commitId, file);
+			if (range != null)
+				return blameCommand.range(range).run();
+			blame = new FileBlame(blameCommand.run());
+		}
+
+		synchronized (this) {
+			memoryCache.put(getKey(projectId, commitId, file), blame);
+		}
+		if (blame.lineCommits.length >= MIN_PERSIST_LINES)
+			write(getCacheFile(projectId, commitId, file), blame);
+		return blame.getBlocks(range);
+	}
+
+	private String getKey(Long projectId, ObjectId commitId, String file) {
+		return projectId + ":" + commitId.name() + ":" + file;
+	}
+
+	@Nullable
+	private FileBlame getCachedFileBlame(Long projectId, ObjectId commitId, String file) {
+		String key = getKey(projectId, commitId, file);
+		FileBlame blame;
+		synchronized (this) {
+			blame = memoryCache.get(key);
+		}
+		if (blame == null) {
+			blame = read(getCacheFile(projectId, commitId, file));
+			if (blame != null) synchronized (this) {
+				memoryCache.put(key, blame);
+			}
+		}
+		return blame;
+	}
+
+	@Nullable
+	private FileBlame deriveFromParent(Long projectId, Repository repository, ObjectId commitId,
+			String file) throws IOException {
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			RevCommit commit = revWalk.parseCommit(commitId);
+			// Lines of merge commit may come from any parent
+			if (commit.getParentCount() != 1)
+				return null;
+			RevCommit parent = revWalk.parseCommit(commit.getParent(0));
+			FileBlame parentBlame = getCachedFileBlame(projectId, parent, file);
+			if (parentBlame == null)
+				return null;
+
+			ObjectId blobId = getBlobId(repository, commit, file);
+			ObjectId parentBlobId = getBlobId(repository, parent, file);
+			if (blobId == null || parentBlobId == null)
+				return null;
+
+			if (blobId.equals(parentBlobId))
+				return parentBlame;
+
+			RawText parentText = new RawText(repository.open(parentBlobId).getCachedBytes());
+			if (parentText.size() != parentBlame.lineCommits.length)
+				return null;
+			RawText text = new RawText(repository.open(blobId).getCachedBytes());
+			if (RawText.isBinary(text.getRawContent()) || RawText.isBinary(parentText.getRawContent()))
+				return null;
+
+			BlameCommit blameCommit = new BlameCommit(commit.name(), commit.getCommitterIdent(),
+					commit.getAuthorIdent(), commit.getShortMessage().trim());
+			EditList edits = new ListLineEditsCommand(repository.getDirectory(), parentBlobId, blobId).run();
+			return parentBlame.derive(blameCommit, edits, text.size());
+		}
+	}
+
+	@Nullable
+	private ObjectId getBlobId(Repository repository, RevCommit commit, String file) throws IOException {
+		try (TreeWalk treeWalk = TreeWalk.forPath(repository, file, commit.getTree())) {
+			if (treeWalk != null && (treeWalk.getRawMode(0) & FileMode.TYPE_MASK) == FileMode.TYPE_FILE)
+				return treeWalk.getObjectId(0);
+			else
+				return null;
+		}
+	}
+
+	private File getCacheFile(Long projectId, ObjectId commitId, String file) {
+		return new File(getCacheDir(), projectId + "/" + commitId.name() + "-"
+				+ DigestUtils.sha1Hex(file.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Nullable
+	private FileBlame read(File file) {
+		if (file.exists()) {
+			try (ObjectInputStream is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				FileBlame blame = (FileBlame) is.readObject();
+				// Keep recently used files when cleaning up
+				file.setLastModified(System.currentTimeMillis());
+				return blame;
+			} catch (IOException | ClassNotFoundException | ClassCastException e) {
+				logger.error("Error reading blame cache file: " + file, e);
+			}
+		}
+		return null;
+	}
+
+	private void write(File file, FileBlame blame) {
+		try {
+			FileUtils.createDir(file.getParentFile());
+			File tempFile = File.createTempFile("blame", null, file.getParentFile());
+			try {
+				try (ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+					os.writeObject(blame);
+				}
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				if (tempFile.exists())
+					tempFile.delete();
+			}
+		} catch (IOException e) {
+			logger.error("Error writing blame cache file: " + file, e);
+		}
+	}
+
+	@Override
+	public void execute() {
+		File[] dirs = getCacheDir().listFiles();
+		if (dirs == null)
+			return;
+		List<File> files = new ArrayList<>();
+		long diskSize = 0;
+		for (File dir: dirs) {
+			File[] filesInDir = dir.listFiles();
+			if (filesInDir != null) {
+				for (File file: filesInDir) {
+					files.add(file);
+					diskSize += file.length();
+				}
+			}
+		}
+		if (diskSize > MAX_DISK_SIZE) {
+			// Remove least recently used files until disk size drops below 3/4 of the limit
+			files.sort(Comparator.comparingLong(File::lastModified));
+			for (File file: files) {
+				if (diskSize <= MAX_DISK_SIZE*3/4)
+					break;
+				long length = file.length();
+				if (file.delete())
+					diskSize -= length;
+			}
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.repeatHourlyForever();
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+	}
+
+	@Listen
+	public void on(ProjectDeleted event) {
+		String prefix = event.getProjectId() + ":";
+		synchronized (this) {
+			for (Iterator<String> it = memoryCache.keySet().iterator(); it.hasNext();) {
+				if (it.next().startsWith(prefix))
+					it.remove();
+			}
+		}
+		FileUtils.deleteDir(new File(getCacheDir(), String.valueOf(event.getProjectId())));
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getDerives() {
+		return derives;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	static class FileBlame implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final List<BlameCommit> commits;
+
+		// Index into commits for each line of the file
+		final int[] lineCommits;
+
+		FileBlame(List<BlameCommit> commits, int[] lineCommits) {
+			this.commits = commits;
+			this.lineCommits = lineCommits;
+		}
+
+		FileBlame(Collection<BlameBlock> blocks) {
+			commits = new ArrayList<>();
+			int lineCount = 0;
+			for (BlameBlock block: blocks) {
+				for (LinearRange range: block.getRanges())
+					lineCount = Math.max(lineCount, range.getTo() + 1);
+			}
+			lineCommits = new int[lineCount];
+			for (BlameBlock block: blocks) {
+				for (LinearRange range: block.getRanges()) {
+					for (int line = range.getFrom(); line <= range.getTo(); line++)
+						lineCommits[line] = commits.size();
+				}
+				commits.add(block.getCommit());
+			}
+		}
+
+		FileBlame derive(BlameCommit commit, EditList edits, int lineCount) {
+			int[] derivedLineCommits = new int[lineCount];
+			int oldLine = 0;
+			int newLine = 0;
+			for (Edit edit: edits) {
+				while (newLine < edit.getBeginB())
+					derivedLineCommits[newLine++] = lineCommits[oldLine++];
+				while (newLine < edit.getEndB())
+					derivedLineCommits[newLine++] = -1;
+				oldLine = edit.getEndA();
+			}
+			while (newLine < lineCount)
+				derivedLineCommits[newLine++] = lineCommits[oldLine++];
+
+			// Only keep commits still referenced by lines
+			List<BlameCommit> derivedCommits = new ArrayList<>();
+			Map<Integer, Integer> indexes = new LinkedHashMap<>();
+			for (int i=0; i<lineCount; i++) {
+				int index = derivedLineCommits[i];
+				Integer derivedIndex = indexes.get(index);
+				if (derivedIndex == null) {
+					derivedIndex = derivedCommits.size();
+					derivedCommits.add(index != -1? commits.get(index): commit);
+					indexes.put(index, derivedIndex);
+				}
+				derivedLineCommits[i] = derivedIndex;
+			}
+			return new FileBlame(derivedCommits, derivedLineCommits);
+		}
+
+		Collection<BlameBlock> getBlocks(@Nullable LinearRange range) {
+			int from = 0;
+			int to = lineCommits.length - 1;
+			if (range != null) {
+				from = Math.max(from, range.getFrom());
+				to = Math.min(to, range.getTo());
+			}
+			Map<Integer, BlameBlock> blocks = new LinkedHashMap<>();
+			int begin = from;
+			for (int line = from; line <= to; line++) {
+				if (line == to || lineCommits[line+1] != lineCommits[line]) {
+					int index = lineCommits[line];
+					BlameBlock block = blocks.get(index);
+					if (block == null) {
+						block = new BlameBlock(commits.get(index), new ArrayList<>());
+						blocks.put(index, block);
+					}
+					block.getRanges().add(new LinearRange(begin, line));
+					begin = line + 1;
+				}
+			}
+			return new ArrayList<>(blocks.values());
+		}
+
+	}
+
+}
@@ -17,6 +17,7 @@ import org.eclipse.jgit.lib.ObjectId;
 import com.google.common.base.Preconditions;
 
 import io.onedev.commons.utils.PlanarRange;
+import io.onedev.server.OneDev;
 import io.onedev.server.codequality.CodeProblem;
 import io.onedev.server.codequality.CoverageStatus;
 import io.onedev.server.model.CodeComment;
@@ -24,6 +25,7 @@ import io.onedev.server.model.Project;
 import io.onedev.server.model.support.Mark;
 import io.onedev.server.util.Pair;
 import io.onedev.server.util.diff.DiffBlock;
+import io.onedev.server.util.diff.DiffCache;
 import io.onedev.server.util.diff.DiffMatchPatch.Operation;
 import io.onedev.server.util.diff.DiffUtils;
 import io.onedev.server.util.diff.WhitespaceOption;
@@ -102,10 +104,12 @@ public abstract class BlobChange implements Serializable {
 					if (getOldText() != null && getNewText() != null) {
 						List<String> oldLines = getOldText().getLines();
 						List<String> newLines = getNewText().getLines();
-						if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) 
-							diffBlocks = DiffUtils.diff(oldLines, newLines, whitespaceOption);
-						else 
+						if (oldLines.size() + newLines.size() <= DiffUtils.MAX_DIFF_SIZE) {
+							diffBlocks = OneDev.getInstance(DiffCache.class).diff(getOldBlob().getBlobId(), 
+									oldLines, getNewBlob().getBlobId(), newLines, whitespaceOption);
+						} else {
 							diffBlocks = new ArrayList<>();
+						}
 					} else {
 						diffBlocks = new ArrayList<>();
 					}
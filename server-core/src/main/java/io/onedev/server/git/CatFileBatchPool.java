@@ -0,0 +1,231 @@
+package io.onedev.server.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.project.ProjectDeleted;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.git.command.CatFileBatch;
+import io.onedev.server.git.command.CatFileBatch.GitObject;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+/**
+ * Pool of <tt>git cat-file --batch</tt> processes, keyed by repository and git
+ * environments. Idle processes are reused to read objects, and are closed if idle or
+ * alive for too long, so that they do not hold pack files removed by gc for long.
+ */
+@Singleton
+public class CatFileBatchPool implements SchedulableTask {
+
+	private static final int MAX_IDLE_PER_KEY = 4;
+
+	private static final int MAX_IDLE = 64;
+
+	private static final long MAX_IDLE_TIME = 30000;
+
+	private static final long MAX_LIFE_TIME = 300000;
+
+	private static final int CHECK_INTERVAL = 15; // in seconds
+
+	private final ProjectManager projectManager;
+
+	private final TaskScheduler taskScheduler;
+
+	private final Map<String, Deque<CatFileBatch>> idleBatches = new HashMap<>();
+
+	private int idleCount;
+
+	private int activeCount;
+
+	private long reuses;
+
+	private String taskId;
+
+	@Inject
+	public CatFileBatchPool(ProjectManager projectManager, TaskScheduler taskScheduler) {
+		this.projectManager = projectManager;
+		this.taskScheduler = taskScheduler;
+	}
+
+	private String getKey(File gitDir, Map<String, String> envs) {
+		return gitDir.getAbsolutePath() + ":" + new TreeMap<>(envs);
+	}
+
+	/**
+	 * Read specified object of specified repository via a pooled cat-file process
+	 *
+	 * @return
+	 * 			read object, or <tt>null</tt> if object does not exist
+	 */
+	@Nullable
+	public GitObject read(File gitDir, Map<String, String> envs, String revision) {
+		long time = System.currentTimeMillis();
+		String key = getKey(gitDir, envs);
+		CatFileBatch batch = null;
+		synchronized (this) {
+			Deque<CatFileBatch> batches = idleBatches.get(key);
+			if (batches != null) {
+				batch = batches.pollFirst();
+				if (batches.isEmpty())
+					idleBatches.remove(key);
+				if (batch != null) {
+					idleCount--;
+					reuses++;
+				}
+			}
+			activeCount++;
+		}
+		boolean forked = false;
+		try {
+			// A pooled process may have exited, retry with a new process in this case
+			for (int i=0; ; i++) {
+				if (batch == null || !batch.isAlive()) {
+					if (batch != null)
+						batch.close();
+					batch = new CatFileBatch(gitDir, envs);
+					forked = true;
+				}
+				try {
+					GitObject object = batch.read(revision);
+					release(key, batch);
+					batch = null;
+					return object;
+				} catch (IOException e) {
+					batch.close();
+					batch = null;
+					if (i != 0)
+						throw new RuntimeException(e);
+				}
+			}
+		} finally {
+			if (batch != null)
+				batch.close();
+			synchronized (this) {
+				activeCount--;
+			}
+			if (forked)
+				GitCommandMetrics.recordForked("cat-file --batch", time);
+			else
+				GitCommandMetrics.record("cat-file --batch (pooled)", time);
+		}
+	}
+
+	private void release(String key, CatFileBatch batch) {
+		synchronized (this) {
+			if (System.currentTimeMillis() - batch.getCreateTime() < MAX_LIFE_TIME && idleCount < MAX_IDLE) {
+				Deque<CatFileBatch> batches = idleBatches.computeIfAbsent(key, k -> new ArrayDeque<>());
+				if (batches.size() < MAX_IDLE_PER_KEY) {
+					// Most recently used process first so that others become idle and get closed
+					batches.addFirst(batch);
+					idleCount++;
+					return;
+				}
+			}
+		}
+		batch.close();
+	}
+
+	private void close(Collection<CatFileBatch> batches) {
+		for (CatFileBatch batch: batches)
+			batch.close();
+	}
+
+	@Override
+	public void execute() {
+		long now = System.currentTimeMillis();
+		Collection<CatFileBatch> batchesToClose = new ArrayList<>();
+		synchronized (this) {
+			for (Iterator<Deque<CatFileBatch>> it = idleBatches.values().iterator(); it.hasNext();) {
+				Deque<CatFileBatch> batches = it.next();
+				for (Iterator<CatFileBatch> itBatch = batches.iterator(); itBatch.hasNext();) {
+					CatFileBatch batch = itBatch.next();
+					if (now - batch.getLastUseTime() > MAX_IDLE_TIME
+							|| now - batch.getCreateTime() > MAX_LIFE_TIME
+							|| !batch.isAlive()) {
+						itBatch.remove();
+						idleCount--;
+						batchesToClose.add(batch);
+					}
+				}
+				if (batches.isEmpty())
+					it.remove();
+			}
+		}
+		close(batchesToClose);
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.repeatSecondlyForever(CHECK_INTERVAL);
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+		Collection<CatFileBatch> batchesToClose = new ArrayList<>();
+		synchronized (this) {
+			for (Deque<CatFileBatch> batches: idleBatches.values())
+				batchesToClose.addAll(batches);
+			idleBatches.clear();
+			idleCount = 0;
+		}
+		close(batchesToClose);
+	}
+
+	@Listen
+	public void on(ProjectDeleted event) {
+		// Do not call getGitDir here as it creates the directory
+		File gitDir = new File(projectManager.getStorageDir(event.getProjectId()), "git");
+		String prefix = gitDir.getAbsolutePath() + ":";
+		Collection<CatFileBatch> batchesToClose = new ArrayList<>();
+		synchronized (this) {
+			for (Iterator<Map.Entry<String, Deque<CatFileBatch>>> it = idleBatches.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<String, Deque<CatFileBatch>> entry = it.next();
+				if (entry.getKey().startsWith(prefix)) {
+					it.remove();
+					idleCount -= entry.getValue().size();
+					batchesToClose.addAll(entry.getValue());
+				}
+			}
+		}
+		close(batchesToClose);
+	}
+
+	public synchronized int getIdleProcesses() {
+		return idleCount;
+	}
+
+	public synchronized int getActiveProcesses() {
+		return activeCount;
+	}
+
+	public synchronized long getReuses() {
+		return reuses;
+	}
+
+}
@@ -25,6 +25,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -44,6 +47,22 @@ public class CommandUtils {
 		return cmdline;
 	}
 	
+	/**
+	 * Create builder of long-running git helper process, whose input and output is 
+	 * accessed directly instead of via {@link Commandline}
+	 */
+	public static ProcessBuilder newGitProcess(File workingDir, Map<String, String> environments, 
+			String... args) {
+		List<String> command = new ArrayList<>();
+		command.add(OneDev.getInstance(GitLocation.class).getExecutable());
+		command.addAll(Arrays.asList(args));
+		ProcessBuilder builder = new ProcessBuilder(command).directory(workingDir);
+		if (SystemUtils.IS_OS_MAC_OSX) 
+			builder.environment().put("PATH", System.getenv("PATH") + ":/usr/local/bin");
+		builder.environment().putAll(environments);
+		return builder;
+	}
+	
 	public static <T> T callWithClusterCredential(GitTask<T> task) {
 		File homeDir = FileUtils.createTempDir("githome"); 
 		
@@ -0,0 +1,76 @@
+package io.onedev.server.git;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of git commands run on current server, and counts of git processes
+ * forked for them.
+ */
+public class GitCommandMetrics {
+
+	/**
+	 * Upper bounds in milliseconds of latency histogram buckets. The last bucket
+	 * of histogram counts commands taking longer than the last bound
+	 */
+	public static final long[] LATENCY_BUCKETS = new long[] {10, 25, 50, 100, 250, 500, 1000, 5000};
+
+	private static final Map<String, AtomicLongArray> latencyHistograms = new ConcurrentHashMap<>();
+
+	private static final AtomicLong forkedProcesses = new AtomicLong();
+
+	/**
+	 * Record a git command run by forking a new git process
+	 *
+	 * @param command
+	 * 			name of the command
+	 * @param startTime
+	 * 			time in milliseconds when the command was started
+	 */
+	public static void recordForked(String command, long startTime) {
+		forkedProcesses.incrementAndGet();
+		record(command, startTime);
+	}
+
+	/**
+	 * Record a git command served without forking a new git process
+	 *
+	 * @param command
+	 * 			name of the command
+	 * @param startTime
+	 * 			time in milliseconds when the command was started
+	 */
+	public static void record(String command, long startTime) {
+		long latency = System.currentTimeMillis() - startTime;
+		var histogram = latencyHistograms.computeIfAbsent(command,
+				k -> new AtomicLongArray(LATENCY_BUCKETS.length + 1));
+		int bucket = 0;
+		while (bucket < LATENCY_BUCKETS.length && latency > LATENCY_BUCKETS[bucket])
+			bucket++;
+		histogram.incrementAndGet(bucket);
+	}
+
+	public static long getForkedProcesses() {
+		return forkedProcesses.get();
+	}
+
+	/**
+	 * @return
+	 * 			map of command name to count of runs falling into each bucket of
+	 * 			{@link #LATENCY_BUCKETS}
+	 */
+	public static Map<String, long[]> getLatencyHistograms() {
+		Map<String, long[]> histograms = new TreeMap<>();
+		for (var entry: latencyHistograms.entrySet()) {
+			long[] histogram = new long[entry.getValue().length()];
+			for (int i=0; i<histogram.length; i++)
+				histogram[i] = entry.getValue().get(i);
+			histograms.put(entry.getKey(), histogram);
+		}
+		return histograms;
+	}
+
+}
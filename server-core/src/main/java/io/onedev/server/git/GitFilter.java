@@ -3,7 +3,9 @@ package io.onedev.server.git;
 import com.google.common.base.Preconditions;
 import io.onedev.k8shelper.KubernetesHelper;
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.exception.ServerNotReadyException;
 import io.onedev.server.git.command.AdvertiseReceiveRefsCommand;
@@ -50,6 +52,8 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 import static io.onedev.commons.bootstrap.Bootstrap.BUFFER_SIZE;
+import static io.onedev.server.util.IOUtils.PUMP_BUFFER_SIZE;
+import static io.onedev.server.util.IOUtils.pump;
 
 @Singleton
 public class GitFilter implements Filter {
@@ -70,17 +74,23 @@ public class GitFilter implements Filter {
 	
 	private final ClusterManager clusterManager;
 	
+	private final ClusterTransport clusterTransport;
+	
+	private final UploadPackCache uploadPackCache;
+	
 	private final Set<CodePullAuthorizationSource> codePullAuthorizationSources;
 	
 	@Inject
 	public GitFilter(OneDev oneDev, ProjectManager projectManager, WorkExecutor workExecutor, 
-					 SessionManager sessionManager, ClusterManager clusterManager, 
-					 Set<CodePullAuthorizationSource> codePullAuthorizationSources) {
+					 SessionManager sessionManager, ClusterManager clusterManager, ClusterTransport clusterTransport, 
+					 UploadPackCache uploadPackCache, Set<CodePullAuthorizationSource> codePullAuthorizationSources) {
 		this.onedev = oneDev;
 		this.projectManager = projectManager;
 		this.workExecutor = workExecutor;
 		this.sessionManager = sessionManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
+		this.uploadPackCache = uploadPackCache;
 		this.codePullAuthorizationSources = codePullAuthorizationSources;
 	}
 	
@@ -175,7 +185,7 @@ public class GitFilter implements Filter {
 						
 						@Override
 						public void run() {
-							CommandUtils.uploadPack(gitDir, hookEnvs, protocol, stdin, stdout);
+							uploadPackCache.uploadPack(projectId, gitDir, hookEnvs, protocol, stdin, stdout);
 						}
 						
 					}).get();
@@ -190,11 +200,11 @@ public class GitFilter implements Filter {
 					}).get();
 				}
 			} else {
-				Client client = ClientBuilder.newClient();
-				client.property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
+				ClusterConnection connection = clusterTransport.connect(activeServer);
+				connection.target().property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
+				connection.target().property(ClientProperties.CHUNKED_ENCODING_SIZE, PUMP_BUFFER_SIZE);
 				try {
-					String serverUrl = clusterManager.getServerUrl(activeServer);
-					WebTarget target = client.target(serverUrl)
+					WebTarget target = connection.target()
 							.path("~api/cluster/git-pack")
 							.queryParam("projectId", projectId)
 							.queryParam("userId", userId)
@@ -206,12 +216,7 @@ public class GitFilter implements Filter {
 					
 					StreamingOutput os = output -> {
 						try {
-							byte[] buffer = new byte[BUFFER_SIZE];
-							int length;
-							while ((length = stdin.read(buffer)) > 0) {
-								output.write(buffer, 0, length);
-								output.flush();
-							}
+							pump(stdin, output);
 						} finally {
 							stdin.close();
 						}
@@ -220,18 +225,13 @@ public class GitFilter implements Filter {
 					try (Response gitResponse = builder.post(Entity.entity(os, MediaType.APPLICATION_OCTET_STREAM))) {
 						KubernetesHelper.checkStatus(gitResponse);
 						try (InputStream is = gitResponse.readEntity(InputStream.class)) {
-							byte[] buffer = new byte[BUFFER_SIZE];
-					        int length;
-				            while ((length = is.read(buffer)) > 0) {
-			            		stdout.write(buffer, 0, length);
-			            		stdout.flush();
-				            }
+							pump(is, stdout);
 						} finally {
 							stdout.close();
 						}
 					}
 				} finally {
-					client.close();
+					connection.close();
 				}
 			}
 		} else {
@@ -240,7 +240,7 @@ public class GitFilter implements Filter {
 				// Run immediately if accessed with cluster credential to avoid 
 				// possible deadlock as caller itself might also hold some 
 				// resources (db connections, work executors etc) 
-				CommandUtils.uploadPack(gitDir, hookEnvs, protocol, stdin, stdout);
+				uploadPackCache.uploadPack(projectId, gitDir, hookEnvs, protocol, stdin, stdout);
 			} else {
 				// Run immediately. See above for reason
 				CommandUtils.receivePack(gitDir, hookEnvs, protocol, stdin, stdout);
@@ -322,10 +322,9 @@ public class GitFilter implements Filter {
 			else 
 				new AdvertiseReceiveRefsCommand(gitDir, output).protocol(protocol).run();
 		} else {
-			Client client = ClientBuilder.newClient();
+			ClusterConnection connection = clusterTransport.connect(activeServer);
 			try {
-				String serverUrl = clusterManager.getServerUrl(activeServer);
-				WebTarget target = client.target(serverUrl)
+				WebTarget target = connection.target()
 						.path("~api/cluster/git-advertise-refs")
 						.queryParam("projectId", projectId)
 						.queryParam("protocol", protocol)
@@ -342,7 +341,7 @@ public class GitFilter implements Filter {
 					}
 				}
 			} finally {
-				client.close();
+				connection.close();
 			}
 		}
 	}
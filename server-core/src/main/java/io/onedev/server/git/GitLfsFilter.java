@@ -5,7 +5,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.hash.HashingInputStream;
 import io.onedev.k8shelper.KubernetesHelper;
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.GitLfsLockManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
@@ -17,9 +19,11 @@ import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.dao.EntityCriteria;
 import io.onedev.server.security.CodePullAuthorizationSource;
 import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.util.IOUtils;
+import io.onedev.server.util.LongRange;
 import io.onedev.server.util.facade.ProjectFacade;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
@@ -37,6 +41,7 @@ import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
@@ -46,6 +51,7 @@ import static com.google.common.hash.Hashing.sha256;
 import static io.onedev.commons.bootstrap.Bootstrap.BUFFER_SIZE;
 import static io.onedev.k8shelper.KubernetesHelper.BEARER;
 import static io.onedev.server.util.CollectionUtils.newHashMap;
+import static io.onedev.server.util.HttpRangeUtils.*;
 import static javax.servlet.http.HttpServletResponse.*;
 import static javax.ws.rs.core.HttpHeaders.AUTHORIZATION;
 import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
@@ -75,18 +81,24 @@ public class GitLfsFilter implements Filter {
 	
 	private final ClusterManager clusterManager;
 	
+	private final ClusterTransport clusterTransport;
+	
+	private final LfsObjectCache lfsObjectCache;
+	
 	private final Set<CodePullAuthorizationSource> codePullAuthorizationSources;
 	
 	@Inject
 	public GitLfsFilter(ProjectManager projectManager, ObjectMapper objectMapper, SessionManager sessionManager, 
-			SettingManager settingManager, GitLfsLockManager lockManager, ClusterManager clusterManager,
-			Set<CodePullAuthorizationSource> codePullAuthorizationSources) {
+			SettingManager settingManager, GitLfsLockManager lockManager, ClusterManager clusterManager, ClusterTransport clusterTransport,
+			LfsObjectCache lfsObjectCache, Set<CodePullAuthorizationSource> codePullAuthorizationSources) {
 		this.projectManager = projectManager;
 		this.objectMapper = objectMapper;
 		this.sessionManager = sessionManager;
 		this.settingManager = settingManager;
 		this.lockManager = lockManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
+		this.lfsObjectCache = lfsObjectCache;
 		this.codePullAuthorizationSources = codePullAuthorizationSources;
 	}
 	
@@ -120,6 +132,31 @@ public class GitLfsFilter implements Filter {
 		return StringUtils.substringBeforeLast(pathInfo, ".git/");
 	}
 	
+	/**
+	 * Set status and headers of response to send content of specified length, honoring 
+	 * range requested by client if any
+	 * 
+	 * @return
+	 * 			range of content to send, or <tt>null</tt> if there is nothing to send
+	 */
+	@Nullable
+	private LongRange prepareContent(HttpServletRequest request, HttpServletResponse response, long length) {
+		// LFS objects are immutable, so If-Range validator always matches
+		LongRange range = parseRange(request.getHeader(RANGE), length);
+		if (range == null) {
+			range = new LongRange(0, length - 1);
+		} else if (!isSatisfiable(range, length)) {
+			response.setStatus(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader(CONTENT_RANGE, getUnsatisfiedContentRange(length));
+			return null;
+		} else {
+			response.setStatus(SC_PARTIAL_CONTENT);
+			response.setHeader(CONTENT_RANGE, getContentRange(range, length));
+		}
+		response.setContentLengthLong(range.getEnd() - range.getStart() + 1);
+		return range.getEnd() >= range.getStart()? range: null;
+	}
+	
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
 			throws IOException, ServletException {
@@ -153,33 +190,59 @@ public class GitLfsFilter implements Filter {
 
 				if (lfsObject != null) {
 					httpResponse.setContentType(OCTET_STREAM);
+					httpResponse.setHeader(ACCEPT_RANGES, "bytes");
 					String activeServer = projectManager.getActiveServer(lfsObject.getProjectId(), true);
 					if (activeServer.equals(clusterManager.getLocalServerAddress())) {
-						try (
-								InputStream is = lfsObject.getInputStream();
-								OutputStream os = httpResponse.getOutputStream()) {
-							IOUtils.copy(is, os, BUFFER_SIZE);
-						}
+						LongRange range = prepareContent(httpRequest, httpResponse, lfsObject.getLength());
+						if (range != null)
+							lfsObject.transferTo(httpResponse.getOutputStream(), range);
 					} else {
-						Client client = ClientBuilder.newClient();
-						try {
-							String serverUrl = clusterManager.getServerUrl(activeServer);
-							WebTarget target = client.target(serverUrl)
-									.path("~api/cluster/lfs")
-									.queryParam("projectId", lfsObject.getProjectId())
-									.queryParam("objectId", lfsObject.getObjectId());
-							Invocation.Builder builder =  target.request();
-							builder.header(AUTHORIZATION, BEARER + " " + clusterManager.getCredential());
-							try (Response lfsResponse = builder.get()){
-								KubernetesHelper.checkStatus(lfsResponse);
-								try (
-										InputStream is = lfsResponse.readEntity(InputStream.class);
-										OutputStream os = httpResponse.getOutputStream()) {
-									IOUtils.copy(is, os, BUFFER_SIZE);
+						FileChannel cachedChannel = lfsObjectCache.open(lfsObject.getProjectId(), lfsObject.getObjectId());
+						if (cachedChannel != null) {
+							try (cachedChannel) {
+								LongRange range = prepareContent(httpRequest, httpResponse, cachedChannel.size());
+								if (range != null)
+									IOUtils.transferRange(cachedChannel, httpResponse.getOutputStream(), range);
+							}
+						} else {
+							ClusterConnection connection = clusterTransport.connect(activeServer);
+							try {
+								WebTarget target = connection.target()
+										.path("~api/cluster/lfs")
+										.queryParam("projectId", lfsObject.getProjectId())
+										.queryParam("objectId", lfsObject.getObjectId());
+								Invocation.Builder builder =  target.request();
+								builder.header(AUTHORIZATION, BEARER + " " + clusterManager.getCredential());
+								if (httpRequest.getHeader(RANGE) != null)
+									builder.header(RANGE, httpRequest.getHeader(RANGE));
+								try (Response lfsResponse = builder.get()){
+									if (lfsResponse.getStatus() != SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+										KubernetesHelper.checkStatus(lfsResponse);
+									httpResponse.setStatus(lfsResponse.getStatus());
+									if (lfsResponse.getHeaderString(CONTENT_RANGE) != null)
+										httpResponse.setHeader(CONTENT_RANGE, lfsResponse.getHeaderString(CONTENT_RANGE));
+									if (lfsResponse.getLength() != -1)
+										httpResponse.setContentLengthLong(lfsResponse.getLength());
+									if (lfsResponse.getStatus() != SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+										// Only populate cache with complete object to avoid transferring 
+										// the same object from active server again when it is hot
+										OutputStream fillStream = null;
+										if (lfsResponse.getStatus() == SC_OK) {
+											fillStream = lfsObjectCache.newFillStream(lfsObject.getProjectId(),
+													lfsObject.getObjectId(), lfsResponse.getLength());
+										}
+										try (
+												InputStream is = lfsResponse.readEntity(InputStream.class);
+												OutputStream os = fillStream != null
+														? new TeeOutputStream(httpResponse.getOutputStream(), fillStream)
+														: httpResponse.getOutputStream()) {
+											IOUtils.copy(is, os, BUFFER_SIZE);
+										}
+									}
 								}
+							} finally {
+								connection.close();
 							}
-						} finally {
-							client.close();
 						}
 					}
 				}
@@ -213,11 +276,10 @@ public class GitLfsFilter implements Filter {
 								hash.set(Hex.encodeHexString(is.hash().asBytes()));
 							}
 						} else {
-							Client client = ClientBuilder.newClient();
-							client.property(REQUEST_ENTITY_PROCESSING, "CHUNKED");
+							ClusterConnection connection = clusterTransport.connect(activeServer);
+							connection.target().property(REQUEST_ENTITY_PROCESSING, "CHUNKED");
 							try {
-								String serverUrl = clusterManager.getServerUrl(activeServer);
-								WebTarget target = client.target(serverUrl)
+								WebTarget target = connection.target()
 										.path("~api/cluster/lfs")
 										.queryParam("projectId", lfsObject.getProjectId())
 										.queryParam("objectId", lfsObject.getObjectId());
@@ -239,7 +301,7 @@ public class GitLfsFilter implements Filter {
 									KubernetesHelper.checkStatus(lfsResponse);
 								}
 							} finally {
-								client.close();
+								connection.close();
 							}
 						}
 					} finally {
@@ -10,6 +10,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 
@@ -21,6 +24,8 @@ import io.onedev.server.OneDev;
 import io.onedev.server.cluster.ClusterTask;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.util.ContentDetector;
+import io.onedev.server.util.IOUtils;
+import io.onedev.server.util.LongRange;
 import org.jetbrains.annotations.NotNull;
 
 public class LfsObject implements Serializable {
@@ -106,6 +111,32 @@ public class LfsObject implements Serializable {
 		}
 	}
 	
+	public long getLength() {
+		Lock readLock = getLock().readLock();
+		readLock.lock();
+		try {
+			File file = getFile();
+			if (!file.exists())
+				throw new RuntimeException(new NoSuchFileException(file.getAbsolutePath()));
+			return file.length();
+		} finally {
+			readLock.unlock();
+		}
+	}
+	
+	/**
+	 * Transfer specified range of this object to output stream via file channel 
+	 */
+	public void transferTo(OutputStream os, LongRange range) throws IOException {
+		Lock readLock = getLock().readLock();
+		readLock.lock();
+		try (FileChannel channel = FileChannel.open(getFile().toPath(), StandardOpenOption.READ)) {
+			IOUtils.transferRange(channel, os, range);
+		} finally {
+			readLock.unlock();
+		}
+	}
+	
 	public OutputStream getOutputStream() {
 		Lock writeLock = getLock().writeLock();
 		writeLock.lock();
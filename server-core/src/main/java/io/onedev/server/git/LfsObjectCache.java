@@ -0,0 +1,212 @@
+package io.onedev.server.git;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.onedev.commons.bootstrap.Bootstrap;
+import io.onedev.commons.utils.FileUtils;
+
+/**
+ * Read-through cache of LFS objects on servers not being active server of the project,
+ * so that hot objects do not need to be transferred from active server for every
+ * download. Objects are content addressed and immutable, and are only put into cache
+ * after their SHA-256 hash is verified against object id. Least recently used objects
+ * are evicted once total size exceeds the limit.
+ */
+@Singleton
+public class LfsObjectCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(LfsObjectCache.class);
+
+	private static final long MAX_CACHE_SIZE = 2L*1024*1024*1024;
+
+	private static final long MAX_OBJECT_SIZE = MAX_CACHE_SIZE / 8;
+
+	private final Map<String, Long> objectSizes = new LinkedHashMap<>(16, 0.75f, true);
+
+	private File cacheDir;
+
+	private long cacheSize;
+
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	private synchronized File getCacheDir() {
+		if (cacheDir == null) {
+			cacheDir = new File(Bootstrap.getTempDir(), "lfs-cache");
+			// Cached objects are not tracked across restarts
+			FileUtils.cleanDir(cacheDir);
+		}
+		return cacheDir;
+	}
+
+	private String getKey(Long projectId, String objectId) {
+		return projectId + "-" + objectId;
+	}
+
+	/**
+	 * Open cached content of specified object
+	 *
+	 * @return
+	 * 			channel of cached content, or <tt>null</tt> if object is not cached
+	 */
+	@Nullable
+	public synchronized FileChannel open(Long projectId, String objectId) {
+		String key = getKey(projectId, objectId);
+		if (objectSizes.get(key) != null) {
+			try {
+				FileChannel channel = FileChannel.open(new File(getCacheDir(), key).toPath(), StandardOpenOption.READ);
+				hits++;
+				return channel;
+			} catch (NoSuchFileException e) {
+				cacheSize -= objectSizes.remove(key);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Get a stream to fill cache with content of specified object read from active server.
+	 * Content written to the stream is only added to cache if the stream is closed with
+	 * all content written and hash of the content matches object id
+	 *
+	 * @param length
+	 * 			length of object content, <tt>-1</tt> if unknown
+	 * @return
+	 * 			stream to fill cache, or <tt>null</tt> if object should not be cached
+	 */
+	@Nullable
+	public OutputStream newFillStream(Long projectId, String objectId, long length) {
+		if (length < 0 || length > MAX_OBJECT_SIZE)
+			return null;
+		String key = getKey(projectId, objectId);
+		synchronized (this) {
+			if (objectSizes.containsKey(key))
+				return null;
+		}
+		File tempFile;
+		OutputStream os;
+		try {
+			tempFile = File.createTempFile("." + key, ".filling", getCacheDir());
+			os = new BufferedOutputStream(new FileOutputStream(tempFile));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		Hasher hasher = Hashing.sha256().newHasher();
+		return new FilterOutputStream(os) {
+
+			private long written;
+
+			private boolean closed;
+
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				hasher.putByte((byte) b);
+				written++;
+			}
+
+			@Override
+			public void write(@NotNull byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				hasher.putBytes(b, off, len);
+				written += len;
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (closed)
+					return;
+				closed = true;
+				try {
+					super.close();
+				} catch (IOException e) {
+					FileUtils.deleteFile(tempFile);
+					throw e;
+				}
+				if (written == length && Hex.encodeHexString(hasher.hash().asBytes()).equals(objectId))
+					put(key, tempFile, length);
+				else
+					FileUtils.deleteFile(tempFile);
+			}
+
+		};
+	}
+
+	private void put(String key, File tempFile, long length) {
+		synchronized (this) {
+			if (!objectSizes.containsKey(key)) {
+				try {
+					Files.move(tempFile.toPath(), new File(getCacheDir(), key).toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException e) {
+					logger.error("Error caching LFS object", e);
+					FileUtils.deleteFile(tempFile);
+					return;
+				}
+				objectSizes.put(key, length);
+				cacheSize += length;
+				for (Iterator<Map.Entry<String, Long>> it = objectSizes.entrySet().iterator();
+						it.hasNext() && cacheSize > MAX_CACHE_SIZE;) {
+					Map.Entry<String, Long> entry = it.next();
+					it.remove();
+					cacheSize -= entry.getValue();
+					evictions++;
+					// Channels opened for serving are not affected on Linux and Mac. On
+					// Windows the file can not be deleted if opened and will be cleaned
+					// on next startup
+					if (!new File(getCacheDir(), entry.getKey()).delete())
+						logger.debug("Unable to delete evicted LFS cache file: " + entry.getKey());
+				}
+				return;
+			}
+		}
+		FileUtils.deleteFile(tempFile);
+	}
+
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+}
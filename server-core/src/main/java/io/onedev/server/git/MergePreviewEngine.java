@@ -0,0 +1,332 @@
+package io.onedev.server.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import javax.annotation.Nullable;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.DeletePath;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.merge.Merger;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.project.ProjectDeleted;
+
+/**
+ * Calculates merge previews of pull requests in memory. Merged trees are cached by trees
+ * of merge base, target and source, so that identical merges are not calculated again.
+ * When target branch moves while source branch stays, previous merged tree is reused if
+ * new target changes do not touch any file changed in the pull request: changed entries
+ * are applied to previous merged tree, and only the modified trees and the merge commit
+ * are written to repository.
+ */
+@Singleton
+public class MergePreviewEngine {
+
+	private static final int MAX_MERGED_TREES = 10000;
+
+	private static final int MAX_LAST_MERGES = 1000;
+
+	private final Map<String, Optional<ObjectId>> mergedTrees = new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Optional<ObjectId>> eldest) {
+			return size() > MAX_MERGED_TREES;
+		}
+
+	};
+
+	private final Map<String, LastMerge> lastMerges = new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LastMerge> eldest) {
+			return size() > MAX_LAST_MERGES;
+		}
+
+	};
+
+	private long hits;
+
+	private long reuses;
+
+	private long misses;
+
+	/**
+	 * Merge source commit into target commit
+	 *
+	 * @return
+	 * 			id of merged commit, or <tt>null</tt> if there are conflicts
+	 */
+	@Nullable
+	public ObjectId merge(Long projectId, Repository repository, ObjectId targetCommitId,
+			ObjectId sourceCommitId, boolean squash, PersonIdent committer, PersonIdent author,
+			String commitMessage) {
+		try (	RevWalk revWalk = new RevWalk(repository);
+				ObjectInserter inserter = repository.newObjectInserter()) {
+			RevCommit sourceCommit = revWalk.parseCommit(sourceCommitId);
+			RevCommit targetCommit = revWalk.parseCommit(targetCommitId);
+
+			ObjectId mergedTreeId = mergeTree(projectId, repository, revWalk, inserter, targetCommit, sourceCommit);
+			if (mergedTreeId != null) {
+				CommitBuilder mergedCommit = new CommitBuilder();
+				mergedCommit.setAuthor(author);
+				mergedCommit.setCommitter(committer);
+				if (squash)
+					mergedCommit.setParentId(targetCommit);
+				else
+					mergedCommit.setParentIds(targetCommit, sourceCommit);
+				mergedCommit.setMessage(commitMessage);
+				mergedCommit.setTreeId(mergedTreeId);
+				ObjectId mergedCommitId = inserter.insert(mergedCommit);
+				inserter.flush();
+				return mergedCommitId;
+			} else {
+				inserter.flush();
+				return null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Nullable
+	private ObjectId mergeTree(Long projectId, Repository repository, RevWalk revWalk,
+			ObjectInserter inserter, RevCommit targetCommit, RevCommit sourceCommit) throws IOException {
+		RevCommit baseCommit = getMergeBase(revWalk, targetCommit, sourceCommit);
+		if (baseCommit == null) // criss-cross merge or unrelated histories
+			return mergeTree(repository, targetCommit, sourceCommit);
+
+		ObjectId baseTreeId = baseCommit.getTree().copy();
+		ObjectId targetTreeId = targetCommit.getTree().copy();
+		ObjectId sourceTreeId = sourceCommit.getTree().copy();
+
+		String treeKey = projectId + ":" + baseTreeId.name() + ":" + targetTreeId.name() + ":" + sourceTreeId.name();
+		String lastMergeKey = projectId + ":" + baseCommit.name() + ":" + sourceCommit.name();
+
+		Optional<ObjectId> cachedTreeId;
+		LastMerge lastMerge;
+		synchronized (this) {
+			cachedTreeId = mergedTrees.get(treeKey);
+			lastMerge = lastMerges.get(lastMergeKey);
+		}
+
+		Optional<ObjectId> reusedTreeId = null;
+		if (cachedTreeId == null && lastMerge != null
+				&& (lastMerge.mergedTreeId == null || exists(repository, lastMerge.mergedTreeId))) {
+			reusedTreeId = reuse(revWalk.getObjectReader(), inserter, lastMerge, targetTreeId).orElse(null);
+		}
+		
+		ObjectId mergedTreeId;
+		if (cachedTreeId != null && (!cachedTreeId.isPresent() || exists(repository, cachedTreeId.get()))) {
+			synchronized (this) {
+				hits++;
+			}
+			mergedTreeId = cachedTreeId.orElse(null);
+		} else if (reusedTreeId != null) {
+			synchronized (this) {
+				reuses++;
+			}
+			mergedTreeId = reusedTreeId.orElse(null);
+		} else {
+			synchronized (this) {
+				misses++;
+			}
+			mergedTreeId = mergeTree(repository, targetCommit, sourceCommit);
+		}
+
+		NavigableSet<String> sourceChanges;
+		if (lastMerge != null)
+			sourceChanges = lastMerge.sourceChanges;
+		else
+			sourceChanges = getChanges(revWalk.getObjectReader(), baseTreeId, sourceTreeId);
+
+		synchronized (this) {
+			mergedTrees.put(treeKey, Optional.ofNullable(mergedTreeId));
+			lastMerges.put(lastMergeKey, new LastMerge(targetTreeId, mergedTreeId, sourceChanges));
+		}
+		return mergedTreeId;
+	}
+
+	/*
+	 * Apply target changes since last merge onto last merged tree if they do not overlap
+	 * with source changes. Returns empty if last merge can not be reused
+	 */
+	private Optional<Optional<ObjectId>> reuse(ObjectReader reader, ObjectInserter inserter, 
+			LastMerge lastMerge, ObjectId targetTreeId) throws IOException {
+		List<PathEdit> edits = new ArrayList<>();
+		try (TreeWalk treeWalk = new TreeWalk(reader)) {
+			treeWalk.setRecursive(true);
+			treeWalk.setFilter(TreeFilter.ANY_DIFF);
+			treeWalk.addTree(lastMerge.targetTreeId);
+			treeWalk.addTree(targetTreeId);
+			while (treeWalk.next()) {
+				String path = treeWalk.getPathString();
+				// Attributes may change how files are merged
+				if (overlaps(lastMerge.sourceChanges, path)
+						|| treeWalk.getNameString().equals(Constants.DOT_GIT_ATTRIBUTES)) {
+					return Optional.empty();
+				}
+				if (treeWalk.getFileMode(1) == FileMode.MISSING) {
+					edits.add(new DeletePath(path));
+				} else {
+					FileMode mode = treeWalk.getFileMode(1);
+					ObjectId objectId = treeWalk.getObjectId(1);
+					edits.add(new PathEdit(path) {
+
+						@Override
+						public void apply(DirCacheEntry ent) {
+							ent.setFileMode(mode);
+							ent.setObjectId(objectId);
+						}
+
+					});
+				}
+			}
+		}
+		
+		// Conflicts of last merge are in files changed by source, and are not touched by target changes
+		if (lastMerge.mergedTreeId == null)
+			return Optional.of(Optional.empty());
+
+		DirCache dirCache = DirCache.newInCore();
+		DirCacheBuilder builder = dirCache.builder();
+		builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, lastMerge.mergedTreeId);
+		builder.finish();
+		DirCacheEditor editor = dirCache.editor();
+		for (PathEdit edit: edits)
+			editor.add(edit);
+		editor.finish();
+		return Optional.of(Optional.of(dirCache.writeTree(inserter)));
+	}
+
+	static boolean overlaps(NavigableSet<String> sourceChanges, String path) {
+		if (sourceChanges.contains(path))
+			return true;
+		// Source changes a file inside directory replacing this file in target
+		String descendant = sourceChanges.ceiling(path + "/");
+		if (descendant != null && descendant.startsWith(path + "/"))
+			return true;
+		// Source changes a file replaced by directory containing this file in target
+		for (int index = path.indexOf('/'); index != -1; index = path.indexOf('/', index+1)) {
+			if (sourceChanges.contains(path.substring(0, index)))
+				return true;
+		}
+		return false;
+	}
+
+	private NavigableSet<String> getChanges(ObjectReader reader, ObjectId oldTreeId,
+			ObjectId newTreeId) throws IOException {
+		NavigableSet<String> changes = new TreeSet<>();
+		try (TreeWalk treeWalk = new TreeWalk(reader)) {
+			treeWalk.setRecursive(true);
+			treeWalk.setFilter(TreeFilter.ANY_DIFF);
+			treeWalk.addTree(oldTreeId);
+			treeWalk.addTree(newTreeId);
+			while (treeWalk.next())
+				changes.add(treeWalk.getPathString());
+		}
+		return changes;
+	}
+
+	@Nullable
+	private RevCommit getMergeBase(RevWalk revWalk, RevCommit commit1, RevCommit commit2) throws IOException {
+		revWalk.reset();
+		revWalk.setRevFilter(RevFilter.MERGE_BASE);
+		revWalk.markStart(commit1);
+		revWalk.markStart(commit2);
+		RevCommit base = revWalk.next();
+		if (base != null && revWalk.next() != null)
+			base = null;
+		revWalk.reset();
+		revWalk.setRevFilter(RevFilter.ALL);
+		if (base != null)
+			revWalk.parseHeaders(base);
+		return base;
+	}
+
+	@Nullable
+	private ObjectId mergeTree(Repository repository, RevCommit targetCommit,
+			RevCommit sourceCommit) throws IOException {
+		Merger merger = MergeStrategy.RECURSIVE.newMerger(repository, true);
+		if (merger.merge(targetCommit, sourceCommit))
+			return merger.getResultTreeId();
+		else
+			return null;
+	}
+
+	private boolean exists(Repository repository, ObjectId objectId) throws IOException {
+		return repository.getObjectDatabase().has(objectId);
+	}
+
+	@Listen
+	public synchronized void on(ProjectDeleted event) {
+		String prefix = event.getProjectId() + ":";
+		for (Iterator<String> it = mergedTrees.keySet().iterator(); it.hasNext();) {
+			if (it.next().startsWith(prefix))
+				it.remove();
+		}
+		for (Iterator<String> it = lastMerges.keySet().iterator(); it.hasNext();) {
+			if (it.next().startsWith(prefix))
+				it.remove();
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getReuses() {
+		return reuses;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private static class LastMerge {
+
+		final ObjectId targetTreeId;
+
+		final ObjectId mergedTreeId;
+
+		final NavigableSet<String> sourceChanges;
+
+		LastMerge(ObjectId targetTreeId, @Nullable ObjectId mergedTreeId, NavigableSet<String> sourceChanges) {
+			this.targetTreeId = targetTreeId;
+			this.mergedTreeId = mergedTreeId;
+			this.sourceChanges = sourceChanges;
+		}
+
+	}
+
+}
@@ -0,0 +1,461 @@
+package io.onedev.server.git;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+import io.onedev.commons.bootstrap.Bootstrap;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.project.RefUpdated;
+
+/**
+ * Cache results of stateless upload-pack requests, so that identical fetches (for instance
+ * many CI jobs cloning the same commit right after a push) do not compute the same pack
+ * again and again.
+ * <p>
+ * Requests are keyed by project and normalized negotiation: wants, haves, shallows, deepen
+ * and filter options, and capabilities except those identifying the client. Only final
+ * requests (the ones containing <tt>done</tt>) are cached, and requests whose result
+ * depends on ref names are never cached. Result of a request is generated once into a
+ * file, and is streamed to all identical requests while it is still being generated.
+ * Cached results of a project are discarded once any of its refs is updated.
+ */
+@Singleton
+public class UploadPackCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(UploadPackCache.class);
+
+	private static final long MAX_CACHE_SIZE = 4L*1024*1024*1024;
+
+	private static final long MAX_RESULT_SIZE = MAX_CACHE_SIZE / 4;
+
+	private static final int MAX_REQUEST_SIZE = 1024*1024;
+
+	private static final long MAX_RESULT_AGE = 3600*1000L;
+
+	private static final long WAIT_TIMEOUT = 1000;
+
+	private final ExecutorService executorService;
+
+	private final Map<String, Result> results = new LinkedHashMap<>(16, 0.75f, true);
+
+	private File cacheDir;
+
+	private long cacheSize;
+
+	private long hits;
+
+	private long misses;
+
+	private long bypasses;
+
+	private long evictions;
+
+	@Inject
+	public UploadPackCache(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	private synchronized File getCacheDir() {
+		if (cacheDir == null) {
+			cacheDir = new File(Bootstrap.getTempDir(), "upload-pack-cache");
+			// Cached results are not tracked across restarts
+			FileUtils.cleanDir(cacheDir);
+		}
+		return cacheDir;
+	}
+
+	/**
+	 * Same as {@link CommandUtils#uploadPack(File, Map, String, InputStream, OutputStream)},
+	 * except that result is served from cache if possible
+	 */
+	public void uploadPack(Long projectId, File gitDir, Map<String, String> environments,
+			@Nullable String protocol, InputStream stdin, OutputStream stdout) {
+		ByteArrayOutputStream requestBuffer = new ByteArrayOutputStream();
+		boolean requestRead;
+		try {
+			requestRead = readRequest(stdin, requestBuffer);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		byte[] request = requestBuffer.toByteArray();
+
+		String key = requestRead? getKey(projectId, protocol, request): null;
+		if (key == null) {
+			synchronized (this) {
+				bypasses++;
+			}
+			InputStream requestStdin = new ByteArrayInputStream(request);
+			if (!requestRead)
+				requestStdin = new SequenceInputStream(requestStdin, stdin);
+			CommandUtils.uploadPack(gitDir, environments, protocol, requestStdin, stdout);
+			return;
+		}
+
+		Result result;
+		Result expiredResult = null;
+		Collection<Result> evictedResults;
+		synchronized (this) {
+			result = results.get(key);
+			if (result != null && result.isExpired()) {
+				results.remove(key);
+				discard(result);
+				// Expired result still being read will be deleted by its last reader
+				if (result.readers == 0)
+					expiredResult = result;
+				result = null;
+			}
+			if (result == null) {
+				misses++;
+				result = new Result(projectId, new File(getCacheDir(), key + "-" + System.nanoTime()));
+				results.put(key, result);
+				generate(key, result, gitDir, environments, protocol, request);
+			} else {
+				hits++;
+			}
+			result.readers++;
+			evictedResults = evict();
+			if (expiredResult != null)
+				evictedResults.add(expiredResult);
+		}
+		delete(evictedResults);
+
+		try {
+			result.streamTo(stdout);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			boolean deleteFile;
+			synchronized (this) {
+				result.readers--;
+				deleteFile = result.discarded && result.readers == 0;
+			}
+			if (deleteFile)
+				result.file.delete();
+		}
+	}
+
+	private void generate(String key, Result result, File gitDir, Map<String, String> environments,
+			@Nullable String protocol, byte[] request) {
+		executorService.execute(() -> {
+			Exception error = null;
+			try (OutputStream os = new FilterOutputStream(new FileOutputStream(result.file)) {
+
+				@Override
+				public void write(@NotNull byte[] b, int off, int len) throws IOException {
+					out.write(b, off, len);
+					result.written(len);
+				}
+
+				@Override
+				public void write(int b) throws IOException {
+					out.write(b);
+					result.written(1);
+				}
+
+			}) {
+				CommandUtils.uploadPack(gitDir, environments, protocol, new ByteArrayInputStream(request), os);
+			} catch (Exception e) {
+				error = e;
+			}
+
+			if (error != null)
+				logger.debug("Error generating upload-pack result", error);
+			
+			long length;
+			synchronized (result) {
+				length = result.length;
+			}
+			Collection<Result> evictedResults = Collections.emptyList();
+			synchronized (this) {
+				if (error != null || length > MAX_RESULT_SIZE) {
+					if (results.get(key) == result)
+						results.remove(key);
+					discard(result);
+				} else if (!result.discarded) {
+					result.cachedSize = length;
+					cacheSize += length;
+					evictedResults = evict();
+				}
+			}
+			delete(evictedResults);
+			result.completed(error);
+		});
+	}
+
+	/**
+	 * Read request of upload-pack into specified buffer
+	 *
+	 * @return
+	 * 			<tt>true</tt> if whole request is read, or <tt>false</tt> if request is
+	 * 			too large, in which case remaining content is left in stdin
+	 */
+	private boolean readRequest(InputStream stdin, ByteArrayOutputStream requestBuffer) throws IOException {
+		byte[] buffer = new byte[Bootstrap.BUFFER_SIZE];
+		int length;
+		while ((length = stdin.read(buffer)) != -1) {
+			requestBuffer.write(buffer, 0, length);
+			if (requestBuffer.size() > MAX_REQUEST_SIZE)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Get cache key of specified upload-pack request
+	 *
+	 * @return
+	 * 			cache key, or <tt>null</tt> if result of the request should not be cached
+	 */
+	@Nullable
+	static String getKey(Long projectId, @Nullable String protocol, byte[] request) {
+		List<String> lines = new ArrayList<>();
+		boolean done = false;
+		int pos = 0;
+		while (pos + 4 <= request.length) {
+			int length;
+			try {
+				length = Integer.parseInt(new String(request, pos, 4, StandardCharsets.US_ASCII), 16);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (length < 4) {
+				// flush, delimiter or response end packet
+				lines.add(String.valueOf(length));
+				pos += 4;
+				continue;
+			}
+			if (pos + length > request.length)
+				return null;
+			String line = new String(request, pos + 4, length - 4, StandardCharsets.UTF_8);
+			pos += length;
+			if (line.endsWith("\n"))
+				line = line.substring(0, line.length() - 1);
+
+			if (line.equals("done")) {
+				done = true;
+			} else if (line.startsWith("command=") && !line.equals("command=fetch")
+					|| line.startsWith("want-ref ") || line.startsWith("deepen-not ")
+					|| line.startsWith("packfile-uris ")) {
+				// Result depends on refs
+				return null;
+			} else if (line.startsWith("agent=") || line.startsWith("session-id=")) {
+				continue;
+			} else if (line.startsWith("want ") && line.indexOf(' ', 5) != -1) {
+				// Capabilities of protocol v0/v1 are attached to first want line
+				String[] fields = line.split(" ");
+				List<String> capabilities = new ArrayList<>();
+				for (int i = 2; i < fields.length; i++) {
+					if (!fields[i].startsWith("agent=") && !fields[i].startsWith("session-id="))
+						capabilities.add(fields[i]);
+				}
+				Collections.sort(capabilities);
+				lines.add(fields[0] + " " + fields[1]);
+				lines.add("capabilities " + String.join(" ", capabilities));
+				continue;
+			}
+			lines.add(line);
+		}
+		if (!done || pos != request.length)
+			return null;
+
+		// Order of wants, haves and shallows does not affect result
+		Collections.sort(lines);
+		StringBuilder builder = new StringBuilder();
+		builder.append(projectId).append('\n').append(protocol).append('\n');
+		for (String line: lines)
+			builder.append(line).append('\n');
+		return Hex.encodeHexString(Hashing.sha256()
+				.hashString(builder.toString(), StandardCharsets.UTF_8).asBytes());
+	}
+
+	private Collection<Result> evict() {
+		Collection<Result> evictedResults = new ArrayList<>();
+		for (Iterator<Result> it = results.values().iterator(); it.hasNext() && cacheSize > MAX_CACHE_SIZE;) {
+			Result result = it.next();
+			if (result.cachedSize != -1) {
+				it.remove();
+				discard(result);
+				evictions++;
+				if (result.readers == 0)
+					evictedResults.add(result);
+			}
+		}
+		return evictedResults;
+	}
+
+	private void discard(Result result) {
+		if (!result.discarded) {
+			result.discarded = true;
+			if (result.cachedSize != -1)
+				cacheSize -= result.cachedSize;
+		}
+	}
+
+	private void delete(Collection<Result> resultsToDelete) {
+		for (Result result: resultsToDelete)
+			result.file.delete();
+	}
+
+	@Listen
+	public void on(RefUpdated event) {
+		Long projectId = event.getProject().getId();
+		Collection<Result> resultsToDelete = new ArrayList<>();
+		synchronized (this) {
+			for (Iterator<Result> it = results.values().iterator(); it.hasNext();) {
+				Result result = it.next();
+				if (result.projectId.equals(projectId)) {
+					it.remove();
+					discard(result);
+					if (result.cachedSize != -1 && result.readers == 0)
+						resultsToDelete.add(result);
+				}
+			}
+		}
+		delete(resultsToDelete);
+	}
+
+	public synchronized long getCacheSize() {
+		return cacheSize;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getBypasses() {
+		return bypasses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	private class Result {
+
+		final Long projectId;
+
+		final File file;
+
+		final long createTime = System.currentTimeMillis();
+
+		// Below fields are guarded by this result
+		long length;
+
+		boolean completed;
+
+		Exception error;
+
+		// Below fields are guarded by the cache
+		int readers;
+
+		// -1 if result is not added to cache
+		long cachedSize = -1;
+
+		boolean discarded;
+
+		Result(Long projectId, File file) {
+			this.projectId = projectId;
+			this.file = file;
+		}
+
+		boolean isExpired() {
+			return cachedSize != -1 && System.currentTimeMillis() - createTime > MAX_RESULT_AGE;
+		}
+
+		synchronized void written(int count) {
+			length += count;
+			notifyAll();
+		}
+
+		void completed(@Nullable Exception error) {
+			boolean deleteFile;
+			synchronized (UploadPackCache.this) {
+				synchronized (this) {
+					this.error = error;
+					completed = true;
+					notifyAll();
+				}
+				deleteFile = discarded && readers == 0;
+			}
+			if (deleteFile)
+				file.delete();
+		}
+
+		/**
+		 * Stream result to specified output, following content being generated
+		 */
+		void streamTo(OutputStream output) throws IOException {
+			long position = 0;
+			byte[] buffer = new byte[Bootstrap.BUFFER_SIZE];
+			InputStream is = null;
+			try {
+				while (true) {
+					long available;
+					synchronized (this) {
+						while (length == position && !completed) {
+							try {
+								wait(WAIT_TIMEOUT);
+							} catch (InterruptedException e) {
+								throw new RuntimeException(e);
+							}
+						}
+						if (error != null)
+							throw new RuntimeException("Error generating upload-pack result", error);
+						available = length - position;
+					}
+					if (available == 0)
+						break;
+					if (is == null)
+						is = new FileInputStream(file);
+					while (available > 0) {
+						int count = is.read(buffer, 0, (int) Math.min(buffer.length, available));
+						if (count == -1)
+							throw new IOException("Unexpected end of cached upload-pack result");
+						output.write(buffer, 0, count);
+						position += count;
+						available -= count;
+					}
+					output.flush();
+				}
+			} finally {
+				if (is != null)
+					is.close();
+			}
+		}
+
+	}
+
+}
@@ -26,6 +26,7 @@ import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.BlameBlock;
 import io.onedev.server.git.BlameCommit;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 import io.onedev.server.git.GitUtils;
 
 public class BlameCommand {
@@ -37,6 +38,12 @@ public class BlameCommand {
 	
 	private static final int CACHE_THRESHOLD = 1000;
 	
+	/*
+	 * Specify diff options explicitly instead of relying on git config, so that blame
+	 * derived from diff of {@link ListLineEditsCommand} agrees with git blame
+	 */
+	static final String[] DIFF_OPTIONS = {"--diff-algorithm=myers", "--indent-heuristic"};
+	
 	private final File workingDir;
 	
 	private final ObjectId commitId;
@@ -78,6 +85,7 @@ public class BlameCommand {
 			return cached;
 		
 		Commandline git = newGit().workingDir(workingDir).addArgs("blame", "--porcelain");
+		git.addArgs(DIFF_OPTIONS);
 		if (range != null)
 			git.addArgs("-L" + (range.getFrom()+1) + "," + (range.getTo()+1));
 		git.addArgs(commitId.name(), "--", file);
@@ -158,6 +166,7 @@ public class BlameCommand {
 			}
 			
 		});
+		GitCommandMetrics.recordForked("blame", time);
 		
 		if (!endOfFile.get())
 			result.checkReturnCode();
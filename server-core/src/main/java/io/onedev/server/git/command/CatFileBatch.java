@@ -0,0 +1,160 @@
+package io.onedev.server.git.command;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import io.onedev.server.git.CommandUtils;
+
+/**
+ * A long-running <tt>git cat-file --batch</tt> process, which reads content of multiple
+ * objects without forking a git process for each of them. Instances are not thread-safe,
+ * and are normally obtained from {@link io.onedev.server.git.CatFileBatchPool}.
+ */
+public class CatFileBatch implements Closeable {
+
+	private final File workingDir;
+
+	private final Map<String, String> envs;
+
+	private final Process process;
+
+	private final OutputStream stdin;
+
+	private final InputStream stdout;
+
+	private final long createTime = System.currentTimeMillis();
+
+	private long lastUseTime = createTime;
+
+	public CatFileBatch(File workingDir, Map<String, String> envs) {
+		this.workingDir = workingDir;
+		this.envs = envs;
+		try {
+			process = CommandUtils.newGitProcess(workingDir, envs, "cat-file", "--batch")
+					.redirectError(ProcessBuilder.Redirect.DISCARD)
+					.start();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		stdin = new BufferedOutputStream(process.getOutputStream());
+		stdout = new BufferedInputStream(process.getInputStream());
+	}
+
+	public File getWorkingDir() {
+		return workingDir;
+	}
+
+	public Map<String, String> getEnvs() {
+		return envs;
+	}
+
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	public long getLastUseTime() {
+		return lastUseTime;
+	}
+
+	/**
+	 * Read specified object
+	 *
+	 * @param revision
+	 * 			revision of the object, for instance <tt>&lt;commit hash&gt;^{commit}</tt>
+	 * @return
+	 * 			read object, or <tt>null</tt> if object does not exist
+	 * @throws IOException
+	 * 			if the process is broken and should not be used any more
+	 */
+	@Nullable
+	public GitObject read(String revision) throws IOException {
+		if (revision.indexOf('\n') != -1)
+			throw new IllegalArgumentException("Invalid revision: " + revision);
+		lastUseTime = System.currentTimeMillis();
+		stdin.write((revision + "\n").getBytes(StandardCharsets.UTF_8));
+		stdin.flush();
+
+		String header = readLine();
+		if (header.endsWith(" missing") || header.endsWith(" ambiguous"))
+			return null;
+		String[] fields = header.split(" ");
+		if (fields.length != 3)
+			throw new IOException("Unexpected cat-file output: " + header);
+		int size = Integer.parseInt(fields[2]);
+		byte[] content = new byte[size];
+		int read = 0;
+		while (read < size) {
+			int count = stdout.read(content, read, size - read);
+			if (count == -1)
+				throw new EOFException("Unexpected end of cat-file output");
+			read += count;
+		}
+		if (stdout.read() != '\n')
+			throw new IOException("Unexpected end of cat-file object content");
+		return new GitObject(fields[0], fields[1], content);
+	}
+
+	private String readLine() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		int b;
+		while ((b = stdout.read()) != '\n') {
+			if (b == -1)
+				throw new EOFException("Unexpected end of cat-file output");
+			baos.write(b);
+		}
+		return baos.toString(StandardCharsets.UTF_8.name());
+	}
+
+	public boolean isAlive() {
+		return process.isAlive();
+	}
+
+	@Override
+	public void close() {
+		try {
+			stdin.close();
+		} catch (IOException ignored) {
+		}
+		process.destroy();
+	}
+
+	public static class GitObject {
+
+		private final String id;
+
+		private final String type;
+
+		private final byte[] content;
+
+		public GitObject(String id, String type, byte[] content) {
+			this.id = id;
+			this.type = type;
+			this.content = content;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+	}
+
+}
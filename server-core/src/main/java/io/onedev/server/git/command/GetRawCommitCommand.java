@@ -1,20 +1,15 @@
 package io.onedev.server.git.command;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.Map;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import io.onedev.commons.utils.command.Commandline;
-import io.onedev.commons.utils.command.LineConsumer;
-import io.onedev.server.git.CommandUtils;
+import io.onedev.commons.utils.ExplicitException;
+import io.onedev.server.OneDev;
+import io.onedev.server.git.CatFileBatchPool;
+import io.onedev.server.git.command.CatFileBatch.GitObject;
 
 public class GetRawCommitCommand {
 
-	private static final Logger logger = LoggerFactory.getLogger(GetRawCommitCommand.class);
-	
 	private final File workingDir;
 	
 	private final String revision;
@@ -27,27 +22,12 @@ public class GetRawCommitCommand {
 		this.envs = envs;
 	}
 
-	protected Commandline newGit() {
-		return CommandUtils.newGit();
-	}
-	
 	public byte[] run() {
-		Commandline git = newGit().workingDir(workingDir);
-		git.environments().putAll(envs);
-		
-		git.addArgs("cat-file", "commit", revision);
-		
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		git.execute(baos, new LineConsumer() {
-
-			@Override
-			public void consume(String line) {
-				logger.error(line);
-			}
-			
-		}).checkReturnCode();
-
-		return baos.toByteArray();
+		GitObject object = OneDev.getInstance(CatFileBatchPool.class)
+				.read(workingDir, envs, revision + "^{commit}");
+		if (object == null || !object.getType().equals("commit"))
+			throw new ExplicitException("Commit not found: " + revision);
+		return object.getContent();
 	}
 
-}
\ No newline at end of file
+}
@@ -1,24 +1,16 @@
 package io.onedev.server.git.command;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import io.onedev.commons.utils.command.Commandline;
-import io.onedev.commons.utils.command.ExecutionResult;
-import io.onedev.commons.utils.command.LineConsumer;
-import io.onedev.server.git.CommandUtils;
 
 import javax.annotation.Nullable;
 
+import io.onedev.server.OneDev;
+import io.onedev.server.git.CatFileBatchPool;
+import io.onedev.server.git.command.CatFileBatch.GitObject;
+
 public class GetRawTagCommand {
 
-	private static final Logger logger = LoggerFactory.getLogger(GetRawTagCommand.class);
-	
 	private final File workingDir;
 	
 	private final String tag;
@@ -31,37 +23,13 @@ public class GetRawTagCommand {
 		this.envs = envs;
 	}
 
-	protected Commandline newGit() {
-		return CommandUtils.newGit();
-	}
-	
 	@Nullable
 	public byte[] run() {
-		Commandline git = newGit().workingDir(workingDir);
-		git.environments().putAll(envs);
-		
-		git.addArgs("cat-file", "tag", tag);
-		
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-	
-		AtomicBoolean badFile = new AtomicBoolean(false);
-		ExecutionResult result = git.execute(baos, new LineConsumer() {
-
-			@Override
-			public void consume(String line) {
-				if (line.endsWith(": bad file"))
-					badFile.set(true);
-				else
-					logger.error(line);
-			}
-			
-		});
-		
-		if (badFile.get())
+		GitObject object = OneDev.getInstance(CatFileBatchPool.class).read(workingDir, envs, tag);
+		if (object != null && object.getType().equals("tag"))
+			return object.getContent();
+		else
 			return null;
-		
-		result.checkReturnCode();
-		return baos.toByteArray();
 	}
 
-}
\ No newline at end of file
+}
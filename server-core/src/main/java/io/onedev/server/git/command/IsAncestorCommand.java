@@ -10,6 +10,7 @@ import io.onedev.commons.utils.command.Commandline;
 import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 
 public class IsAncestorCommand {
 
@@ -41,6 +42,7 @@ public class IsAncestorCommand {
 		
 		git.addArgs("merge-base", "--is-ancestor", ancestor, descendant);
 		
+		long time = System.currentTimeMillis();
 		ExecutionResult result = git.execute(new LineConsumer() {
 
 			@Override
@@ -55,6 +57,7 @@ public class IsAncestorCommand {
 			}
 			
 		});
+		GitCommandMetrics.recordForked("merge-base --is-ancestor", time);
 		
 		if (result.getReturnCode() == 0)
 			return true;
@@ -11,8 +11,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 
 public class ListChangedFilesCommand {
 
@@ -45,7 +47,8 @@ public class ListChangedFilesCommand {
 		
 		git.addArgs("diff", "--name-only", "--no-renames", fromRev + ".." + toRev);
 		
-		git.execute(new LineConsumer() {
+		long time = System.currentTimeMillis();
+		ExecutionResult result = git.execute(new LineConsumer() {
 
 			@Override
 			public void consume(String line) {
@@ -60,7 +63,9 @@ public class ListChangedFilesCommand {
 				logger.error(line);
 			}
 			
-		}).checkReturnCode();
+		});
+		GitCommandMetrics.recordForked("diff --name-only", time);
+		result.checkReturnCode();
 		
 		return changedFiles;
 	}
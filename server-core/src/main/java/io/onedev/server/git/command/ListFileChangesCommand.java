@@ -11,8 +11,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 
 public class ListFileChangesCommand {
 
@@ -41,7 +43,8 @@ public class ListFileChangesCommand {
 		
 		git.addArgs("diff", "--name-status", "--no-renames", fromRev + ".." + toRev);
 		
-		git.execute(new LineConsumer() {
+		long time = System.currentTimeMillis();
+		ExecutionResult result = git.execute(new LineConsumer() {
 
 			@Override
 			public void consume(String line) {
@@ -66,7 +69,9 @@ public class ListFileChangesCommand {
 				logger.error(line);
 			}
 			
-		}).checkReturnCode();
+		});
+		GitCommandMetrics.recordForked("diff --name-status", time);
+		result.checkReturnCode();
 		
 		return fileChanges;
 	}
@@ -10,8 +10,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 
 public class ListFilesCommand {
 
@@ -37,7 +39,8 @@ public class ListFilesCommand {
 		
 		git.addArgs("ls-tree", "--name-only", "-r", revision);
 		
-		git.execute(new LineConsumer() {
+		long time = System.currentTimeMillis();
+		ExecutionResult result = git.execute(new LineConsumer() {
 
 			@Override
 			public void consume(String line) {
@@ -52,7 +55,9 @@ public class ListFilesCommand {
 				logger.error(line);
 			}
 			
-		}).checkReturnCode();
+		});
+		GitCommandMetrics.recordForked("ls-tree", time);
+		result.checkReturnCode();
 		
 		return files;
 	}
@@ -0,0 +1,93 @@
+package io.onedev.server.git.command;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
+import io.onedev.commons.utils.command.LineConsumer;
+import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
+
+/**
+ * List line edits between two text blobs with git diff. Diff options are the same as
+ * {@link BlameCommand}, so that lines treated as changed agree with git blame
+ */
+public class ListLineEditsCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(ListLineEditsCommand.class);
+	
+	private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@");
+	
+	private final File workingDir;
+	
+	private final ObjectId oldBlobId;
+	
+	private final ObjectId newBlobId;
+	
+	public ListLineEditsCommand(File workingDir, ObjectId oldBlobId, ObjectId newBlobId) {
+		this.workingDir = workingDir;
+		this.oldBlobId = oldBlobId;
+		this.newBlobId = newBlobId;
+	}
+	
+	protected Commandline newGit() {
+		return CommandUtils.newGit();
+	}
+	
+	public EditList run() {
+		Commandline git = newGit().workingDir(workingDir);
+		git.addArgs("diff", "-U0", "--no-color", "--no-ext-diff", "--no-textconv");
+		git.addArgs(BlameCommand.DIFF_OPTIONS);
+		git.addArgs(oldBlobId.name(), newBlobId.name());
+		
+		EditList edits = new EditList();
+		long time = System.currentTimeMillis();
+		ExecutionResult result = git.execute(new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				Matcher matcher = HUNK_HEADER.matcher(line);
+				if (matcher.find()) {
+					int oldBegin = getBegin(matcher.group(1), matcher.group(2));
+					int oldCount = getCount(matcher.group(2));
+					int newBegin = getBegin(matcher.group(3), matcher.group(4));
+					int newCount = getCount(matcher.group(4));
+					edits.add(new Edit(oldBegin, oldBegin + oldCount, newBegin, newBegin + newCount));
+				}
+			}
+			
+		}, new LineConsumer() {
+
+			@Override
+			public void consume(String line) {
+				logger.error(line);
+			}
+			
+		});
+		GitCommandMetrics.recordForked("diff -U0", time);
+		result.checkReturnCode();
+		
+		return edits;
+	}
+	
+	private static int getCount(String count) {
+		return count != null? Integer.parseInt(count): 1;
+	}
+	
+	/*
+	 * Start of empty range in hunk header is the line before it
+	 */
+	private static int getBegin(String start, String count) {
+		int begin = Integer.parseInt(start);
+		return getCount(count) != 0? begin - 1: begin;
+	}
+
+}
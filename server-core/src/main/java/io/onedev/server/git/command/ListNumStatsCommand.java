@@ -8,8 +8,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 
 public class ListNumStatsCommand {
 
@@ -46,7 +48,8 @@ public class ListNumStatsCommand {
 					"--find-renames", fromRev + ".." + toRev);
 		}
 		
-		git.execute(new LineConsumer() {
+		long time = System.currentTimeMillis();
+		ExecutionResult result = git.execute(new LineConsumer() {
 
 			@Override
 			public void consume(String line) {
@@ -60,7 +63,9 @@ public class ListNumStatsCommand {
 				logger.error(line);
 			}
 			
-		}).checkReturnCode();
+		});
+		GitCommandMetrics.recordForked("diff --numstat", time);
+		result.checkReturnCode();
 		
 		return fileChanges;
 	}
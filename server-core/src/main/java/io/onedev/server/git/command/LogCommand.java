@@ -13,8 +13,10 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 
 import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 import io.onedev.server.git.GitUtils;
 
 import javax.annotation.Nullable;
@@ -136,7 +138,8 @@ public abstract class LogCommand {
 
         AtomicReference<GitCommit.Builder> commitBuilderRef = new AtomicReference<>(null);
         AtomicBoolean inBodyRef = new AtomicBoolean(false);
-        git.execute(new LineConsumer() {
+        long time = System.currentTimeMillis();
+        ExecutionResult result = git.execute(new LineConsumer() {
 
             @Override
             public void consume(String line) {
@@ -229,7 +232,9 @@ public abstract class LogCommand {
 				}
 			}
         	
-        }).checkReturnCode();
+        });
+        GitCommandMetrics.recordForked("log", time);
+        result.checkReturnCode();
 
         if (commitBuilderRef.get() != null)
         	consume(commitBuilderRef.get().build());
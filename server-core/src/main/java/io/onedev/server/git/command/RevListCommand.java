@@ -8,8 +8,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecutionResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.server.git.CommandUtils;
+import io.onedev.server.git.GitCommandMetrics;
 
 public class RevListCommand {
 
@@ -92,7 +94,8 @@ public class RevListCommand {
         	git.addArgs(path);
 
         List<String> commitHashes = new ArrayList<>();
-        git.execute(new LineConsumer() {
+        long time = System.currentTimeMillis();
+        ExecutionResult result = git.execute(new LineConsumer() {
 
             @Override
             public void consume(String line) {
@@ -106,7 +109,9 @@ public class RevListCommand {
 				logger.error(line);
 			}
         	
-        }).checkReturnCode();
+        });
+        GitCommandMetrics.recordForked("rev-list", time);
+        result.checkReturnCode();
         
         return commitHashes;
 	}
@@ -68,15 +68,22 @@ public class DefaultGitService implements GitService, Serializable {
 	
 	private final ListenerRegistry listenerRegistry;
 	
+	private final MergePreviewEngine mergePreviewEngine;
+	
+	private final BlameCache blameCache;
+	
 	@Inject
 	public DefaultGitService(ProjectManager projectManager, SettingManager settingManager, 
 							 SessionManager sessionManager, ClusterManager clusterManager, 
-							 ListenerRegistry listenerRegistry) {
+							 ListenerRegistry listenerRegistry, MergePreviewEngine mergePreviewEngine, 
+							 BlameCache blameCache) {
 		this.projectManager = projectManager;
 		this.sessionManager = sessionManager;
 		this.settingManager = settingManager;
 		this.clusterManager = clusterManager;
 		this.listenerRegistry = listenerRegistry;
+		this.mergePreviewEngine = mergePreviewEngine;
+		this.blameCache = blameCache;
 	}
 
 	public Object writeReplace() throws ObjectStreamException {
@@ -907,6 +914,14 @@ public class DefaultGitService implements GitService, Serializable {
 				committer, author, commitMessage, useOursOnConflict));
 	}
 
+	@Override
+	public ObjectId mergePreview(Project project, ObjectId targetCommitId, ObjectId sourceCommitId, 
+			boolean squash, PersonIdent committer, PersonIdent author, String commitMessage) {
+		Long projectId = project.getId();
+		return runOnProjectServer(projectId, () -> mergePreviewEngine.merge(projectId, getRepository(projectId), 
+				targetCommitId, sourceCommitId, squash, committer, author, commitMessage));
+	}
+
 	@Override
 	public boolean isMergedInto(Project project, Map<String, String> gitEnvs, ObjectId base, ObjectId tip) {
 		Long projectId = project.getId();
@@ -1272,8 +1287,8 @@ public class DefaultGitService implements GitService, Serializable {
 	@Override
 	public Collection<BlameBlock> blame(Project project, ObjectId revId, String file, LinearRange range) {
 		Long projectId = project.getId();
-		return runOnProjectServer(projectId, () -> new BlameCommand(projectManager.getGitDir(projectId), revId, file)
-				.range(range).run());
+		return runOnProjectServer(projectId, () -> blameCache.blame(projectId, getRepository(projectId), 
+				revId, file, range));
 	}
 
 	@Override
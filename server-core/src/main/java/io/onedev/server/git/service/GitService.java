@@ -90,6 +90,18 @@ public interface GitService {
 			boolean squash, PersonIdent committer, PersonIdent author, String commitMessage,
 			boolean useOursOnConflict);
 	
+	/**
+	 * Calculate merge preview of source commit into target commit. Result is the same as 
+	 * {@link #merge} without using ours on conflict, except that merged trees calculated 
+	 * previously are reused when possible
+	 * 
+	 * @return
+	 * 			id of merged commit, or <tt>null</tt> if there are conflicts
+	 */
+	@Nullable
+	ObjectId mergePreview(Project project, ObjectId targetCommitId, ObjectId sourceCommitId,
+			boolean squash, PersonIdent committer, PersonIdent author, String commitMessage);
+	
 	boolean isMergedInto(Project project, @Nullable Map<String, String> gitEnvs, 
 			ObjectId base, ObjectId tip);
 
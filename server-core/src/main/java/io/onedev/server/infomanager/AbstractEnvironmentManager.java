@@ -73,6 +73,9 @@ public abstract class AbstractEnvironmentManager {
 		config.setLogAllowRamDisk(true);
 		config.setLogAllowRemote(true);
 		config.setLogAllowRemovable(true);
+		// Log cache is shared by all environments, so that memory used for caching does 
+		// not grow with number of open environments
+		config.setLogCacheShared(true);
 		config.setMemoryUsagePercentage(MEMORY_USAGE_PERCENT);
 		config.setLogFileSize(getLogFileSize());
 		return Environments.newInstance(envDir, config);
@@ -1,67 +1,65 @@
 package io.onedev.server.infomanager;
 
 import java.io.File;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import io.onedev.commons.utils.FileUtils;
-import io.onedev.server.event.Listen;
-import io.onedev.server.event.system.SystemStopped;
-import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.OneDev;
 import jetbrains.exodus.backup.BackupStrategy;
 import jetbrains.exodus.backup.VirtualFileDescriptor;
 import jetbrains.exodus.env.Environment;
 
 public abstract class AbstractMultiEnvironmentManager extends AbstractEnvironmentManager {
 	
-	private final Map<String, Environment> envs = new ConcurrentHashMap<>();
-	
 	protected abstract File getEnvDir(String envKey);
 	
+	/**
+	 * Get environment of specified key. Returned environment is pooled and might be closed 
+	 * if not used for some time, so it should be used right away instead of being kept
+	 */
 	protected Environment getEnv(String envKey) {
-		Environment env = envs.get(envKey);
-		if (env == null) synchronized (envs) {
-			env = envs.get(envKey);
-			if (env == null) {
-				env = newEnv(getEnvDir(envKey));
-				envs.put(envKey, env);
-			}
-		}
-		return env;
+		return getEnvironmentPool().get(getPoolKey(envKey), () -> newEnv(getEnvDir(envKey)));
+	}
+	
+	/**
+	 * Lease environment of specified key. Environments obtained via {@link #getEnv(String)} 
+	 * and stores opened from them remain usable until the lease is closed, so this should 
+	 * be used to wrap operations doing long running work between transactions
+	 */
+	protected EnvironmentPool.Lease leaseEnv(String envKey) {
+		return getEnvironmentPool().lease(getPoolKey(envKey), () -> newEnv(getEnvDir(envKey)));
 	}
 	
 	protected void removeEnv(String envKey) {
-		synchronized (envs) {
-			Environment env = envs.remove(envKey);
-			if (env != null)
-				env.close();
-		}
+		getEnvironmentPool().remove(getPoolKey(envKey));
 	}
-
-	@Listen
-	public void on(SystemStopped event) {
-		synchronized (envs) {
-			for (Environment env: envs.values())
-				env.close();
-			envs.clear();
-		}
+	
+	private String getPoolKey(String envKey) {
+		return getClass().getName() + ":" + envKey;
+	}
+	
+	private EnvironmentPool getEnvironmentPool() {
+		return OneDev.getInstance(EnvironmentPool.class);
 	}
 
 	public void export(String envKey, File targetDir) {
-		BackupStrategy backupStrategy = getEnv(envKey).getBackupStrategy();
-		try {
-			backupStrategy.beforeBackup();
+		Environment env = getEnv(envKey);
+		// Run inside a transaction to keep environment open while backing up
+		env.executeInReadonlyTransaction(txn -> {
+			BackupStrategy backupStrategy = env.getBackupStrategy();
 			try {
-				for (VirtualFileDescriptor descriptor : backupStrategy.getContents()) {
-					FileUtils.copyFileToDirectory(((BackupStrategy.FileDescriptor) descriptor).getFile(), targetDir);
+				backupStrategy.beforeBackup();
+				try {
+					for (VirtualFileDescriptor descriptor : backupStrategy.getContents()) {
+						FileUtils.copyFileToDirectory(((BackupStrategy.FileDescriptor) descriptor).getFile(), targetDir);
+					}
+				} finally {
+					backupStrategy.afterBackup();
 				}
-			} finally {
-				backupStrategy.afterBackup();
+				writeVersion(targetDir);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
 			}
-			writeVersion(targetDir);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+		});
 	}
 	
 }
@@ -9,8 +9,10 @@ import io.onedev.commons.utils.PathUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.k8shelper.KubernetesHelper;
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.cluster.ClusterTask;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.EmailAddressManager;
 import io.onedev.server.entitymanager.IssueManager;
 import io.onedev.server.entitymanager.ProjectManager;
@@ -55,8 +57,6 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.HttpHeaders;
@@ -147,6 +147,8 @@ public class DefaultCommitInfoManager extends AbstractMultiEnvironmentManager
 
 	private final ClusterManager clusterManager;
 
+	private final ClusterTransport clusterTransport;
+
 	private final UserManager userManager;
 
 	private final EmailAddressManager emailAddressManager;
@@ -169,7 +171,7 @@ public class DefaultCommitInfoManager extends AbstractMultiEnvironmentManager
 	public DefaultCommitInfoManager(ProjectManager projectManager, 
 									BatchWorkManager batchWorkManager, SessionManager sessionManager,
 									EmailAddressManager emailAddressManager, UserManager userManager,
-									ClusterManager clusterManager, ListenerRegistry listenerRegistry,
+									ClusterManager clusterManager, ClusterTransport clusterTransport, ListenerRegistry listenerRegistry,
 									IssueManager issueManager, EntityReferenceManager entityReferenceManager) {
 		this.projectManager = projectManager;
 		this.batchWorkManager = batchWorkManager;
@@ -177,6 +179,7 @@ public class DefaultCommitInfoManager extends AbstractMultiEnvironmentManager
 		this.emailAddressManager = emailAddressManager;
 		this.userManager = userManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
 		this.listenerRegistry = listenerRegistry;
 		this.issueManager = issueManager;
 		this.entityReferenceManager = entityReferenceManager;
@@ -1016,8 +1019,11 @@ public class DefaultCommitInfoManager extends AbstractMultiEnvironmentManager
 						collectingWorks.add((CollectingWork) work);
 					Collections.sort(collectingWorks, new CommitTimeComparator());
 
-					for (CollectingWork work : collectingWorks)
-						doCollect(project, work.getCommit().copy(), work.getRefName());
+					// Collecting holds environment and stores while walking git history
+					try (var lease = leaseEnv(projectId.toString())) {
+						for (CollectingWork work : collectingWorks)
+							doCollect(project, work.getCommit().copy(), work.getRefName());
+					}
 				});
 			}
 
@@ -1164,10 +1170,9 @@ public class DefaultCommitInfoManager extends AbstractMultiEnvironmentManager
 		if (sourceActiveServer.equals(clusterManager.getLocalServerAddress())) {
 			export(sourceProjectId, getEnvDir(targetProjectId.toString()));
 		} else {
-			Client client = ClientBuilder.newClient();
+			ClusterConnection connection = clusterTransport.connect(sourceActiveServer);
 			try {
-				String serverUrl = clusterManager.getServerUrl(sourceActiveServer);
-				WebTarget target = client.target(serverUrl)
+				WebTarget target = connection.target()
 						.path("~api/cluster/commit-info")
 						.queryParam("projectId", sourceProjectId);
 				Invocation.Builder builder = target.request();
@@ -1180,7 +1185,7 @@ public class DefaultCommitInfoManager extends AbstractMultiEnvironmentManager
 							getEnvDir(targetProjectId.toString()), false);
 				}
 			} finally {
-				client.close();
+				connection.close();
 			}
 		}
 	}
@@ -4,7 +4,9 @@ import com.google.common.collect.Lists;
 import io.onedev.commons.loader.ManagedSerializedForm;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.k8shelper.KubernetesHelper;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.Listen;
 import io.onedev.server.event.entity.EntityRemoved;
@@ -12,20 +14,22 @@ import io.onedev.server.event.project.codecomment.CodeCommentEvent;
 import io.onedev.server.event.project.issue.IssueEvent;
 import io.onedev.server.event.project.pullrequest.PullRequestCodeCommentEvent;
 import io.onedev.server.event.project.pullrequest.PullRequestEvent;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.*;
 import io.onedev.server.persistence.annotation.Transactional;
 import jetbrains.exodus.backup.BackupStrategy;
 import jetbrains.exodus.backup.VirtualFileDescriptor;
 import jetbrains.exodus.env.Environment;
 import jetbrains.exodus.env.Store;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.HttpHeaders;
@@ -34,9 +38,15 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.Long.valueOf;
+import static java.util.stream.Collectors.toMap;
 
 /**
  * Store project visit information here as we only need to load a single database to sort projects based on user 
@@ -61,14 +71,28 @@ public class DefaultVisitInfoManager extends AbstractMultiEnvironmentManager
 
 	private static final String ISSUE_STORE = "issueVisit";
 	
+	private static final long FLUSH_INTERVAL = 1000;
+	
+	private static final int MAX_PENDING_VISITS = 10000;
+	
 	private final ProjectManager projectManager;
 	
 	private final ClusterManager clusterManager;
 	
+	private final ClusterTransport clusterTransport;
+	
+	// Visits are buffered and written in batch to avoid a cluster call and a transaction per visit
+	private final Map<Visit, Long> pendingVisits = new ConcurrentHashMap<>();
+	
+	private final Object flushLock = new Object();
+	
+	private volatile Thread thread;
+	
 	@Inject
-	public DefaultVisitInfoManager(ProjectManager projectManager, ClusterManager clusterManager) {
+	public DefaultVisitInfoManager(ProjectManager projectManager, ClusterManager clusterManager, ClusterTransport clusterTransport) {
 		this.projectManager = projectManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
 	}
 	
 	public Object writeReplace() throws ObjectStreamException {
@@ -80,6 +104,7 @@ public class DefaultVisitInfoManager extends AbstractMultiEnvironmentManager
 	public void on(EntityRemoved event) {
 		if (event.getEntity() instanceof Project) {
 			Long projectId = event.getEntity().getId();
+			pendingVisits.keySet().removeIf(it -> it.projectId.equals(projectId));
 			String activeServer = projectManager.getActiveServer(projectId, false);
 			if (activeServer != null) {
 				clusterManager.runOnServer(activeServer, () -> {
@@ -102,148 +127,169 @@ public class DefaultVisitInfoManager extends AbstractMultiEnvironmentManager
 		return INFO_VERSION;
 	}
 	
+	private void visit(String storeName, Long projectId, Long userId, Long entityId) {
+		long time = new DateTime().plusSeconds(1).getMillis();
+		pendingVisits.put(new Visit(storeName, projectId, userId, entityId), time);
+		if (pendingVisits.size() >= MAX_PENDING_VISITS) {
+			synchronized (flushLock) {
+				flushLock.notifyAll();
+			}
+		}
+	}
+	
 	@Override
 	public void visitIssue(User user, Issue issue) {
-		Long projectId = issue.getProject().getId();
-		Long userId = user.getId();
-		Long issueId = issue.getId();
-		projectManager.submitToReplicaServers(projectId, () -> {
-			try {
-				Environment env = getEnv(projectId.toString());
-				Store store = getStore(env, ISSUE_STORE);
-				env.executeInTransaction(txn -> {
-					long time = new DateTime().plusSeconds(1).getMillis();
-					writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, issueId)), time);
-				});
-			} catch (Exception e) {
-				logger.error("Error writing issue visit timestamp", e);
-			}
-			return null;
-		});
+		visit(ISSUE_STORE, issue.getProject().getId(), user.getId(), issue.getId());
 	}
 
 	@Override
 	public void visitPullRequest(User user, PullRequest request) {
-		Long projectId = request.getProject().getId();
-		Long userId = user.getId();
-		Long requestId = request.getId();
-		projectManager.submitToReplicaServers(projectId, () -> {
-			try {
-				Environment env = getEnv(projectId.toString());
-				Store store = getStore(env, PULL_REQUEST_STORE);
-				env.executeInTransaction(txn -> {
-					long time = new DateTime().plusSeconds(1).getMillis();
-					writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, requestId)), time);
-				});
-			} catch (Exception e) {
-				logger.error("Error writing pull request visit timestamp", e);
-			}
-			return null;
-		});
+		visit(PULL_REQUEST_STORE, request.getProject().getId(), user.getId(), request.getId());
 	}
 	
 	@Override
 	public void visitCodeComment(User user, CodeComment comment) {
-		Long projectId = comment.getProject().getId();
-		Long userId = user.getId();
-		Long commentId = comment.getId();
-		projectManager.submitToReplicaServers(projectId, () -> {
-			try {
-				Environment env = getEnv(projectId.toString());
-				Store store = getStore(env, CODE_COMMENT_STORE);
-				env.executeInTransaction(txn -> {
-					long time = new DateTime().plusSeconds(1).getMillis();
-					writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, commentId)), time);
-				});
-			} catch (Exception e) {
-				logger.error("Error writing code comment visit timestamp", e);
-			}
-			return null;
-		});
+		visit(CODE_COMMENT_STORE, comment.getProject().getId(), user.getId(), comment.getId());
 	}
 
 	@Override
 	public void visitPullRequestCodeComments(User user, PullRequest request) {
-		Long userId = user.getId();
-		Long projectId = request.getProject().getId();
-		Long requestId = request.getId();
-		projectManager.submitToReplicaServers(projectId, () -> {
+		visit(PULL_REQUEST_CODE_COMMENT_STORE, request.getProject().getId(), user.getId(), request.getId());
+	}
+	
+	/**
+	 * Write pending visits to replica servers of their projects, with visits of each project 
+	 * written in a single transaction
+	 */
+	private void flush() {
+		Map<Long, Map<Visit, Long>> visitsOfProjects = new HashMap<>();
+		for (var entry: pendingVisits.entrySet()) {
+			// Only remove if not updated since read, otherwise newer visit will be flushed next time
+			if (pendingVisits.remove(entry.getKey(), entry.getValue())) {
+				visitsOfProjects.computeIfAbsent(entry.getKey().projectId, k -> new HashMap<>())
+						.put(entry.getKey(), entry.getValue());
+			}
+		}
+		for (var entry: visitsOfProjects.entrySet()) {
+			Long projectId = entry.getKey();
+			HashMap<Visit, Long> visits = new HashMap<>(entry.getValue());
 			try {
-				Environment env = getEnv(projectId.toString());
-				Store store = getStore(env, PULL_REQUEST_CODE_COMMENT_STORE);
-				env.executeInTransaction(txn -> {
-					long time = new DateTime().plusSeconds(1).getMillis();
-					writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, requestId)), time);
+				projectManager.submitToReplicaServers(projectId, () -> {
+					try {
+						Environment env = getEnv(projectId.toString());
+						Map<String, Store> stores = new HashMap<>();
+						for (var visit: visits.keySet())
+							stores.computeIfAbsent(visit.storeName, k -> getStore(env, k));
+						env.executeInTransaction(txn -> {
+							for (var visitEntry: visits.entrySet()) {
+								var visit = visitEntry.getKey();
+								writeLong(stores.get(visit.storeName), txn, 
+										new LongsByteIterable(Lists.newArrayList(visit.userId, visit.entityId)), 
+										visitEntry.getValue());
+							}
+						});
+					} catch (Exception e) {
+						logger.error("Error writing visit timestamps", e);
+					}
+					return null;
 				});
 			} catch (Exception e) {
-				logger.error("Error writing pull request code comments visit timestamp", e);
+				logger.error("Error submitting visit timestamps", e);
 			}
-			return null;
-		});
+		}
 	}
-
+	
+	/**
+	 * @param projectIds
+	 * 			map of entity id to project id
+	 * @return
+	 * 			map of entity id to visit date, with value set to <tt>null</tt> if not visited
+	 */
+	private Map<Long, Date> getVisitDates(String storeName, User user, Map<Long, Long> projectIds) {
+		Long userId = user.getId();
+		Map<String, HashMap<Long, ArrayList<Long>>> entityIdsOfServers = new HashMap<>();
+		for (var entry: projectIds.entrySet()) {
+			Long projectId = entry.getValue();
+			entityIdsOfServers
+					.computeIfAbsent(projectManager.getActiveServer(projectId, true), k -> new HashMap<>())
+					.computeIfAbsent(projectId, k -> new ArrayList<>())
+					.add(entry.getKey());
+		}
+		
+		Map<Long, Date> visitDates = new HashMap<>();
+		for (var serverEntry: entityIdsOfServers.entrySet()) {
+			var entityIdsOfProjects = serverEntry.getValue();
+			visitDates.putAll(clusterManager.runOnServer(serverEntry.getKey(), () -> {
+				HashMap<Long, Date> visitDatesOnServer = new HashMap<>();
+				for (var projectEntry: entityIdsOfProjects.entrySet()) {
+					Environment env = getEnv(projectEntry.getKey().toString());
+					Store store = getStore(env, storeName);
+					env.executeInReadonlyTransaction(txn -> {
+						for (Long entityId: projectEntry.getValue()) {
+							long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, entityId)), -1);
+							visitDatesOnServer.put(entityId, millis != -1? new Date(millis): null);
+						}
+					});
+				}
+				return visitDatesOnServer;
+			}));
+		}
+		
+		// Visits not flushed yet should also be considered
+		for (var entry: projectIds.entrySet()) {
+			Long pendingTime = pendingVisits.get(new Visit(storeName, entry.getValue(), userId, entry.getKey()));
+			if (pendingTime != null) {
+				Date visitDate = visitDates.get(entry.getKey());
+				if (visitDate == null || visitDate.getTime() < pendingTime)
+					visitDates.put(entry.getKey(), new Date(pendingTime));
+			}
+		}
+		return visitDates;
+	}
+	
 	@Override
 	public Date getPullRequestVisitDate(User user, PullRequest request) {
-		Long userId = user.getId();
-		Long requestId = request.getId();
-		Long projectId = request.getProject().getId();
-		return projectManager.runOnActiveServer(projectId, () -> {
-			Environment env = getEnv(projectId.toString());
-			Store store = getStore(env, PULL_REQUEST_STORE);
-			return env.computeInTransaction(txn -> {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, requestId)), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			});
-		});
+		return getPullRequestVisitDates(user, Lists.newArrayList(request)).get(request.getId());
 	}
 
 	@Override
 	public Date getIssueVisitDate(User user, Issue issue) {
-		Long userId = user.getId();
-		Long projectId = issue.getProject().getId();
-		Long issueId = issue.getId();
-		return projectManager.runOnActiveServer(projectId, () -> {
-			Environment env = getEnv(projectId.toString());
-			Store store = getStore(env, ISSUE_STORE);
-			return env.computeInTransaction(txn -> {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, issueId)), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			});
-		});
+		return getIssueVisitDates(user, Lists.newArrayList(issue)).get(issue.getId());
 	}
 	
 	@Override
 	public Date getCodeCommentVisitDate(User user, CodeComment comment) {
-		Long projectId = comment.getProject().getId();
-		Long commentId = comment.getId();
-		Long userId = user.getId();
-		return projectManager.runOnActiveServer(projectId, () -> {
-			Environment env = getEnv(projectId.toString());
-			Store store = getStore(env, CODE_COMMENT_STORE);
-			return env.computeInTransaction(txn -> {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, commentId)), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			});
-		});
+		return getCodeCommentVisitDates(user, Lists.newArrayList(comment)).get(comment.getId());
+	}
+
+	@Override
+	public Date getPullRequestCodeCommentsVisitDate(User user, PullRequest request) {
+		var projectIds = Map.of(request.getId(), request.getProject().getId());
+		return getVisitDates(PULL_REQUEST_CODE_COMMENT_STORE, user, projectIds).get(request.getId());
+	}
+
+	@Override
+	public Map<Long, Date> getIssueVisitDates(User user, Collection<Issue> issues) {
+		return getVisitDates(ISSUE_STORE, user, issues.stream().collect(toMap(Issue::getId, it -> it.getProject().getId())));
+	}
+
+	@Override
+	public Map<Long, Date> getPullRequestVisitDates(User user, Collection<PullRequest> requests) {
+		return getVisitDates(PULL_REQUEST_STORE, user, requests.stream().collect(toMap(PullRequest::getId, it -> it.getProject().getId())));
+	}
+
+	@Override
+	public Map<Long, Date> getCodeCommentVisitDates(User user, Collection<CodeComment> comments) {
+		return getVisitDates(CODE_COMMENT_STORE, user, comments.stream().collect(toMap(CodeComment::getId, it -> it.getProject().getId())));
 	}
 
 	@Override
 	public void syncVisitInfo(Long projectId, String syncWithServer) {
 		var envDir = getEnvDir(projectId.toString());
 		if (!getVersionFile(envDir).exists()) {
-			Client client = ClientBuilder.newClient();
+			ClusterConnection connection = clusterTransport.connect(syncWithServer);
 			try {
-				String serverUrl = clusterManager.getServerUrl(syncWithServer);
-				WebTarget target = client.target(serverUrl)
+				WebTarget target = connection.target()
 						.path("~api/cluster/visit-info")
 						.queryParam("projectId", projectId);
 				Invocation.Builder builder = target.request();
@@ -256,29 +302,11 @@ public class DefaultVisitInfoManager extends AbstractMultiEnvironmentManager
 							getEnvDir(projectId.toString()), false);
 				}
 			} finally {
-				client.close();
+				connection.close();
 			}
 		}
 	}
 
-	@Override
-	public Date getPullRequestCodeCommentsVisitDate(User user, PullRequest request) {
-		Long userId = user.getId();
-		Long projectId = request.getProject().getId();
-		Long requestId = request.getId();
-		return projectManager.runOnActiveServer(projectId, () -> {
-			Environment env = getEnv(projectId.toString());
-			Store store = getStore(env, PULL_REQUEST_CODE_COMMENT_STORE);
-			return env.computeInTransaction(txn -> {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(userId, requestId)), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			});
-		});
-	}
-	
 	@Listen
 	public void on(IssueEvent event) {
 		if (event.getUser() != null)
@@ -305,4 +333,83 @@ public class DefaultVisitInfoManager extends AbstractMultiEnvironmentManager
 		export(projectId.toString(), targetDir);
 	}
 	
+	@Listen
+	public void on(SystemStarted event) {
+		thread = new Thread(() -> {
+			while (thread != null) {
+				try {
+					synchronized (flushLock) {
+						flushLock.wait(FLUSH_INTERVAL);
+					}
+					flush();
+				} catch (InterruptedException e) {
+					break;
+				} catch (Exception e) {
+					logger.error("Error flushing visit timestamps", e);
+				}
+			}
+		});
+		thread.start();
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		Thread copy = thread;
+		thread = null;
+		if (copy != null) {
+			copy.interrupt();
+			try {
+				copy.join();
+			} catch (InterruptedException ignored) {
+			}
+		}
+		flush();
+	}
+	
+	private static class Visit implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+
+		final String storeName;
+		
+		final Long projectId;
+		
+		final Long userId;
+		
+		final Long entityId;
+		
+		Visit(String storeName, Long projectId, Long userId, Long entityId) {
+			this.storeName = storeName;
+			this.projectId = projectId;
+			this.userId = userId;
+			this.entityId = entityId;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Visit))
+				return false;
+			if (this == other)
+				return true;
+			Visit otherVisit = (Visit) other;
+			return new EqualsBuilder()
+					.append(storeName, otherVisit.storeName)
+					.append(projectId, otherVisit.projectId)
+					.append(userId, otherVisit.userId)
+					.append(entityId, otherVisit.entityId)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37)
+					.append(storeName)
+					.append(projectId)
+					.append(userId)
+					.append(entityId)
+					.toHashCode();
+		}
+		
+	}
+	
 }
@@ -0,0 +1,335 @@
+package io.onedev.server.infomanager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.system.SystemStopped;
+import jetbrains.exodus.env.Environment;
+
+/**
+ * Keep opened Xodus environments of multi-environment managers in a LRU pool to limit
+ * number of open environments. Environments are handed out as proxies counting calls
+ * in progress, and an environment is only closed when no call (including transactions
+ * run via compute/execute methods) is in progress on it, no lease is held on it, and it
+ * has been idle for a while, so that callers obtaining an environment and using it right
+ * away are safe. Operations holding an environment or its stores across long running
+ * work should lease the environment instead.
+ */
+@Singleton
+public class EnvironmentPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(EnvironmentPool.class);
+
+	private static final int MAX_OPEN_ENVS = 200;
+
+	// Environments idle longer than this are closed even if pool is not full
+	private static final long MAX_IDLE_TIME = 600000;
+
+	// Environments idle shorter than this are not closed even if pool is full
+	private static final long MIN_IDLE_TIME = 60000;
+
+	private static final long EVICT_CHECK_INTERVAL = 10000;
+
+	private final int maxOpenEnvs;
+
+	private final long maxIdleTime;
+
+	private final long minIdleTime;
+
+	private final long evictCheckInterval;
+
+	private final Map<String, Handle> handles = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long lastEvictCheckTime;
+
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	public EnvironmentPool() {
+		this(MAX_OPEN_ENVS, MAX_IDLE_TIME, MIN_IDLE_TIME, EVICT_CHECK_INTERVAL);
+	}
+
+	EnvironmentPool(int maxOpenEnvs, long maxIdleTime, long minIdleTime, long evictCheckInterval) {
+		this.maxOpenEnvs = maxOpenEnvs;
+		this.maxIdleTime = maxIdleTime;
+		this.minIdleTime = minIdleTime;
+		this.evictCheckInterval = evictCheckInterval;
+	}
+
+	/**
+	 * Get environment of specified key. The environment might be closed if not used for
+	 * some time, so it should be used right away instead of being kept
+	 */
+	public Environment get(String key, Supplier<Environment> opener) {
+		return getHandle(key, opener, false).proxy;
+	}
+
+	/**
+	 * Get environment of specified key, and keep it open until returned lease is closed
+	 */
+	public Lease lease(String key, Supplier<Environment> opener) {
+		return new Lease(getHandle(key, opener, true));
+	}
+
+	private Handle getHandle(String key, Supplier<Environment> opener, boolean lease) {
+		Collection<Handle> evictedHandles;
+		Handle handle;
+		boolean opening;
+		synchronized (this) {
+			handle = handles.get(key);
+			if (handle != null) {
+				hits++;
+				opening = false;
+			} else {
+				misses++;
+				handle = new Handle();
+				handles.put(key, handle);
+				opening = true;
+			}
+			handle.lastAccessTime = System.currentTimeMillis();
+			if (lease)
+				handle.refCount++;
+			evictedHandles = evict();
+		}
+		close(evictedHandles);
+
+		// Environment is opened outside of the pool lock, so that opening a slow environment
+		// does not block access to other environments. Other callers of the same key wait
+		// for the opening handle
+		try {
+			if (opening) {
+				open(key, handle, opener);
+			} else {
+				synchronized (this) {
+					while (handle.env == null && handle.openError == null)
+						wait();
+				}
+				if (handle.openError != null)
+					throw new IllegalStateException("Error opening environment", handle.openError);
+			}
+		} catch (InterruptedException e) {
+			release(handle, lease);
+			throw new RuntimeException(e);
+		} catch (RuntimeException|Error e) {
+			release(handle, lease);
+			throw e;
+		}
+		return handle;
+	}
+
+	private void open(String key, Handle handle, Supplier<Environment> opener) {
+		Environment env;
+		try {
+			env = opener.get();
+		} catch (RuntimeException|Error e) {
+			synchronized (this) {
+				if (handles.get(key) == handle)
+					handles.remove(key);
+				handle.openError = e;
+				notifyAll();
+			}
+			throw e;
+		}
+		boolean closed;
+		synchronized (this) {
+			handle.env = env;
+			closed = handle.closed;
+			notifyAll();
+		}
+		// Removed while opening
+		if (closed)
+			env.close();
+	}
+
+	private void release(Handle handle, boolean lease) {
+		if (lease) {
+			synchronized (this) {
+				handle.refCount--;
+				handle.lastAccessTime = System.currentTimeMillis();
+			}
+		}
+	}
+
+	public void remove(String key) {
+		Handle handle;
+		synchronized (this) {
+			handle = handles.remove(key);
+			if (handle != null)
+				handle.closed = true;
+		}
+		if (handle != null && handle.env != null)
+			handle.env.close();
+	}
+
+	private Collection<Handle> evict() {
+		Collection<Handle> evictedHandles = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		boolean checkIdle = now - lastEvictCheckTime > evictCheckInterval;
+		if (checkIdle)
+			lastEvictCheckTime = now;
+		if (checkIdle || handles.size() > maxOpenEnvs) {
+			int size = handles.size();
+			for (Iterator<Handle> it = handles.values().iterator(); it.hasNext();) {
+				Handle handle = it.next();
+				if (handle.refCount == 0 && handle.env != null) {
+					long idleTime = now - handle.lastAccessTime;
+					if (size > maxOpenEnvs && idleTime > minIdleTime || idleTime > maxIdleTime) {
+						it.remove();
+						size--;
+						handle.closed = true;
+						evictedHandles.add(handle);
+						evictions++;
+					}
+				}
+			}
+		}
+		return evictedHandles;
+	}
+
+	private void close(Collection<Handle> handlesToClose) {
+		for (Handle handle: handlesToClose) {
+			try {
+				handle.env.close();
+			} catch (Exception e) {
+				logger.error("Error closing environment", e);
+			}
+		}
+	}
+
+	public synchronized int getOpenEnvs() {
+		return handles.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Listen
+	public void on(SystemStopped event) {
+		Collection<Handle> handlesToClose = new ArrayList<>();
+		synchronized (this) {
+			for (Handle handle: handles.values()) {
+				handle.closed = true;
+				// Environments being opened are closed by their openers
+				if (handle.env != null)
+					handlesToClose.add(handle);
+			}
+			handles.clear();
+		}
+		close(handlesToClose);
+	}
+
+	/**
+	 * Lease of a pooled environment. The environment will not be evicted from the pool
+	 * until the lease is closed. However it will still be closed if removed from the pool
+	 */
+	public class Lease implements AutoCloseable {
+
+		private final Handle handle;
+
+		private boolean released;
+
+		Lease(Handle handle) {
+			this.handle = handle;
+		}
+
+		public Environment getEnv() {
+			return handle.proxy;
+		}
+
+		@Override
+		public void close() {
+			synchronized (EnvironmentPool.this) {
+				if (!released) {
+					released = true;
+					release(handle, true);
+				}
+			}
+		}
+
+	}
+
+	private class Handle implements InvocationHandler {
+
+		final Environment proxy;
+
+		// Set once opened, guarded by the pool
+		Environment env;
+
+		Throwable openError;
+
+		int refCount;
+
+		long lastAccessTime;
+
+		boolean closed;
+
+		Handle() {
+			proxy = (Environment) Proxy.newProxyInstance(Environment.class.getClassLoader(),
+					new Class<?>[] {Environment.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+					case "equals":
+						return proxy == args[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						return "Pooled " + env;
+				}
+			}
+
+			// Life cycle of pooled environments is managed by the pool
+			if (method.getName().equals("close") && method.getParameterCount() == 0)
+				return null;
+
+			Environment env;
+			synchronized (EnvironmentPool.this) {
+				env = this.env;
+				if (closed)
+					throw new IllegalStateException("Environment is closed: " + env.getLocation());
+				refCount++;
+			}
+			try {
+				return method.invoke(env, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				synchronized (EnvironmentPool.this) {
+					refCount--;
+					lastAccessTime = System.currentTimeMillis();
+				}
+			}
+		}
+
+	}
+
+}
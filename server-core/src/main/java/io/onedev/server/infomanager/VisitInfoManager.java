@@ -1,7 +1,9 @@
 package io.onedev.server.infomanager;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -31,6 +33,30 @@ public interface VisitInfoManager {
 	
 	@Nullable
 	Date getCodeCommentVisitDate(User user, CodeComment comment);
+	
+	/**
+	 * Get visit dates of specified issues in batch
+	 * 
+	 * @return
+	 * 			map of issue id to visit date, with value being <tt>null</tt> if not visited
+	 */
+	Map<Long, Date> getIssueVisitDates(User user, Collection<Issue> issues);
+	
+	/**
+	 * Get visit dates of specified pull requests in batch
+	 * 
+	 * @return
+	 * 			map of pull request id to visit date, with value being <tt>null</tt> if not visited
+	 */
+	Map<Long, Date> getPullRequestVisitDates(User user, Collection<PullRequest> requests);
+	
+	/**
+	 * Get visit dates of specified code comments in batch
+	 * 
+	 * @return
+	 * 			map of code comment id to visit date, with value being <tt>null</tt> if not visited
+	 */
+	Map<Long, Date> getCodeCommentVisitDates(User user, Collection<CodeComment> comments);
 
     void syncVisitInfo(Long projectId, String syncWithServer);
 
@@ -27,9 +27,11 @@ import io.onedev.server.buildspec.param.spec.ParamSpec;
 import io.onedev.server.buildspec.param.spec.SecretParam;
 import io.onedev.server.buildspec.step.ServerSideStep;
 import io.onedev.server.buildspec.step.Step;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
 import io.onedev.server.cluster.ClusterRunnable;
 import io.onedev.server.cluster.ClusterTask;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.*;
 import io.onedev.server.event.Listen;
 import io.onedev.server.event.ListenerRegistry;
@@ -85,8 +87,6 @@ import javax.inject.Singleton;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.HttpHeaders;
@@ -154,6 +154,8 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 
 	private final ClusterManager clusterManager;
 
+	private final ClusterTransport clusterTransport;
+
 	private final CodeIndexManager codeIndexManager;
 
 	private final GitService gitService;
@@ -175,7 +177,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 							 SettingManager settingManager, TransactionManager transactionManager, LogManager logManager,
 							 ExecutorService executorService, SessionManager sessionManager, BuildParamManager buildParamManager,
 							 ProjectManager projectManager, Validator validator, TaskScheduler taskScheduler,
-							 ClusterManager clusterManager, CodeIndexManager codeIndexManager, PullRequestManager pullRequestManager, 
+							 ClusterManager clusterManager, ClusterTransport clusterTransport, CodeIndexManager codeIndexManager, PullRequestManager pullRequestManager, 
 							 IssueManager issueManager, GitService gitService, SSLFactory sslFactory, Dao dao) {
 		this.dao = dao;
 		this.settingManager = settingManager;
@@ -192,6 +194,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 		this.taskScheduler = taskScheduler;
 		this.codeIndexManager = codeIndexManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
 		this.pullRequestManager = pullRequestManager;
 		this.issueManager = issueManager;
 		this.gitService = gitService;
@@ -1437,10 +1440,9 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 						return null;
 					});
 				} else {
-					String serverUrl = clusterManager.getServerUrl(dependencyActiveServer);
-					Client client = ClientBuilder.newClient();
+					ClusterConnection connection = clusterTransport.connect(dependencyActiveServer);
 					try {
-						WebTarget target = client.target(serverUrl).path("~api/cluster/artifacts")
+						WebTarget target = connection.target().path("~api/cluster/artifacts")
 								.queryParam("projectId", dependency.getProject().getId())
 								.queryParam("buildNumber", dependency.getNumber())
 								.queryParam("artifacts", dependence.getArtifacts());
@@ -1457,7 +1459,7 @@ public class DefaultJobManager implements JobManager, Runnable, CodePullAuthoriz
 							}
 						}
 					} finally {
-						client.close();
+						connection.close();
 					}
 				}
 			}
@@ -2,6 +2,7 @@ package io.onedev.server.mail;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
 import com.hazelcast.cluster.MembershipEvent;
 import com.hazelcast.cluster.MembershipListener;
 import com.ibm.icu.impl.locale.XCldrStub.Splitter;
@@ -27,6 +28,7 @@ import io.onedev.server.model.support.administration.ServiceDeskSetting;
 import io.onedev.server.model.support.administration.emailtemplates.EmailTemplates;
 import io.onedev.server.model.support.administration.mailsetting.MailSetting;
 import io.onedev.server.model.support.issue.field.supply.FieldSupply;
+import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
@@ -73,6 +75,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static io.onedev.server.model.Setting.Key.MAIL;
@@ -89,10 +92,30 @@ public class DefaultMailManager implements MailManager, Serializable {
 	
 	private static final String SIGNATURE_PREFIX = "-- ";
 	
+	private static final int MAX_SENDERS = 4;
+	
+	private static final int SEND_BATCH_SIZE = 20;
+	
+	private static final double MAX_SEND_RATE = 20;
+	
+	private static final int MAX_SEND_ATTEMPTS = 10;
+	
+	private static final long RETRY_DELAY = 30000;
+	
+	private static final long MAX_RETRY_DELAY = 3600000;
+	
+	private static final long QUEUE_CHECK_INTERVAL = 10000;
+	
+	private static final long MAX_TRANSPORT_IDLE_TIME = 30000;
+	
 	private final SettingManager settingManager;
 	
 	private final TransactionManager transactionManager;
 	
+	private final SessionManager sessionManager;
+	
+	private final PendingMailManager pendingMailManager;
+	
 	private final ProjectManager projectManager;
 	
 	private final UserAuthorizationManager authorizationManager;
@@ -123,10 +146,31 @@ public class DefaultMailManager implements MailManager, Serializable {
 	
 	private final ClusterManager clusterManager;
 	
+	private final SmtpTransportPool transportPool = new SmtpTransportPool(MAX_TRANSPORT_IDLE_TIME);
+	
+	private final RateLimiter sendRateLimiter = RateLimiter.create(MAX_SEND_RATE);
+	
+	private final Object queueLock = new Object();
+	
+	private boolean queueChanged;
+	
+	private final AtomicLong sentMails = new AtomicLong();
+	
+	private final AtomicLong failedAttempts = new AtomicLong();
+	
+	private final AtomicLong droppedMails = new AtomicLong();
+	
+	private final AtomicLong totalLatency = new AtomicLong();
+	
+	private final AtomicLong maxLatency = new AtomicLong();
+	
 	private volatile Thread thread;
 	
+	private volatile Thread queueThread;
+	
 	@Inject
-	public DefaultMailManager(TransactionManager transactionManager, SettingManager settingManager, 
+	public DefaultMailManager(TransactionManager transactionManager, SessionManager sessionManager, 
+			PendingMailManager pendingMailManager, SettingManager settingManager, 
 			UserManager userManager, ProjectManager projectManager, 
 			UserAuthorizationManager authorizationManager, IssueManager issueManager, 
 			IssueCommentManager issueCommentManager, IssueWatchManager issueWatchManager, 
@@ -136,6 +180,8 @@ public class DefaultMailManager implements MailManager, Serializable {
 			IssueAuthorizationManager issueAuthorizationManager, AttachmentManager attachmentManager, 
 			ClusterManager clusterManager) {
 		this.transactionManager = transactionManager;
+		this.sessionManager = sessionManager;
+		this.pendingMailManager = pendingMailManager;
 		this.settingManager = settingManager;
 		this.userManager = userManager;
 		this.projectManager = projectManager;
@@ -158,33 +204,148 @@ public class DefaultMailManager implements MailManager, Serializable {
 		return new ManagedSerializedForm(MailManager.class);
 	}
 	
-	@Sessional
+	@Transactional
 	@Override
 	public void sendMailAsync(Collection<String> toList, Collection<String> ccList, Collection<String> bccList, 
 							  String subject, String htmlBody, String textBody, @Nullable String replyAddress, 
 							  @Nullable String senderName, @Nullable String references) {
-		transactionManager.runAfterCommit(new Runnable() {
-
-			@Override
-			public void run() {
-				executorService.execute(new Runnable() {
-
-					@Override
-					public void run() {
-						try {
-							sendMail(toList, ccList, bccList, subject, htmlBody, textBody, replyAddress, 
-									senderName, references);
-						} catch (Exception e) {
-							logger.error("Error sending email (to: " + toList + ", subject: " + subject + ")", e);
-						}		
-					}
-					
+		if (toList.isEmpty() && ccList.isEmpty() && bccList.isEmpty())
+			return;
+		
+		PendingMail mail = new PendingMail();
+		mail.setQueueDate(new Date());
+		mail.setScheduledDate(mail.getQueueDate());
+		mail.setToList(new ArrayList<>(toList));
+		mail.setCcList(new ArrayList<>(ccList));
+		mail.setBccList(new ArrayList<>(bccList));
+		mail.setSubject(subject);
+		mail.setHtmlBody(htmlBody);
+		mail.setTextBody(textBody);
+		mail.setReplyAddress(replyAddress);
+		mail.setSenderName(senderName);
+		mail.setReferences(references);
+		pendingMailManager.create(mail);
+		
+		transactionManager.runAfterCommit(() -> {
+			if (clusterManager.isLeaderServer()) {
+				notifyQueueChanged();
+			} else {
+				clusterManager.submitToServer(clusterManager.getLeaderServerAddress(), () -> {
+					notifyQueueChanged();
+					return null;
 				});
 			}
-			
 		});
 	}
 	
+	private void notifyQueueChanged() {
+		synchronized (queueLock) {
+			queueChanged = true;
+			queueLock.notifyAll();
+		}
+	}
+	
+	private void processQueue() throws InterruptedException {
+		while (queueThread != null) {
+			synchronized (queueLock) {
+				if (!queueChanged)
+					queueLock.wait(QUEUE_CHECK_INTERVAL);
+				queueChanged = false;
+			}
+			transportPool.evictIdle();
+			if (!clusterManager.isLeaderServer())
+				continue;
+			
+			try {
+				List<Long> mailIds = sessionManager.call(() -> pendingMailManager.queryDue(MAX_SENDERS * SEND_BATCH_SIZE)
+						.stream().map(PendingMail::getId).collect(toList()));
+				
+				if (mailIds.isEmpty())
+					continue;
+				
+				List<Future<?>> futures = new ArrayList<>();
+				for (List<Long> batch: Lists.partition(mailIds, SEND_BATCH_SIZE)) 
+					futures.add(executorService.submit(() -> sessionManager.run(() -> sendQueuedMails(batch))));
+				for (Future<?> future: futures) 
+					future.get();
+				
+				// More mails might be due
+				if (mailIds.size() == MAX_SENDERS * SEND_BATCH_SIZE)
+					notifyQueueChanged();
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				logger.error("Error processing mail queue", e);
+			}
+		}
+	}
+	
+	/**
+	 * Send specified queued mails over a single SMTP connection
+	 */
+	private void sendQueuedMails(List<Long> mailIds) {
+		MailSetting mailSetting = settingManager.getMailSetting();
+		MailSendSetting sendSetting = mailSetting!=null? mailSetting.getSendSetting(): null;
+		SmtpTransportPool.Lease lease = null;
+		try {
+			for (Long mailId: mailIds) {
+				PendingMail mail = pendingMailManager.get(mailId);
+				if (mail == null)
+					continue;
+				if (sendSetting == null) {
+					logger.warn("Unable to send mail as mail setting is not specified");
+					transactionManager.run(() -> pendingMailManager.delete(mail));
+					continue;
+				}
+				
+				try {
+					if (lease == null)
+						lease = transportPool.lease(sendSetting);
+					sendRateLimiter.acquire();
+					lease.send(createMessage(lease.getSession(), sendSetting, mail.getToList(), mail.getCcList(), 
+							mail.getBccList(), mail.getSubject(), mail.getHtmlBody(), mail.getTextBody(), 
+							mail.getReplyAddress(), mail.getSenderName(), mail.getReferences()));
+					
+					long latency = System.currentTimeMillis() - mail.getQueueDate().getTime();
+					sentMails.incrementAndGet();
+					totalLatency.addAndGet(latency);
+					maxLatency.accumulateAndGet(latency, Math::max);
+					transactionManager.run(() -> pendingMailManager.delete(mail));
+				} catch (Exception e) {
+					failedAttempts.incrementAndGet();
+					if (lease != null && lease.isBroken()) {
+						lease.close();
+						lease = null;
+					}
+					mail.setAttempts(mail.getAttempts() + 1);
+					if (mail.getAttempts() >= MAX_SEND_ATTEMPTS) {
+						logger.error("Error sending email, giving up (to: " + mail.getToList() + ", subject: " + mail.getSubject() + ")", e);
+						droppedMails.incrementAndGet();
+						transactionManager.run(() -> pendingMailManager.delete(mail));
+					} else {
+						logger.warn("Error sending email, will retry later (to: " + mail.getToList() + ", subject: " + mail.getSubject() + ")", e);
+						long retryDelay = Math.min(RETRY_DELAY << (mail.getAttempts() - 1), MAX_RETRY_DELAY);
+						mail.setScheduledDate(new Date(System.currentTimeMillis() + retryDelay));
+						mail.setLastError(e.getMessage());
+						transactionManager.run(() -> pendingMailManager.update(mail));
+					}
+				}
+			}
+		} finally {
+			if (lease != null)
+				lease.close();
+		}
+	}
+	
+	@Sessional
+	@Override
+	public MailQueueStatus getQueueStatus() {
+		long sentMailsValue = sentMails.get();
+		long averageLatency = sentMailsValue != 0? totalLatency.get() / sentMailsValue: 0;
+		return new MailQueueStatus(pendingMailManager.count(), sentMailsValue, failedAttempts.get(), 
+				droppedMails.get(), averageLatency, maxLatency.get());
+	}
+	
 	private String getThreadIndex(String references) {
 		byte[] threadIndexBytes = new byte[22];
 		FileTime ft = FileTime.fromMillis(System.currentTimeMillis());
@@ -234,87 +395,9 @@ public class DefaultMailManager implements MailManager, Serializable {
 		}
 		
 		if (sendSetting != null) {
-			Properties properties = new Properties();
-	        properties.setProperty("mail.smtp.host", sendSetting.getSmtpHost());
-			
-			sendSetting.getSslSetting().configure(properties);
-	 
-	        properties.setProperty("mail.smtp.connectiontimeout", String.valueOf(Bootstrap.SOCKET_CONNECT_TIMEOUT));
-	        properties.setProperty("mail.smtp.timeout", String.valueOf(sendSetting.getTimeout()*1000));
-	        
-	        Authenticator authenticator;
-	        if (sendSetting.getSmtpUser() != null) {
-	        	properties.setProperty("mail.smtp.auth", "true");
-	        	if (sendSetting.getSmtpCredential() instanceof OAuthAccessToken)
-	        		properties.setProperty("mail.smtp.auth.mechanisms", "XOAUTH2");
-	        	String smtpUser = sendSetting.getSmtpUser();
-	        	String credentialValue = sendSetting.getSmtpCredential()!=null?sendSetting.getSmtpCredential().getValue():null;
-	        	authenticator = new Authenticator() {
-		        	
-		            @Override
-		            protected PasswordAuthentication getPasswordAuthentication() {
-		                return new PasswordAuthentication(smtpUser, credentialValue);
-		            }
-		            
-		        };	        	
-	        } else {
-	        	authenticator = null;
-	        }
-	        
-	        try {
-				Session session = Session.getInstance(properties, authenticator);	        
-				
-				MimeMultipart bodyPart = new MimeMultipart("alternative");
-				
-				MimeBodyPart htmlPart = new MimeBodyPart();
-				htmlPart.setContent(htmlBody, "text/html; charset=" + StandardCharsets.UTF_8.name());
-				bodyPart.addBodyPart(htmlPart, 0);
-				
-				MimeBodyPart textPart = new MimeBodyPart();
-				textPart.setText(textBody, StandardCharsets.UTF_8.name());
-				bodyPart.addBodyPart(textPart, 0);
-
-				Message message = new MimeMessage(session);
-				
-				if (references != null) {
-				    Map<String, String> headers = CollectionUtils.newHashMap(
-				    		"References", references, 
-				    		"In-Reply-To", references, 
-				    		"Thread-Index", getThreadIndex(references));
-				    
-				    for (Map.Entry<String, String> entry: headers.entrySet())
-				    	message.addHeader(entry.getKey(), createFoldedHeaderValue(entry.getKey(), entry.getValue()));
-				}
-				
-				var brandName = settingManager.getBrandingSetting().getName();
-				if (senderName == null || senderName.equalsIgnoreCase(User.SYSTEM_NAME)) {
-					if (brandName.equalsIgnoreCase(User.SYSTEM_NAME))
-						senderName = QUOTE_MARK;
-					else 
-						senderName = brandName + " " + QUOTE_MARK;
-				} else {
-					senderName += " " + QUOTE_MARK;
-				}
-				message.setFrom(createInetAddress(sendSetting.getSenderAddress(), senderName));
-				
-				if (toList.isEmpty() && ccList.isEmpty() && bccList.isEmpty())
-					throw new ExplicitException("At least one receiver address should be specified");
-				
-				message.setRecipients(RecipientType.TO, 
-						toList.stream().map(it->createInetAddress(it, null)).toArray(InternetAddress[]::new));
-				message.setRecipients(RecipientType.CC, 
-						ccList.stream().map(it->createInetAddress(it, null)).toArray(InternetAddress[]::new));
-				message.setRecipients(RecipientType.BCC, 
-						bccList.stream().map(it->createInetAddress(it, null)).toArray(InternetAddress[]::new));
-				if (replyAddress != null)
-					message.setReplyTo(new InternetAddress[]{createInetAddress(replyAddress, null)});
-
-				message.setSubject(subject);
-				message.setContent(bodyPart);
-
-				logger.debug("Sending email (subject: {}, to: {}, cc: {}, bcc: {})... ", subject, toList, ccList, bccList);
-				
-	            Transport.send(message);
+			try (var lease = transportPool.lease(sendSetting)) {
+				lease.send(createMessage(lease.getSession(), sendSetting, toList, ccList, bccList, subject, 
+						htmlBody, textBody, replyAddress, senderName, references));
 			} catch (MessagingException e) {
 				throw new RuntimeException(e);
 			}
@@ -322,6 +405,62 @@ public class DefaultMailManager implements MailManager, Serializable {
 			logger.warn("Unable to send mail as mail setting is not specified");
 		}
 	}
+	
+	private Message createMessage(Session session, MailSendSetting sendSetting, Collection<String> toList, 
+								  Collection<String> ccList, Collection<String> bccList, String subject, 
+								  String htmlBody, String textBody, @Nullable String replyAddress, 
+								  @Nullable String senderName, @Nullable String references) throws MessagingException {
+		MimeMultipart bodyPart = new MimeMultipart("alternative");
+		
+		MimeBodyPart htmlPart = new MimeBodyPart();
+		htmlPart.setContent(htmlBody, "text/html; charset=" + StandardCharsets.UTF_8.name());
+		bodyPart.addBodyPart(htmlPart, 0);
+		
+		MimeBodyPart textPart = new MimeBodyPart();
+		textPart.setText(textBody, StandardCharsets.UTF_8.name());
+		bodyPart.addBodyPart(textPart, 0);
+
+		Message message = new MimeMessage(session);
+		
+		if (references != null) {
+		    Map<String, String> headers = CollectionUtils.newHashMap(
+		    		"References", references, 
+		    		"In-Reply-To", references, 
+		    		"Thread-Index", getThreadIndex(references));
+		    
+		    for (Map.Entry<String, String> entry: headers.entrySet())
+		    	message.addHeader(entry.getKey(), createFoldedHeaderValue(entry.getKey(), entry.getValue()));
+		}
+		
+		var brandName = settingManager.getBrandingSetting().getName();
+		if (senderName == null || senderName.equalsIgnoreCase(User.SYSTEM_NAME)) {
+			if (brandName.equalsIgnoreCase(User.SYSTEM_NAME))
+				senderName = QUOTE_MARK;
+			else 
+				senderName = brandName + " " + QUOTE_MARK;
+		} else {
+			senderName += " " + QUOTE_MARK;
+		}
+		message.setFrom(createInetAddress(sendSetting.getSenderAddress(), senderName));
+		
+		if (toList.isEmpty() && ccList.isEmpty() && bccList.isEmpty())
+			throw new ExplicitException("At least one receiver address should be specified");
+		
+		message.setRecipients(RecipientType.TO, 
+				toList.stream().map(it->createInetAddress(it, null)).toArray(InternetAddress[]::new));
+		message.setRecipients(RecipientType.CC, 
+				ccList.stream().map(it->createInetAddress(it, null)).toArray(InternetAddress[]::new));
+		message.setRecipients(RecipientType.BCC, 
+				bccList.stream().map(it->createInetAddress(it, null)).toArray(InternetAddress[]::new));
+		if (replyAddress != null)
+			message.setReplyTo(new InternetAddress[]{createInetAddress(replyAddress, null)});
+
+		message.setSubject(subject);
+		message.setContent(bodyPart);
+
+		logger.debug("Sending email (subject: {}, to: {}, cc: {}, bcc: {})... ", subject, toList, ccList, bccList);
+		return message;
+	}
 
 	@Override
 	public void sendMail(Collection<String> toList, Collection<String> ccList, Collection<String> bccList, 
@@ -861,16 +1000,34 @@ public class DefaultMailManager implements MailManager, Serializable {
 			}
 		});
 		thread.start();
+		
+		queueThread = new Thread(() -> {
+			try {
+				processQueue();
+			} catch (InterruptedException ignored) {
+			}
+		});
+		queueThread.start();
 	}
 	
 	@Listen
 	public void on(SystemStopping event) {
 		Thread copy = thread;
 		thread = null;
-		if (copy != null) {
-			copy.interrupt();
+		stop(copy);
+		
+		copy = queueThread;
+		queueThread = null;
+		stop(copy);
+		
+		transportPool.close();
+	}
+	
+	private void stop(@Nullable Thread thread) {
+		if (thread != null) {
+			thread.interrupt();
 			try {
-				copy.join();
+				thread.join();
 			} catch (InterruptedException ignored) {
 			}
 		}
@@ -21,6 +21,10 @@ public interface MailManager {
 				  Collection<String> bccList, String subject, String htmlBody, String textBody, 
 				  @Nullable String replyAddress, @Nullable String senderName, @Nullable String references);
 	
+	/**
+	 * Queue mail to be sent in background. Mail is queued in current transaction, and 
+	 * will be retried in case of sending failures
+	 */
 	void sendMailAsync(Collection<String> toList, Collection<String> ccList, Collection<String> bccList, 
 					   String subject, String htmlBody, String textBody, @Nullable String replyAddress, 
 					   @Nullable String senderName, @Nullable String references);
@@ -43,5 +47,7 @@ public interface MailManager {
 	
 	Future<?> monitorInbox(MailCheckSetting checkSetting, MessageListener listener, 
 						   MailPosition lastPosition, boolean testMode);
+	
+	MailQueueStatus getQueueStatus();
 
 }
@@ -0,0 +1,75 @@
+package io.onedev.server.mail;
+
+import java.io.Serializable;
+
+/**
+ * Status of outbound mail queue. Counters and latencies are collected by current 
+ * server since it is started
+ */
+public class MailQueueStatus implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int pendingMails;
+	
+	private final long sentMails;
+	
+	private final long failedAttempts;
+	
+	private final long droppedMails;
+	
+	private final long averageLatency;
+	
+	private final long maxLatency;
+	
+	public MailQueueStatus(int pendingMails, long sentMails, long failedAttempts, long droppedMails, 
+			long averageLatency, long maxLatency) {
+		this.pendingMails = pendingMails;
+		this.sentMails = sentMails;
+		this.failedAttempts = failedAttempts;
+		this.droppedMails = droppedMails;
+		this.averageLatency = averageLatency;
+		this.maxLatency = maxLatency;
+	}
+
+	/**
+	 * @return
+	 * 			number of mails waiting in queue, across all servers
+	 */
+	public int getPendingMails() {
+		return pendingMails;
+	}
+
+	public long getSentMails() {
+		return sentMails;
+	}
+
+	public long getFailedAttempts() {
+		return failedAttempts;
+	}
+
+	/**
+	 * @return
+	 * 			number of mails given up after too many failed attempts
+	 */
+	public long getDroppedMails() {
+		return droppedMails;
+	}
+
+	/**
+	 * @return
+	 * 			average time in milliseconds from mail being queued to being sent
+	 */
+	public long getAverageLatency() {
+		return averageLatency;
+	}
+
+	/**
+	 * @return
+	 * 			max time in milliseconds from mail being queued to being sent
+	 */
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+	
+}
@@ -0,0 +1,282 @@
+package io.onedev.server.mail;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import javax.mail.Authenticator;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+
+import io.onedev.commons.bootstrap.Bootstrap;
+
+/**
+ * Keep connected SMTP transports for reuse, so that mails sent in a row do not need
+ * to connect and authenticate to the SMTP server each time. Transports idle for more
+ * than specified time are closed to avoid being dropped by server silently.
+ */
+public class SmtpTransportPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+	private final long maxIdleMillis;
+
+	private final Map<String, Deque<IdleTransport>> idleTransports = new HashMap<>();
+
+	public SmtpTransportPool(long maxIdleMillis) {
+		this.maxIdleMillis = maxIdleMillis;
+	}
+
+	/**
+	 * Lease a connected transport. The lease should be closed after use to return the
+	 * transport to the pool
+	 */
+	public Lease lease(MailSendSetting sendSetting) throws MessagingException {
+		String key = getKey(sendSetting);
+		IdleTransport idleTransport = null;
+		synchronized (this) {
+			evictIdle();
+			Deque<IdleTransport> idleTransportsOfKey = idleTransports.get(key);
+			if (idleTransportsOfKey != null) {
+				idleTransport = idleTransportsOfKey.pollLast();
+				if (idleTransportsOfKey.isEmpty())
+					idleTransports.remove(key);
+			}
+		}
+		if (idleTransport != null) {
+			return new Lease(key, idleTransport.session, idleTransport.transport, true);
+		} else {
+			Session session = newSession(sendSetting);
+			return new Lease(key, session, connect(session), false);
+		}
+	}
+
+	/**
+	 * Close transports idle for too long
+	 */
+	public void evictIdle() {
+		Collection<Transport> expiredTransports = new ArrayList<>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			for (Iterator<Deque<IdleTransport>> it = idleTransports.values().iterator(); it.hasNext();) {
+				Deque<IdleTransport> idleTransportsOfKey = it.next();
+				while (!idleTransportsOfKey.isEmpty()
+						&& now - idleTransportsOfKey.peekFirst().idleSince > maxIdleMillis) {
+					expiredTransports.add(idleTransportsOfKey.pollFirst().transport);
+				}
+				if (idleTransportsOfKey.isEmpty())
+					it.remove();
+			}
+		}
+		for (Transport transport: expiredTransports)
+			close(transport);
+	}
+
+	public void close() {
+		Collection<Transport> transports = new ArrayList<>();
+		synchronized (this) {
+			for (Deque<IdleTransport> idleTransportsOfKey: idleTransports.values()) {
+				for (IdleTransport idleTransport: idleTransportsOfKey)
+					transports.add(idleTransport.transport);
+			}
+			idleTransports.clear();
+		}
+		for (Transport transport: transports)
+			close(transport);
+	}
+
+	private synchronized void release(String key, Session session, Transport transport) {
+		idleTransports.computeIfAbsent(key, k -> new ArrayDeque<>())
+				.addLast(new IdleTransport(session, transport, System.currentTimeMillis()));
+	}
+
+	private Transport connect(Session session) throws MessagingException {
+		Transport transport = session.getTransport("smtp");
+		transport.connect();
+		return transport;
+	}
+
+	private void close(Transport transport) {
+		try {
+			transport.close();
+		} catch (MessagingException e) {
+			logger.debug("Error closing SMTP transport", e);
+		}
+	}
+
+	public static Session newSession(MailSendSetting sendSetting) {
+		Properties properties = new Properties();
+		properties.setProperty("mail.smtp.host", sendSetting.getSmtpHost());
+
+		sendSetting.getSslSetting().configure(properties);
+
+		properties.setProperty("mail.smtp.connectiontimeout", String.valueOf(Bootstrap.SOCKET_CONNECT_TIMEOUT));
+		properties.setProperty("mail.smtp.timeout", String.valueOf(sendSetting.getTimeout()*1000));
+
+		Authenticator authenticator;
+		if (sendSetting.getSmtpUser() != null) {
+			properties.setProperty("mail.smtp.auth", "true");
+			if (sendSetting.getSmtpCredential() instanceof OAuthAccessToken)
+				properties.setProperty("mail.smtp.auth.mechanisms", "XOAUTH2");
+			String smtpUser = sendSetting.getSmtpUser();
+			authenticator = new Authenticator() {
+
+				@Override
+				protected PasswordAuthentication getPasswordAuthentication() {
+					// Get credential value lazily as access token might be expired
+					// when a new connection is made
+					String credentialValue = sendSetting.getSmtpCredential()!=null?sendSetting.getSmtpCredential().getValue():null;
+					return new PasswordAuthentication(smtpUser, credentialValue);
+				}
+
+			};
+		} else {
+			authenticator = null;
+		}
+		return Session.getInstance(properties, authenticator);
+	}
+
+	/**
+	 * Get key of pooled transports for specified send setting. The key is a digest as
+	 * it covers password of the setting
+	 */
+	static String getKey(MailSendSetting sendSetting) {
+		Properties properties = new Properties();
+		properties.setProperty("mail.smtp.host", sendSetting.getSmtpHost());
+		sendSetting.getSslSetting().configure(properties);
+		Map<String, String> keyMap = new TreeMap<>();
+		for (var entry: properties.entrySet()) {
+			Object value = entry.getValue();
+			keyMap.put(entry.getKey().toString(), value instanceof String? (String) value: value.getClass().getName());
+		}
+		keyMap.put("timeout", String.valueOf(sendSetting.getTimeout()));
+		if (sendSetting.getSmtpUser() != null) {
+			keyMap.put("user", sendSetting.getSmtpUser());
+			if (sendSetting.getSmtpCredential() instanceof BasicAuthPassword)
+				keyMap.put("password", sendSetting.getSmtpCredential().getValue());
+		}
+		return Hashing.sha256().hashString(keyMap.toString(), UTF_8).toString();
+	}
+
+	public class Lease implements AutoCloseable {
+
+		private final String key;
+
+		private final Session session;
+
+		private Transport transport;
+
+		private boolean reused;
+
+		private boolean broken;
+
+		Lease(String key, Session session, Transport transport, boolean reused) {
+			this.key = key;
+			this.session = session;
+			this.transport = transport;
+			this.reused = reused;
+		}
+
+		/**
+		 * Session used to create messages sent via this lease
+		 */
+		public Session getSession() {
+			return session;
+		}
+
+		public void send(Message message) throws MessagingException {
+			if (broken)
+				throw new IllegalStateException("Transport of this lease is broken");
+			message.saveChanges();
+			try {
+				sendMessage(message);
+			} catch (MessagingException e) {
+				if (isRejected(e)) {
+					// Some recipients rejected, connection is still usable
+					throw e;
+				} else if (reused) {
+					// Connection reused from pool might be closed by server already,
+					// retry with a new connection
+					logger.debug("Error sending mail via pooled SMTP connection, reconnecting...", e);
+					SmtpTransportPool.this.close(transport);
+					reused = false;
+					try {
+						transport = connect(session);
+						sendMessage(message);
+					} catch (MessagingException e2) {
+						if (!isRejected(e2))
+							broken = true;
+						throw e2;
+					}
+				} else {
+					broken = true;
+					throw e;
+				}
+			}
+		}
+
+		/**
+		 * Whether or not underlying connection is broken. A broken lease should be closed 
+		 * and a new lease should be obtained to send further mails
+		 */
+		public boolean isBroken() {
+			return broken;
+		}
+
+		/*
+		 * SMTP transport reports connection closed by server as send failure as well, so
+		 * check the connection to tell apart recipients rejected by server
+		 */
+		private boolean isRejected(MessagingException e) {
+			return e instanceof SendFailedException && transport.isConnected();
+		}
+		
+		private void sendMessage(Message message) throws MessagingException {
+			transport.sendMessage(message, message.getAllRecipients());
+			reused = false;
+		}
+
+		@Override
+		public void close() {
+			if (broken)
+				SmtpTransportPool.this.close(transport);
+			else
+				release(key, session, transport);
+		}
+
+	}
+
+	private static class IdleTransport {
+
+		final Session session;
+
+		final Transport transport;
+
+		final long idleSince;
+
+		IdleTransport(Session session, Transport transport, long idleSince) {
+			this.session = session;
+			this.transport = transport;
+			this.idleSince = idleSince;
+		}
+
+	}
+
+}
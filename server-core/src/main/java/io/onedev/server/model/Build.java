@@ -358,6 +358,8 @@ public class Build extends ProjectBelonging
 	
 	private transient List<ArtifactInfo> rootArtifacts;
 	
+	private transient Set<Integer> changedFinishDays = new HashSet<>();
+	
 	public Project getNumberScope() {
 		return numberScope;
 	}
@@ -567,11 +569,18 @@ public class Build extends ProjectBelonging
 
 	public void setFinishDate(Date finishDate) {
 		this.finishDate = finishDate;
+		Integer oldFinishDay = finishDay;
 		if (finishDate != null) {
 			finishDay = new Day(finishDate).getValue();
 		} else {
 			finishDay = null;
 		}
+		if (!Objects.equal(oldFinishDay, finishDay)) {
+			if (oldFinishDay != null)
+				changedFinishDays.add(oldFinishDay);
+			if (finishDay != null)
+				changedFinishDays.add(finishDay);
+		}
 	}
 
 	public Date getRetryDate() {
@@ -587,6 +596,15 @@ public class Build extends ProjectBelonging
 		return finishDay;
 	}
 
+	/**
+	 * Get finish days affected by changing finish date of this build since it is loaded, 
+	 * including both old and new finish day. Caller is responsible for clearing the 
+	 * returned collection after processing
+	 */
+	public Set<Integer> getChangedFinishDays() {
+		return changedFinishDays;
+	}
+
 	public Collection<BuildParam> getParams() {
 		return params;
 	}
@@ -0,0 +1,185 @@
+package io.onedev.server.model;
+
+import static io.onedev.server.model.PendingMail.PROP_SCHEDULED_DATE;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Mail waiting to be sent by the outbound mail queue
+ */
+@Entity
+@Table(indexes={@Index(columnList=PROP_SCHEDULED_DATE)})
+public class PendingMail extends AbstractEntity {
+
+	private static final long serialVersionUID = 1L;
+	
+	public static final int MAX_BODY_LEN = 1048576;
+	
+	public static final int MAX_ERROR_LEN = 10000;
+	
+	public static final String PROP_SCHEDULED_DATE = "scheduledDate";
+	
+	@Column(nullable=false)
+	private Date queueDate;
+	
+	@Column(nullable=false)
+	private Date scheduledDate;
+	
+	private int attempts;
+	
+	@Lob
+	@Column(nullable=false, length=65535)
+	private ArrayList<String> toList = new ArrayList<>();
+	
+	@Lob
+	@Column(nullable=false, length=65535)
+	private ArrayList<String> ccList = new ArrayList<>();
+	
+	@Lob
+	@Column(nullable=false, length=65535)
+	private ArrayList<String> bccList = new ArrayList<>();
+	
+	@Column(nullable=false, length=1024)
+	private String subject;
+	
+	@Lob
+	@Column(nullable=false, length=MAX_BODY_LEN)
+	private String htmlBody;
+	
+	@Lob
+	@Column(nullable=false, length=MAX_BODY_LEN)
+	private String textBody;
+	
+	@Column(length=1024)
+	private String replyAddress;
+	
+	private String senderName;
+	
+	@Column(length=1024)
+	private String references;
+	
+	@Column(length=MAX_ERROR_LEN)
+	private String lastError;
+
+	public Date getQueueDate() {
+		return queueDate;
+	}
+
+	public void setQueueDate(Date queueDate) {
+		this.queueDate = queueDate;
+	}
+
+	public Date getScheduledDate() {
+		return scheduledDate;
+	}
+
+	public void setScheduledDate(Date scheduledDate) {
+		this.scheduledDate = scheduledDate;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public ArrayList<String> getToList() {
+		return toList;
+	}
+
+	public void setToList(ArrayList<String> toList) {
+		this.toList = toList;
+	}
+
+	public ArrayList<String> getCcList() {
+		return ccList;
+	}
+
+	public void setCcList(ArrayList<String> ccList) {
+		this.ccList = ccList;
+	}
+
+	public ArrayList<String> getBccList() {
+		return bccList;
+	}
+
+	public void setBccList(ArrayList<String> bccList) {
+		this.bccList = bccList;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public void setSubject(String subject) {
+		this.subject = subject;
+	}
+
+	public String getHtmlBody() {
+		return htmlBody;
+	}
+
+	public void setHtmlBody(String htmlBody) {
+		this.htmlBody = htmlBody;
+	}
+
+	public String getTextBody() {
+		return textBody;
+	}
+
+	public void setTextBody(String textBody) {
+		this.textBody = textBody;
+	}
+
+	@Nullable
+	public String getReplyAddress() {
+		return replyAddress;
+	}
+
+	public void setReplyAddress(@Nullable String replyAddress) {
+		this.replyAddress = replyAddress;
+	}
+
+	@Nullable
+	public String getSenderName() {
+		return senderName;
+	}
+
+	public void setSenderName(@Nullable String senderName) {
+		this.senderName = senderName;
+	}
+
+	@Nullable
+	public String getReferences() {
+		return references;
+	}
+
+	public void setReferences(@Nullable String references) {
+		this.references = references;
+	}
+
+	@Nullable
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(@Nullable String lastError) {
+		if (lastError != null)
+			this.lastError = StringUtils.abbreviate(lastError, MAX_ERROR_LEN);
+		else
+			this.lastError = null;
+	}
+	
+}
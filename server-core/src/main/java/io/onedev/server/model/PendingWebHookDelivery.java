@@ -0,0 +1,162 @@
+package io.onedev.server.model;
+
+import static io.onedev.server.model.PendingWebHookDelivery.PROP_POST_URL;
+import static io.onedev.server.model.PendingWebHookDelivery.PROP_SCHEDULED_DATE;
+
+import java.util.Date;
+
+import javax.annotation.Nullable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Web hook request waiting to be delivered by the web hook delivery queue
+ */
+@Entity
+@Table(indexes={@Index(columnList=PROP_SCHEDULED_DATE), @Index(columnList=PROP_POST_URL)})
+public class PendingWebHookDelivery extends AbstractEntity {
+
+	private static final long serialVersionUID = 1L;
+	
+	public static final int MAX_URL_LEN = 1024;
+	
+	public static final int MAX_PAYLOAD_LEN = 10485760;
+	
+	public static final int MAX_ERROR_LEN = 10000;
+	
+	public static final String PROP_POST_URL = "postUrl";
+	
+	public static final String PROP_SCHEDULED_DATE = "scheduledDate";
+	
+	@Column(nullable=false, length=MAX_URL_LEN)
+	private String postUrl;
+	
+	@Column(nullable=false)
+	private String secret;
+	
+	@Column(nullable=false)
+	private String eventType;
+	
+	private String coalesceKey;
+	
+	@Lob
+	@Column(nullable=false, length=MAX_PAYLOAD_LEN)
+	private String payload;
+	
+	@Column(nullable=false)
+	private Date queueDate;
+	
+	@Column(nullable=false)
+	private Date scheduledDate;
+	
+	private int attempts;
+	
+	private int revision;
+	
+	@Column(length=MAX_ERROR_LEN)
+	private String lastError;
+
+	public String getPostUrl() {
+		return postUrl;
+	}
+
+	public void setPostUrl(String postUrl) {
+		this.postUrl = postUrl;
+	}
+
+	public String getSecret() {
+		return secret;
+	}
+
+	public void setSecret(String secret) {
+		this.secret = secret;
+	}
+
+	/**
+	 * @return
+	 * 			simple class name of the event triggering this delivery
+	 */
+	public String getEventType() {
+		return eventType;
+	}
+
+	public void setEventType(String eventType) {
+		this.eventType = eventType;
+	}
+
+	/**
+	 * @return
+	 * 			key to identify deliveries which can be replaced by a later one of the 
+	 * 			same endpoint, or <tt>null</tt> if this delivery can not be coalesced
+	 */
+	@Nullable
+	public String getCoalesceKey() {
+		return coalesceKey;
+	}
+
+	public void setCoalesceKey(@Nullable String coalesceKey) {
+		this.coalesceKey = coalesceKey;
+	}
+
+	public String getPayload() {
+		return payload;
+	}
+
+	public void setPayload(String payload) {
+		this.payload = payload;
+	}
+
+	public Date getQueueDate() {
+		return queueDate;
+	}
+
+	public void setQueueDate(Date queueDate) {
+		this.queueDate = queueDate;
+	}
+
+	public Date getScheduledDate() {
+		return scheduledDate;
+	}
+
+	public void setScheduledDate(Date scheduledDate) {
+		this.scheduledDate = scheduledDate;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	/**
+	 * @return
+	 * 			number of times this delivery is coalesced with later deliveries
+	 */
+	public int getRevision() {
+		return revision;
+	}
+
+	public void setRevision(int revision) {
+		this.revision = revision;
+	}
+
+	@Nullable
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(@Nullable String lastError) {
+		if (lastError != null)
+			this.lastError = StringUtils.abbreviate(lastError, MAX_ERROR_LEN);
+		else
+			this.lastError = null;
+	}
+	
+}
@@ -20,7 +20,7 @@ import io.onedev.server.git.Blob;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.git.service.GitService;
 import io.onedev.server.model.Project;
-import io.onedev.server.util.diff.DiffUtils;
+import io.onedev.server.util.diff.DiffCache;
 import io.onedev.server.util.diff.WhitespaceOption;
 
 @Embeddable
@@ -123,7 +123,8 @@ public class Mark implements Serializable {
 		for (String line: oldBlob.getText().getLines())
 			oldLines.add(WhitespaceOption.DEFAULT.apply(line));
 
-		Map<Integer, Integer> lineMapping = DiffUtils.mapLines(oldLines, newLines);
+		Map<Integer, Integer> lineMapping = OneDev.getInstance(DiffCache.class).mapLines(
+				oldBlob.getBlobId(), oldLines, newBlob.getBlobId(), newLines);
 		
 		Integer newBeginLine = lineMapping.get(range.getFromRow());
 		Integer newEndLine = lineMapping.get(range.getToRow());
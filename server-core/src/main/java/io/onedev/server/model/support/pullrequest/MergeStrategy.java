@@ -21,8 +21,8 @@ public enum MergeStrategy {
 			PersonIdent user = new PersonIdent(User.SYSTEM_NAME, User.SYSTEM_EMAIL_ADDRESS);
 			ObjectId requestHead = request.getLatestUpdate().getHeadCommit();
 			ObjectId targetHead = request.getTarget().getObjectId();
-			return getGitService().merge(request.getTargetProject(), targetHead, requestHead, 
-					false, user, user, commitMessage, false);
+			return getGitService().mergePreview(request.getTargetProject(), targetHead, requestHead, 
+					false, user, user, commitMessage);
 		}
 		
 	}, 
@@ -37,8 +37,8 @@ public enum MergeStrategy {
 				return requestHead;
 			} else {
 				PersonIdent user = new PersonIdent(User.SYSTEM_NAME, User.SYSTEM_EMAIL_ADDRESS);
-				return getGitService().merge(project, targetHead, requestHead, false, user, user,
-							commitMessage, false);
+				return getGitService().mergePreview(project, targetHead, requestHead, false, user, user,
+							commitMessage);
 			}
 		}
 		
@@ -50,8 +50,8 @@ public enum MergeStrategy {
 			ObjectId requestHead = request.getLatestUpdate().getHeadCommit();
 			ObjectId targetHead = request.getTarget().getObjectId();
 			PersonIdent committer = new PersonIdent(User.SYSTEM_NAME, User.SYSTEM_EMAIL_ADDRESS);
-			return getGitService().merge(request.getTargetProject(), targetHead, requestHead, true, 
-					committer, request.getSubmitter().asPerson(), commitMessage, false);
+			return getGitService().mergePreview(request.getTargetProject(), targetHead, requestHead, true, 
+					committer, request.getSubmitter().asPerson(), commitMessage);
 		}
 		
 	},
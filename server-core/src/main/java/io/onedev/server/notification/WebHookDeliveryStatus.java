@@ -0,0 +1,148 @@
+package io.onedev.server.notification;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Status of web hook delivery queue. Counters, latency histogram and recent deliveries 
+ * are collected by current server since it is started
+ */
+public class WebHookDeliveryStatus implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Upper bounds in milliseconds of latency histogram buckets. The last bucket 
+	 * holds deliveries exceeding the last bound
+	 */
+	public static final long[] LATENCY_BUCKETS = new long[] {100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+	private final int pendingDeliveries;
+	
+	private final long successfulDeliveries;
+	
+	private final long failedAttempts;
+	
+	private final long droppedDeliveries;
+	
+	private final long coalescedDeliveries;
+	
+	private final long[] latencyHistogram;
+	
+	private final List<Delivery> recentDeliveries;
+	
+	public WebHookDeliveryStatus(int pendingDeliveries, long successfulDeliveries, long failedAttempts, 
+			long droppedDeliveries, long coalescedDeliveries, long[] latencyHistogram, 
+			List<Delivery> recentDeliveries) {
+		this.pendingDeliveries = pendingDeliveries;
+		this.successfulDeliveries = successfulDeliveries;
+		this.failedAttempts = failedAttempts;
+		this.droppedDeliveries = droppedDeliveries;
+		this.coalescedDeliveries = coalescedDeliveries;
+		this.latencyHistogram = latencyHistogram;
+		this.recentDeliveries = recentDeliveries;
+	}
+
+	/**
+	 * @return
+	 * 			number of deliveries waiting in queue, across all servers
+	 */
+	public int getPendingDeliveries() {
+		return pendingDeliveries;
+	}
+
+	public long getSuccessfulDeliveries() {
+		return successfulDeliveries;
+	}
+
+	public long getFailedAttempts() {
+		return failedAttempts;
+	}
+
+	/**
+	 * @return
+	 * 			number of deliveries given up due to too many failed attempts, rejection 
+	 * 			of receiver, or overflow of endpoint queue
+	 */
+	public long getDroppedDeliveries() {
+		return droppedDeliveries;
+	}
+
+	/**
+	 * @return
+	 * 			number of deliveries replaced by later deliveries of same subject before 
+	 * 			being sent
+	 */
+	public long getCoalescedDeliveries() {
+		return coalescedDeliveries;
+	}
+
+	/**
+	 * @return
+	 * 			count of delivery attempts falling into each bucket of {@link #LATENCY_BUCKETS}
+	 */
+	public long[] getLatencyHistogram() {
+		return latencyHistogram;
+	}
+
+	/**
+	 * @return
+	 * 			recent delivery attempts, latest first
+	 */
+	public List<Delivery> getRecentDeliveries() {
+		return recentDeliveries;
+	}
+
+	public static class Delivery implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+
+		private final Date date;
+		
+		private final String postUrl;
+		
+		private final String eventType;
+		
+		private final long latency;
+		
+		private final String error;
+		
+		public Delivery(Date date, String postUrl, String eventType, long latency, @Nullable String error) {
+			this.date = date;
+			this.postUrl = postUrl;
+			this.eventType = eventType;
+			this.latency = latency;
+			this.error = error;
+		}
+
+		public Date getDate() {
+			return date;
+		}
+
+		public String getPostUrl() {
+			return postUrl;
+		}
+
+		public String getEventType() {
+			return eventType;
+		}
+
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return
+		 * 			error of the attempt, or <tt>null</tt> if delivered successfully
+		 */
+		@Nullable
+		public String getError() {
+			return error;
+		}
+		
+	}
+	
+}
@@ -1,21 +1,41 @@
 package io.onedev.server.notification;
 
+import static io.onedev.server.notification.WebHookDeliveryStatus.LATENCY_BUCKETS;
+
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,83 +43,407 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.onedev.commons.bootstrap.Bootstrap;
+import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.entitymanager.PendingWebHookDeliveryManager;
 import io.onedev.server.event.Listen;
 import io.onedev.server.event.project.ProjectEvent;
+import io.onedev.server.event.project.build.BuildUpdated;
+import io.onedev.server.event.project.pullrequest.PullRequestBuildEvent;
+import io.onedev.server.event.project.pullrequest.PullRequestEvent;
+import io.onedev.server.event.project.pullrequest.PullRequestMergePreviewUpdated;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.PendingWebHookDelivery;
 import io.onedev.server.model.support.WebHook;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.persistence.annotation.Transactional;
 
+/**
+ * Web hook requests are persisted in the transaction triggering them, and delivered by
+ * leader server in background. Deliveries of an endpoint are sent one by one in order
+ * they are queued, so that a slow or unavailable endpoint only occupies one deliverer
+ * and does not delay deliveries of other endpoints.
+ */
 @Singleton
 public class WebHookManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(WebHookManager.class);
-	
+
 	private static final String SIGNATURE_HEAD = "X-OneDev-Signature";
-	
+
+	private static final int MAX_DELIVERERS = 8;
+
+	private static final int ENDPOINT_BATCH_SIZE = 20;
+
+	private static final int MAX_CONNECTIONS_PER_ENDPOINT = 2;
+
+	private static final int MAX_PENDING_DELIVERIES_PER_ENDPOINT = 10000;
+
+	private static final int MAX_DELIVERY_ATTEMPTS = 10;
+
+	private static final long RETRY_DELAY = 30000;
+
+	private static final long MAX_RETRY_DELAY = 3600000;
+
+	private static final long QUEUE_CHECK_INTERVAL = 10000;
+
+	private static final long TRIM_INTERVAL = 60000;
+
+	private static final int SOCKET_TIMEOUT = 30000;
+
+	private static final int MAX_RECENT_DELIVERIES = 100;
+
+	private static final int MAX_RESPONSE_LEN = 1000;
+
 	private final ObjectMapper mapper;
-	
+
 	private final ExecutorService executor;
 
+	private final TransactionManager transactionManager;
+
+	private final SessionManager sessionManager;
+
+	private final ClusterManager clusterManager;
+
+	private final PendingWebHookDeliveryManager deliveryManager;
+
+	private final CloseableHttpClient httpClient;
+
+	private final Semaphore delivererPermits = new Semaphore(MAX_DELIVERERS);
+
+	private final Set<String> deliveringPostUrls = ConcurrentHashMap.newKeySet();
+
+	// Endpoints failed recently are not delivered until specified time
+	private final Map<String, Long> backoffPostUrls = new ConcurrentHashMap<>();
+
+	private final Object queueLock = new Object();
+
+	private boolean queueChanged;
+
+	private final AtomicLong successfulDeliveries = new AtomicLong();
+
+	private final AtomicLong failedAttempts = new AtomicLong();
+
+	private final AtomicLong droppedDeliveries = new AtomicLong();
+
+	private final AtomicLong coalescedDeliveries = new AtomicLong();
+
+	private final AtomicLongArray latencyHistogram = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+	private final LinkedList<WebHookDeliveryStatus.Delivery> recentDeliveries = new LinkedList<>();
+
+	private volatile Thread thread;
+
 	@Inject
-	public WebHookManager(ObjectMapper mapper, ExecutorService executor) {
+	public WebHookManager(ObjectMapper mapper, ExecutorService executor, TransactionManager transactionManager,
+			SessionManager sessionManager, ClusterManager clusterManager,
+			PendingWebHookDeliveryManager deliveryManager) {
 		this.mapper = mapper;
 		this.executor = executor;
+		this.transactionManager = transactionManager;
+		this.sessionManager = sessionManager;
+		this.clusterManager = clusterManager;
+		this.deliveryManager = deliveryManager;
+
+		var connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(MAX_DELIVERERS * MAX_CONNECTIONS_PER_ENDPOINT);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ENDPOINT);
+		var requestConfig = RequestConfig.custom()
+				.setConnectTimeout(Bootstrap.SOCKET_CONNECT_TIMEOUT)
+				.setConnectionRequestTimeout(SOCKET_TIMEOUT)
+				.setSocketTimeout(SOCKET_TIMEOUT)
+				.build();
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.evictExpiredConnections()
+				.evictIdleConnections(QUEUE_CHECK_INTERVAL, TimeUnit.MILLISECONDS)
+				.build();
 	}
-	
-	@Sessional
+
+	@Transactional
 	@Listen
 	public void on(ProjectEvent event) {
-		String jsonOfEvent;
-		try {
-			jsonOfEvent = mapper.writeValueAsString(event);
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException(e);
-		}
-		
+		String jsonOfEvent = null;
+		boolean queued = false;
+		Set<String> postUrls = new HashSet<>();
 		for (WebHook webHook: event.getProject().getHierarchyWebHooks()) {
 			for (WebHook.EventType eventType: webHook.getEventTypes()) {
 				if (eventType.includes(event)) {
-					executor.submit(new Runnable() {
-
-						@Override
-						public void run() {
-							CloseableHttpClient client = HttpClients.createDefault();
-							try {
-							    HttpPost httpPost = new HttpPost(webHook.getPostUrl());
-							 
-							    StringEntity entity = new StringEntity(jsonOfEvent, StandardCharsets.UTF_8.name());
-							    httpPost.setEntity(entity);
-							    httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(HttpHeaders.ACCEPT_CHARSET, StandardCharsets.UTF_8.name());
-							    httpPost.setHeader(SIGNATURE_HEAD, webHook.getSecret());
-							 
-							    CloseableHttpResponse response = client.execute(httpPost);
-							    try {
-							    	HttpEntity responseEntity = response.getEntity();
-							    	String responseText = EntityUtils.toString(responseEntity);
-							    	if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
-							    		logger.error("Error calling web hooks: " + responseText);
-							    } finally {
-							    	try {
-										response.close();
-									} catch (IOException e) {
-									}
-							    }
-							} catch (IOException e) {
-								logger.error("Error calling web hooks", e);
-							} finally {
-								try {
-									client.close();
-								} catch (IOException e) {
-								}
-							}
+					if (jsonOfEvent == null) {
+						try {
+							jsonOfEvent = mapper.writeValueAsString(event);
+						} catch (JsonProcessingException e) {
+							throw new RuntimeException(e);
 						}
-						
-					});
+					}
+					// Hooks of project hierarchy may post to same url, and their deliveries of 
+					// same event should not be coalesced
+					boolean coalesce = postUrls.add(webHook.getPostUrl());
+					queue(webHook.getPostUrl(), webHook.getSecret(), event.getClass().getSimpleName(),
+							getCoalesceKey(event), jsonOfEvent, coalesce);
+					queued = true;
 					break;
 				}
 			}
 		}
+
+		if (queued) {
+			transactionManager.runAfterCommit(() -> {
+				if (clusterManager.isLeaderServer()) {
+					notifyQueueChanged();
+				} else {
+					clusterManager.submitToServer(clusterManager.getLeaderServerAddress(), () -> {
+						OneDev.getInstance(WebHookManager.class).notifyQueueChanged();
+						return null;
+					});
+				}
+			});
+		}
+	}
+
+	/**
+	 * Queue a delivery to specified endpoint. If coalescing is allowed, the delivery is 
+	 * coalesced into last queued delivery of the endpoint if it has the same coalesce key 
+	 * and secret, and is not attempted yet. Earlier deliveries are never coalesced into, 
+	 * as the newer payload would then be sent before deliveries queued after them
+	 */
+	void queue(String postUrl, String secret, String eventType, @Nullable String coalesceKey, 
+			String payload, boolean coalesce) {
+		if (coalesce && coalesceKey != null) {
+			PendingWebHookDelivery lastDelivery = deliveryManager.findLast(postUrl);
+			if (lastDelivery != null && coalesceKey.equals(lastDelivery.getCoalesceKey())
+					&& Objects.equals(secret, lastDelivery.getSecret())
+					&& deliveryManager.coalesce(lastDelivery.getId(), secret, payload)) {
+				coalescedDeliveries.incrementAndGet();
+				return;
+			}
+		}
+		PendingWebHookDelivery delivery = new PendingWebHookDelivery();
+		delivery.setPostUrl(postUrl);
+		delivery.setSecret(secret);
+		delivery.setEventType(eventType);
+		delivery.setCoalesceKey(coalesceKey);
+		delivery.setPayload(payload);
+		delivery.setQueueDate(new Date());
+		delivery.setScheduledDate(delivery.getQueueDate());
+		deliveryManager.create(delivery);
+	}
+	
+	/**
+	 * Events only reflecting latest state of their subject are coalesced, so that
+	 * receivers are not flooded with outdated state of frequently updated builds
+	 * and pull requests
+	 */
+	@Nullable
+	private String getCoalesceKey(ProjectEvent event) {
+		if (event instanceof BuildUpdated)
+			return event.getClass().getSimpleName() + ":" + ((BuildUpdated) event).getBuild().getId();
+		else if (event instanceof PullRequestMergePreviewUpdated || event instanceof PullRequestBuildEvent)
+			return event.getClass().getSimpleName() + ":" + ((PullRequestEvent) event).getRequest().getId();
+		else
+			return null;
+	}
+
+	private void notifyQueueChanged() {
+		synchronized (queueLock) {
+			queueChanged = true;
+			queueLock.notifyAll();
+		}
+	}
+
+	private void processQueue() throws InterruptedException {
+		long lastTrimTime = 0;
+		while (thread != null) {
+			synchronized (queueLock) {
+				if (!queueChanged)
+					queueLock.wait(QUEUE_CHECK_INTERVAL);
+				queueChanged = false;
+			}
+			if (!clusterManager.isLeaderServer())
+				continue;
+
+			try {
+				if (System.currentTimeMillis() - lastTrimTime > TRIM_INTERVAL) {
+					int trimmed = deliveryManager.trim(MAX_PENDING_DELIVERIES_PER_ENDPOINT);
+					if (trimmed != 0) {
+						logger.warn("Too many pending web hook deliveries, dropped oldest " + trimmed);
+						droppedDeliveries.addAndGet(trimmed);
+					}
+					lastTrimTime = System.currentTimeMillis();
+				}
+
+				dispatch();
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				logger.error("Error processing web hook queue", e);
+			}
+		}
+	}
+
+	/**
+	 * Hand due deliveries over to deliverers, one deliverer per endpoint. Endpoints being
+	 * delivered or backed off are skipped
+	 */
+	void dispatch() throws InterruptedException {
+		long now = System.currentTimeMillis();
+		backoffPostUrls.values().removeIf(it -> it <= now);
+		Set<String> excludedPostUrls = new HashSet<>(deliveringPostUrls);
+		excludedPostUrls.addAll(backoffPostUrls.keySet());
+
+		int count = MAX_DELIVERERS * ENDPOINT_BATCH_SIZE;
+		Map<String, List<Long>> deliveryIds = sessionManager.call(() -> {
+			Map<String, List<Long>> deliveryIdsOfEndpoints = new LinkedHashMap<>();
+			for (var delivery: deliveryManager.queryDue(excludedPostUrls, count)) {
+				var deliveryIdsOfEndpoint = deliveryIdsOfEndpoints.computeIfAbsent(
+						delivery.getPostUrl(), k -> new ArrayList<>());
+				if (deliveryIdsOfEndpoint.size() < ENDPOINT_BATCH_SIZE)
+					deliveryIdsOfEndpoint.add(delivery.getId());
+			}
+			return deliveryIdsOfEndpoints;
+		});
+
+		for (var entry: deliveryIds.entrySet()) {
+			String postUrl = entry.getKey();
+			delivererPermits.acquire();
+			deliveringPostUrls.add(postUrl);
+			try {
+				executor.execute(() -> {
+					try {
+						sessionManager.run(() -> deliver(postUrl, entry.getValue()));
+					} catch (Exception e) {
+						logger.error("Error delivering web hooks", e);
+					} finally {
+						deliveringPostUrls.remove(postUrl);
+						delivererPermits.release();
+						notifyQueueChanged();
+					}
+				});
+			} catch (Exception e) {
+				deliveringPostUrls.remove(postUrl);
+				delivererPermits.release();
+				throw e;
+			}
+		}
 	}
 	
+	private void deliver(String postUrl, List<Long> deliveryIds) {
+		for (Long deliveryId: deliveryIds) {
+			PendingWebHookDelivery delivery = deliveryManager.get(deliveryId);
+			if (delivery == null)
+				continue;
+
+			HttpPost httpPost = new HttpPost(postUrl);
+			httpPost.setEntity(new StringEntity(delivery.getPayload(), StandardCharsets.UTF_8.name()));
+			httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+			httpPost.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+			httpPost.setHeader(HttpHeaders.ACCEPT_CHARSET, StandardCharsets.UTF_8.name());
+			httpPost.setHeader(SIGNATURE_HEAD, delivery.getSecret());
+
+			String error = null;
+			boolean retryable = true;
+			long startTime = System.currentTimeMillis();
+			try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+				HttpEntity responseEntity = response.getEntity();
+				String responseText = responseEntity != null? EntityUtils.toString(responseEntity): "";
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode < 200 || statusCode >= 300) {
+					error = "Http status " + statusCode + ": " + StringUtils.abbreviate(responseText, MAX_RESPONSE_LEN);
+					retryable = statusCode >= 500
+							|| statusCode == HttpStatus.SC_REQUEST_TIMEOUT
+							|| statusCode == 429;
+				}
+			} catch (Exception e) {
+				error = e.getMessage() != null? e.getMessage(): e.getClass().getName();
+			}
+			long latency = System.currentTimeMillis() - startTime;
+
+			record(new WebHookDeliveryStatus.Delivery(new Date(startTime), postUrl,
+					delivery.getEventType(), latency, error));
+
+			if (error == null) {
+				successfulDeliveries.incrementAndGet();
+				deliveryManager.delete(deliveryId, delivery.getRevision());
+			} else {
+				failedAttempts.incrementAndGet();
+				int attempts = delivery.getAttempts() + 1;
+				if (!retryable || attempts >= MAX_DELIVERY_ATTEMPTS) {
+					logger.error("Error delivering web hook, giving up (url: " + postUrl
+							+ ", event: " + delivery.getEventType() + "): " + error);
+					droppedDeliveries.incrementAndGet();
+					deliveryManager.delete(deliveryId, delivery.getRevision());
+				} else {
+					logger.warn("Error delivering web hook, will retry later (url: " + postUrl
+							+ ", event: " + delivery.getEventType() + "): " + error);
+					long retryDelay = Math.min(RETRY_DELAY << (attempts - 1), MAX_RETRY_DELAY);
+					long retryTime = System.currentTimeMillis() + retryDelay;
+					deliveryManager.scheduleRetry(deliveryId, attempts, new Date(retryTime), error);
+
+					// Hold off remaining deliveries of this endpoint to keep them in order
+					backoffPostUrls.put(postUrl, retryTime);
+					break;
+				}
+			}
+		}
+	}
+
+	private void record(WebHookDeliveryStatus.Delivery delivery) {
+		int bucket = 0;
+		while (bucket < LATENCY_BUCKETS.length && delivery.getLatency() > LATENCY_BUCKETS[bucket])
+			bucket++;
+		latencyHistogram.incrementAndGet(bucket);
+		synchronized (recentDeliveries) {
+			recentDeliveries.addFirst(delivery);
+			if (recentDeliveries.size() > MAX_RECENT_DELIVERIES)
+				recentDeliveries.removeLast();
+		}
+	}
+
+	@Sessional
+	public WebHookDeliveryStatus getDeliveryStatus() {
+		long[] histogram = new long[latencyHistogram.length()];
+		for (int i=0; i<histogram.length; i++)
+			histogram[i] = latencyHistogram.get(i);
+		List<WebHookDeliveryStatus.Delivery> recentDeliveriesCopy;
+		synchronized (recentDeliveries) {
+			recentDeliveriesCopy = new ArrayList<>(recentDeliveries);
+		}
+		return new WebHookDeliveryStatus(deliveryManager.count(), successfulDeliveries.get(),
+				failedAttempts.get(), droppedDeliveries.get(), coalescedDeliveries.get(),
+				histogram, recentDeliveriesCopy);
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		thread = new Thread(() -> {
+			try {
+				processQueue();
+			} catch (InterruptedException ignored) {
+			}
+		});
+		thread.start();
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		Thread copy = thread;
+		thread = null;
+		if (copy != null) {
+			copy.interrupt();
+			try {
+				copy.join();
+			} catch (InterruptedException ignored) {
+			}
+		}
+		try {
+			httpClient.close();
+		} catch (IOException ignored) {
+		}
+	}
+
 }
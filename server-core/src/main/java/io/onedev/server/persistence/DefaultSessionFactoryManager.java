@@ -18,6 +18,8 @@ import com.hazelcast.core.HazelcastInstance;
 
 import io.onedev.commons.utils.ClassUtils;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.cluster.ConnectionRestored;
 import io.onedev.server.model.AbstractEntity;
 
 @Singleton
@@ -79,6 +81,15 @@ public class DefaultSessionFactoryManager implements SessionFactoryManager {
 		metadata = null;
 	}
 	
+	@Listen
+	public void on(ConnectionRestored event) {
+		// Invalidations of locally cached entities broadcasted by other servers might be 
+		// missed while connection is lost
+		SessionFactory sessionFactory = this.sessionFactory;
+		if (sessionFactory != null && clusterManager.getHazelcastInstance() != null) 
+			sessionFactory.getCache().evictAllRegions();
+	}
+	
 	@Override
 	public Metadata getMetadata() {
 		return metadata;
@@ -2,7 +2,9 @@ package io.onedev.server.rest;
 
 import io.onedev.commons.utils.ExplicitException;
 import io.onedev.commons.utils.StringUtils;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Build;
@@ -16,8 +18,6 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.*;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
@@ -49,12 +49,15 @@ public class ArtifactResource {
 	
 	private final ClusterManager clusterManager;
 	
+	private final ClusterTransport clusterTransport;
+	
 	@Inject
 	public ArtifactResource(ProjectManager projectManager, BuildManager buildManager, 
-							ClusterManager clusterManager) {
+							ClusterManager clusterManager, ClusterTransport clusterTransport) {
 		this.projectManager = projectManager;
 		this.buildManager = buildManager;
 		this.clusterManager = clusterManager;
+		this.clusterTransport = clusterTransport;
 	}
 	
 	@Nullable
@@ -94,10 +97,9 @@ public class ArtifactResource {
 		return output -> {
 			String activeServer = projectManager.getActiveServer(
 					build.getProject().getId(), true);
-			String serverUrl = clusterManager.getServerUrl(activeServer);
-			Client client = ClientBuilder.newClient();
+			ClusterConnection connection = clusterTransport.connect(activeServer);
 			try {
-				WebTarget target = client.target(serverUrl).path("~api/cluster/artifact")
+				WebTarget target = connection.target().path("~api/cluster/artifact")
 						.queryParam("projectId", build.getProject().getId())
 						.queryParam("buildNumber", build.getNumber())
 						.queryParam("artifactPath", normalizeArtifactPath(artifactPath));
@@ -114,7 +116,7 @@ public class ArtifactResource {
 					}
 				}
 			} finally {
-				client.close();
+				connection.close();
 			}
 		};
 	}
@@ -133,12 +135,11 @@ public class ArtifactResource {
 
 		String activeServer = projectManager.getActiveServer(
 				build.getProject().getId(), true);
-		String serverUrl = clusterManager.getServerUrl(activeServer);
 
-		Client client = ClientBuilder.newClient();
-		client.property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
+		ClusterConnection connection = clusterTransport.connect(activeServer);
+		connection.target().property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
 		try {
-			WebTarget target = client.target(serverUrl)
+			WebTarget target = connection.target()
 					.path("~api/cluster/artifact")
 					.queryParam("projectId", build.getProject().getId())
 					.queryParam("buildNumber", build.getNumber())
@@ -159,7 +160,7 @@ public class ArtifactResource {
 				checkStatus(response);
 			}
 		} finally {
-			client.close();
+			connection.close();
 		}
 		return ok().build();
 	}
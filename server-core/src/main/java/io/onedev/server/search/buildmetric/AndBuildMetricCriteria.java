@@ -2,6 +2,7 @@ package io.onedev.server.search.buildmetric;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiPredicate;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
@@ -18,6 +19,10 @@ public class AndBuildMetricCriteria extends BuildMetricCriteria {
 		this.criterias = criterias;
 	}
 
+	public List<? extends BuildMetricCriteria> getCriterias() {
+		return criterias;
+	}
+
 	@Override
 	public Predicate getPredicate(Root<?> metricRoot, Join<?, ?> buildJoin, CriteriaBuilder builder) {
 		List<Predicate> predicates = new ArrayList<>();
@@ -26,6 +31,18 @@ public class AndBuildMetricCriteria extends BuildMetricCriteria {
 		return builder.and(predicates.toArray(new Predicate[0]));
 	}
 
+	@Override
+	public BiPredicate<String, String> getRollupMatcher() {
+		List<BiPredicate<String, String>> matchers = new ArrayList<>();
+		for (BuildMetricCriteria criteria: criterias) {
+			BiPredicate<String, String> matcher = criteria.getRollupMatcher();
+			if (matcher == null)
+				return null;
+			matchers.add(matcher);
+		}
+		return (jobName, reportName) -> matchers.stream().allMatch(it -> it.test(jobName, reportName));
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return new AndBuildMetricCriteria(criterias).toStringWithoutParens();
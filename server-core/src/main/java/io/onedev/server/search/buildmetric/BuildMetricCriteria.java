@@ -1,6 +1,9 @@
 package io.onedev.server.search.buildmetric;
 
 import java.io.Serializable;
+import java.util.function.BiPredicate;
+
+import javax.annotation.Nullable;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
@@ -22,6 +25,27 @@ public abstract class BuildMetricCriteria implements Serializable {
 
 	public abstract Predicate getPredicate(Root<?> metrixRoot, Join<?, ?> buildJoin, CriteriaBuilder builder);
 	
+	/**
+	 * Get matcher to evaluate this criteria against metric rollups, which only record job 
+	 * and report of metrics
+	 * 
+	 * @return
+	 * 			matcher accepting job name and report name, or <tt>null</tt> if this criteria 
+	 * 			concerns more than job and report and has to be evaluated against raw metrics
+	 */
+	@Nullable
+	public BiPredicate<String, String> getRollupMatcher() {
+		return null;
+	}
+	
+	/**
+	 * Whether or not specified pattern matches the same in Java as in database like 
+	 * expression. Database specific wildcards and escapes are not considered
+	 */
+	protected static boolean isRollupApplicable(String pattern) {
+		return StringUtils.containsNone(pattern, "?_%\\");
+	}
+	
 	public static String quote(String value) {
 		return "\"" + StringUtils.escape(value, "\"") + "\"";
 	}
@@ -27,6 +27,14 @@ public class DateCriteria extends BuildMetricCriteria {
 		this.value = value;
 	}
 
+	public int getOperator() {
+		return operator;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
 	@Override
 	public Predicate getPredicate(Root<?> metricRoot, Join<?, ?> buildJoin, CriteriaBuilder builder) {
 		Path<Date> attribute = buildJoin.get(Build.PROP_FINISH_DATE);
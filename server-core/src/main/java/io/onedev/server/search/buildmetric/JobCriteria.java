@@ -1,5 +1,7 @@
 package io.onedev.server.search.buildmetric;
 
+import java.util.function.BiPredicate;
+
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
@@ -7,6 +9,7 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import io.onedev.server.model.Build;
+import io.onedev.server.util.match.WildcardUtils;
 
 public class JobCriteria extends BuildMetricCriteria {
 
@@ -25,6 +28,16 @@ public class JobCriteria extends BuildMetricCriteria {
 		return builder.like(builder.lower(attribute), normalized);
 	}
 
+	@Override
+	public BiPredicate<String, String> getRollupMatcher() {
+		if (isRollupApplicable(jobName)) {
+			String pattern = jobName.toLowerCase();
+			return (job, report) -> WildcardUtils.matchString(pattern, job.toLowerCase());
+		} else {
+			return null;
+		}
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Build.NAME_JOB) + " " 
@@ -1,5 +1,7 @@
 package io.onedev.server.search.buildmetric;
 
+import java.util.function.BiPredicate;
+
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
@@ -20,6 +22,12 @@ public class NotBuildMetricCriteria extends BuildMetricCriteria {
 		return criteria.getPredicate(metricRoot, buildJoin, builder).not();
 	}
 
+	@Override
+	public BiPredicate<String, String> getRollupMatcher() {
+		BiPredicate<String, String> matcher = criteria.getRollupMatcher();
+		return matcher != null? matcher.negate(): null;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return new NotBuildMetricCriteria(criteria).toStringWithoutParens();
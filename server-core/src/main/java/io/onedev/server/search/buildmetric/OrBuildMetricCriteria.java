@@ -2,6 +2,7 @@ package io.onedev.server.search.buildmetric;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiPredicate;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
@@ -26,6 +27,18 @@ public class OrBuildMetricCriteria extends BuildMetricCriteria {
 		return builder.or(predicates.toArray(new Predicate[0]));
 	}
 
+	@Override
+	public BiPredicate<String, String> getRollupMatcher() {
+		List<BiPredicate<String, String>> matchers = new ArrayList<>();
+		for (BuildMetricCriteria criteria: criterias) {
+			BiPredicate<String, String> matcher = criteria.getRollupMatcher();
+			if (matcher == null)
+				return null;
+			matchers.add(matcher);
+		}
+		return (jobName, reportName) -> matchers.stream().anyMatch(it -> it.test(jobName, reportName));
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return new OrBuildMetricCriteria(criterias).toStringWithoutParens();
@@ -1,5 +1,7 @@
 package io.onedev.server.search.buildmetric;
 
+import java.util.function.BiPredicate;
+
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
@@ -7,6 +9,7 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
 import io.onedev.server.model.support.BuildMetric;
+import io.onedev.server.util.match.WildcardUtils;
 
 public class ReportCriteria extends BuildMetricCriteria {
 
@@ -25,6 +28,16 @@ public class ReportCriteria extends BuildMetricCriteria {
 		return builder.like(builder.lower(attribute), normalized);
 	}
 
+	@Override
+	public BiPredicate<String, String> getRollupMatcher() {
+		if (isRollupApplicable(value)) {
+			String pattern = value.toLowerCase();
+			return (job, report) -> WildcardUtils.matchString(pattern, report.toLowerCase());
+		} else {
+			return null;
+		}
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(BuildMetric.PROP_REPORT) + " " 
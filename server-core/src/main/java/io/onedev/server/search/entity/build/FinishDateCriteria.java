@@ -45,6 +45,11 @@ public class FinishDateCriteria extends Criteria<Build> {
 			return build.getFinishDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Build.NAME_FINISH_DATE) + " " 
@@ -45,6 +45,11 @@ public class PendingDateCriteria extends Criteria<Build> {
 			return build.getPendingDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Build.NAME_PENDING_DATE) + " " 
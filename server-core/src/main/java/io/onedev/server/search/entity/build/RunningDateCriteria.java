@@ -45,6 +45,11 @@ public class RunningDateCriteria extends Criteria<Build> {
 			return build.getRunningDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Build.NAME_RUNNING_DATE) + " " 
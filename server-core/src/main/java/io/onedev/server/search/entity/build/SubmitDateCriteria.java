@@ -45,6 +45,11 @@ public class SubmitDateCriteria extends Criteria<Build> {
 			return build.getSubmitDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Build.NAME_SUBMIT_DATE) + " " 
@@ -44,6 +44,11 @@ public class CreateDateCriteria extends Criteria<CodeComment> {
 			return comment.getCreateDate().after(value);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(CodeComment.NAME_CREATE_DATE) + " " 
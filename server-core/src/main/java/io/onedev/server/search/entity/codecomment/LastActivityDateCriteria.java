@@ -45,6 +45,11 @@ public class LastActivityDateCriteria extends Criteria<CodeComment>  {
 			return comment.getLastActivity().getDate().after(value);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(CodeComment.NAME_LAST_ACTIVITY_DATE) + " " 
@@ -29,6 +29,11 @@ public class CurrentIssueCriteria extends Criteria<Issue> {
 			throw new ExplicitException("No issue in query context");
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return IssueQuery.getRuleName(IssueQueryLexer.CurrentIssue);
@@ -44,6 +44,11 @@ public class DateFieldCriteria extends FieldCriteria {
 			return fieldValue != null && fieldValue.after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(getFieldName()) + " " 
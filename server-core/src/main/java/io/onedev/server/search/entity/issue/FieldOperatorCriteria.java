@@ -153,6 +153,11 @@ public class FieldOperatorCriteria extends FieldCriteria {
 		}
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return operator == IssueQueryLexer.IsEmpty || operator == IssueQueryLexer.IsMe;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(getFieldName()) + " " + IssueQuery.getRuleName(operator);
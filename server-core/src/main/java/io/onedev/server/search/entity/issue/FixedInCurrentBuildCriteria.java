@@ -30,6 +30,11 @@ public class FixedInCurrentBuildCriteria extends Criteria<Issue> {
 			throw new ExplicitException("No build in query context");
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return IssueQuery.getRuleName(IssueQueryLexer.FixedInCurrentBuild);
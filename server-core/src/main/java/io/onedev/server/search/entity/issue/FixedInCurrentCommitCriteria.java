@@ -30,6 +30,11 @@ public class FixedInCurrentCommitCriteria extends Criteria<Issue> {
 			throw new ExplicitException("No commit in query context");
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return IssueQuery.getRuleName(IssueQueryLexer.FixedInCurrentCommit);
@@ -30,6 +30,11 @@ public class FixedInCurrentPullRequestCriteria extends Criteria<Issue> {
 			throw new ExplicitException("No pull request in query context");
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return IssueQuery.getRuleName(IssueQueryLexer.FixedInCurrentPullRequest);
@@ -53,6 +53,11 @@ public class LastActivityDateCriteria extends Criteria<Issue> {
 			return issue.getLastActivity().getDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Issue.NAME_LAST_ACTIVITY_DATE) + " " 
@@ -27,6 +27,11 @@ public class ProjectIsCurrentCriteria extends Criteria<Issue> {
 			throw new ExplicitException("No project in query context");
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Issue.NAME_PROJECT) + " "
@@ -45,6 +45,11 @@ public class SubmitDateCriteria extends Criteria<Issue> {
 			return issue.getSubmitDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(Issue.NAME_SUBMIT_DATE) + " " 
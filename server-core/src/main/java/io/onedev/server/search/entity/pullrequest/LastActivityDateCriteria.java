@@ -46,6 +46,11 @@ public class LastActivityDateCriteria extends Criteria<PullRequest> {
 			return request.getLastActivity().getDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(PullRequest.NAME_LAST_ACTIVITY_DATE) + " " 
@@ -45,6 +45,11 @@ public class SubmitDateCriteria extends Criteria<PullRequest> {
 			return request.getSubmitDate().after(date);
 	}
 
+	@Override
+	public boolean isCacheable() {
+		return false;
+	}
+
 	@Override
 	public String toStringWithoutParens() {
 		return quote(PullRequest.NAME_SUBMIT_DATE) + " " 
@@ -0,0 +1,73 @@
+package io.onedev.server.util;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.StringUtils;
+
+public class HttpRangeUtils {
+
+	public static final String RANGE = "Range";
+
+	public static final String CONTENT_RANGE = "Content-Range";
+
+	public static final String ACCEPT_RANGES = "Accept-Ranges";
+
+	private static final String BYTES_UNIT = "bytes";
+
+	/**
+	 * Parse value of http <tt>Range</tt> header against specified content length. Only
+	 * single byte range is supported, and multiple ranges are ignored as the spec allows.
+	 *
+	 * @return
+	 * 			<tt>null</tt> if whole content should be sent, otherwise range to send with
+	 * 			end inclusive. Check start of returned range against content length to see
+	 * 			if it is satisfiable
+	 */
+	@Nullable
+	public static LongRange parseRange(@Nullable String rangeHeader, long contentLength) {
+		if (rangeHeader == null || !rangeHeader.startsWith(BYTES_UNIT + "="))
+			return null;
+		String range = rangeHeader.substring(BYTES_UNIT.length() + 1).trim();
+		if (range.contains(","))
+			return null;
+		String startString = StringUtils.substringBefore(range, "-").trim();
+		String endString = StringUtils.substringAfter(range, "-").trim();
+		try {
+			if (startString.length() == 0) {
+				if (endString.length() == 0)
+					return null;
+				long suffixLength = Long.parseLong(endString);
+				if (suffixLength <= 0)
+					return new LongRange(contentLength, contentLength - 1);
+				return new LongRange(Math.max(0, contentLength - suffixLength), contentLength - 1);
+			} else {
+				long start = Long.parseLong(startString);
+				if (endString.length() != 0) {
+					long end = Long.parseLong(endString);
+					if (start < 0 || end < start)
+						return null;
+					return new LongRange(start, Math.min(end, contentLength - 1));
+				} else if (start >= 0) {
+					return new LongRange(start, contentLength - 1);
+				} else {
+					return null;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	public static boolean isSatisfiable(LongRange range, long contentLength) {
+		return range.getStart() < contentLength;
+	}
+
+	public static String getContentRange(LongRange range, long contentLength) {
+		return BYTES_UNIT + " " + range.getStart() + "-" + range.getEnd() + "/" + contentLength;
+	}
+
+	public static String getUnsatisfiedContentRange(long contentLength) {
+		return BYTES_UNIT + " */" + contentLength;
+	}
+
+}
@@ -3,11 +3,20 @@ package io.onedev.server.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.eclipse.jetty.server.HttpOutput;
 
 import io.onedev.commons.bootstrap.Bootstrap;
 
 public class IOUtils extends org.apache.commons.io.IOUtils {
 
+	private static final long MAX_MAPPED_SIZE = 64*1024*1024;
+	
+	public static final int PUMP_BUFFER_SIZE = 64*1024;
+
 	public static void copyRange(InputStream in, OutputStream out, LongRange range) throws IOException {
 		int totalSkipped = 0;
 		while (totalSkipped < range.getStart())	 {
@@ -37,4 +46,67 @@ public class IOUtils extends org.apache.commons.io.IOUtils {
 		}
 	}
 
+	/**
+	 * Transfer specified range of a file channel to output stream without copying through
+	 * heap buffers. If output stream is a Jetty response output, file regions are mapped
+	 * and written to socket directly, otherwise {@link FileChannel#transferTo} is used.
+	 */
+	public static void transferRange(FileChannel in, OutputStream out, LongRange range) throws IOException {
+		long position = range.getStart();
+		long end = Math.min(range.getEnd() + 1, in.size());
+		if (out instanceof HttpOutput) {
+			HttpOutput httpOutput = (HttpOutput) out;
+			while (position < end) {
+				long count = Math.min(end - position, MAX_MAPPED_SIZE);
+				httpOutput.write(in.map(FileChannel.MapMode.READ_ONLY, position, count));
+				position += count;
+			}
+		} else {
+			WritableByteChannel outChannel = Channels.newChannel(out);
+			while (position < end) {
+				long transferred = in.transferTo(position, end - position, outChannel);
+				if (transferred <= 0)
+					throw new IOException("Unable to transfer file content at position " + position);
+				position += transferred;
+			}
+		}
+	}
+
+	/**
+	 * Pump content of input stream to output stream as it arrives. Reads are coalesced 
+	 * into large writes, and output is only flushed when no more input is immediately 
+	 * available, so that bulk data is not slowed down by flushes, while interactive data 
+	 * such as git progress and negotiation messages is still forwarded without delay.
+	 * 
+	 * @return
+	 * 			number of bytes pumped
+	 */
+	public static long pump(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[PUMP_BUFFER_SIZE];
+		long total = 0;
+		boolean eof = false;
+		while (!eof) {
+			int filled = in.read(buffer);
+			if (filled == -1)
+				break;
+			int available;
+			while (filled < buffer.length && (available = in.available()) > 0) {
+				int length = in.read(buffer, filled, Math.min(available, buffer.length - filled));
+				if (length == -1) {
+					eof = true;
+					break;
+				}
+				filled += length;
+			}
+			if (filled != 0) {
+				out.write(buffer, 0, filled);
+				total += filled;
+			}
+			if (eof || in.available() == 0)
+				out.flush();
+		}
+		out.flush();
+		return total;
+	}
+
 }
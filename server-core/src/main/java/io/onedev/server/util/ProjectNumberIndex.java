@@ -0,0 +1,148 @@
+package io.onedev.server.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Index of entity ids by project and number. Numbers of each project are kept in an
+ * open-addressing table of primitive longs, so that looking up an id does not need to
+ * create, hash or serialize any key object.
+ */
+public class ProjectNumberIndex {
+
+	private final Map<Long, NumberTable> tables = new ConcurrentHashMap<>();
+
+	@Nullable
+	public Long get(Long projectId, long number) {
+		NumberTable table = tables.get(projectId);
+		if (table != null)
+			return table.get(number);
+		else
+			return null;
+	}
+
+	public void put(Long projectId, long number, long id) {
+		tables.computeIfAbsent(projectId, it -> new NumberTable()).put(number, id);
+	}
+
+	public void remove(Long projectId, long number) {
+		NumberTable table = tables.get(projectId);
+		if (table != null)
+			table.remove(number);
+	}
+
+	public void remove(Long projectId) {
+		tables.remove(projectId);
+	}
+
+	public void clear() {
+		tables.clear();
+	}
+
+	public int size() {
+		int size = 0;
+		for (NumberTable table: tables.values())
+			size += table.size();
+		return size;
+	}
+
+	private static class NumberTable {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		// Zero marks empty slot, and id of number zero is stored separately
+		private long[] numbers = new long[INITIAL_CAPACITY];
+
+		private long[] ids = new long[INITIAL_CAPACITY];
+
+		private int size;
+
+		private Long zeroId;
+
+		private int slotOf(long number) {
+			return (int) ((number * 0x9E3779B97F4A7C15L) >>> 32) & (numbers.length - 1);
+		}
+
+		@Nullable
+		synchronized Long get(long number) {
+			if (number == 0)
+				return zeroId;
+			int mask = numbers.length - 1;
+			for (int slot = slotOf(number); numbers[slot] != 0; slot = (slot + 1) & mask) {
+				if (numbers[slot] == number)
+					return ids[slot];
+			}
+			return null;
+		}
+
+		synchronized void put(long number, long id) {
+			if (number == 0) {
+				zeroId = id;
+				return;
+			}
+			int mask = numbers.length - 1;
+			int slot = slotOf(number);
+			for (; numbers[slot] != 0; slot = (slot + 1) & mask) {
+				if (numbers[slot] == number) {
+					ids[slot] = id;
+					return;
+				}
+			}
+			numbers[slot] = number;
+			ids[slot] = id;
+			if (++size * 3 > numbers.length * 2)
+				resize(numbers.length * 2);
+		}
+
+		synchronized void remove(long number) {
+			if (number == 0) {
+				zeroId = null;
+				return;
+			}
+			int mask = numbers.length - 1;
+			int slot = slotOf(number);
+			for (; numbers[slot] != number; slot = (slot + 1) & mask) {
+				if (numbers[slot] == 0)
+					return;
+			}
+
+			// Shift following entries of the probe sequence back so that no tombstone is needed
+			int hole = slot;
+			for (slot = (slot + 1) & mask; numbers[slot] != 0; slot = (slot + 1) & mask) {
+				int home = slotOf(numbers[slot]);
+				if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+					numbers[hole] = numbers[slot];
+					ids[hole] = ids[slot];
+					hole = slot;
+				}
+			}
+			numbers[hole] = 0;
+			size--;
+		}
+
+		synchronized int size() {
+			return zeroId != null? size + 1: size;
+		}
+
+		private void resize(int capacity) {
+			long[] oldNumbers = numbers;
+			long[] oldIds = ids;
+			numbers = new long[capacity];
+			ids = new long[capacity];
+			int mask = capacity - 1;
+			for (int i=0; i<oldNumbers.length; i++) {
+				if (oldNumbers[i] != 0) {
+					int slot = slotOf(oldNumbers[i]);
+					while (numbers[slot] != 0)
+						slot = (slot + 1) & mask;
+					numbers[slot] = oldNumbers[i];
+					ids[slot] = oldIds[i];
+				}
+			}
+		}
+
+	}
+
+}
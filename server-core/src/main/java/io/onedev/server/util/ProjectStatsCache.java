@@ -0,0 +1,137 @@
+package io.onedev.server.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.hazelcast.map.IMap;
+
+import io.onedev.server.cluster.ClusterManager;
+
+/**
+ * Cluster-wide cache of per-project statistics, such as number of issues in each state.
+ * Statistics of a project are calculated on demand, and are kept until invalidated by
+ * changes in the project. Cached statistics record version of the project read before 
+ * calculating, and are only used if the version is not changed, so that statistics 
+ * calculated concurrently with a change are not kept after the change is invalidated. 
+ * They also expire after some time in case some change is not caught, for instance a 
+ * bulk update not invalidating the cache.
+ */
+public class ProjectStatsCache<T extends Serializable> {
+
+	private static final long EXPIRE_TIME = 3600; // in seconds
+
+	// Version changed when statistics of all projects are invalidated
+	private static final Long ALL_PROJECTS = 0L;
+	
+	private final ClusterManager clusterManager;
+
+	private final String name;
+
+	private final Function<T, Long> projectIdGetter;
+
+	public ProjectStatsCache(ClusterManager clusterManager, String name, Function<T, Long> projectIdGetter) {
+		this.clusterManager = clusterManager;
+		this.name = name;
+		this.projectIdGetter = projectIdGetter;
+	}
+
+	private IMap<Long, CachedStats<T>> getCache() {
+		return clusterManager.getHazelcastInstance().getMap(name);
+	}
+
+	private IMap<Long, Long> getVersions() {
+		return clusterManager.getHazelcastInstance().getMap(name + "Versions");
+	}
+	
+	/**
+	 * Get statistics of specified projects
+	 *
+	 * @param projectIds
+	 * 			ids of projects to get statistics of
+	 * @param calculator
+	 * 			calculator to get statistics of projects not cached yet
+	 * @return
+	 * 			statistics of specified projects
+	 */
+	public List<T> get(Collection<Long> projectIds, Function<Collection<Long>, List<T>> calculator) {
+		IMap<Long, CachedStats<T>> cache = getCache();
+		
+		// Versions should be read before calculating, so that changes made while calculating
+		// invalidate the calculated statistics
+		Set<Long> versionKeys = new HashSet<>(projectIds);
+		versionKeys.add(ALL_PROJECTS);
+		Map<Long, Long> versions = getVersions().getAll(versionKeys);
+		long allProjectsVersion = getVersion(versions, ALL_PROJECTS);
+		
+		List<T> stats = new ArrayList<>();
+		Set<Long> missingProjectIds = new HashSet<>(projectIds);
+		for (Map.Entry<Long, CachedStats<T>> entry: cache.getAll(missingProjectIds).entrySet()) {
+			CachedStats<T> cachedStats = entry.getValue();
+			if (cachedStats.version == getVersion(versions, entry.getKey()) 
+					&& cachedStats.allProjectsVersion == allProjectsVersion) {
+				stats.addAll(cachedStats.stats);
+				missingProjectIds.remove(entry.getKey());
+			}
+		}
+		if (!missingProjectIds.isEmpty()) {
+			Map<Long, ArrayList<T>> calculatedStats = new HashMap<>();
+			for (Long projectId: missingProjectIds)
+				calculatedStats.put(projectId, new ArrayList<>());
+			for (T each: calculator.apply(missingProjectIds)) {
+				ArrayList<T> statsOfProject = calculatedStats.get(projectIdGetter.apply(each));
+				if (statsOfProject != null)
+					statsOfProject.add(each);
+			}
+			for (Map.Entry<Long, ArrayList<T>> entry: calculatedStats.entrySet()) {
+				CachedStats<T> cachedStats = new CachedStats<>(getVersion(versions, entry.getKey()), 
+						allProjectsVersion, entry.getValue());
+				cache.set(entry.getKey(), cachedStats, EXPIRE_TIME, TimeUnit.SECONDS);
+				stats.addAll(entry.getValue());
+			}
+		}
+		return stats;
+	}
+	
+	private long getVersion(Map<Long, Long> versions, Long versionKey) {
+		Long version = versions.get(versionKey);
+		return version != null? version: 0;
+	}
+
+	public void invalidate(Long projectId) {
+		getVersions().set(projectId, ThreadLocalRandom.current().nextLong());
+		getCache().delete(projectId);
+	}
+
+	public void invalidateAll() {
+		getVersions().set(ALL_PROJECTS, ThreadLocalRandom.current().nextLong());
+		getCache().clear();
+	}
+
+	private static class CachedStats<T extends Serializable> implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final long version;
+		
+		final long allProjectsVersion;
+		
+		final ArrayList<T> stats;
+		
+		CachedStats(long version, long allProjectsVersion, ArrayList<T> stats) {
+			this.version = version;
+			this.allProjectsVersion = allProjectsVersion;
+			this.stats = stats;
+		}
+		
+	}
+	
+}
@@ -1,5 +1,7 @@
 package io.onedev.server.util;
 
+import javax.xml.stream.XMLInputFactory;
+
 import org.dom4j.io.SAXReader;
 import org.xml.sax.SAXException;
 
@@ -14,6 +16,19 @@ public class XmlUtils {
 		}
 	}
 	
+	/**
+	 * Create StAX input factory ignoring DTD declarations and external entities. This 
+	 * serves the same purpose as {@link #disallowDocTypeDecl(SAXReader)} plus 
+	 * {@link #stripDoctype(String)}, but without reading the whole xml into memory
+	 */
+	public static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+	
 	public static String stripDoctype(String xml) {
 		return xml.replaceFirst("<!DOCTYPE\\s.*?>", "");
 	}
@@ -89,6 +89,11 @@ public class AndCriteria<T> extends Criteria<T> {
 	public boolean isUsingLink(String linkName) {
 		return criterias.stream().anyMatch(it->it.isUsingLink(linkName));
 	}
+	
+	@Override
+	public boolean isCacheable() {
+		return criterias.stream().allMatch(it->it.isCacheable());
+	}
 
 	@Override
 	public Collection<String> getUndefinedStates() {
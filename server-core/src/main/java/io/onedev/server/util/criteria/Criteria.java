@@ -154,6 +154,15 @@ public abstract class Criteria<T> implements Serializable {
 		return false;
 	}
 	
+	/**
+	 * Whether or not result of this criteria only depends on persisted entities and current
+	 * user, so that count of matched entities can be cached until these entities change.
+	 * Criteria depending on query context or current time should return <tt>false</tt>
+	 */
+	public boolean isCacheable() {
+		return true;
+	}
+	
 	public Collection<String> getUndefinedStates() {
 		return new HashSet<>();
 	}
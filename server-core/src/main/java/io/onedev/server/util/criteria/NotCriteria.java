@@ -83,6 +83,11 @@ public class NotCriteria<T> extends Criteria<T> {
 		return criteria.isUsingLink(linkName);
 	}
 	
+	@Override
+	public boolean isCacheable() {
+		return criteria.isCacheable();
+	}
+	
 	@Override
 	public Collection<String> getUndefinedStates() {
 		return criteria.getUndefinedStates();
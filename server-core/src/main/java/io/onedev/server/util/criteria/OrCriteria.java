@@ -90,6 +90,11 @@ public class OrCriteria<T> extends Criteria<T> {
 		return criterias.stream().anyMatch(it->it.isUsingLink(linkName));
 	}
 	
+	@Override
+	public boolean isCacheable() {
+		return criterias.stream().allMatch(it->it.isCacheable());
+	}
+	
 	@Override
 	public Collection<String> getUndefinedStates() {
 		List<String> undefinedStates = new ArrayList<>();
@@ -0,0 +1,293 @@
+package io.onedev.server.util.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.bootstrap.Bootstrap;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.event.Listen;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+import io.onedev.server.util.schedule.SchedulableTask;
+import io.onedev.server.util.schedule.TaskScheduler;
+
+/**
+ * Server-wide cache of line diffs between blobs, keyed by ids of old and new blob and the
+ * whitespace option. Only operation and size of each diff block are kept, and blocks are
+ * rebuilt from lines of the blobs when read. Recently used diffs are kept in memory, and
+ * diffs of large blobs are also persisted in site directory to survive restarts.
+ */
+@Singleton
+public class DiffCache implements SchedulableTask {
+
+	private static final Logger logger = LoggerFactory.getLogger(DiffCache.class);
+
+	private static final int FORMAT_VERSION = 2;
+
+	private static final int MAX_MEMORY_ENTRIES = 5000;
+
+	private static final int MIN_PERSIST_LINES = 500;
+
+	private static final long MAX_DISK_SIZE = 256L*1024*1024;
+
+	private final TaskScheduler taskScheduler;
+
+	private final Map<String, int[]> memoryCache = new LinkedHashMap<>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+			return size() > MAX_MEMORY_ENTRIES;
+		}
+
+	};
+
+	private long memoryHits;
+
+	private long diskHits;
+
+	private long misses;
+
+	private String taskId;
+
+	@Inject
+	public DiffCache(TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	private File getCacheDir() {
+		return new File(Bootstrap.getSiteDir(), "diff-cache");
+	}
+
+	/**
+	 * Diff lines of specified blobs. Lines should be read from the blobs, and processed
+	 * with either no whitespace option or the specified one
+	 */
+	public List<DiffBlock<String>> diff(ObjectId oldBlobId, List<String> oldLines, ObjectId newBlobId,
+			List<String> newLines, WhitespaceOption whitespaceOption) {
+		String key = oldBlobId.name() + "-" + newBlobId.name() + "-" + whitespaceOption.name().toLowerCase();
+		int[] blocks;
+		synchronized (this) {
+			blocks = memoryCache.get(key);
+			if (blocks != null)
+				memoryHits++;
+		}
+		List<DiffBlock<String>> diffBlocks = null;
+		if (blocks != null)
+			diffBlocks = decode(blocks, oldLines, newLines);
+
+		boolean persist = oldLines.size() + newLines.size() >= MIN_PERSIST_LINES;
+		if (diffBlocks == null && persist) {
+			blocks = read(key);
+			if (blocks != null && (diffBlocks = decode(blocks, oldLines, newLines)) != null) {
+				synchronized (this) {
+					diskHits++;
+					memoryCache.put(key, blocks);
+				}
+			}
+		}
+
+		if (diffBlocks == null) {
+			DiffResult<String> diffResult = DiffUtils.diffResult(oldLines, newLines, whitespaceOption);
+			diffBlocks = diffResult.getDiffBlocks();
+			synchronized (this) {
+				misses++;
+			}
+			// Timed out diff is degraded, and should be calculated again next time
+			if (!diffResult.isTimedOut()) {
+				blocks = encode(diffBlocks);
+				synchronized (this) {
+					memoryCache.put(key, blocks);
+				}
+				if (persist)
+					write(key, blocks);
+			}
+		}
+		return diffBlocks;
+	}
+
+	/**
+	 * Map lines of specified blobs. Lines should be read from the blobs, and processed with
+	 * either no whitespace option or {@link WhitespaceOption#DEFAULT}
+	 */
+	public Map<Integer, Integer> mapLines(ObjectId oldBlobId, List<String> oldLines, ObjectId newBlobId,
+			List<String> newLines) {
+		return DiffUtils.mapLines(diff(oldBlobId, oldLines, newBlobId, newLines, WhitespaceOption.DEFAULT));
+	}
+
+	static int[] encode(List<DiffBlock<String>> diffBlocks) {
+		int[] blocks = new int[diffBlocks.size()];
+		for (int i=0; i<blocks.length; i++) {
+			DiffBlock<String> diffBlock = diffBlocks.get(i);
+			blocks[i] = (diffBlock.getElements().size() << 2) | diffBlock.getOperation().ordinal();
+		}
+		return blocks;
+	}
+
+	/*
+	 * Elements of blocks are taken from lines the same way as DiffUtils.diff does. Returns
+	 * null if blocks do not match the lines
+	 */
+	@Nullable
+	static List<DiffBlock<String>> decode(int[] blocks, List<String> oldLines, List<String> newLines) {
+		List<DiffBlock<String>> diffBlocks = new ArrayList<>();
+		int oldIndex = 0;
+		int newIndex = 0;
+		for (int block: blocks) {
+			int opIndex = block & 3;
+			if (opIndex >= Operation.values().length)
+				return null;
+			Operation operation = Operation.values()[opIndex];
+			int size = block >>> 2;
+			List<String> elements;
+			if (operation == Operation.DELETE) {
+				if (oldIndex + size > oldLines.size())
+					return null;
+				elements = new ArrayList<>(oldLines.subList(oldIndex, oldIndex + size));
+			} else {
+				if (newIndex + size > newLines.size())
+					return null;
+				elements = new ArrayList<>(newLines.subList(newIndex, newIndex + size));
+			}
+			diffBlocks.add(new DiffBlock<>(operation, elements, oldIndex, newIndex));
+			if (operation != Operation.INSERT)
+				oldIndex += size;
+			if (operation != Operation.DELETE)
+				newIndex += size;
+		}
+		if (oldIndex != oldLines.size() || newIndex != newLines.size())
+			return null;
+		else
+			return diffBlocks;
+	}
+
+	private File getCacheFile(String key) {
+		return new File(getCacheDir(), key.substring(0, 2) + "/" + key);
+	}
+
+	@Nullable
+	private int[] read(String key) {
+		File file = getCacheFile(key);
+		if (file.exists()) {
+			try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				if (is.readInt() == FORMAT_VERSION) {
+					int[] blocks = new int[is.readInt()];
+					for (int i=0; i<blocks.length; i++)
+						blocks[i] = is.readInt();
+					// Keep recently used files when cleaning up
+					file.setLastModified(System.currentTimeMillis());
+					return blocks;
+				}
+			} catch (IOException e) {
+				logger.error("Error reading diff cache file: " + file, e);
+			}
+		}
+		return null;
+	}
+
+	private void write(String key, int[] blocks) {
+		File file = getCacheFile(key);
+		try {
+			FileUtils.createDir(file.getParentFile());
+			File tempFile = File.createTempFile("diff", null, file.getParentFile());
+			try {
+				try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+					os.writeInt(FORMAT_VERSION);
+					os.writeInt(blocks.length);
+					for (int block: blocks)
+						os.writeInt(block);
+				}
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				if (tempFile.exists())
+					tempFile.delete();
+			}
+		} catch (IOException e) {
+			logger.error("Error writing diff cache file: " + file, e);
+		}
+	}
+
+	@Override
+	public void execute() {
+		File[] dirs = getCacheDir().listFiles();
+		if (dirs == null)
+			return;
+		List<File> files = new ArrayList<>();
+		long diskSize = 0;
+		for (File dir: dirs) {
+			File[] filesInDir = dir.listFiles();
+			if (filesInDir != null) {
+				for (File file: filesInDir) {
+					files.add(file);
+					diskSize += file.length();
+				}
+			}
+		}
+		if (diskSize > MAX_DISK_SIZE) {
+			// Remove least recently used files until disk size drops below 3/4 of the limit
+			files.sort(Comparator.comparingLong(File::lastModified));
+			for (File file: files) {
+				if (diskSize <= MAX_DISK_SIZE*3/4)
+					break;
+				long length = file.length();
+				if (file.delete())
+					diskSize -= length;
+			}
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.repeatHourlyForever();
+	}
+
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		if (taskId != null)
+			taskScheduler.unschedule(taskId);
+	}
+
+	public synchronized long getMemoryHits() {
+		return memoryHits;
+	}
+
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+}
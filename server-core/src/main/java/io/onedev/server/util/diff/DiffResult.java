@@ -0,0 +1,28 @@
+package io.onedev.server.util.diff;
+
+import java.util.List;
+
+/**
+ * Diff blocks along with whether the diff timed out. Diff timed out treats differing region
+ * as replaced as a whole, and should not be cached as it may succeed next time
+ */
+public class DiffResult<T> {
+
+	private final List<DiffBlock<T>> diffBlocks;
+	
+	private final boolean timedOut;
+	
+	public DiffResult(List<DiffBlock<T>> diffBlocks, boolean timedOut) {
+		this.diffBlocks = diffBlocks;
+		this.timedOut = timedOut;
+	}
+
+	public List<DiffBlock<T>> getDiffBlocks() {
+		return diffBlocks;
+	}
+
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+	
+}
@@ -21,7 +21,7 @@ import io.onedev.server.util.diff.DiffMatchPatch.Operation;
 
 public class DiffUtils {
 
-	public static final int MAX_DIFF_SIZE = 65535;
+	public static final int MAX_DIFF_SIZE = 500000;
 	
 	public static final int MAX_LINE_LEN = 10000;
 	
@@ -57,6 +57,13 @@ public class DiffUtils {
 	}
 	
 	public static <T> List<DiffBlock<T>> diff(List<T> oldElements, List<T> newElements, Function<T, T> processor) {
+		return diffResult(oldElements, newElements, processor).getDiffBlocks();
+	}
+	
+	/**
+	 * Same as {@link #diff(List, List, Function)}, but also tells whether the diff timed out
+	 */
+	public static <T> DiffResult<T> diffResult(List<T> oldElements, List<T> newElements, Function<T, T> processor) {
 		Preconditions.checkArgument(oldElements.size() + newElements.size() <= MAX_DIFF_SIZE, 
 				"Total size of old lines and new lines should be less than " + MAX_DIFF_SIZE + ".");
 		
@@ -68,38 +75,7 @@ public class DiffUtils {
 		for (T element: newElements) 
 			processedNewElements.add(processor.apply(element));
 		
-		DiffMatchPatch dmp = new DiffMatchPatch();
-		TokensToCharsResult<T> result1 = tokensToChars(processedOldElements, processedNewElements);
-		
-		List<DiffMatchPatch.Diff> diffs = dmp.diff_main(result1.chars1, result1.chars2, false);
-
-		List<DiffBlock<T>> diffBlocks = new ArrayList<>();
-		int oldElementIndex = 0;
-		int newElementIndex = 0;
-		for (Diff diff: diffs) {
-			List<T> elements = new ArrayList<>();
-			if (diff.operation == Operation.EQUAL) {
-				for (int i = 0; i < diff.text.length(); i++) {
-					elements.add(newElements.get(newElementIndex));
-					oldElementIndex++;
-					newElementIndex++;
-				}
-				diffBlocks.add(new DiffBlock<>(diff.operation, elements, 
-						oldElementIndex-elements.size(), newElementIndex-elements.size()));
-			} else if (diff.operation == Operation.INSERT) {
-				for (int i = 0; i < diff.text.length(); i++)
-					elements.add(newElements.get(newElementIndex++));
-				diffBlocks.add(new DiffBlock<>(diff.operation, elements, 
-						oldElementIndex, newElementIndex-elements.size()));
-			} else {
-				for (int i = 0; i < diff.text.length(); i++)
-					elements.add(oldElements.get(oldElementIndex++));
-				diffBlocks.add(new DiffBlock<>(diff.operation, elements, 
-						oldElementIndex-elements.size(), newElementIndex));
-			}
-		}
-		
-		return diffBlocks;
+		return TokenDiffer.diff(oldElements, newElements, processedOldElements, processedNewElements);
 	}
 	
 	public static <T> List<DiffBlock<T>> diff(List<T> oldLines, List<T> newLines) {
@@ -0,0 +1,192 @@
+package io.onedev.server.util.diff;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.MyersDiff;
+import org.eclipse.jgit.diff.Sequence;
+import org.eclipse.jgit.diff.SequenceComparator;
+
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+
+/**
+ * Diffs lists of elements as arrays of int tokens. Equal elements are interned to same
+ * token, and tokens are compared with histogram diff, which falls back to Myers diff for
+ * regions containing too many repeated elements. Unlike diffing with {@link DiffMatchPatch},
+ * number of distinct elements is not limited by range of char, and the Myers fallback
+ * works in linear space, so large files can be diffed. Like {@link DiffMatchPatch}, diff
+ * taking longer than {@link #TIMEOUT} gives up, and treats differing region as replaced 
+ * as a whole, which is reported via {@link DiffResult#isTimedOut()}.
+ */
+public class TokenDiffer {
+
+	static final long TIMEOUT = 1000;
+	
+	// Check time every this many comparisons to keep cost of checking low
+	private static final int TIME_CHECK_INTERVAL = 0xFFFF;
+	
+	/**
+	 * Diff specified elements
+	 *
+	 * @param oldElements
+	 * 			old elements to diff
+	 * @param newElements
+	 * 			new elements to diff
+	 * @param processedOldElements
+	 * 			old elements processed for comparison, for instance with whitespaces trimmed
+	 * @param processedNewElements
+	 * 			new elements processed for comparison
+	 * @return
+	 * 			diff result with elements of diff blocks taken from old elements for deletions, 
+	 * 			and from new elements for insertions and equalities
+	 */
+	public static <T> DiffResult<T> diff(List<T> oldElements, List<T> newElements,
+			List<T> processedOldElements, List<T> processedNewElements) {
+		return diff(oldElements, newElements, processedOldElements, processedNewElements, TIMEOUT);
+	}
+	
+	static <T> DiffResult<T> diff(List<T> oldElements, List<T> newElements,
+			List<T> processedOldElements, List<T> processedNewElements, long timeout) {
+		Map<T, Integer> tokens = new HashMap<>();
+		TokenSequence oldSequence = new TokenSequence(intern(processedOldElements, tokens));
+		TokenSequence newSequence = new TokenSequence(intern(processedNewElements, tokens));
+		EditList edits = diff(oldSequence, newSequence, timeout);
+		boolean timedOut = edits == null;
+		if (timedOut)
+			edits = replace(oldSequence, newSequence);
+		return new DiffResult<>(toDiffBlocks(edits, oldElements, newElements), timedOut);
+	}
+
+	/*
+	 * Returns null if diff times out
+	 */
+	@Nullable
+	static EditList diff(TokenSequence oldSequence, TokenSequence newSequence, long timeout) {
+		HistogramDiff histogramDiff = new HistogramDiff();
+		histogramDiff.setFallbackAlgorithm(MyersDiff.INSTANCE);
+		try {
+			return histogramDiff.diff(new TimedComparator(System.currentTimeMillis() + timeout), 
+					oldSequence, newSequence);
+		} catch (TimeoutException e) {
+			return null;
+		}
+	}
+	
+	/*
+	 * Treat region between common prefix and common suffix as replaced
+	 */
+	static EditList replace(TokenSequence oldSequence, TokenSequence newSequence) {
+		int[] oldTokens = oldSequence.tokens;
+		int[] newTokens = newSequence.tokens;
+		int prefix = 0;
+		while (prefix < oldTokens.length && prefix < newTokens.length 
+				&& oldTokens[prefix] == newTokens[prefix]) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < oldTokens.length - prefix && suffix < newTokens.length - prefix 
+				&& oldTokens[oldTokens.length-1-suffix] == newTokens[newTokens.length-1-suffix]) {
+			suffix++;
+		}
+		EditList edits = new EditList();
+		if (prefix + suffix != oldTokens.length || prefix + suffix != newTokens.length) 
+			edits.add(new Edit(prefix, oldTokens.length-suffix, prefix, newTokens.length-suffix));
+		return edits;
+	}
+
+	private static <T> int[] intern(List<T> elements, Map<T, Integer> tokens) {
+		int[] result = new int[elements.size()];
+		int index = 0;
+		for (T element: elements) {
+			Integer token = tokens.get(element);
+			if (token == null) {
+				token = tokens.size();
+				tokens.put(element, token);
+			}
+			result[index++] = token;
+		}
+		return result;
+	}
+
+	private static <T> List<DiffBlock<T>> toDiffBlocks(EditList edits, List<T> oldElements, List<T> newElements) {
+		List<DiffBlock<T>> diffBlocks = new ArrayList<>();
+		int oldIndex = 0;
+		int newIndex = 0;
+		for (Edit edit: edits) {
+			if (edit.getBeginB() > newIndex) {
+				diffBlocks.add(new DiffBlock<>(Operation.EQUAL,
+						new ArrayList<>(newElements.subList(newIndex, edit.getBeginB())), oldIndex, newIndex));
+			}
+			if (edit.getLengthA() != 0) {
+				diffBlocks.add(new DiffBlock<>(Operation.DELETE,
+						new ArrayList<>(oldElements.subList(edit.getBeginA(), edit.getEndA())),
+						edit.getBeginA(), edit.getBeginB()));
+			}
+			if (edit.getLengthB() != 0) {
+				diffBlocks.add(new DiffBlock<>(Operation.INSERT,
+						new ArrayList<>(newElements.subList(edit.getBeginB(), edit.getEndB())),
+						edit.getEndA(), edit.getBeginB()));
+			}
+			oldIndex = edit.getEndA();
+			newIndex = edit.getEndB();
+		}
+		if (newIndex < newElements.size()) {
+			diffBlocks.add(new DiffBlock<>(Operation.EQUAL,
+					new ArrayList<>(newElements.subList(newIndex, newElements.size())), oldIndex, newIndex));
+		}
+		return diffBlocks;
+	}
+
+	private static class TimedComparator extends SequenceComparator<TokenSequence> {
+
+		private final long deadline;
+		
+		private int comparisons;
+		
+		TimedComparator(long deadline) {
+			this.deadline = deadline;
+		}
+		
+		@Override
+		public boolean equals(TokenSequence a, int ai, TokenSequence b, int bi) {
+			if ((++comparisons & TIME_CHECK_INTERVAL) == 0 && System.currentTimeMillis() > deadline)
+				throw new TimeoutException();
+			return a.tokens[ai] == b.tokens[bi];
+		}
+
+		@Override
+		public int hash(TokenSequence seq, int ptr) {
+			return seq.tokens[ptr];
+		}
+
+	}
+	
+	private static class TimeoutException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+		
+	}
+	
+	static class TokenSequence extends Sequence {
+
+		final int[] tokens;
+
+		TokenSequence(int[] tokens) {
+			this.tokens = tokens;
+		}
+
+		@Override
+		public int size() {
+			return tokens.length;
+		}
+
+	}
+
+}
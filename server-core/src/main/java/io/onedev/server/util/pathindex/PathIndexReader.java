@@ -0,0 +1,99 @@
+package io.onedev.server.util.pathindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.Nullable;
+
+import io.onedev.commons.utils.ExplicitException;
+
+import static io.onedev.server.util.pathindex.PathIndexWriter.HEADER_SIZE;
+import static io.onedev.server.util.pathindex.PathIndexWriter.MAGIC;
+import static io.onedev.server.util.pathindex.PathIndexWriter.VERSION;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Read record of a single path from file written by {@link PathIndexWriter}. Only the
+ * index region is memory mapped, the located record is read directly or mapped if it is
+ * large, and paths are compared as raw bytes while searching, so cost of a lookup does
+ * not grow with number of paths noticeably.
+ */
+public class PathIndexReader {
+
+	private static final int MAX_READ_SIZE = 64*1024;
+
+	/**
+	 * @return
+	 * 			read only buffer of record bytes, or <tt>null</tt> if specified path does
+	 * 			not exist
+	 */
+	@Nullable
+	public static ByteBuffer read(File file, String path) {
+		byte[] pathBytes = path.getBytes(UTF_8);
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			var header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0)
+					throw new ExplicitException("Unexpected end of path index file: " + file.getAbsolutePath());
+			}
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				throw new ExplicitException("Invalid or unsupported path index file: " + file.getAbsolutePath());
+			long indexOffset = header.getLong();
+			int entryCount = header.getInt();
+			if (entryCount == 0)
+				return null;
+
+			var index = channel.map(READ_ONLY, indexOffset, channel.size() - indexOffset);
+			int low = 0;
+			int high = entryCount - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int entryPos = (int) (index.getLong(mid * 8) - indexOffset);
+				int pathLen = index.getInt(entryPos);
+				int result = compare(index, entryPos + 4, pathLen, pathBytes);
+				if (result < 0) {
+					low = mid + 1;
+				} else if (result > 0) {
+					high = mid - 1;
+				} else {
+					long recordOffset = index.getLong(entryPos + 4 + pathLen);
+					int recordLength = index.getInt(entryPos + 4 + pathLen + 8);
+					if (recordLength <= MAX_READ_SIZE) {
+						// Mapping a small region costs more than reading it
+						var record = ByteBuffer.allocate(recordLength);
+						while (record.hasRemaining()) {
+							if (channel.read(record, recordOffset + record.position()) < 0)
+								throw new ExplicitException("Unexpected end of path index file: " + file.getAbsolutePath());
+						}
+						return record.flip().asReadOnlyBuffer();
+					} else {
+						return channel.map(READ_ONLY, recordOffset, recordLength);
+					}
+				}
+			}
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static int compare(ByteBuffer buffer, int offset, int length, byte[] bytes) {
+		int minLength = Math.min(length, bytes.length);
+		for (int i=0; i<minLength; i++) {
+			int result = Integer.compare(buffer.get(offset+i) & 0xff, bytes[i] & 0xff);
+			if (result != 0)
+				return result;
+		}
+		return Integer.compare(length, bytes.length);
+	}
+
+	static int compare(byte[] bytes1, byte[] bytes2) {
+		return compare(ByteBuffer.wrap(bytes1), 0, bytes1.length, bytes2);
+	}
+
+}
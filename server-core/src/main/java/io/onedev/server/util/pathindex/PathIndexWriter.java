@@ -0,0 +1,105 @@
+package io.onedev.server.util.pathindex;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Write records keyed by path into a single file, with a sorted path index appended
+ * at the end, so that {@link PathIndexReader} is able to locate record of a single
+ * path via binary search without decoding other records.
+ *
+ * Records are streamed to disk as they are added, and only path offsets are kept in
+ * memory. If a path is written multiple times, the last record wins.
+ *
+ * File layout:
+ * <pre>
+ * header: magic(int) version(int) indexOffset(long) entryCount(int)
+ * records: record bytes of each path
+ * index: entryOffsets(long[entryCount]), followed by entries sorted by UTF-8 bytes of path,
+ * 		each as pathLength(int) pathBytes recordOffset(long) recordLength(int)
+ * </pre>
+ */
+public class PathIndexWriter implements Closeable {
+
+	static final int MAGIC = 0x4f445049;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 20;
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private final File file;
+
+	private final CountingOutputStream counting;
+
+	private final DataOutputStream os;
+
+	private final Map<byte[], long[]> entries = new TreeMap<>(PathIndexReader::compare);
+
+	public PathIndexWriter(File file) {
+		this.file = file;
+		try {
+			counting = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+			os = new DataOutputStream(counting);
+			os.writeInt(MAGIC);
+			os.writeInt(VERSION);
+			os.writeLong(0);
+			os.writeInt(0);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void write(String path, byte[] record) {
+		try {
+			entries.put(path.getBytes(UTF_8), new long[] {counting.getByteCount(), record.length});
+			os.write(record);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	@Override
+	public void close() {
+		try {
+			long indexOffset = counting.getByteCount();
+			long entryOffset = indexOffset + 8L * entries.size();
+			for (var path: entries.keySet()) {
+				os.writeLong(entryOffset);
+				entryOffset += 4 + path.length + 8 + 4;
+			}
+			for (var entry: entries.entrySet()) {
+				os.writeInt(entry.getKey().length);
+				os.write(entry.getKey());
+				os.writeLong(entry.getValue()[0]);
+				os.writeInt((int) entry.getValue()[1]);
+			}
+			os.close();
+
+			try (var raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(8);
+				raf.writeLong(indexOffset);
+				raf.writeInt(entries.size());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
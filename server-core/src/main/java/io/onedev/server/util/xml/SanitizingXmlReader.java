@@ -0,0 +1,71 @@
+package io.onedev.server.util.xml;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+
+/**
+ * Streaming counterpart of sanitization done by {@link io.onedev.server.data.migration.VersionedXmlDoc#fromXML(String)}:
+ * characters not allowed in xml are replaced with question mark, and numeric character
+ * references such as <tt>&amp;#1;</tt> are removed.
+ */
+public class SanitizingXmlReader extends Reader {
+
+	private static final int MAX_REFERENCE_LEN = 16;
+
+	private final PushbackReader in;
+
+	public SanitizingXmlReader(Reader in) {
+		this.in = new PushbackReader(in, MAX_REFERENCE_LEN);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		int count = 0;
+		while (count < len) {
+			int ch = readChar();
+			if (ch == -1)
+				break;
+			cbuf[off + count++] = (char) ch;
+		}
+		return count != 0? count: -1;
+	}
+
+	private int readChar() throws IOException {
+		while (true) {
+			int ch = in.read();
+			if (ch == '&') {
+				char[] reference = new char[MAX_REFERENCE_LEN];
+				int len = 0;
+				int next;
+				while (len < MAX_REFERENCE_LEN && (next = in.read()) != -1) {
+					reference[len++] = (char) next;
+					if (len == 1? next != '#': next == ';' || next < '0' || next > '9')
+						break;
+				}
+				if (len > 2 && reference[0] == '#' && reference[len-1] == ';')
+					continue;
+				in.unread(reference, 0, len);
+				return ch;
+			} else if (ch == -1 || isValid((char) ch)) {
+				return ch;
+			} else {
+				return '?';
+			}
+		}
+	}
+
+	private boolean isValid(char ch) {
+		return ch == 0x9 || ch == 0xA || ch == 0xD
+				|| ch >= 0x20 && ch <= 0xD7FF
+				|| ch >= 0xE000 && ch <= 0xFFFD;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,153 @@
+package io.onedev.server.util.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.input.BOMInputStream;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.QName;
+
+import io.onedev.commons.utils.StringUtils;
+import io.onedev.server.util.XmlUtils;
+
+/**
+ * Read xml with StAX so that memory usage is bounded by size of the largest fragment
+ * instead of size of the whole document. Elements matching specified fragment paths
+ * are built as standalone dom4j elements and passed to the fragment consumer one by
+ * one. A fragment is not added to content of its parent, but its parent is still
+ * accessible via {@link Element#getParent()} to check attributes of ancestors. Other
+ * elements are kept in the document tree and returned as root element after reading.
+ *
+ * Fragment path is slash separated local names starting from root element, for
+ * instance <tt>testsuites/testsuite</tt>. A segment of <tt>*</tt> matches any element,
+ * for instance <tt>*&#47;file</tt> matches <tt>file</tt> elements directly under root
+ * no matter what the root element is
+ *
+ */
+public class StreamingXmlReader {
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private final List<String[]> fragmentPaths = new ArrayList<>();
+
+	private final boolean preserveWhitespace;
+
+	public StreamingXmlReader(String... fragmentPaths) {
+		this(false, fragmentPaths);
+	}
+
+	/**
+	 * @param preserveWhitespace whether or not to keep whitespace only text, which is
+	 * 			necessary if fragments are to be converted to beans
+	 */
+	public StreamingXmlReader(boolean preserveWhitespace, String... fragmentPaths) {
+		for (String fragmentPath: fragmentPaths)
+			this.fragmentPaths.add(fragmentPath.split("/"));
+		this.preserveWhitespace = preserveWhitespace;
+	}
+
+	@Nullable
+	public Element read(File file, Consumer<Element> fragmentConsumer) throws IOException, XMLStreamException {
+		try (InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+			return read(is, fragmentConsumer);
+		}
+	}
+
+	@Nullable
+	public Element read(InputStream is, Consumer<Element> fragmentConsumer) throws XMLStreamException {
+		return read(XmlUtils.newInputFactory().createXMLStreamReader(new BOMInputStream(is)), fragmentConsumer);
+	}
+
+	@Nullable
+	public Element read(Reader reader, Consumer<Element> fragmentConsumer) throws XMLStreamException {
+		return read(XmlUtils.newInputFactory().createXMLStreamReader(reader), fragmentConsumer);
+	}
+
+	@Nullable
+	private Element read(XMLStreamReader reader, Consumer<Element> fragmentConsumer) throws XMLStreamException {
+		try {
+			Element root = null;
+			Element fragment = null;
+			Deque<Element> elements = new ArrayDeque<>();
+			List<String> path = new ArrayList<>();
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					Element element = DocumentHelper.createElement(getQName(reader.getPrefix(),
+							reader.getLocalName(), reader.getNamespaceURI()));
+					for (int i=0; i<reader.getAttributeCount(); i++) {
+						element.addAttribute(getQName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i),
+								reader.getAttributeNamespace(i)), reader.getAttributeValue(i));
+					}
+
+					path.add(reader.getLocalName());
+
+					Element parent = elements.peek();
+					if (fragment == null && isFragment(path)) {
+						fragment = element;
+						if (parent != null)
+							fragment.setParent(parent);
+					} else if (parent != null) {
+						parent.add(element);
+					}
+					if (root == null)
+						root = element;
+					elements.push(element);
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					element = elements.pop();
+					path.remove(path.size()-1);
+					if (element == fragment) {
+						fragmentConsumer.accept(fragment);
+						fragment = null;
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+					if (!elements.isEmpty() && (preserveWhitespace || !reader.isWhiteSpace()))
+						elements.peek().addText(reader.getText());
+					break;
+				}
+			}
+			return root;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private boolean isFragment(List<String> path) {
+		for (String[] fragmentPath: fragmentPaths) {
+			if (fragmentPath.length == path.size()) {
+				int i = 0;
+				while (i<fragmentPath.length && (fragmentPath[i].equals("*") || fragmentPath[i].equals(path.get(i))))
+					i++;
+				if (i == fragmentPath.length)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private QName getQName(@Nullable String prefix, String localName, @Nullable String namespaceURI) {
+		if (StringUtils.isNotBlank(namespaceURI))
+			return QName.get(localName, prefix, namespaceURI);
+		else
+			return QName.get(localName);
+	}
+
+}
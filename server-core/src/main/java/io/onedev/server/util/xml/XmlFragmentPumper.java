@@ -0,0 +1,202 @@
+package io.onedev.server.util.xml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+
+import org.dom4j.Element;
+
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.server.OneDev;
+
+/**
+ * Parse multiple xml files in parallel with {@link StreamingXmlReader}, and consume
+ * parsed fragments in current thread. Similar to {@link io.onedev.server.util.ElementPumper},
+ * this is designed for report processing, where consuming logic accesses Hibernate
+ * entities bound to current thread, and holding DOM of all files in memory is not
+ * acceptable. Number of fragments waiting to be consumed is bounded, so memory usage
+ * is capped no matter how large the files are.
+ *
+ * Fragments of the same file are always consumed in document order, while fragments
+ * of different files may interleave. Since a file may turn out to be invalid after some
+ * of its fragments are processed, results of fragments should be registered via
+ * {@link #commit(File, Runnable)}, which only applies them if the whole file is valid.
+ *
+ */
+public abstract class XmlFragmentPumper {
+
+	private static final int MAX_PENDING_EVENTS = 256;
+
+	private static final long POLL_INTERVAL = 100;
+
+	private final Collection<File> files;
+
+	private final StreamingXmlReader reader;
+
+	private final Map<File, List<Runnable>> pendingCommits = new HashMap<>();
+
+	public XmlFragmentPumper(Collection<File> files, String... fragmentPaths) {
+		this.files = files;
+		reader = new StreamingXmlReader(fragmentPaths);
+	}
+
+	protected int getParallelism() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	public void pump() {
+		int parallelism = Math.min(files.size(), getParallelism());
+		if (parallelism == 0)
+			return;
+
+		Queue<File> pendingFiles = new ConcurrentLinkedQueue<>(files);
+		BlockingQueue<Event> events = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+
+		ExecutorService executorService = OneDev.getInstance(ExecutorService.class);
+		for (int i=0; i<parallelism; i++) {
+			executorService.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						File file;
+						while (!cancelled.get() && (file = pendingFiles.poll()) != null) {
+							File currentFile = file;
+							put(events, new Event(EventType.STARTED, file, null, null), cancelled);
+							try {
+								Element root = reader.read(file, fragment -> put(events,
+										new Event(EventType.FRAGMENT, currentFile, fragment, null), cancelled));
+								put(events, new Event(EventType.COMPLETED, file, root, null), cancelled);
+							} catch (XMLStreamException e) {
+								put(events, new Event(EventType.INVALID, file, null, e), cancelled);
+							}
+						}
+						put(events, new Event(EventType.FINISHED, null, null, null), cancelled);
+					} catch (CancellationException e) {
+						// consumer gave up, no need to report anything
+					} catch (Exception e) {
+						try {
+							put(events, new Event(EventType.FAILED, null, null, e), cancelled);
+						} catch (CancellationException e2) {
+						}
+					}
+				}
+
+			});
+		}
+
+		try {
+			int runningWorkers = parallelism;
+			while (runningWorkers != 0) {
+				Event event = events.take();
+				switch (event.type) {
+				case STARTED:
+					processing(event.file);
+					break;
+				case FRAGMENT:
+					process(event.file, event.element);
+					break;
+				case COMPLETED:
+					List<Runnable> commits = pendingCommits.remove(event.file);
+					if (commits != null)
+						commits.forEach(Runnable::run);
+					processed(event.file, event.element);
+					break;
+				case INVALID:
+					pendingCommits.remove(event.file);
+					invalid(event.file, (XMLStreamException) event.exception);
+					break;
+				case FINISHED:
+					runningWorkers--;
+					break;
+				case FAILED:
+					throw event.exception;
+				}
+			}
+		} catch (Exception e) {
+			throw ExceptionUtils.unchecked(e);
+		} finally {
+			cancelled.set(true);
+			pendingCommits.clear();
+		}
+	}
+
+	private void put(BlockingQueue<Event> events, Event event, AtomicBoolean cancelled) {
+		try {
+			while (!events.offer(event, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (cancelled.get())
+					throw new CancellationException();
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Called before parsing specified file
+	 */
+	protected void processing(File file) {
+	}
+
+	protected abstract void process(File file, Element fragment);
+
+	/**
+	 * Register result of a fragment of specified file. The action runs in current thread
+	 * after the whole file is parsed, and is discarded if the file is not a valid xml
+	 */
+	protected void commit(File file, Runnable action) {
+		pendingCommits.computeIfAbsent(file, it -> new ArrayList<>()).add(action);
+	}
+
+	/**
+	 * Called after all fragments of specified file are processed
+	 *
+	 * @param root
+	 * 			root element of the file, excluding fragments
+	 */
+	protected void processed(File file, @Nullable Element root) {
+	}
+
+	/**
+	 * Called if specified file is not a valid xml. Fragments before the error position
+	 * might have been processed already, but their committed results are discarded
+	 */
+	protected abstract void invalid(File file, XMLStreamException exception);
+
+	private enum EventType {STARTED, FRAGMENT, COMPLETED, INVALID, FINISHED, FAILED};
+
+	private static class Event {
+
+		final EventType type;
+
+		final File file;
+
+		final Element element;
+
+		final Exception exception;
+
+		Event(EventType type, @Nullable File file, @Nullable Element element, @Nullable Exception exception) {
+			this.type = type;
+			this.file = file;
+			this.element = element;
+			this.exception = exception;
+		}
+
+	}
+
+}
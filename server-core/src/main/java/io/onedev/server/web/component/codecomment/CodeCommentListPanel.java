@@ -6,6 +6,7 @@ import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.CodeCommentManager;
 import io.onedev.server.entitymanager.CodeCommentStatusChangeManager;
 import io.onedev.server.entitymanager.UrlManager;
+import io.onedev.server.infomanager.VisitInfoManager;
 import io.onedev.server.model.*;
 import io.onedev.server.model.support.LastActivity;
 import io.onedev.server.search.entity.EntitySort;
@@ -105,6 +106,9 @@ public abstract class CodeCommentListPanel extends Panel {
 	
 	private SortableDataProvider<CodeComment, Void> dataProvider;
 	
+	// Visit dates of code comments in current page, loaded in batch instead of one by one
+	private transient Map<Long, Date> visitDates;
+	
 	private SelectionColumn<CodeComment, Void> selectionColumn;
 	
 	private TextField<String> queryInput;
@@ -663,8 +667,12 @@ public abstract class CodeCommentListPanel extends Panel {
 			public Iterator<? extends CodeComment> iterator(long first, long count) {
 				var query = queryModel.getObject();
 				if (query != null) {
-					return getCodeCommentManager().query(getProject(), getPullRequest(),
-							query, (int)first, (int)count).iterator();
+					var comments = getCodeCommentManager().query(getProject(), getPullRequest(),
+							query, (int)first, (int)count);
+					var user = SecurityUtils.getUser();
+					if (user != null)
+						visitDates = OneDev.getInstance(VisitInfoManager.class).getCodeCommentVisitDates(user, comments);
+					return comments.iterator();
 				} else {
 					return new ArrayList<CodeComment>().iterator();
 				}
@@ -809,7 +817,7 @@ public abstract class CodeCommentListPanel extends Panel {
 					@Override
 					protected String load() {
 						var comment = item.getModelObject();
-						return comment.isVisitedAfter(comment.getLastActivity().getDate()) ? "comment" : "comment new";
+						return isVisited(comment) ? "comment" : "comment new";
 					}
 				}));
 				
@@ -835,10 +843,21 @@ public abstract class CodeCommentListPanel extends Panel {
 		response.render(CssHeaderItem.forReference(new CodeCommentCssResourceReference()));
 	}
 
+	private boolean isVisited(CodeComment comment) {
+		Date lastActivityDate = comment.getLastActivity().getDate();
+		if (visitDates != null && visitDates.containsKey(comment.getId())) {
+			Date visitDate = visitDates.get(comment.getId());
+			return visitDate != null && visitDate.getTime() > lastActivityDate.getTime();
+		} else {
+			return comment.isVisitedAfter(lastActivityDate);
+		}
+	}
+	
 	@Override
 	protected void onDetach() {
 		queryStringModel.detach();
 		queryModel.detach();
+		visitDates = null;
 		super.onDetach();
 	}
 
@@ -10,6 +10,7 @@ import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.imports.IssueImporter;
 import io.onedev.server.imports.IssueImporterContribution;
+import io.onedev.server.infomanager.VisitInfoManager;
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.support.LastActivity;
@@ -106,8 +107,10 @@ import org.apache.wicket.request.mapper.parameter.PageParameters;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static io.onedev.server.search.entity.issue.IssueQuery.merge;
@@ -133,6 +136,9 @@ public abstract class IssueListPanel extends Panel {
 	
 	private SortableDataProvider<Issue, Void> dataProvider;	
 	
+	// Visit dates of issues in current page, loaded in batch instead of one by one
+	private transient Map<Long, Date> visitDates;
+	
 	private WebMarkupContainer body;	
 	
 	private Component saveQueryLink;
@@ -150,10 +156,21 @@ public abstract class IssueListPanel extends Panel {
 		return OneDev.getInstance(IssueManager.class);
 	}
 	
+	private boolean isVisited(Issue issue) {
+		Date lastActivityDate = issue.getLastActivity().getDate();
+		if (visitDates != null && visitDates.containsKey(issue.getId())) {
+			Date visitDate = visitDates.get(issue.getId());
+			return visitDate != null && visitDate.getTime() > lastActivityDate.getTime();
+		} else {
+			return issue.isVisitedAfter(lastActivityDate);
+		}
+	}
+	
 	@Override
 	protected void onDetach() {
 		queryStringModel.detach();
 		queryModel.detach();
+		visitDates = null;
 		super.onDetach();
 	}
 	
@@ -1199,8 +1216,12 @@ public abstract class IssueListPanel extends Panel {
 				try {
 					var query = queryModel.getObject();
 					if (query != null) {
-						return getIssueManager().query(getProjectScope(), (IssueQuery) query,
-								true, (int) first, (int) count).iterator();
+						var issues = getIssueManager().query(getProjectScope(), (IssueQuery) query,
+								true, (int) first, (int) count);
+						var user = SecurityUtils.getUser();
+						if (user != null)
+							visitDates = OneDev.getInstance(VisitInfoManager.class).getIssueVisitDates(user, issues);
+						return issues.iterator();
 					}
 				} catch (ExplicitException e) {
 					error(e.getMessage());
@@ -1461,7 +1482,7 @@ public abstract class IssueListPanel extends Panel {
 					@Override
 					protected String load() {
 						Issue issue = model.getObject();
-						return issue.isVisitedAfter(issue.getLastActivity().getDate()) ? "issue" : "issue new";
+						return isVisited(issue) ? "issue" : "issue new";
 					}
 				}));
 				var issueId = model.getObject().getId();
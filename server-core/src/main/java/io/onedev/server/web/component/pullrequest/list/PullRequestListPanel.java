@@ -6,6 +6,7 @@ import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.PullRequestManager;
 import io.onedev.server.entitymanager.PullRequestReviewManager;
+import io.onedev.server.infomanager.VisitInfoManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.PullRequestLabel;
@@ -81,8 +82,10 @@ import org.apache.wicket.request.cycle.RequestCycle;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 @SuppressWarnings("serial")
 public abstract class PullRequestListPanel extends Panel {
@@ -104,6 +107,9 @@ public abstract class PullRequestListPanel extends Panel {
 	
 	private SortableDataProvider<PullRequest, Void> dataProvider;	
 	
+	// Visit dates of pull requests in current page, loaded in batch instead of one by one
+	private transient Map<Long, Date> visitDates;
+	
 	private TextField<String> queryInput;
 	
 	private Component saveQueryLink;
@@ -149,10 +155,21 @@ public abstract class PullRequestListPanel extends Panel {
 		}
 	}
 	
+	private boolean isVisited(PullRequest request) {
+		Date lastActivityDate = request.getLastActivity().getDate();
+		if (visitDates != null && visitDates.containsKey(request.getId())) {
+			Date visitDate = visitDates.get(request.getId());
+			return visitDate != null && visitDate.getTime() > lastActivityDate.getTime();
+		} else {
+			return request.isVisitedAfter(lastActivityDate);
+		}
+	}
+	
 	@Override
 	protected void onDetach() {
 		queryStringModel.detach();
 		queryModel.detach();
+		visitDates = null;
 		super.onDetach();
 	}
 	
@@ -781,8 +798,12 @@ public abstract class PullRequestListPanel extends Panel {
 				try {
 					var query = queryModel.getObject();
 					if (query != null) {
-						return getPullRequestManager().query(getProject(), query,
-								true, (int) first, (int) count).iterator();
+						var requests = getPullRequestManager().query(getProject(), query,
+								true, (int) first, (int) count);
+						var user = SecurityUtils.getUser();
+						if (user != null)
+							visitDates = OneDev.getInstance(VisitInfoManager.class).getPullRequestVisitDates(user, requests);
+						return requests.iterator();
 					}
 				} catch (ExplicitException e) {
 					error(e.getMessage());
@@ -827,7 +848,7 @@ public abstract class PullRequestListPanel extends Panel {
 					@Override
 					protected String load() {
 						var request = item.getModelObject();
-						return request.isVisitedAfter(request.getLastActivity().getDate()) ? "request" : "request new";
+						return isVisited(request) ? "request" : "request new";
 					}
 				}));
 				var requestId = request.getId();
@@ -1,9 +1,24 @@
 package io.onedev.server.web.page.admin.serverinformation;
 
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.CacheLoader;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
+import io.onedev.server.entitymanager.impl.PullRequestCheckScheduler;
+import io.onedev.server.git.BlameCache;
+import io.onedev.server.git.CatFileBatchPool;
+import io.onedev.server.git.GitCommandMetrics;
+import io.onedev.server.git.LfsObjectCache;
+import io.onedev.server.git.MergePreviewEngine;
+import io.onedev.server.git.UploadPackCache;
+import io.onedev.server.infomanager.EnvironmentPool;
+import io.onedev.server.mail.MailManager;
+import io.onedev.server.notification.WebHookDeliveryStatus;
+import io.onedev.server.notification.WebHookManager;
 import io.onedev.server.util.DateUtils;
+import io.onedev.server.util.diff.DiffCache;
 import io.onedev.server.web.page.admin.ServerDetailPage;
+import org.apache.commons.io.FileUtils;
 import org.apache.wicket.markup.ComponentTag;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.Link;
@@ -102,11 +117,100 @@ public class ServerInformationPage extends ServerDetailPage {
 		serverInformation.properties.put("JVM", System.getProperty("java.vm.name") + " " + System.getProperty("java.version") + ", " + System.getProperty("java.vm.vendor"));
 		serverInformation.properties.put("Total Heap Memory", String.valueOf(Runtime.getRuntime().maxMemory() / 1024 / 1024) + " MB");
 		serverInformation.properties.put("Used Heap Memory", String.valueOf((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024 / 1024) + " MB");
+		var mailQueueStatus = OneDev.getInstance(MailManager.class).getQueueStatus();
+		serverInformation.properties.put("Pending Mails", String.valueOf(mailQueueStatus.getPendingMails()));
+		serverInformation.properties.put("Sent Mails", String.valueOf(mailQueueStatus.getSentMails()));
+		serverInformation.properties.put("Failed Mail Attempts", String.valueOf(mailQueueStatus.getFailedAttempts()));
+		serverInformation.properties.put("Dropped Mails", String.valueOf(mailQueueStatus.getDroppedMails()));
+		serverInformation.properties.put("Mail Send Latency", "avg " + mailQueueStatus.getAverageLatency() + " ms, max " + mailQueueStatus.getMaxLatency() + " ms");
+		var webHookDeliveryStatus = OneDev.getInstance(WebHookManager.class).getDeliveryStatus();
+		serverInformation.properties.put("Pending Web Hook Deliveries", String.valueOf(webHookDeliveryStatus.getPendingDeliveries()));
+		serverInformation.properties.put("Successful Web Hook Deliveries", String.valueOf(webHookDeliveryStatus.getSuccessfulDeliveries()));
+		serverInformation.properties.put("Failed Web Hook Attempts", String.valueOf(webHookDeliveryStatus.getFailedAttempts()));
+		serverInformation.properties.put("Dropped Web Hook Deliveries", String.valueOf(webHookDeliveryStatus.getDroppedDeliveries()));
+		serverInformation.properties.put("Coalesced Web Hook Deliveries", String.valueOf(webHookDeliveryStatus.getCoalescedDeliveries()));
+		serverInformation.properties.put("Web Hook Delivery Latency", describe(webHookDeliveryStatus.getLatencyHistogram(), WebHookDeliveryStatus.LATENCY_BUCKETS));
+		for (var delivery: webHookDeliveryStatus.getRecentDeliveries()) {
+			if (delivery.getError() != null) {
+				serverInformation.properties.put("Last Web Hook Delivery Error", DateUtils.formatDateTime(delivery.getDate()) 
+						+ ", " + delivery.getPostUrl() + ": " + delivery.getError());
+				break;
+			}
+		}
+		var environmentPool = OneDev.getInstance(EnvironmentPool.class);
+		long environmentRequests = environmentPool.getHits() + environmentPool.getMisses();
+		serverInformation.properties.put("Open Info Environments", String.valueOf(environmentPool.getOpenEnvs()));
+		serverInformation.properties.put("Info Environment Hit Rate", environmentRequests != 0? 
+				(environmentPool.getHits() * 100 / environmentRequests) + "%": "n/a");
+		serverInformation.properties.put("Evicted Info Environments", String.valueOf(environmentPool.getEvictions()));
+		var lfsObjectCache = OneDev.getInstance(LfsObjectCache.class);
+		long lfsCacheRequests = lfsObjectCache.getHits() + lfsObjectCache.getMisses();
+		serverInformation.properties.put("LFS Cache Size", FileUtils.byteCountToDisplaySize(lfsObjectCache.getCacheSize()));
+		serverInformation.properties.put("LFS Cache Hit Rate", lfsCacheRequests != 0? 
+				(lfsObjectCache.getHits() * 100 / lfsCacheRequests) + "%": "n/a");
+		serverInformation.properties.put("Evicted LFS Cache Objects", String.valueOf(lfsObjectCache.getEvictions()));
+		var uploadPackCache = OneDev.getInstance(UploadPackCache.class);
+		long uploadPackRequests = uploadPackCache.getHits() + uploadPackCache.getMisses();
+		serverInformation.properties.put("Upload Pack Cache Size", FileUtils.byteCountToDisplaySize(uploadPackCache.getCacheSize()));
+		serverInformation.properties.put("Upload Pack Cache Hit Rate", uploadPackRequests != 0? 
+				(uploadPackCache.getHits() * 100 / uploadPackRequests) + "%": "n/a");
+		serverInformation.properties.put("Uncacheable Upload Pack Requests", String.valueOf(uploadPackCache.getBypasses()));
+		serverInformation.properties.put("Evicted Upload Pack Results", String.valueOf(uploadPackCache.getEvictions()));
+		var checkScheduler = OneDev.getInstance(PullRequestCheckScheduler.class);
+		serverInformation.properties.put("Pull Request Checks", "pending " + checkScheduler.getPendingChecks() 
+				+ ", running " + checkScheduler.getRunningChecks() + ", completed " + checkScheduler.getCompletedChecks() 
+				+ ", coalesced " + checkScheduler.getCoalescedChecks() + " of " + checkScheduler.getScheduledChecks());
+		serverInformation.properties.put("Pull Request Check Queue Latency", 
+				"avg " + checkScheduler.getAverageQueueLatency() + " ms");
+		var mergePreviewEngine = OneDev.getInstance(MergePreviewEngine.class);
+		serverInformation.properties.put("Merge Previews", "cached " + mergePreviewEngine.getHits() 
+				+ ", reused " + mergePreviewEngine.getReuses() + ", calculated " + mergePreviewEngine.getMisses());
+		var diffCache = OneDev.getInstance(DiffCache.class);
+		serverInformation.properties.put("Diff Cache", "memory hits " + diffCache.getMemoryHits() 
+				+ ", disk hits " + diffCache.getDiskHits() + ", calculated " + diffCache.getMisses());
+		var blameCache = OneDev.getInstance(BlameCache.class);
+		serverInformation.properties.put("Blame Cache", "hits " + blameCache.getHits() 
+				+ ", derived from parent " + blameCache.getDerives() + ", calculated " + blameCache.getMisses());
+		for (var entry: OneDev.getInstance(CacheLoader.class).getLoadTimes().entrySet()) {
+			serverInformation.properties.put("Cache Loading Time of " + entry.getKey(), entry.getValue() + " ms");
+		}
+		var catFileBatchPool = OneDev.getInstance(CatFileBatchPool.class);
+		serverInformation.properties.put("Forked Git Processes", String.valueOf(GitCommandMetrics.getForkedProcesses()));
+		serverInformation.properties.put("Pooled Git Processes", "idle " + catFileBatchPool.getIdleProcesses() 
+				+ ", active " + catFileBatchPool.getActiveProcesses() + ", reused " + catFileBatchPool.getReuses() + " times");
+		for (var entry: GitCommandMetrics.getLatencyHistograms().entrySet()) {
+			serverInformation.properties.put("Git Latency of " + entry.getKey(), 
+					describe(entry.getValue(), GitCommandMetrics.LATENCY_BUCKETS));
+		}
+		for (var entry: OneDev.getInstance(ClusterTransport.class).getPeerTraffics().entrySet()) {
+			var traffic = entry.getValue();
+			serverInformation.properties.put("Cluster Traffic to " + entry.getKey(), 
+					"calls " + traffic.getCalls() + ", errors " + traffic.getErrors() 
+					+ ", sent " + FileUtils.byteCountToDisplaySize(traffic.getBytesSent()) 
+					+ ", received " + FileUtils.byteCountToDisplaySize(traffic.getBytesReceived()) 
+					+ ", latency avg " + traffic.getAverageLatency() + " ms, max " + traffic.getMaxLatency() + " ms");
+		}
 		serverInformation.memoryUsage = (int)((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory())*1.0
 				/ Runtime.getRuntime().maxMemory() * 100) + "%";
 		return serverInformation;
 	}
 
+	private static String describe(long[] latencyHistogram, long[] buckets) {
+		var description = new StringBuilder();
+		for (int i=0; i<latencyHistogram.length; i++) {
+			if (latencyHistogram[i] != 0) {
+				if (description.length() != 0)
+					description.append(", ");
+				if (i < buckets.length)
+					description.append("<=").append(buckets[i]).append(" ms: ");
+				else
+					description.append(">").append(buckets[buckets.length-1]).append(" ms: ");
+				description.append(latencyHistogram[i]);
+			}
+		}
+		return description.length() != 0? description.toString(): "n/a";
+	}
+
 	private static ServerInformation getServerInformation(@Nullable String server) {
 		ServerInformation serverInformation;
 		if (server != null)
@@ -4,7 +4,9 @@ import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.LockUtils;
 import io.onedev.k8shelper.KubernetesHelper;
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.model.Build;
@@ -121,13 +123,12 @@ public abstract class ArtifactUploadPanel extends Panel {
 							return null;
 						});
 					} else {
-						Client client = ClientBuilder.newClient();
-						client.property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
+						ClusterConnection connection = OneDev.getInstance(ClusterTransport.class).connect(activeServer);
+						connection.target().property(ClientProperties.REQUEST_ENTITY_PROCESSING, "CHUNKED");
 						try {
-							String serverUrl = clusterManager.getServerUrl(activeServer);
 							for (FileUpload upload: uploads) {
 								String filePath = getArtifactPath(upload);
-								WebTarget jerseyTarget = client.target(serverUrl)
+								WebTarget jerseyTarget = connection.target()
 										.path("~api/cluster/artifact")
 										.queryParam("projectId", projectId)
 										.queryParam("buildNumber", getBuild().getNumber())
@@ -154,7 +155,7 @@ public abstract class ArtifactUploadPanel extends Panel {
 								}
 							}
 						} finally {
-							client.close();
+							connection.close();
 						}
 					}
 					
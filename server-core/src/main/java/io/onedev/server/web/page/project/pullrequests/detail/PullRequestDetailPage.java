@@ -3,6 +3,7 @@ package io.onedev.server.web.page.project.pullrequests.detail;
 import com.google.common.collect.Sets;
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.*;
+import io.onedev.server.entitymanager.impl.PullRequestCheckScheduler;
 import io.onedev.server.entityreference.Referenceable;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.service.RefFacade;
@@ -307,6 +308,11 @@ public abstract class PullRequestDetailPage extends ProjectPage implements PullR
 	protected void onInitialize() {
 		super.onInitialize();
 
+		if (getPullRequest().isOpen()) {
+			OneDev.getInstance(PullRequestCheckScheduler.class)
+					.viewed(getProject().getId(), getPullRequest().getId());
+		}
+		
 		add(newRequestHead());
 		add(newStatusBarContainer());
 		WebMarkupContainer summaryContainer = new WebMarkupContainer("requestSummary") {
@@ -19,6 +19,7 @@ import io.onedev.server.model.support.CompareContext;
 import io.onedev.server.model.support.Mark;
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestApproveData;
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestRequestedForChangesData;
+import io.onedev.server.util.diff.DiffCache;
 import io.onedev.server.util.diff.DiffUtils;
 import io.onedev.server.util.diff.WhitespaceOption;
 import io.onedev.server.web.ajaxlistener.ConfirmLeaveListener;
@@ -227,10 +228,13 @@ public class PullRequestChangesPage extends PullRequestDetailPage implements Rev
 			if (newLines != null) {
 				BlobIdent oldBlobIdent = new BlobIdent(oldCommitId.name(), blobPath, FileMode.REGULAR_FILE.getBits());
 				List<String> oldLines = getProject().readLines(oldBlobIdent, WhitespaceOption.DEFAULT, true);
-				if (oldLines != null) 
-					lineMapping = DiffUtils.mapLines(oldLines, newLines);
-				else 
+				if (oldLines != null) {
+					lineMapping = OneDev.getInstance(DiffCache.class).mapLines(
+							getProject().getBlob(oldBlobIdent, true).getBlobId(), oldLines, 
+							getProject().getBlob(newBlobIdent, true).getBlobId(), newLines);
+				} else {
 					lineMapping = new HashMap<>();
+				}
 			} else {
 				lineMapping = new HashMap<>();
 			}
@@ -3,7 +3,9 @@ package io.onedev.server.web.resource;
 import com.google.common.base.Splitter;
 import io.onedev.k8shelper.KubernetesHelper;
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.git.Blob;
 import io.onedev.server.git.BlobIdent;
@@ -31,8 +33,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.persistence.EntityNotFoundException;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.HttpHeaders;
@@ -143,10 +143,9 @@ public class RawBlobResource extends AbstractResource {
 							return GitUtils.getInputStream(repository, commitId, blob.getIdent().path);
 						}
 					} else {
-						Client client = ClientBuilder.newClient();
+						ClusterConnection connection = OneDev.getInstance(ClusterTransport.class).connect(activeServer);
 						try {
-							String serverUrl = getClusterManager().getServerUrl(activeServer);
-							WebTarget target = client.target(serverUrl);
+							WebTarget target = connection.target();
 							if (blob.getLfsPointer() != null) {
 								target = target.path("~api/cluster/lfs")
 										.queryParam("projectId", project.getId())
@@ -176,7 +175,7 @@ public class RawBlobResource extends AbstractResource {
 								throw e;
 							}
 						} finally {
-							client.close();
+							connection.close();
 						}
 					}
 				}
@@ -4,7 +4,9 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import io.onedev.k8shelper.KubernetesHelper;
 import io.onedev.server.OneDev;
+import io.onedev.server.cluster.ClusterConnection;
 import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.cluster.ClusterTransport;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.git.BlobIdent;
 import io.onedev.server.model.Project;
@@ -24,8 +26,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityNotFoundException;
 import javax.servlet.http.HttpServletResponse;
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.HttpHeaders;
@@ -133,10 +133,9 @@ public class SiteFileResource extends AbstractResource {
 						return null;
 					});
 				} else {
-					Client client = ClientBuilder.newClient();
+					ClusterConnection connection = OneDev.getInstance(ClusterTransport.class).connect(activeServer);
 					try {
-						String serverUrl = getClusterManager().getServerUrl(activeServer);
-						WebTarget target = client.target(serverUrl);
+						WebTarget target = connection.target();
 						target = target.path("~api/cluster/site")
 								.queryParam("projectId", project.getId())
 								.queryParam("filePath", finalFilePath);
@@ -152,7 +151,7 @@ public class SiteFileResource extends AbstractResource {
 							}
 						}
 					} finally {
-						client.close();
+						connection.close();
 					}
 				}
 				
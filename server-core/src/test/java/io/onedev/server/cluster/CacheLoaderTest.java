@@ -0,0 +1,46 @@
+package io.onedev.server.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class CacheLoaderTest {
+
+	@Test
+	public void testSnapshot() {
+		File snapshotDir = FileUtils.createTempDir();
+		try {
+			CacheLoader loader = new CacheLoader(null, null, null) {
+
+				@Override
+				protected File getSnapshotDir() {
+					return snapshotDir;
+				}
+
+			};
+
+			assertNull(loader.readSnapshot("test", input -> input.readLong()));
+
+			loader.writeSnapshot("test", output -> {
+				output.writeLong(100L);
+				output.writeUTF("test");
+			});
+			assertEquals("100:test", loader.readSnapshot("test", input -> input.readLong() + ":" + input.readUTF()));
+
+			// Snapshot is consumed after being read
+			assertNull(loader.readSnapshot("test", input -> input.readLong()));
+
+			// Truncated snapshot is rejected
+			loader.writeSnapshot("test", output -> output.writeInt(1));
+			assertNull(loader.readSnapshot("test", input -> input.readLong()));
+		} finally {
+			FileUtils.deleteDir(snapshotDir);
+		}
+	}
+
+}
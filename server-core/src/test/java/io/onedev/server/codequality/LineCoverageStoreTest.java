@@ -0,0 +1,60 @@
+package io.onedev.server.codequality;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class LineCoverageStoreTest {
+
+	@Test
+	public void testMigrate() throws IOException {
+		File reportDir = FileUtils.createTempDir();
+		try {
+			Random random = new Random(1);
+			Map<String, Map<Integer, CoverageStatus>> coverages = new LinkedHashMap<>();
+			for (int i=0; i<200; i++) {
+				Map<Integer, CoverageStatus> lineCoverages = new HashMap<>();
+				for (int j=random.nextInt(50); j>=0; j--) {
+					lineCoverages.put(random.nextInt(10000),
+							CoverageStatus.values()[random.nextInt(CoverageStatus.values().length)]);
+				}
+				coverages.put("src/dir" + (i%7) + "/File" + i + ".java", lineCoverages);
+			}
+
+			for (var entry: coverages.entrySet()) {
+				File legacyFile = new File(reportDir, "files/" + entry.getKey());
+				FileUtils.createDir(legacyFile.getParentFile());
+				try (OutputStream os = new FileOutputStream(legacyFile)) {
+					SerializationUtils.serialize(new HashMap<>(entry.getValue()), os);
+				}
+			}
+
+			for (var entry: coverages.entrySet())
+				assertEquals(entry.getValue(), LineCoverageStore.read(reportDir, entry.getKey()));
+
+			LineCoverageStore.migrate(reportDir);
+			assertFalse(new File(reportDir, "files").exists());
+
+			for (var entry: coverages.entrySet())
+				assertEquals(entry.getValue(), LineCoverageStore.read(reportDir, entry.getKey()));
+			assertNull(LineCoverageStore.read(reportDir, "src/dir0/NotExist.java"));
+		} finally {
+			FileUtils.deleteDir(reportDir);
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+package io.onedev.server.data.migration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.dom4j.Element;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class DataFileUtilsTest {
+
+	@Test
+	public void testMigrateRows() throws IOException {
+		File dataDir = Files.createTempDirectory("data").toFile();
+		try {
+			File file = new File(dataDir, "Settings.xml");
+			String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+					+ "<list>"
+					+ "<io.onedev.server.model.Setting revision=\"1\"><id>1</id><key>ISSUE</key><value> </value></io.onedev.server.model.Setting>"
+					+ "<io.onedev.server.model.Setting revision=\"1\"><id>2</id><key>MAIL&#1;</key></io.onedev.server.model.Setting>"
+					+ "<io.onedev.server.model.Setting revision=\"1\"><id>3</id><key>SECURITY</key></io.onedev.server.model.Setting>"
+					+ "</list>";
+			Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+			
+			DataFileUtils.migrateRows(dataDir, "Settings.xml", element -> {
+				String key = element.elementTextTrim("key");
+				if (key.equals("ISSUE"))
+					element.addElement("migrated").setText("true");
+				else if (key.equals("SECURITY"))
+					element.detach();
+			});
+			
+			VersionedXmlDoc dom = VersionedXmlDoc.fromFile(file);
+			var rows = dom.getRootElement().elements();
+			assertEquals(2, rows.size());
+			Element row = rows.get(0);
+			assertEquals("1", row.attributeValue("revision"));
+			assertEquals("true", row.elementText("migrated"));
+			assertEquals(" ", row.elementText("value"));
+			assertEquals("MAIL", rows.get(1).elementText("key"));
+			assertFalse(new File(dataDir, ".Settings.xml.migrating").exists());
+		} finally {
+			FileUtils.deleteDir(dataDir);
+		}
+	}
+	
+}
@@ -0,0 +1,142 @@
+package io.onedev.server.entitymanager.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.BiPredicate;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.entitymanager.impl.DefaultBuildMetricManager.Rollup;
+import io.onedev.server.search.buildmetric.JobCriteria;
+import io.onedev.server.search.buildmetric.OrBuildMetricCriteria;
+import io.onedev.server.search.buildmetric.ReportCriteria;
+
+public class DefaultBuildMetricManagerTest {
+
+	private static final int MINUTES_OF_DAY = 24*60;
+
+	private static final String[] JOBS = {"ci", "release", "nightly"};
+
+	private static final String[] REPORTS = {"unit", "integration"};
+
+	@Test
+	public void testRollupsMatchRawMetrics() {
+		Random random = new Random(1);
+		List<Metric> metrics = new ArrayList<>();
+		for (int i=0; i<5000; i++) {
+			Metric metric = new Metric();
+			metric.time = random.nextInt(30 * MINUTES_OF_DAY);
+			metric.jobName = JOBS[random.nextInt(JOBS.length)];
+			metric.reportName = REPORTS[random.nextInt(REPORTS.length)];
+			metric.values = new long[] {random.nextInt(100), random.nextInt(100000)};
+			metrics.add(metric);
+		}
+
+		BiPredicate<String, String> matcher = new OrBuildMetricCriteria(Lists.newArrayList(
+				new JobCriteria("C*"), new ReportCriteria("integration"))).getRollupMatcher();
+
+		for (Integer since: Lists.newArrayList(null, 5*MINUTES_OF_DAY + 600)) {
+			for (Integer until: Lists.newArrayList(null, 20*MINUTES_OF_DAY + 300, 5*MINUTES_OF_DAY + 900)) {
+				Map<Integer, double[]> expected = queryRaw(metrics, matcher, since, until, null);
+				Map<Integer, double[]> actual = queryRollups(metrics, matcher, since, until);
+				assertEquals(expected.keySet(), actual.keySet());
+				for (var entry: expected.entrySet())
+					assertArrayEquals(entry.getValue(), actual.get(entry.getKey()), 0.000001);
+			}
+		}
+	}
+
+	/*
+	 * Stats of each day calculated from raw metrics, as is done by the database query
+	 */
+	private Map<Integer, double[]> queryRaw(List<Metric> metrics, BiPredicate<String, String> matcher,
+			Integer since, Integer until, Collection<Integer> days) {
+		Map<Integer, List<Metric>> metricsByDay = new TreeMap<>();
+		for (Metric metric: metrics) {
+			if ((since == null || metric.time > since) && (until == null || metric.time < until)
+					&& (days == null || days.contains(metric.getDay()))
+					&& matcher.test(metric.jobName, metric.reportName)) {
+				metricsByDay.computeIfAbsent(metric.getDay(), it -> new ArrayList<>()).add(metric);
+			}
+		}
+		Map<Integer, double[]> stats = new HashMap<>();
+		for (var entry: metricsByDay.entrySet()) {
+			double[] values = new double[2];
+			for (Metric metric: entry.getValue()) {
+				for (int i=0; i<values.length; i++)
+					values[i] += metric.values[i];
+			}
+			for (int i=0; i<values.length; i++)
+				values[i] /= entry.getValue().size();
+			stats.put(entry.getKey(), values);
+		}
+		return stats;
+	}
+
+	/*
+	 * Stats of each day merged from rollups and raw metrics of boundary days, as is done by
+	 * DefaultBuildMetricManager.queryStats
+	 */
+	private Map<Integer, double[]> queryRollups(List<Metric> metrics, BiPredicate<String, String> matcher,
+			Integer since, Integer until) {
+		Map<Integer, Map<String, Rollup>> rollups = new HashMap<>();
+		for (Metric metric: metrics) {
+			Rollup rollup = rollups.computeIfAbsent(metric.getDay(), it -> new HashMap<>())
+					.computeIfAbsent(metric.jobName + ":" + metric.reportName, it -> {
+						Rollup newRollup = new Rollup();
+						newRollup.jobName = metric.jobName;
+						newRollup.reportName = metric.reportName;
+						newRollup.sums = new long[2];
+						return newRollup;
+					});
+			rollup.count++;
+			for (int i=0; i<rollup.sums.length; i++)
+				rollup.sums[i] += metric.values[i];
+		}
+
+		Collection<Integer> rollupDays = new ArrayList<>();
+		Collection<Integer> rawDays = new HashSet<>();
+		DefaultBuildMetricManager.splitDays(rollups.keySet(),
+				since != null? since / MINUTES_OF_DAY: null,
+				until != null? until / MINUTES_OF_DAY: null,
+				rollupDays, rawDays);
+
+		Map<Integer, double[]> stats = new HashMap<>();
+		for (int day: rollupDays) {
+			double[] values = DefaultBuildMetricManager.average(rollups.get(day).values(), 2, matcher);
+			if (values != null)
+				stats.put(day, values);
+		}
+		if (!rawDays.isEmpty())
+			stats.putAll(queryRaw(metrics, matcher, since, until, rawDays));
+		return stats;
+	}
+
+	private static class Metric {
+
+		int time;
+
+		String jobName;
+
+		String reportName;
+
+		long[] values;
+
+		int getDay() {
+			return time / MINUTES_OF_DAY;
+		}
+
+	}
+
+}
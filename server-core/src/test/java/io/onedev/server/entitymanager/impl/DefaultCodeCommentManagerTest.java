@@ -0,0 +1,235 @@
+package io.onedev.server.entitymanager.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Test;
+
+import io.onedev.commons.utils.PlanarRange;
+import io.onedev.server.OneDev;
+import io.onedev.server.event.ListenerRegistry;
+import io.onedev.server.git.AbstractGitTest;
+import io.onedev.server.git.Blob;
+import io.onedev.server.git.BlobIdent;
+import io.onedev.server.git.GitUtils;
+import io.onedev.server.git.command.RevListOptions;
+import io.onedev.server.git.service.GitService;
+import io.onedev.server.infomanager.CommitInfoManager;
+import io.onedev.server.model.CodeComment;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.support.Mark;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.diff.DiffCache;
+import io.onedev.server.util.diff.DiffUtils;
+
+public class DefaultCodeCommentManagerTest extends AbstractGitTest {
+
+	private static final String PATH = "file";
+
+	private final List<CodeComment> comments = new ArrayList<>();
+
+	private final AtomicInteger historyWalks = new AtomicInteger();
+
+	private Project project;
+
+	private Dao dao;
+
+	private CommitInfoManager commitInfoManager;
+
+	private DiffCache diffCache;
+
+	@Override
+	protected void setup() {
+		super.setup();
+
+		Repository repository = git.getRepository();
+		project = new Project() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public RevCommit getRevCommit(ObjectId revId, boolean mustExist) {
+				try (RevWalk revWalk = new RevWalk(repository)) {
+					return GitUtils.parseCommit(revWalk, revId);
+				}
+			}
+
+			@Override
+			public Blob getBlob(BlobIdent blobIdent, boolean mustExist) {
+				try (RevWalk revWalk = new RevWalk(repository)) {
+					RevCommit commit = revWalk.parseCommit(repository.resolve(blobIdent.revision));
+					try (TreeWalk treeWalk = TreeWalk.forPath(repository, blobIdent.path, commit.getTree())) {
+						if (treeWalk != null) {
+							ObjectId blobId = treeWalk.getObjectId(0);
+							return new Blob(blobIdent, blobId, repository.open(blobId).getBytes());
+						} else if (mustExist) {
+							throw new IllegalStateException("Blob not found: " + blobIdent);
+						} else {
+							return null;
+						}
+					}
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+
+		};
+		project.setId(1L);
+
+		GitService gitService = mock(GitService.class);
+		when(OneDev.getInstance(GitService.class)).thenReturn(gitService);
+		when(gitService.sortValidCommits(any(), any())).thenAnswer(invocation -> {
+			List<RevCommit> commits = new ArrayList<>();
+			try (RevWalk revWalk = new RevWalk(repository)) {
+				for (ObjectId commitId: invocation.<Collection<ObjectId>>getArgument(1))
+					commits.add(revWalk.parseCommit(commitId));
+			}
+			return commits;
+		});
+		when(gitService.revList(any(), any())).thenAnswer(invocation -> {
+			historyWalks.incrementAndGet();
+			RevListOptions options = invocation.getArgument(1);
+			List<String> revisions = new ArrayList<>();
+			try (RevWalk revWalk = new RevWalk(repository)) {
+				revWalk.markStart(revWalk.parseCommit(repository.resolve(options.revisions().get(0))));
+				for (RevCommit commit: revWalk)
+					revisions.add(commit.name());
+			}
+			return revisions;
+		});
+
+		dao = mock(Dao.class);
+		when(dao.query(any())).thenAnswer(invocation -> new ArrayList<>(comments));
+		commitInfoManager = mock(CommitInfoManager.class);
+		diffCache = mock(DiffCache.class);
+		when(diffCache.mapLines(any(), any(), any(), any())).thenAnswer(invocation ->
+				DiffUtils.mapLines(invocation.<List<String>>getArgument(1), invocation.<List<String>>getArgument(3)));
+	}
+
+	@Test
+	public void testQueryInHistory() throws Exception {
+		List<String> lines = new ArrayList<>();
+		for (int i=0; i<20; i++)
+			lines.add("line " + i);
+
+		String commit1 = commit(lines, "commit1");
+		addComment(commit1, 2, 3);
+		addComment(commit1, 10, 11);
+
+		List<String> removedLines = new ArrayList<>(lines.subList(9, 12));
+		lines.subList(9, 12).clear();
+		String commit2 = commit(lines, "commit2");
+
+		// Restore removed lines, which should make second comment visible again
+		lines.addAll(9, removedLines);
+		String commit3 = commit(lines, "commit3");
+		addComment(commit3, 15, 15);
+
+		git.checkout().setCreateBranch(true).setName("dev").setStartPoint(commit2).call();
+		lines.subList(9, 12).clear();
+		lines.set(0, "dev line 0");
+		String devCommit = commit(lines, "dev commit");
+		addComment(devCommit, 5, 6);
+
+		git.checkout().setName("main").call();
+		lines.clear();
+		for (int i=0; i<20; i++)
+			lines.add("line " + i);
+		lines.set(19, "main line 19");
+		String commit4 = commit(lines, "commit4");
+
+		git.merge().include(git.getRepository().resolve("dev")).setFastForward(FastForwardMode.NO_FF)
+				.setMessage("merge").call();
+		String mergeCommit = git.getRepository().resolve("main").name();
+
+		lines = readLines(mergeCommit);
+		lines.add(0, "inserted line");
+		String commit5 = commit(lines, "commit5");
+
+		lines.remove(3);
+		String commit6 = commit(lines, "commit6");
+		addComment(commit6, 1, 1);
+
+		List<String> commits = List.of(commit1, commit2, commit3, commit4, mergeCommit, commit5, commit6);
+
+		// History is only walked for first commit and merge commit when querying commits in order
+		DefaultCodeCommentManager manager = newManager();
+		List<String> walkedCommits = new ArrayList<>();
+		for (String commit: commits)
+			assertQuery(manager, commit, walkedCommits);
+		assertEquals(List.of(commit1, mergeCommit), walkedCommits);
+
+		// Positions are calculated from history again if positions of parent are not cached
+		manager = newManager();
+		walkedCommits.clear();
+		for (String commit: List.of(commit1, commit3, commit4, commit5, commit6))
+			assertQuery(manager, commit, walkedCommits);
+		assertEquals(List.of(commit1, commit3, commit5), walkedCommits);
+
+		Map<Long, String> positions = query(newManager(), commit2);
+		assertFalse(positions.containsKey(2L));
+		positions = query(newManager(), commit3);
+		assertTrue(positions.containsKey(2L));
+		positions = query(newManager(), commit5);
+		assertTrue(positions.containsKey(4L));
+		assertFalse(positions.containsKey(5L));
+	}
+
+	private void assertQuery(DefaultCodeCommentManager manager, String commit, List<String> walkedCommits) {
+		int walks = historyWalks.get();
+		Map<Long, String> positions = query(manager, commit);
+		if (historyWalks.get() != walks)
+			walkedCommits.add(commit);
+		assertEquals("Positions at " + commit, query(newManager(), commit), positions);
+	}
+
+	private DefaultCodeCommentManager newManager() {
+		return new DefaultCodeCommentManager(dao, mock(ListenerRegistry.class), commitInfoManager,
+				diffCache, mock(EntityCountCache.class));
+	}
+
+	private Map<Long, String> query(DefaultCodeCommentManager manager, String commit) {
+		Map<Long, String> positions = new HashMap<>();
+		for (Map.Entry<CodeComment, PlanarRange> entry:
+				manager.queryInHistory(project, ObjectId.fromString(commit), PATH).entrySet()) {
+			positions.put(entry.getKey().getId(), entry.getValue().toString());
+		}
+		return positions;
+	}
+
+	private String commit(List<String> lines, String message) {
+		return addFileAndCommit(PATH, String.join("\n", lines) + "\n", message);
+	}
+
+	private List<String> readLines(String commit) {
+		BlobIdent blobIdent = new BlobIdent(commit, PATH, 0100644);
+		return new ArrayList<>(project.getBlob(blobIdent, true).getText().getLines());
+	}
+
+	private void addComment(String commit, int fromRow, int toRow) {
+		CodeComment comment = new CodeComment();
+		comment.setId((long) comments.size() + 1);
+		comment.setProject(project);
+		comment.setMark(new Mark(commit, PATH, new PlanarRange(fromRow, 0, toRow, 5)));
+		comments.add(comment);
+	}
+
+}
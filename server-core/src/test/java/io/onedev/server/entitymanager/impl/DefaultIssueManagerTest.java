@@ -0,0 +1,92 @@
+package io.onedev.server.entitymanager.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.onedev.server.util.ProjectIssueStats;
+
+public class DefaultIssueManagerTest {
+
+	@Test
+	public void testCombineStats() {
+		Random random = new Random(1);
+		for (int i=0; i<100; i++) {
+			List<IssueRow> issues = new ArrayList<>();
+			for (int j=random.nextInt(200); j>0; j--) {
+				issues.add(new IssueRow((long) random.nextInt(5) + 1, random.nextInt(4),
+						random.nextBoolean(), random.nextInt(4) == 0));
+			}
+			Set<Long> projectIdsWithConfidentialIssuePermission = new HashSet<>();
+			for (long projectId=1; projectId<=5; projectId++) {
+				if (random.nextBoolean())
+					projectIdsWithConfidentialIssuePermission.add(projectId);
+			}
+
+			// Issues matched by previous single query: all issues of projects with confidential
+			// issue permission, non-confidential issues of other projects, and authorized issues
+			List<ProjectIssueStats> expectedStats = queryStats(issues, it ->
+					projectIdsWithConfidentialIssuePermission.contains(it.projectId)
+					|| !it.confidential || it.authorized);
+
+			List<ProjectIssueStats> stats = DefaultIssueManager.combineStats(
+					queryStats(issues, it -> true),
+					queryStats(issues, it -> it.confidential
+							&& !projectIdsWithConfidentialIssuePermission.contains(it.projectId)),
+					queryStats(issues, it -> it.confidential && it.authorized
+							&& !projectIdsWithConfidentialIssuePermission.contains(it.projectId)));
+
+			assertEquals(toString(expectedStats), toString(stats));
+		}
+	}
+
+	private List<ProjectIssueStats> queryStats(List<IssueRow> issues, Predicate<IssueRow> predicate) {
+		Map<String, Long> counts = new TreeMap<>();
+		for (IssueRow issue: issues) {
+			if (predicate.test(issue))
+				counts.merge(issue.projectId + ":" + issue.stateOrdinal, 1L, Long::sum);
+		}
+		List<ProjectIssueStats> stats = new ArrayList<>();
+		for (Map.Entry<String, Long> entry: counts.entrySet()) {
+			String[] fields = entry.getKey().split(":");
+			stats.add(new ProjectIssueStats(Long.valueOf(fields[0]), Integer.parseInt(fields[1]), entry.getValue()));
+		}
+		return stats;
+	}
+
+	private Set<String> toString(List<ProjectIssueStats> stats) {
+		return stats.stream()
+				.map(it -> it.getProjectId() + ":" + it.getStateOrdinal() + ":" + it.getStateCount())
+				.collect(Collectors.toSet());
+	}
+
+	private static class IssueRow {
+
+		final Long projectId;
+
+		final int stateOrdinal;
+
+		final boolean confidential;
+
+		final boolean authorized;
+
+		IssueRow(Long projectId, int stateOrdinal, boolean confidential, boolean authorized) {
+			this.projectId = projectId;
+			this.stateOrdinal = stateOrdinal;
+			this.confidential = confidential;
+			this.authorized = authorized;
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package io.onedev.server.entitymanager.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+
+public class PullRequestCheckSchedulerTest {
+
+	private ExecutorService executorService;
+
+	private PullRequestCheckScheduler scheduler;
+
+	@Before
+	public void before() {
+		executorService = Executors.newCachedThreadPool();
+		scheduler = new PullRequestCheckScheduler(null, null, executorService);
+		scheduler.on((SystemStarted) null);
+	}
+
+	@After
+	public void after() {
+		scheduler.on((SystemStopping) null);
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		List<Boolean> sourceUpdates = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(1);
+		for (boolean sourceUpdated: new boolean[] {false, true, false}) {
+			scheduler.schedule(1L, 1L, sourceUpdated, false, null, false, (checkSourceUpdated, updateBuildCommit) -> {
+				sourceUpdates.add(checkSourceUpdated);
+				latch.countDown();
+			});
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Thread.sleep(500);
+		assertEquals(1, sourceUpdates.size());
+		assertTrue(sourceUpdates.get(0));
+		assertEquals(2, scheduler.getCoalescedChecks());
+	}
+
+	@Test
+	public void testConcurrencyPerProject() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(4);
+		for (long requestId=1; requestId<=3; requestId++) {
+			scheduler.schedule(1L, requestId, false, false, null, true, (sourceUpdated, updateBuildCommit) -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				done.countDown();
+			});
+		}
+		// Checks of other projects are not blocked
+		scheduler.schedule(2L, 4L, false, false, null, true, (sourceUpdated, updateBuildCommit) -> done.countDown());
+
+		Thread.sleep(500);
+		assertEquals(2, scheduler.getRunningChecks());
+		assertEquals(1, scheduler.getPendingChecks());
+
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+	}
+
+}
@@ -0,0 +1,100 @@
+package io.onedev.server.git;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LinearRange;
+import io.onedev.server.git.command.BlameCommand;
+
+public class BlameCacheTest extends AbstractGitTest {
+
+	@Test
+	public void test() throws Exception {
+		File cacheDir = FileUtils.createTempDir();
+		try {
+			BlameCache cache = new BlameCache(null) {
+
+				@Override
+				protected File getCacheDir() {
+					return cacheDir;
+				}
+
+			};
+
+			StringBuilder content = new StringBuilder();
+			for (int i=0; i<300; i++)
+				content.append("line ").append(i).append("\n");
+			ObjectId commitId = ObjectId.fromString(addFileAndCommit("file", content.toString(), "initial commit"));
+			assertBlame(cache, commitId);
+			assertEquals(1, cache.getMisses());
+
+			content = new StringBuilder();
+			for (int i=0; i<300; i++) {
+				if (i % 50 == 0)
+					content.append("changed line ").append(i).append("\n");
+				else if (i % 70 != 0)
+					content.append("line ").append(i).append("\n");
+			}
+			content.append("last line\n");
+			commitId = ObjectId.fromString(addFileAndCommit("file", content.toString(), "second commit"));
+			assertBlame(cache, commitId);
+			assertEquals(1, cache.getDerives());
+
+			commitId = ObjectId.fromString(addFileAndCommit("another-file", "content", "third commit"));
+			assertBlame(cache, commitId);
+			assertEquals(2, cache.getDerives());
+
+			assertEquals(
+					getLineCommits(new BlameCommand(git.getRepository().getDirectory(), commitId, "file")
+							.range(new LinearRange(45, 55)).run()),
+					getLineCommits(cache.blame(1L, git.getRepository(), commitId, "file", new LinearRange(45, 55))));
+			assertEquals(1, cache.getHits());
+			assertEquals(1, cache.getMisses());
+
+			// Blame of range on cold cache is calculated with git blame directly and not cached
+			assertEquals(
+					getLineCommits(new BlameCommand(git.getRepository().getDirectory(), commitId, "file")
+							.range(new LinearRange(45, 55)).run()),
+					getLineCommits(cache.blame(2L, git.getRepository(), commitId, "file", new LinearRange(45, 55))));
+			assertEquals(2, cache.getMisses());
+			cache.blame(2L, git.getRepository(), commitId, "file", null);
+			assertEquals(3, cache.getMisses());
+			assertEquals(1, cache.getHits());
+
+			// Ambiguous change should be derived the same way as git blame diffs it
+			commitId = ObjectId.fromString(addFileAndCommit("file", "{\n{\n{\n}\n", "fourth commit"));
+			assertBlame(cache, commitId);
+			commitId = ObjectId.fromString(addFileAndCommit("file", "}\n{\n{\n", "fifth commit"));
+			assertBlame(cache, commitId);
+			assertEquals(4, cache.getDerives());
+		} finally {
+			FileUtils.deleteDir(cacheDir);
+		}
+	}
+
+	private void assertBlame(BlameCache cache, ObjectId commitId) {
+		assertEquals(
+				getLineCommits(new BlameCommand(git.getRepository().getDirectory(), commitId, "file").run()),
+				getLineCommits(cache.blame(1L, git.getRepository(), commitId, "file", null)));
+	}
+
+	private Map<Integer, String> getLineCommits(Collection<BlameBlock> blocks) {
+		Map<Integer, String> lineCommits = new HashMap<>();
+		for (BlameBlock block: blocks) {
+			for (LinearRange range: block.getRanges()) {
+				for (int line = range.getFrom(); line <= range.getTo(); line++)
+					lineCommits.put(line, block.getCommit().getHash());
+			}
+		}
+		return lineCommits;
+	}
+
+}
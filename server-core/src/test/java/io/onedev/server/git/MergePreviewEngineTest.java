@@ -0,0 +1,73 @@
+package io.onedev.server.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.Test;
+
+public class MergePreviewEngineTest extends AbstractGitTest {
+
+	@Test
+	public void testMerge() throws Exception {
+		addFileAndCommit("a", "a\n", "add a");
+		addFileAndCommit("b", "b\n", "add b");
+		git.checkout().setCreateBranch(true).setName("feature").call();
+		ObjectId source = ObjectId.fromString(addFileAndCommit("a", "a feature\n", "change a"));
+		git.checkout().setName("main").call();
+		ObjectId target = ObjectId.fromString(addFileAndCommit("b", "b main\n", "change b"));
+
+		MergePreviewEngine engine = new MergePreviewEngine();
+		ObjectId merged = engine.merge(1L, git.getRepository(), target, source, false, user, user, "preview");
+		assertEquals(getTree(GitUtils.merge(git.getRepository(), target, source, false, user, user, "preview", false)),
+				getTree(merged));
+		assertEquals(1, engine.getMisses());
+
+		// Target changes do not touch files changed in source, previous merged tree is reused
+		target = ObjectId.fromString(addFileAndCommit("c", "c\n", "add c"));
+		merged = engine.merge(1L, git.getRepository(), target, source, false, user, user, "preview");
+		assertEquals(getTree(GitUtils.merge(git.getRepository(), target, source, false, user, user, "preview", false)),
+				getTree(merged));
+		assertEquals(1, engine.getReuses());
+
+		// Same trees, cached merged tree is used
+		merged = engine.merge(1L, git.getRepository(), target, source, true, user, user, "preview");
+		assertEquals(getTree(GitUtils.merge(git.getRepository(), target, source, true, user, user, "preview", false)),
+				getTree(merged));
+		assertEquals(1, engine.getHits());
+
+		// Target changes files changed in source, merge is calculated again
+		target = ObjectId.fromString(addFileAndCommit("a", "a main\n", "change a"));
+		assertNull(engine.merge(1L, git.getRepository(), target, source, false, user, user, "preview"));
+		assertEquals(2, engine.getMisses());
+
+		// Conflicts are kept if target changes do not touch source changes
+		target = ObjectId.fromString(addFileAndCommit("d", "d\n", "add d"));
+		assertNull(engine.merge(1L, git.getRepository(), target, source, false, user, user, "preview"));
+		assertEquals(2, engine.getReuses());
+	}
+
+	@Test
+	public void testOverlaps() {
+		TreeSet<String> sourceChanges = new TreeSet<>(Arrays.asList("dir/file", "file"));
+		assertTrue(MergePreviewEngine.overlaps(sourceChanges, "file"));
+		assertTrue(MergePreviewEngine.overlaps(sourceChanges, "dir"));
+		assertTrue(MergePreviewEngine.overlaps(sourceChanges, "file/child"));
+		assertFalse(MergePreviewEngine.overlaps(sourceChanges, "dir/another"));
+		assertFalse(MergePreviewEngine.overlaps(sourceChanges, "file2"));
+	}
+
+	private ObjectId getTree(ObjectId commitId) throws IOException {
+		try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+			return revWalk.parseCommit(commitId).getTree().copy();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package io.onedev.server.git;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class UploadPackCacheTest {
+
+	private static final String COMMIT1 = "1111111111111111111111111111111111111111";
+
+	private static final String COMMIT2 = "2222222222222222222222222222222222222222";
+
+	private static final String COMMIT3 = "3333333333333333333333333333333333333333";
+
+	private byte[] request(String... lines) {
+		StringBuilder builder = new StringBuilder();
+		for (String line: lines) {
+			if (line == null) {
+				builder.append("0000");
+			} else {
+				line += "\n";
+				builder.append(String.format("%04x", line.getBytes(StandardCharsets.UTF_8).length + 4));
+				builder.append(line);
+			}
+		}
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testGetKey() {
+		String key = UploadPackCache.getKey(1L, null, request(
+				"want " + COMMIT1 + " multi_ack side-band-64k ofs-delta agent=git/2.39.0",
+				"want " + COMMIT2, null, "have " + COMMIT3, "done"));
+		assertNotNull(key);
+
+		// Client agent and order of wants do not matter
+		assertEquals(key, UploadPackCache.getKey(1L, null, request(
+				"want " + COMMIT2 + " ofs-delta side-band-64k multi_ack agent=git/2.40.1",
+				"want " + COMMIT1, null, "have " + COMMIT3, "done")));
+
+		// Different project, capabilities or haves lead to different results
+		assertNotEquals(key, UploadPackCache.getKey(2L, null, request(
+				"want " + COMMIT1 + " multi_ack side-band-64k ofs-delta agent=git/2.39.0",
+				"want " + COMMIT2, null, "have " + COMMIT3, "done")));
+		assertNotEquals(key, UploadPackCache.getKey(1L, null, request(
+				"want " + COMMIT1 + " multi_ack side-band ofs-delta agent=git/2.39.0",
+				"want " + COMMIT2, null, "have " + COMMIT3, "done")));
+		assertNotEquals(key, UploadPackCache.getKey(1L, null, request(
+				"want " + COMMIT1 + " multi_ack side-band-64k ofs-delta agent=git/2.39.0",
+				"want " + COMMIT2, null, "done")));
+
+		// Negotiation rounds are not cached
+		assertNull(UploadPackCache.getKey(1L, null, request(
+				"want " + COMMIT1 + " multi_ack side-band-64k ofs-delta",
+				null, "have " + COMMIT3, null)));
+
+		String v2Key = UploadPackCache.getKey(1L, "version=2", request(
+				"command=fetch", "agent=git/2.39.0", "session-id=abc", "object-format=sha1",
+				null, "thin-pack", "ofs-delta", "want " + COMMIT1, "done", null));
+		assertNotNull(v2Key);
+		assertEquals(v2Key, UploadPackCache.getKey(1L, "version=2", request(
+				"command=fetch", "agent=git/2.40.1", "session-id=def", "object-format=sha1",
+				null, "thin-pack", "ofs-delta", "want " + COMMIT1, "done", null)));
+
+		// Results depending on refs are not cached
+		assertNull(UploadPackCache.getKey(1L, "version=2", request(
+				"command=ls-refs", "agent=git/2.39.0", null)));
+		assertNull(UploadPackCache.getKey(1L, "version=2", request(
+				"command=fetch", "agent=git/2.39.0", null, "want-ref refs/heads/main", "done", null)));
+	}
+
+}
@@ -0,0 +1,37 @@
+package io.onedev.server.git.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import io.onedev.server.git.AbstractGitTest;
+import io.onedev.server.git.command.CatFileBatch.GitObject;
+
+public class CatFileBatchTest extends AbstractGitTest {
+
+	@Test
+	public void test() throws Exception {
+		String commitHash = addFileAndCommit("file", "hello\n", "initial commit");
+
+		try (CatFileBatch batch = new CatFileBatch(git.getRepository().getDirectory(), new HashMap<>())) {
+			GitObject commit = batch.read(commitHash + "^{commit}");
+			assertEquals(commitHash, commit.getId());
+			assertEquals("commit", commit.getType());
+			assertTrue(new String(commit.getContent(), StandardCharsets.UTF_8).contains("initial commit"));
+
+			// Process should be reusable after reading a missing object
+			assertNull(batch.read("0000000000000000000000000000000000000001"));
+
+			GitObject blob = batch.read(commitHash + ":file");
+			assertEquals("blob", blob.getType());
+			assertEquals("hello\n", new String(blob.getContent(), StandardCharsets.UTF_8));
+			assertTrue(batch.isAlive());
+		}
+	}
+
+}
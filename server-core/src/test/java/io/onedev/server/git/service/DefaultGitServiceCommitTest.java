@@ -35,8 +35,10 @@ import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.event.ListenerRegistry;
 import io.onedev.server.git.AbstractGitTest;
+import io.onedev.server.git.BlameCache;
 import io.onedev.server.git.BlobContent;
 import io.onedev.server.git.BlobEdits;
+import io.onedev.server.git.MergePreviewEngine;
 import io.onedev.server.git.exception.NotTreeException;
 import io.onedev.server.git.exception.ObjectAlreadyExistsException;
 import io.onedev.server.git.exception.ObjectNotFoundException;
@@ -73,7 +75,7 @@ public class DefaultGitServiceCommitTest extends AbstractGitTest {
 		var listenerRegistry = mock(ListenerRegistry.class);
 		
 		gitService = new DefaultGitService(projectManager, settingManager, sessionManager, 
-				clusterManager, listenerRegistry);
+				clusterManager, listenerRegistry, new MergePreviewEngine(), new BlameCache(null));
 	}
 	
 	@Test
@@ -0,0 +1,145 @@
+package io.onedev.server.infomanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.event.system.SystemStopped;
+import jetbrains.exodus.bindings.StringBinding;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.EnvironmentConfig;
+import jetbrains.exodus.env.Environments;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.StoreConfig;
+
+public class EnvironmentPoolTest {
+
+	private File dir;
+
+	private EnvironmentPool pool;
+
+	@Before
+	public void before() {
+		dir = FileUtils.createTempDir();
+
+		// Pool holding one environment, and evicting environments idle for any time
+		pool = new EnvironmentPool(1, 0, 0, -1);
+	}
+
+	@After
+	public void after() {
+		pool.on(new SystemStopped());
+		FileUtils.deleteDir(dir);
+	}
+
+	@Test
+	public void testLease() throws Exception {
+		Environment env;
+		Store store;
+		try (var lease = pool.lease("a", () -> open("a"))) {
+			env = lease.getEnv();
+			store = openStore(env);
+			write(env, store, "value");
+
+			Thread.sleep(10);
+			pool.get("b", () -> open("b"));
+			Thread.sleep(10);
+			pool.get("c", () -> open("c"));
+
+			// Leased environment and its stores are still usable after being idle
+			assertEquals("value", read(env, store));
+			assertSame(env, pool.get("a", () -> open("a")));
+		}
+
+		Thread.sleep(10);
+		pool.get("b", () -> open("b"));
+		assertEquals(1, pool.getOpenEnvs());
+		try {
+			read(env, store);
+			fail("Environment should be closed once lease is closed and it becomes idle");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	@Test
+	public void testReopen() throws Exception {
+		Environment env = pool.get("a", () -> open("a"));
+		write(env, openStore(env), "value");
+
+		Thread.sleep(10);
+		pool.get("b", () -> open("b"));
+		assertEquals(1, pool.getEvictions());
+
+		Environment reopenedEnv = pool.get("a", () -> open("a"));
+		assertNotSame(env, reopenedEnv);
+		assertEquals("value", read(reopenedEnv, openStore(reopenedEnv)));
+		assertEquals(3, pool.getMisses());
+	}
+
+	@Test
+	public void testOpenOutsideLock() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			CountDownLatch openingLatch = new CountDownLatch(1);
+			CountDownLatch openLatch = new CountDownLatch(1);
+			Future<Environment> future1 = executor.submit(() -> pool.get("a", () -> {
+				openingLatch.countDown();
+				try {
+					openLatch.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return open("a");
+			}));
+			openingLatch.await();
+
+			// Other environments can be obtained while "a" is being opened
+			Environment env = executor.submit(() -> pool.get("b", () -> open("b"))).get(10, TimeUnit.SECONDS);
+			write(env, openStore(env), "value");
+
+			// Callers of the same key wait for the environment being opened
+			Future<Environment> future2 = executor.submit(() -> pool.get("a", () -> {
+				throw new IllegalStateException("Environment should only be opened once");
+			}));
+			openLatch.countDown();
+			assertSame(future1.get(10, TimeUnit.SECONDS), future2.get(10, TimeUnit.SECONDS));
+			assertEquals(2, pool.getMisses());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Environment open(String key) {
+		EnvironmentConfig config = new EnvironmentConfig();
+		config.setEnvCloseForcedly(true);
+		return Environments.newInstance(new File(dir, key), config);
+	}
+
+	private Store openStore(Environment env) {
+		return env.computeInTransaction(txn -> env.openStore("default", StoreConfig.WITHOUT_DUPLICATES, txn));
+	}
+
+	private void write(Environment env, Store store, String value) {
+		env.executeInTransaction(txn -> store.put(txn, StringBinding.stringToEntry("key"),
+				StringBinding.stringToEntry(value)));
+	}
+
+	private String read(Environment env, Store store) {
+		return env.computeInReadonlyTransaction(txn -> StringBinding.entryToString(
+				store.get(txn, StringBinding.stringToEntry("key"))));
+	}
+
+}
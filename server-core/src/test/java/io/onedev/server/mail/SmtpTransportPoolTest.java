@@ -0,0 +1,237 @@
+package io.onedev.server.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.onedev.server.model.support.administration.mailsetting.SmtpWithoutSsl;
+
+public class SmtpTransportPoolTest {
+
+	private SmtpStub stub;
+
+	private MailSendSetting sendSetting;
+
+	@Before
+	public void before() throws IOException {
+		stub = new SmtpStub();
+		SmtpWithoutSsl sslSetting = new SmtpWithoutSsl();
+		sslSetting.setPort(stub.getPort());
+		sendSetting = new MailSendSetting(InetAddress.getLoopbackAddress().getHostAddress(),
+				sslSetting, null, null, "onedev@example.com", 10);
+	}
+
+	@After
+	public void after() throws IOException {
+		stub.close();
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		SmtpTransportPool pool = new SmtpTransportPool(60000);
+		try {
+			for (int i=0; i<3; i++) {
+				try (var lease = pool.lease(sendSetting)) {
+					lease.send(newMessage(lease, "user" + i + "@example.com"));
+				}
+			}
+			assertEquals(1, stub.connections.get());
+			assertEquals(3, stub.messages.get());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testStaleConnection() throws Exception {
+		SmtpTransportPool pool = new SmtpTransportPool(60000);
+		try {
+			stub.dropAfterMessage = true;
+			try (var lease = pool.lease(sendSetting)) {
+				lease.send(newMessage(lease, "user1@example.com"));
+			}
+			while (stub.closes.get() == 0)
+				Thread.sleep(10);
+
+			// Pooled connection is closed by server, and should be replaced transparently
+			try (var lease = pool.lease(sendSetting)) {
+				lease.send(newMessage(lease, "user2@example.com"));
+				assertFalse(lease.isBroken());
+			}
+			assertEquals(2, stub.connections.get());
+			assertEquals(2, stub.messages.get());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testRejectedRecipient() throws Exception {
+		SmtpTransportPool pool = new SmtpTransportPool(60000);
+		try {
+			try (var lease = pool.lease(sendSetting)) {
+				try {
+					lease.send(newMessage(lease, "rejected@example.com"));
+					fail("Rejected recipient should fail the send");
+				} catch (SendFailedException e) {
+				}
+				assertFalse(lease.isBroken());
+				lease.send(newMessage(lease, "user@example.com"));
+			}
+			assertEquals(1, stub.connections.get());
+			assertEquals(1, stub.messages.get());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testEvictIdle() throws Exception {
+		SmtpTransportPool pool = new SmtpTransportPool(0);
+		try {
+			try (var lease = pool.lease(sendSetting)) {
+				lease.send(newMessage(lease, "user1@example.com"));
+			}
+			Thread.sleep(10);
+			pool.evictIdle();
+			try (var lease = pool.lease(sendSetting)) {
+				lease.send(newMessage(lease, "user2@example.com"));
+			}
+			assertEquals(2, stub.connections.get());
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testKey() {
+		MailSendSetting sendSetting1 = new MailSendSetting("smtp.example.com", new SmtpWithoutSsl(),
+				"onedev", new BasicAuthPassword("secret1"), "onedev@example.com", 60);
+		MailSendSetting sendSetting2 = new MailSendSetting("smtp.example.com", new SmtpWithoutSsl(),
+				"onedev", new BasicAuthPassword("secret2"), "onedev@example.com", 60);
+		String key1 = SmtpTransportPool.getKey(sendSetting1);
+		assertFalse(key1.contains("secret1"));
+		assertNotEquals(key1, SmtpTransportPool.getKey(sendSetting2));
+		assertEquals(key1, SmtpTransportPool.getKey(sendSetting1));
+	}
+
+	private Message newMessage(SmtpTransportPool.Lease lease, String recipient) throws MessagingException {
+		MimeMessage message = new MimeMessage(lease.getSession());
+		message.setFrom(new InternetAddress(sendSetting.getSenderAddress()));
+		message.setRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
+		message.setSubject("test");
+		message.setText("test");
+		return message;
+	}
+
+	/*
+	 * Minimal SMTP server accepting all mails except those sent to address starting with
+	 * "rejected@"
+	 */
+	private static class SmtpStub implements Closeable {
+
+		private final ServerSocket serverSocket;
+
+		private final Collection<Socket> sockets = new ConcurrentLinkedQueue<>();
+
+		final AtomicInteger connections = new AtomicInteger();
+
+		final AtomicInteger messages = new AtomicInteger();
+
+		final AtomicInteger closes = new AtomicInteger();
+
+		volatile boolean dropAfterMessage;
+
+		SmtpStub() throws IOException {
+			serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			Thread thread = new Thread(() -> {
+				while (!serverSocket.isClosed()) {
+					try {
+						Socket socket = serverSocket.accept();
+						sockets.add(socket);
+						connections.incrementAndGet();
+						Thread sessionThread = new Thread(() -> serve(socket));
+						sessionThread.setDaemon(true);
+						sessionThread.start();
+					} catch (IOException e) {
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		private void serve(Socket socket) {
+			try (socket) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(
+						socket.getInputStream(), StandardCharsets.US_ASCII));
+				Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+				reply(writer, "220 localhost SMTP stub");
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String command = line.toUpperCase();
+					if (command.startsWith("RCPT TO:") && command.contains("<REJECTED@")) {
+						reply(writer, "550 Recipient rejected");
+					} else if (command.equals("DATA")) {
+						reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+						while ((line = reader.readLine()) != null && !line.equals("."));
+						messages.incrementAndGet();
+						reply(writer, "250 OK");
+						if (dropAfterMessage)
+							break;
+					} else if (command.equals("QUIT")) {
+						reply(writer, "221 Bye");
+						break;
+					} else {
+						reply(writer, "250 OK");
+					}
+				}
+			} catch (IOException e) {
+			}
+			closes.incrementAndGet();
+		}
+
+		private void reply(Writer writer, String response) throws IOException {
+			writer.write(response + "\r\n");
+			writer.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			serverSocket.close();
+			for (Socket socket: sockets)
+				socket.close();
+		}
+
+	}
+
+}
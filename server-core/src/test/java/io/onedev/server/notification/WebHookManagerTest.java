@@ -0,0 +1,316 @@
+package io.onedev.server.notification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.net.httpserver.HttpServer;
+
+import io.onedev.server.cluster.ClusterManager;
+import io.onedev.server.entitymanager.PendingWebHookDeliveryManager;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.PendingWebHookDelivery;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.dao.EntityCriteria;
+
+public class WebHookManagerTest {
+
+	private static final String COALESCE_KEY = "BuildUpdated:1";
+
+	private HttpServer server;
+
+	private String postUrl;
+
+	private final List<String> receivedPayloads = Collections.synchronizedList(new ArrayList<>());
+
+	private final LinkedList<Integer> statusCodes = new LinkedList<>();
+
+	private InMemoryDeliveryManager deliveryManager;
+
+	private WebHookManager webHookManager;
+
+	@Before
+	public void before() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			receivedPayloads.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			Integer statusCode;
+			synchronized (statusCodes) {
+				statusCode = statusCodes.poll();
+			}
+			exchange.sendResponseHeaders(statusCode != null? statusCode: 200, -1);
+			exchange.close();
+		});
+		server.start();
+		postUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/hook";
+
+		SessionManager sessionManager = mock(SessionManager.class);
+		when(sessionManager.call(any())).thenAnswer(invocation -> invocation.getArgument(0, Callable.class).call());
+		doAnswer(invocation -> {
+			invocation.getArgument(0, Runnable.class).run();
+			return null;
+		}).when(sessionManager).run(any());
+
+		deliveryManager = new InMemoryDeliveryManager();
+		webHookManager = new WebHookManager(new ObjectMapper(), MoreExecutors.newDirectExecutorService(),
+				mock(TransactionManager.class), sessionManager, mock(ClusterManager.class), deliveryManager);
+	}
+
+	@After
+	public void after() {
+		webHookManager.on(new SystemStopping());
+		server.stop(0);
+	}
+
+	@Test
+	public void testOrder() throws Exception {
+		for (int i=1; i<=30; i++)
+			queue(String.valueOf(i), null);
+
+		// Deliveries of an endpoint are sent in batches
+		webHookManager.dispatch();
+		webHookManager.dispatch();
+
+		List<String> expectedPayloads = new ArrayList<>();
+		for (int i=1; i<=30; i++)
+			expectedPayloads.add(String.valueOf(i));
+		assertEquals(expectedPayloads, receivedPayloads);
+		assertTrue(deliveryManager.deliveries.isEmpty());
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		queue("build1", COALESCE_KEY);
+		queue("build2", COALESCE_KEY);
+		queue("comment", null);
+
+		// Coalescing into the first delivery would send it before the comment
+		queue("build3", COALESCE_KEY);
+		queue("build4", COALESCE_KEY);
+		assertEquals(3, deliveryManager.deliveries.size());
+
+		webHookManager.dispatch();
+		assertEquals(List.of("build2", "comment", "build4"), receivedPayloads);
+		assertTrue(deliveryManager.deliveries.isEmpty());
+	}
+
+	@Test
+	public void testCoalesceRequirements() throws Exception {
+		// Hooks posting to same url may use different secrets
+		queue("build1", COALESCE_KEY, "secret1", true);
+		queue("build2", COALESCE_KEY, "secret2", true);
+		
+		// Deliveries of same event to same url are not coalesced
+		queue("build3", COALESCE_KEY, "secret2", false);
+		assertEquals(3, deliveryManager.deliveries.size());
+		
+		queue("build4", COALESCE_KEY, "secret2", true);
+		assertEquals(3, deliveryManager.deliveries.size());
+		assertEquals(List.of("secret1", "secret2", "secret2"), deliveryManager.deliveries.values().stream()
+				.map(PendingWebHookDelivery::getSecret).collect(Collectors.toList()));
+		assertEquals(List.of("build1", "build2", "build4"), deliveryManager.deliveries.values().stream()
+				.map(PendingWebHookDelivery::getPayload).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		statusCodes.add(503);
+		queue("build1", COALESCE_KEY);
+		queue("comment", null);
+
+		webHookManager.dispatch();
+		assertEquals(List.of("build1"), receivedPayloads);
+		assertEquals(2, deliveryManager.deliveries.size());
+		PendingWebHookDelivery failed = deliveryManager.deliveries.values().iterator().next();
+		assertEquals("build1", failed.getPayload());
+		assertEquals(1, failed.getAttempts());
+		assertTrue(failed.getScheduledDate().after(new Date()));
+		assertTrue(failed.getLastError().contains("503"));
+
+		// Endpoint is held off until the failed delivery is retried, to keep deliveries in order
+		webHookManager.dispatch();
+		assertEquals(1, receivedPayloads.size());
+
+		// Attempted delivery should not be coalesced into
+		queue("build2", COALESCE_KEY);
+		queue("build3", COALESCE_KEY);
+		assertEquals(3, deliveryManager.deliveries.size());
+		assertEquals(List.of("build1", "comment", "build3"), deliveryManager.deliveries.values().stream()
+				.map(PendingWebHookDelivery::getPayload).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testDrop() throws Exception {
+		statusCodes.add(400);
+		queue("1", null);
+		queue("2", null);
+
+		webHookManager.dispatch();
+		assertEquals(List.of("1", "2"), receivedPayloads);
+		assertTrue(deliveryManager.deliveries.isEmpty());
+	}
+
+	private void queue(String payload, String coalesceKey) {
+		queue(payload, coalesceKey, "secret", true);
+	}
+
+	private void queue(String payload, String coalesceKey, String secret, boolean coalesce) {
+		webHookManager.queue(postUrl, secret, "BuildUpdated", coalesceKey, payload, coalesce);
+	}
+
+	private static class InMemoryDeliveryManager implements PendingWebHookDeliveryManager {
+
+		final Map<Long, PendingWebHookDelivery> deliveries = Collections.synchronizedMap(new TreeMap<>());
+
+		private long nextId = 1;
+
+		@Override
+		public synchronized void create(PendingWebHookDelivery delivery) {
+			delivery.setId(nextId++);
+			deliveries.put(delivery.getId(), delivery);
+		}
+
+		@Override
+		public synchronized PendingWebHookDelivery findLast(String postUrl) {
+			PendingWebHookDelivery lastDelivery = null;
+			for (PendingWebHookDelivery delivery: deliveries.values()) {
+				if (delivery.getPostUrl().equals(postUrl))
+					lastDelivery = delivery;
+			}
+			return lastDelivery;
+		}
+
+		@Override
+		public synchronized boolean coalesce(Long deliveryId, String secret, String payload) {
+			PendingWebHookDelivery delivery = deliveries.get(deliveryId);
+			if (delivery != null && delivery.getAttempts() == 0) {
+				delivery.setSecret(secret);
+				delivery.setPayload(payload);
+				delivery.setQueueDate(new Date());
+				delivery.setRevision(delivery.getRevision() + 1);
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public synchronized List<PendingWebHookDelivery> queryDue(Collection<String> excludedPostUrls, int count) {
+			Date now = new Date();
+			return deliveries.values().stream()
+					.filter(it -> !it.getScheduledDate().after(now) && !excludedPostUrls.contains(it.getPostUrl()))
+					.limit(count)
+					.collect(Collectors.toList());
+		}
+
+		@Override
+		public synchronized void delete(Long deliveryId, int revision) {
+			PendingWebHookDelivery delivery = deliveries.get(deliveryId);
+			if (delivery != null && delivery.getRevision() == revision)
+				deliveries.remove(deliveryId);
+		}
+
+		@Override
+		public synchronized void scheduleRetry(Long deliveryId, int attempts, Date scheduledDate, String lastError) {
+			PendingWebHookDelivery delivery = deliveries.get(deliveryId);
+			if (delivery != null) {
+				delivery.setAttempts(attempts);
+				delivery.setScheduledDate(scheduledDate);
+				delivery.setLastError(lastError);
+			}
+		}
+
+		@Override
+		public int trim(int maxDeliveriesPerEndpoint) {
+			return 0;
+		}
+
+		@Override
+		public PendingWebHookDelivery get(Long entityId) {
+			return deliveries.get(entityId);
+		}
+
+		@Override
+		public PendingWebHookDelivery load(Long entityId) {
+			return deliveries.get(entityId);
+		}
+
+		@Override
+		public void delete(PendingWebHookDelivery entity) {
+			deliveries.remove(entity.getId());
+		}
+
+		@Override
+		public int count() {
+			return deliveries.size();
+		}
+
+		@Override
+		public int count(boolean cacheable) {
+			return deliveries.size();
+		}
+
+		@Override
+		public List<PendingWebHookDelivery> query(EntityCriteria<PendingWebHookDelivery> criteria,
+				int firstResult, int maxResults) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<PendingWebHookDelivery> query(EntityCriteria<PendingWebHookDelivery> criteria) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public List<PendingWebHookDelivery> query(boolean cacheable) {
+			return new ArrayList<>(deliveries.values());
+		}
+
+		@Override
+		public List<PendingWebHookDelivery> query() {
+			return new ArrayList<>(deliveries.values());
+		}
+
+		@Override
+		public EntityCriteria<PendingWebHookDelivery> newCriteria() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public PendingWebHookDelivery find(EntityCriteria<PendingWebHookDelivery> entityCriteria) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int count(EntityCriteria<PendingWebHookDelivery> entityCriteria) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
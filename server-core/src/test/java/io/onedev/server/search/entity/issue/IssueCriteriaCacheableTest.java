@@ -0,0 +1,35 @@
+package io.onedev.server.search.entity.issue;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.onedev.server.model.Issue;
+import io.onedev.server.util.criteria.AndCriteria;
+import io.onedev.server.util.criteria.Criteria;
+import io.onedev.server.util.criteria.NotCriteria;
+import io.onedev.server.util.criteria.OrCriteria;
+
+public class IssueCriteriaCacheableTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void test() {
+		Criteria<Issue> state = new StateCriteria("Open", IssueQueryLexer.Is);
+		Criteria<Issue> confidential = new ConfidentialCriteria();
+		Criteria<Issue> current = new CurrentIssueCriteria();
+		Criteria<Issue> fixedInCurrentBuild = new FixedInCurrentBuildCriteria();
+
+		assertTrue(state.isCacheable());
+		assertFalse(current.isCacheable());
+		assertTrue(new AndCriteria<>(state, confidential).isCacheable());
+		assertTrue(new NotCriteria<>(new OrCriteria<>(state, confidential)).isCacheable());
+		assertFalse(new AndCriteria<>(state, new OrCriteria<>(confidential, fixedInCurrentBuild)).isCacheable());
+		assertFalse(new NotCriteria<>(current).isCacheable());
+
+		assertTrue(new FieldOperatorCriteria("Assignee", IssueQueryLexer.IsMe, false).isCacheable());
+		assertFalse(new FieldOperatorCriteria("Build", IssueQueryLexer.IsCurrent, false).isCacheable());
+	}
+
+}
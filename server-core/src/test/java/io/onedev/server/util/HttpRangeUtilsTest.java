@@ -0,0 +1,46 @@
+package io.onedev.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HttpRangeUtilsTest {
+
+	@Test
+	public void testParseRange() {
+		assertNull(HttpRangeUtils.parseRange(null, 100));
+		assertNull(HttpRangeUtils.parseRange("items=0-10", 100));
+		assertNull(HttpRangeUtils.parseRange("bytes=0-10,20-30", 100));
+		assertNull(HttpRangeUtils.parseRange("bytes=abc-", 100));
+		assertNull(HttpRangeUtils.parseRange("bytes=10-5", 100));
+
+		LongRange range = HttpRangeUtils.parseRange("bytes=10-19", 100);
+		assertEquals(10, range.getStart());
+		assertEquals(19, range.getEnd());
+		assertEquals("bytes 10-19/100", HttpRangeUtils.getContentRange(range, 100));
+
+		range = HttpRangeUtils.parseRange("bytes=50-", 100);
+		assertEquals(50, range.getStart());
+		assertEquals(99, range.getEnd());
+
+		range = HttpRangeUtils.parseRange("bytes=90-200", 100);
+		assertEquals(90, range.getStart());
+		assertEquals(99, range.getEnd());
+
+		range = HttpRangeUtils.parseRange("bytes=-30", 100);
+		assertEquals(70, range.getStart());
+		assertEquals(99, range.getEnd());
+
+		range = HttpRangeUtils.parseRange("bytes=-300", 100);
+		assertEquals(0, range.getStart());
+		assertTrue(HttpRangeUtils.isSatisfiable(range, 100));
+
+		range = HttpRangeUtils.parseRange("bytes=100-", 100);
+		assertFalse(HttpRangeUtils.isSatisfiable(range, 100));
+		assertEquals("bytes */100", HttpRangeUtils.getUnsatisfiedContentRange(100));
+	}
+
+}
@@ -0,0 +1,59 @@
+package io.onedev.server.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IOUtilsTest {
+
+	@Test
+	public void testPump() throws IOException {
+		byte[] content = new byte[1024*1024 + 17];
+		new Random().nextBytes(content);
+
+		int[] flushes = new int[1];
+		ByteArrayOutputStream output = new ByteArrayOutputStream() {
+
+			@Override
+			public void flush() {
+				flushes[0]++;
+			}
+
+		};
+		assertEquals(content.length, IOUtils.pump(new ByteArrayInputStream(content), output));
+		assertArrayEquals(content, output.toByteArray());
+
+		// Whole content is available at once, so output should only be flushed at end
+		assertTrue(flushes[0] <= 2);
+	}
+
+	@Test
+	public void testTransferRange() throws IOException {
+		byte[] content = new byte[100000];
+		new Random().nextBytes(content);
+		File file = File.createTempFile("transfer", null);
+		try {
+			Files.write(file.toPath(), content);
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				IOUtils.transferRange(channel, output, new LongRange(1000, 49999));
+				assertArrayEquals(Arrays.copyOfRange(content, 1000, 50000), output.toByteArray());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package io.onedev.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ProjectNumberIndexTest {
+
+	@Test
+	public void test() {
+		ProjectNumberIndex index = new ProjectNumberIndex();
+		Map<String, Long> expected = new HashMap<>();
+		Random random = new Random(1);
+		for (int i=0; i<100000; i++) {
+			Long projectId = (long) random.nextInt(10);
+			long number = random.nextInt(5000);
+			String key = projectId + ":" + number;
+			if (random.nextInt(3) == 0) {
+				index.remove(projectId, number);
+				expected.remove(key);
+			} else {
+				index.put(projectId, number, i);
+				expected.put(key, (long) i);
+			}
+		}
+		assertEquals(expected.size(), index.size());
+		for (long projectId=0; projectId<10; projectId++) {
+			for (long number=0; number<5000; number++)
+				assertEquals(expected.get(projectId + ":" + number), index.get(projectId, number));
+		}
+
+		index.remove(1L);
+		for (long number=0; number<5000; number++)
+			assertNull(index.get(1L, number));
+		assertNull(index.get(100L, 1));
+	}
+
+}
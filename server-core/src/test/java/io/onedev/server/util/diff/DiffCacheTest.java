@@ -0,0 +1,38 @@
+package io.onedev.server.util.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class DiffCacheTest {
+
+	@Test
+	public void testEncodeAndDecode() {
+		List<String> oldLines = Lists.newArrayList("1", "2", "3", "4a", "5a", "6", "7", "8");
+		List<String> newLines = Lists.newArrayList("1", "2", "3", "4b", "5b", "7", "8", "9", "10");
+
+		List<DiffBlock<String>> diffBlocks = DiffUtils.diff(oldLines, newLines);
+		List<DiffBlock<String>> decodedBlocks = DiffCache.decode(DiffCache.encode(diffBlocks), oldLines, newLines);
+		assertEquals(diffBlocks.size(), decodedBlocks.size());
+		for (int i=0; i<diffBlocks.size(); i++) {
+			DiffBlock<String> block = diffBlocks.get(i);
+			DiffBlock<String> decodedBlock = decodedBlocks.get(i);
+			assertEquals(block.getOperation(), decodedBlock.getOperation());
+			assertEquals(block.getElements(), decodedBlock.getElements());
+			assertEquals(block.getOldStart(), decodedBlock.getOldStart());
+			assertEquals(block.getNewStart(), decodedBlock.getNewStart());
+		}
+
+		assertEquals(DiffUtils.mapLines(diffBlocks), DiffUtils.mapLines(decodedBlocks));
+
+		// Blocks not matching the lines are rejected
+		newLines.add("11");
+		assertNull(DiffCache.decode(DiffCache.encode(diffBlocks), oldLines, newLines));
+	}
+
+}
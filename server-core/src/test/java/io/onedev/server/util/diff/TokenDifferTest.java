@@ -0,0 +1,109 @@
+package io.onedev.server.util.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.junit.Test;
+
+import io.onedev.server.util.diff.DiffMatchPatch.Operation;
+
+public class TokenDifferTest {
+
+	@Test
+	public void testDiff() {
+		Random random = new Random(1);
+		for (int i=0; i<100; i++) {
+			List<String> oldLines = new ArrayList<>();
+			List<String> newLines = new ArrayList<>();
+			for (int j=random.nextInt(100); j>0; j--)
+				oldLines.add(String.valueOf(random.nextInt(10)));
+			for (int j=random.nextInt(100); j>0; j--)
+				newLines.add(String.valueOf(random.nextInt(10)));
+			assertDiff(oldLines, newLines);
+		}
+	}
+
+	@Test
+	public void testDiffManyDistinctLines() {
+		List<String> oldLines = new ArrayList<>();
+		List<String> newLines = new ArrayList<>();
+		for (int i=0; i<100000; i++) {
+			oldLines.add("line " + i);
+			if (i % 1000 != 0)
+				newLines.add("line " + i);
+			else
+				newLines.add("changed line " + i);
+		}
+		List<DiffBlock<String>> diffBlocks = assertDiff(oldLines, newLines);
+		int deletions = 0;
+		for (DiffBlock<String> diffBlock: diffBlocks) {
+			if (diffBlock.getOperation() == Operation.DELETE)
+				deletions += diffBlock.getElements().size();
+		}
+		assertEquals(100, deletions);
+	}
+
+	@Test
+	public void testTimeout() {
+		int[] oldTokens = new int[100000];
+		int[] newTokens = new int[100000];
+		for (int i=0; i<oldTokens.length; i++) {
+			oldTokens[i] = i;
+			newTokens[i] = i % 1000 != 500? i: -i;
+		}
+		
+		TokenDiffer.TokenSequence oldSequence = new TokenDiffer.TokenSequence(oldTokens);
+		TokenDiffer.TokenSequence newSequence = new TokenDiffer.TokenSequence(newTokens);
+		assertNull(TokenDiffer.diff(oldSequence, newSequence, -1));
+
+		// Differing region is replaced as a whole if diff times out
+		EditList edits = TokenDiffer.replace(oldSequence, newSequence);
+		assertEquals(1, edits.size());
+		assertEquals(new Edit(500, 99501, 500, 99501), edits.get(0));
+		
+		edits = TokenDiffer.diff(oldSequence, newSequence, TokenDiffer.TIMEOUT);
+		assertEquals(100, edits.size());
+		
+		List<String> oldLines = new ArrayList<>();
+		List<String> newLines = new ArrayList<>();
+		for (int i=0; i<oldTokens.length; i++) {
+			oldLines.add(String.valueOf(oldTokens[i]));
+			newLines.add(String.valueOf(newTokens[i]));
+		}
+		DiffResult<String> diffResult = TokenDiffer.diff(oldLines, newLines, oldLines, newLines, -1);
+		assertTrue(diffResult.isTimedOut());
+		assertEquals(4, diffResult.getDiffBlocks().size());
+		
+		diffResult = TokenDiffer.diff(oldLines, newLines, oldLines, newLines);
+		assertFalse(diffResult.isTimedOut());
+		assertEquals(newLines.subList(500, 501), diffResult.getDiffBlocks().get(2).getElements());
+	}
+
+	private List<DiffBlock<String>> assertDiff(List<String> oldLines, List<String> newLines) {
+		List<DiffBlock<String>> diffBlocks = DiffUtils.diff(oldLines, newLines);
+		List<String> rebuiltOldLines = new ArrayList<>();
+		List<String> rebuiltNewLines = new ArrayList<>();
+		for (DiffBlock<String> diffBlock: diffBlocks) {
+			if (diffBlock.getOperation() != Operation.INSERT) {
+				assertEquals(rebuiltOldLines.size(), diffBlock.getOldStart());
+				rebuiltOldLines.addAll(diffBlock.getElements());
+			}
+			if (diffBlock.getOperation() != Operation.DELETE) {
+				assertEquals(rebuiltNewLines.size(), diffBlock.getNewStart());
+				rebuiltNewLines.addAll(diffBlock.getElements());
+			}
+		}
+		assertEquals(oldLines, rebuiltOldLines);
+		assertEquals(newLines, rebuiltNewLines);
+		return diffBlocks;
+	}
+
+}
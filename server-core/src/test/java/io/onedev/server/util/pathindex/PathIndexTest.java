@@ -0,0 +1,64 @@
+package io.onedev.server.util.pathindex;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PathIndexTest {
+
+	@Test
+	public void testReadWrite() throws IOException {
+		File file = Files.createTempFile("path-index", ".bin").toFile();
+		try {
+			Map<String, String> records = new LinkedHashMap<>();
+			records.put("src/main/java/Foo.java", "foo");
+			records.put("src/main/java/Bar.java", "bar");
+			records.put("src/main/java/中文.java", "unicode");
+			records.put("README.md", "");
+			records.put("src/main/java/Foo.java", "foo2");
+			for (int i=0; i<1000; i++)
+				records.put("dir" + i + "/file.txt", "record" + i);
+
+			try (var writer = new PathIndexWriter(file)) {
+				writer.write("src/main/java/Foo.java", "foo".getBytes(UTF_8));
+				for (var entry: records.entrySet())
+					writer.write(entry.getKey(), entry.getValue().getBytes(UTF_8));
+			}
+
+			for (var entry: records.entrySet())
+				assertEquals(entry.getValue(), toString(PathIndexReader.read(file, entry.getKey())));
+			assertNull(PathIndexReader.read(file, "src/main/java"));
+			assertNull(PathIndexReader.read(file, "zzz"));
+			assertNull(PathIndexReader.read(file, ""));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		File file = Files.createTempFile("path-index", ".bin").toFile();
+		try {
+			new PathIndexWriter(file).close();
+			assertNull(PathIndexReader.read(file, "any"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private String toString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+}
@@ -0,0 +1,41 @@
+package io.onedev.server.util.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.Element;
+import org.junit.Test;
+
+public class StreamingXmlReaderTest {
+
+	@Test
+	public void test() throws Exception {
+		StreamingXmlReader reader = new StreamingXmlReader("*/file");
+
+		List<String> names = new ArrayList<>();
+		Element root = reader.read(new StringReader(""
+				+ "<checkstyle version='8.0'><file name='a'><error line='1'/></file>"
+				+ "<other><file name='nested'/></other><file name='b'/></checkstyle>"),
+				fragment -> names.add(fragment.attributeValue("name")));
+		assertEquals(List.of("a", "b"), names);
+		assertEquals("checkstyle", root.getName());
+		assertEquals(1, root.elements().size());
+
+		names.clear();
+		reader.read(new StringReader(""
+				+ "<report xmlns='urn:some-tool'><file name='c'/></report>"),
+				fragment -> names.add(fragment.attributeValue("name")));
+		assertEquals(List.of("c"), names);
+
+		names.clear();
+		reader = new StreamingXmlReader("coverage/packages/package");
+		reader.read(new StringReader(""
+				+ "<coverage><packages><package name='d'/></packages></coverage>"),
+				fragment -> names.add(fragment.attributeValue("name")));
+		assertEquals(List.of("d"), names);
+	}
+
+}
@@ -1,7 +1,6 @@
 package io.onedev.server.plugin.report.clover;
 
 import io.onedev.commons.codeassist.InputSuggestion;
-import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.annotation.Editable;
 import io.onedev.server.annotation.Interpolative;
@@ -11,17 +10,12 @@ import io.onedev.server.buildspec.step.StepGroup;
 import io.onedev.server.codequality.CoverageStatus;
 import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.coverage.*;
-import io.onedev.server.util.XmlUtils;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
+import io.onedev.server.util.xml.XmlFragmentPumper;
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
 
 import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -60,129 +54,139 @@ public class PublishCloverReportStep extends PublishCoverageReportStep {
 	@Override
 	protected CoverageReport createReport(Build build, File inputDir, File reportDir, TaskLogger logger) {
 		int baseLen = inputDir.getAbsolutePath().length() + 1;
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
 
-		int totalStatements = 0;
-		int coveredStatements = 0;
-		int totalMethods = 0;
-		int coveredMethods = 0;
-		int totalBranches = 0;
-		int coveredBranches = 0;
-		int totalLines = 0;
-		int coveredLines = 0;
-		
 		List<CategoryCoverageInfo> packageCoverages = new ArrayList<>();
 		
-		for (File file: getPatternSet().listFiles(inputDir)) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing clover report '" + relativePath + "'...");
-			Document doc;
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				doc = reader.read(new StringReader(XmlUtils.stripDoctype(xml)));
-				for (Element projectElement: doc.getRootElement().elements("project")) {
-					Element metricsElement = projectElement.element("metrics");
-					
-					totalStatements += parseInt(metricsElement.attributeValue("statements"));
-					totalMethods += parseInt(metricsElement.attributeValue("methods"));
-					totalBranches += parseInt(metricsElement.attributeValue("conditionals"));
-					
-					coveredStatements += parseInt(metricsElement.attributeValue("coveredstatements"));
-					coveredMethods += parseInt(metricsElement.attributeValue("coveredmethods"));
-					coveredBranches += parseInt(metricsElement.attributeValue("coveredconditionals"));
-					
-					for (Element packageElement: projectElement.elements("package")) {
-						String packageName = packageElement.attributeValue("name");
+		var pumper = new XmlFragmentPumper(getPatternSet().listFiles(inputDir), "*/project/package") {
+
+			int totalStatements = 0;
+			int coveredStatements = 0;
+			int totalMethods = 0;
+			int coveredMethods = 0;
+			int totalBranches = 0;
+			int coveredBranches = 0;
+			int totalLines = 0;
+			int coveredLines = 0;
+			
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing clover report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element packageElement) {
+				String packageName = packageElement.attributeValue("name");
 
-						metricsElement = packageElement.element("metrics");
+				Element metricsElement = packageElement.element("metrics");
+				
+				int packageStatementCoverage = getCoverage(
+						parseInt(metricsElement.attributeValue("statements")),
+						parseInt(metricsElement.attributeValue("coveredstatements")));
+				int packageMethodCoverage = getCoverage(
+						parseInt(metricsElement.attributeValue("methods")),
+						parseInt(metricsElement.attributeValue("coveredmethods")));
+				int packageBranchCoverage = getCoverage(
+						parseInt(metricsElement.attributeValue("conditionals")), 
+						parseInt(metricsElement.attributeValue("coveredconditionals")));
+
+				int packageTotalLines = 0;
+				int packageCoveredLines = 0;
+			
+				List<ItemCoverageInfo> fileCoverages = new ArrayList<>();
+				for (Element fileElement: packageElement.elements("file")) {
+					String fileName = fileElement.attributeValue("name");
+					String blobPath = build.getBlobPath(fileElement.attributeValue("path"));
+					if (blobPath != null) { 
+						metricsElement = fileElement.element("metrics");
 						
-						int packageStatementCoverage = getCoverage(
+						int fileStatementCoverage = getCoverage(
 								parseInt(metricsElement.attributeValue("statements")),
 								parseInt(metricsElement.attributeValue("coveredstatements")));
-						int packageMethodCoverage = getCoverage(
+						int fileMethodCoverage = getCoverage(
 								parseInt(metricsElement.attributeValue("methods")),
 								parseInt(metricsElement.attributeValue("coveredmethods")));
-						int packageBranchCoverage = getCoverage(
+						int fileBranchCoverage = getCoverage(
 								parseInt(metricsElement.attributeValue("conditionals")), 
 								parseInt(metricsElement.attributeValue("coveredconditionals")));
-
-						int packageTotalLines = 0;
-						int packageCoveredLines = 0;
-					
-						List<ItemCoverageInfo> fileCoverages = new ArrayList<>();
-						for (Element fileElement: packageElement.elements("file")) {
-							String fileName = fileElement.attributeValue("name");
-							String blobPath = build.getBlobPath(fileElement.attributeValue("path"));
-							if (blobPath != null) { 
-								metricsElement = fileElement.element("metrics");
-								
-								int fileStatementCoverage = getCoverage(
-										parseInt(metricsElement.attributeValue("statements")),
-										parseInt(metricsElement.attributeValue("coveredstatements")));
-								int fileMethodCoverage = getCoverage(
-										parseInt(metricsElement.attributeValue("methods")),
-										parseInt(metricsElement.attributeValue("coveredmethods")));
-								int fileBranchCoverage = getCoverage(
-										parseInt(metricsElement.attributeValue("conditionals")), 
-										parseInt(metricsElement.attributeValue("coveredconditionals")));
-								
-								Map<Integer, CoverageStatus> lineCoverages = new HashMap<>();
-								for (Element lineElement: fileElement.elements("line")) {
-									int lineNum = parseInt(lineElement.attributeValue("num")) - 1;
-									CoverageStatus prevStatus = lineCoverages.get(lineNum);
-									
-									String countStr = lineElement.attributeValue("count");
-									if (countStr != null)
-										lineCoverages.put(lineNum, getCoverageStatus(prevStatus, countStr));
-									
-									countStr = lineElement.attributeValue("truecount");
-									if (countStr != null)
-										lineCoverages.put(lineNum, getCoverageStatus(prevStatus, countStr));
-									
-									countStr = lineElement.attributeValue("falsecount");
-									if (countStr != null)
-										lineCoverages.put(lineNum, getCoverageStatus(prevStatus, countStr));
-								}
-								int fileTotalLines = lineCoverages.size();
-								int fileCoveredLines = (int) lineCoverages.entrySet().stream().filter(it->it.getValue()!=CoverageStatus.NOT_COVERED).count();
-								
-								int fileLineCoverage = getCoverage(fileTotalLines, fileCoveredLines);
-								
-								packageTotalLines += fileTotalLines;
-								packageCoveredLines += fileCoveredLines;
-								
-								writeLineCoverages(build, blobPath, lineCoverages);
-								
-								fileCoverages.add(new ItemCoverageInfo(fileName, 
-										fileStatementCoverage, fileMethodCoverage, fileBranchCoverage, fileLineCoverage, 
-										blobPath));
-							}
+						
+						Map<Integer, CoverageStatus> lineCoverages = new HashMap<>();
+						for (Element lineElement: fileElement.elements("line")) {
+							int lineNum = parseInt(lineElement.attributeValue("num")) - 1;
+							CoverageStatus prevStatus = lineCoverages.get(lineNum);
+							
+							String countStr = lineElement.attributeValue("count");
+							if (countStr != null)
+								lineCoverages.put(lineNum, getCoverageStatus(prevStatus, countStr));
+							
+							countStr = lineElement.attributeValue("truecount");
+							if (countStr != null)
+								lineCoverages.put(lineNum, getCoverageStatus(prevStatus, countStr));
+							
+							countStr = lineElement.attributeValue("falsecount");
+							if (countStr != null)
+								lineCoverages.put(lineNum, getCoverageStatus(prevStatus, countStr));
 						}
+						int fileTotalLines = lineCoverages.size();
+						int fileCoveredLines = (int) lineCoverages.entrySet().stream().filter(it->it.getValue()!=CoverageStatus.NOT_COVERED).count();
+						
+						int fileLineCoverage = getCoverage(fileTotalLines, fileCoveredLines);
 						
-						int packageLineCoverage = getCoverage(packageTotalLines, packageCoveredLines);
+						packageTotalLines += fileTotalLines;
+						packageCoveredLines += fileCoveredLines;
 						
-						packageCoverages.add(new CategoryCoverageInfo(
-								packageName, packageStatementCoverage, packageMethodCoverage, 
-								packageBranchCoverage, packageLineCoverage, fileCoverages));
+						commit(file, () -> writeLineCoverages(build, blobPath, lineCoverages));
 						
-						totalLines += packageTotalLines;
-						coveredLines += packageCoveredLines;
+						fileCoverages.add(new ItemCoverageInfo(fileName, 
+								fileStatementCoverage, fileMethodCoverage, fileBranchCoverage, fileLineCoverage, 
+								blobPath));
 					}
 				}
-			} catch (DocumentException e) {
-				logger.warning("Ignored clover report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+				
+				int packageLineCoverage = getCoverage(packageTotalLines, packageCoveredLines);
+				
+				var packageCoverage = new CategoryCoverageInfo(
+						packageName, packageStatementCoverage, packageMethodCoverage, 
+						packageBranchCoverage, packageLineCoverage, fileCoverages);
+				int linesOfPackage = packageTotalLines;
+				int coveredLinesOfPackage = packageCoveredLines;
+				commit(file, () -> {
+					packageCoverages.add(packageCoverage);
+					totalLines += linesOfPackage;
+					coveredLines += coveredLinesOfPackage;
+				});
 			}
-		}
+
+			@Override
+			protected void processed(File file, Element root) {
+				if (root == null)
+					return;
+				for (Element projectElement: root.elements("project")) {
+					Element metricsElement = projectElement.element("metrics");
+					
+					totalStatements += parseInt(metricsElement.attributeValue("statements"));
+					totalMethods += parseInt(metricsElement.attributeValue("methods"));
+					totalBranches += parseInt(metricsElement.attributeValue("conditionals"));
+					
+					coveredStatements += parseInt(metricsElement.attributeValue("coveredstatements"));
+					coveredMethods += parseInt(metricsElement.attributeValue("coveredmethods"));
+					coveredBranches += parseInt(metricsElement.attributeValue("coveredconditionals"));
+				}
+			}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				logger.warning("Ignored clover report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
+			}
+			
+		};
+		pumper.pump();
 		
 		if (!packageCoverages.isEmpty()) {
 			CoverageInfo coverageInfo = new CoverageInfo(
-					getCoverage(totalStatements, coveredStatements), 
-					getCoverage(totalMethods, coveredMethods), 
-					getCoverage(totalBranches, coveredBranches), 
-					getCoverage(totalLines, coveredLines));
+					getCoverage(pumper.totalStatements, pumper.coveredStatements), 
+					getCoverage(pumper.totalMethods, pumper.coveredMethods), 
+					getCoverage(pumper.totalBranches, pumper.coveredBranches), 
+					getCoverage(pumper.totalLines, pumper.coveredLines));
 			
 			return new CoverageReport(coverageInfo, packageCoverages);
 		} else {
@@ -1,8 +1,6 @@
 package io.onedev.server.plugin.report.cobertura;
 
 import io.onedev.commons.codeassist.InputSuggestion;
-import io.onedev.commons.utils.FileUtils;
-import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.OneDev;
 import io.onedev.server.annotation.Editable;
@@ -14,20 +12,17 @@ import io.onedev.server.codequality.CoverageStatus;
 import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.coverage.*;
 import io.onedev.server.search.code.CodeSearchManager;
-import io.onedev.server.util.XmlUtils;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
-import org.dom4j.io.SAXReader;
+import io.onedev.server.util.xml.XmlFragmentPumper;
+import org.dom4j.Element;
 
 import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.onedev.server.codequality.CoverageStatus.*;
 import static io.onedev.server.plugin.report.coverage.CoverageInfo.getCoverage;
@@ -69,91 +64,95 @@ public class PublishCoberturaReportStep extends PublishCoverageReportStep {
 	@Override
 	protected CoverageReport createReport(Build build, File inputDir, File reportDir, TaskLogger logger) {
 		int baseLen = inputDir.getAbsolutePath().length() + 1;
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
 
-		int totalBranches = 0;
-		int coveredBranches = 0;
-		int totalLines = 0;
-		int coveredLines = 0;
+		var totalBranches = new AtomicInteger(0);
+		var coveredBranches = new AtomicInteger(0);
+		var totalLines = new AtomicInteger(0);
+		var coveredLines = new AtomicInteger(0);
 		
 		List<CategoryCoverageInfo> packageCoverages = new ArrayList<>();
 		
 		var searchManager = OneDev.getInstance(CodeSearchManager.class);
-		for (File file: getPatternSet().listFiles(inputDir)) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing cobertura report '" + relativePath + "'...");
-			Document doc;
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				xml = StringUtils.removeBOM(xml);
-				doc = reader.read(new StringReader(XmlUtils.stripDoctype(xml)));
-				var coverageElement = doc.getRootElement();
-				
-				totalBranches += parseInt(coverageElement.attributeValue("branches-valid"));
-				coveredBranches += parseInt(coverageElement.attributeValue("branches-covered"));
-				totalLines += parseInt(coverageElement.attributeValue("lines-valid"));
-				coveredLines += parseInt(coverageElement.attributeValue("lines-covered"));
-				
-				for (var packageElement: coverageElement.element("packages").elements()) {
-					String packageName = packageElement.attributeValue("name");
-					if (packageName.length() == 0)
-						packageName = "[default]";
-					List<ItemCoverageInfo> classCoverages = new ArrayList<>();
-
-					Map<String, Map<Integer, CoverageStatus>> lineCoverages = new HashMap<>();
-					for (var classElement: packageElement.element("classes").elements()) {
-						var className = classElement.attributeValue("name");
-						var blobPath = searchManager.findBlobPathBySymbol(build.getProject(), build.getCommitId(), className, ".");
-						if (blobPath != null) {
-							Map<Integer, CoverageStatus> lineCoveragesOfFile = lineCoverages.computeIfAbsent(blobPath, it -> new HashMap<>());
-							for (var lineElement: classElement.element("lines").elements()) {
-								var lineNum = parseInt(lineElement.attributeValue("number")) - 1;
-								var lineHits = parseInt(lineElement.attributeValue("hits"));
-								CoverageStatus status;
-								if (lineHits == 0) {
-									status = NOT_COVERED;
-								} else {
-									var branch = parseBoolean(lineElement.attributeValue("branch"));
-									if (branch) {
-										var conditionCoverage = lineElement.attributeValue("condition-coverage");
-										if (conditionCoverage.startsWith("100%"))
-											status = COVERED;
-										else
-											status = PARTIALLY_COVERED;
-									} else {
+		new XmlFragmentPumper(getPatternSet().listFiles(inputDir), "*/packages/package") {
+
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing cobertura report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element packageElement) {
+				String packageName = packageElement.attributeValue("name");
+				if (packageName.length() == 0)
+					packageName = "[default]";
+				List<ItemCoverageInfo> classCoverages = new ArrayList<>();
+
+				Map<String, Map<Integer, CoverageStatus>> lineCoverages = new HashMap<>();
+				for (var classElement: packageElement.element("classes").elements()) {
+					var className = classElement.attributeValue("name");
+					var blobPath = searchManager.findBlobPathBySymbol(build.getProject(), build.getCommitId(), className, ".");
+					if (blobPath != null) {
+						Map<Integer, CoverageStatus> lineCoveragesOfFile = lineCoverages.computeIfAbsent(blobPath, it -> new HashMap<>());
+						for (var lineElement: classElement.element("lines").elements()) {
+							var lineNum = parseInt(lineElement.attributeValue("number")) - 1;
+							var lineHits = parseInt(lineElement.attributeValue("hits"));
+							CoverageStatus status;
+							if (lineHits == 0) {
+								status = NOT_COVERED;
+							} else {
+								var branch = parseBoolean(lineElement.attributeValue("branch"));
+								if (branch) {
+									var conditionCoverage = lineElement.attributeValue("condition-coverage");
+									if (conditionCoverage.startsWith("100%"))
 										status = COVERED;
-									}
+									else
+										status = PARTIALLY_COVERED;
+								} else {
+									status = COVERED;
 								}
-								if (status != NOT_COVERED)
-									lineCoveragesOfFile.put(lineNum, status);
 							}
-
-							int fileLineCoverage = (int)(parseDouble(classElement.attributeValue("line-rate")) * 100);
-							int fileBranchCoverage = (int)(parseDouble(classElement.attributeValue("branch-rate")) * 100);
-							classCoverages.add(new ItemCoverageInfo(
-									className,
-									MIN_VALUE, MIN_VALUE, 
-									fileBranchCoverage, fileLineCoverage,
-									blobPath));
+							if (status != NOT_COVERED)
+								lineCoveragesOfFile.put(lineNum, status);
 						}
+
+						int fileLineCoverage = (int)(parseDouble(classElement.attributeValue("line-rate")) * 100);
+						int fileBranchCoverage = (int)(parseDouble(classElement.attributeValue("branch-rate")) * 100);
+						classCoverages.add(new ItemCoverageInfo(
+								className,
+								MIN_VALUE, MIN_VALUE, 
+								fileBranchCoverage, fileLineCoverage,
+								blobPath));
 					}
+				}
 
+				int packageLineCoverage = (int)(parseDouble(packageElement.attributeValue("line-rate")) * 100);
+				int packageBranchCoverage = (int)(parseDouble(packageElement.attributeValue("branch-rate")) * 100);
+				var packageCoverage = new CategoryCoverageInfo(
+						packageName, MIN_VALUE, MIN_VALUE, 
+						packageBranchCoverage, packageLineCoverage, classCoverages);
+				commit(file, () -> {
 					for (var entry: lineCoverages.entrySet()) 
 						writeLineCoverages(build, entry.getKey(), entry.getValue());
+					packageCoverages.add(packageCoverage);
+				});
+			}
 
-					int packageLineCoverage = (int)(parseDouble(packageElement.attributeValue("line-rate")) * 100);
-					int packageBranchCoverage = (int)(parseDouble(packageElement.attributeValue("branch-rate")) * 100);
-					packageCoverages.add(new CategoryCoverageInfo(
-							packageName, MIN_VALUE, MIN_VALUE, 
-							packageBranchCoverage, packageLineCoverage, classCoverages));
+			@Override
+			protected void processed(File file, Element coverageElement) {
+				if (coverageElement != null) {
+					totalBranches.addAndGet(parseInt(coverageElement.attributeValue("branches-valid")));
+					coveredBranches.addAndGet(parseInt(coverageElement.attributeValue("branches-covered")));
+					totalLines.addAndGet(parseInt(coverageElement.attributeValue("lines-valid")));
+					coveredLines.addAndGet(parseInt(coverageElement.attributeValue("lines-covered")));
 				}
-			} catch (DocumentException e) {
-				logger.warning("Ignored cobertura report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
-		}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				logger.warning("Ignored cobertura report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
+			}
+			
+		}.pump();
 		
 		if (!packageCoverages.isEmpty()) {
 			CoverageInfo coverageInfo = new CoverageInfo(
@@ -162,8 +161,8 @@ public class PublishCoberturaReportStep extends PublishCoverageReportStep {
 					// still less than 0 so that it is not displayed if this report is included 
 					MIN_VALUE,  
 					MIN_VALUE,
-					getCoverage(totalBranches, coveredBranches), 
-					getCoverage(totalLines, coveredLines));
+					getCoverage(totalBranches.get(), coveredBranches.get()), 
+					getCoverage(totalLines.get(), coveredLines.get()));
 			
 			return new CoverageReport(coverageInfo, packageCoverages);
 		} else {
@@ -5,6 +5,7 @@ import io.onedev.server.OneDev;
 import io.onedev.server.cluster.ClusterTask;
 import io.onedev.server.codequality.CoverageStatus;
 import io.onedev.server.codequality.LineCoverageContribution;
+import io.onedev.server.codequality.LineCoverageStore;
 import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Build;
@@ -19,14 +20,10 @@ import io.onedev.server.web.page.project.StatisticsMenuContribution;
 import io.onedev.server.web.page.project.builds.detail.BuildTab;
 import io.onedev.server.web.page.project.builds.detail.BuildTabContribution;
 import io.onedev.server.web.page.project.builds.detail.report.BuildReportTab;
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
 import javax.annotation.Nullable;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -178,12 +175,9 @@ public class CoverageModule extends AbstractPluginModule {
 				if (categoryDir.exists()) {
 					for (File reportDir: categoryDir.listFiles()) {
 						if (reportName == null || reportName.equals(reportDir.getName())) { 
-							File lineCoveragesFile = new File(reportDir, CoverageReport.FILES + "/" + blobPath);
-							if (lineCoveragesFile.exists()) {
-								try (InputStream is = new BufferedInputStream(new FileInputStream(lineCoveragesFile))) {
-									coverages.put(reportDir.getName(), (Map<Integer, CoverageStatus>) SerializationUtils.deserialize(is));
-								}
-							}
+							var lineCoverages = LineCoverageStore.read(reportDir, blobPath);
+							if (lineCoverages != null)
+								coverages.put(reportDir.getName(), lineCoverages);
 						}
 					}
 				}
@@ -20,8 +20,6 @@ public class CoverageReport implements Serializable {
 
 	public static final String CATEGORY = "coverage";
 	
-	public static final String FILES = "files";
-	
 	private static final String REPORT = "report.ser";
 	
 	private final CoverageInfo overallCoverages;
@@ -1,17 +1,12 @@
 package io.onedev.server.plugin.report.coverage;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.Serializable;
 import java.util.Map;
 
 import javax.annotation.Nullable;
 
 import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.entitymanager.ProjectManager;
-import org.apache.commons.lang.SerializationUtils;
 
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.FileUtils;
@@ -19,9 +14,11 @@ import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.OneDev;
 import io.onedev.server.buildspec.step.PublishReportStep;
 import io.onedev.server.codequality.CoverageStatus;
+import io.onedev.server.codequality.LineCoverageStore;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.CoverageMetric;
 import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.util.pathindex.PathIndexWriter;
 import io.onedev.server.annotation.Editable;
 
 import static io.onedev.commons.utils.LockUtils.write;
@@ -32,6 +29,8 @@ public abstract class PublishCoverageReportStep extends PublishReportStep {
 
 	private static final long serialVersionUID = 1L;
 	
+	private transient PathIndexWriter lineCoveragesWriter;
+	
 	@Override
 	public Map<String, byte[]> run(Build build, File inputDir, TaskLogger logger) {
 		CoverageReport report = write(getReportLockName(build), () -> {
@@ -39,7 +38,14 @@ public abstract class PublishCoverageReportStep extends PublishReportStep {
 
 			FileUtils.createDir(reportDir);
 			try {
-				CoverageReport aReport = createReport(build, inputDir, reportDir, logger);
+				CoverageReport aReport;
+				lineCoveragesWriter = LineCoverageStore.newWriter(reportDir);
+				try {
+					aReport = createReport(build, inputDir, reportDir, logger);
+				} finally {
+					lineCoveragesWriter.close();
+					lineCoveragesWriter = null;
+				}
 				if (aReport != null) {
 					aReport.writeTo(reportDir);
 					OneDev.getInstance(ProjectManager.class).directoryModified(
@@ -83,16 +89,8 @@ public abstract class PublishCoverageReportStep extends PublishReportStep {
 			if (it.next().getValue() == CoverageStatus.NOT_COVERED)
 				it.remove();
 		}
-		if (!lineCoverages.isEmpty()) {
-			File reportDir = new File(build.getStorageDir(), CoverageReport.CATEGORY + "/" + getReportName());
-			File lineCoverageFile = new File(reportDir, CoverageReport.FILES + "/" + blobPath);
-			FileUtils.createDir(lineCoverageFile.getParentFile());
-			try (OutputStream os = new FileOutputStream(lineCoverageFile)) {
-				SerializationUtils.serialize((Serializable) lineCoverages, os);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			};
-		}
+		if (!lineCoverages.isEmpty()) 
+			LineCoverageStore.write(lineCoveragesWriter, blobPath, lineCoverages);
 	}
 	
 }
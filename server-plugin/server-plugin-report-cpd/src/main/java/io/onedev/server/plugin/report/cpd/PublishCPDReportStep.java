@@ -2,7 +2,6 @@ package io.onedev.server.plugin.report.cpd;
 
 import com.google.common.base.Splitter;
 import io.onedev.commons.codeassist.InputSuggestion;
-import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.PlanarRange;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.annotation.Editable;
@@ -16,22 +15,17 @@ import io.onedev.server.git.BlobIdent;
 import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.problem.ProblemReport;
 import io.onedev.server.plugin.report.problem.PublishProblemReportStep;
-import io.onedev.server.util.XmlUtils;
+import io.onedev.server.util.xml.XmlFragmentPumper;
 import io.onedev.server.web.page.project.blob.ProjectBlobPage;
 import io.onedev.server.web.page.project.blob.render.BlobRenderer;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.mapper.parameter.PageParametersEncoder;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
 import org.unbescape.html.HtmlEscape;
 
 import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -65,67 +59,70 @@ public class PublishCPDReportStep extends PublishProblemReportStep {
 	@Override
 	protected ProblemReport createReport(Build build, File inputDir, File reportDir, TaskLogger logger) {
 		int baseLen = inputDir.getAbsolutePath().length() + 1;
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
 
 		List<CodeProblem> problems = new ArrayList<>();
 		Map<String, List<CodeProblem>> problemsByFile = new HashMap<>();
-		for (File file: getPatternSet().listFiles(inputDir)) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing CPD report '" + relativePath + "'...");
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				Document doc = reader.read(new StringReader(XmlUtils.stripDoctype(xml)));
+		new XmlFragmentPumper(getPatternSet().listFiles(inputDir), "*/duplication") {
 
-				for (Element duplicationElement: doc.getRootElement().elements("duplication")) {
-					List<CodeDuplication> duplications = new ArrayList<>();
-					for (Element fileElement: duplicationElement.elements("file")) {
-						String blobPath = build.getBlobPath(fileElement.attributeValue("path"));
-						if (blobPath != null) {
-							BlobIdent blobIdent = new BlobIdent(build.getCommitHash(), blobPath);
-							if (build.getProject().getBlob(blobIdent, false) != null) {
-								int beginLine = Integer.parseInt(fileElement.attributeValue("line"));
-								int endLine = Integer.parseInt(fileElement.attributeValue("endline"));
-								int beginColumn = Integer.parseInt(fileElement.attributeValue("column"));
-								int endColumn = Integer.parseInt(fileElement.attributeValue("endcolumn"));
-								PlanarRange range = new PlanarRange(beginLine-1, beginColumn-1, endLine-1, endColumn);
-								CodeDuplication duplication = new CodeDuplication();
-								duplication.blobPath = blobPath;
-								duplication.range = range;
-								duplications.add(duplication);
-							}
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing CPD report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element duplicationElement) {
+				List<CodeDuplication> duplications = new ArrayList<>();
+				for (Element fileElement: duplicationElement.elements("file")) {
+					String blobPath = build.getBlobPath(fileElement.attributeValue("path"));
+					if (blobPath != null) {
+						BlobIdent blobIdent = new BlobIdent(build.getCommitHash(), blobPath);
+						if (build.getProject().getBlob(blobIdent, false) != null) {
+							int beginLine = Integer.parseInt(fileElement.attributeValue("line"));
+							int endLine = Integer.parseInt(fileElement.attributeValue("endline"));
+							int beginColumn = Integer.parseInt(fileElement.attributeValue("column"));
+							int endColumn = Integer.parseInt(fileElement.attributeValue("endcolumn"));
+							PlanarRange range = new PlanarRange(beginLine-1, beginColumn-1, endLine-1, endColumn);
+							CodeDuplication duplication = new CodeDuplication();
+							duplication.blobPath = blobPath;
+							duplication.range = range;
+							duplications.add(duplication);
 						}
 					}
-					if (duplications.size() >= 2) {
-						for (int i=0; i<duplications.size(); i++) {
-							CodeDuplication duplication = duplications.get(i);
-							CodeDuplication duplicateWith;
-							if (i == duplications.size()-1)
-								duplicateWith = duplications.get(0);
-							else
-								duplicateWith = duplications.get(i+1);
-							
-							PageParameters params = new PageParameters();
-							ProjectBlobPage.State state = new ProjectBlobPage.State();
-							state.blobIdent = new BlobIdent();
-							state.problemReport = getReportName();
-							state.position = BlobRenderer.getSourcePosition(duplicateWith.range); 
-							
-							params.set(0, build.getCommitHash());
-							List<String> pathSegments = Splitter.on("/").splitToList(duplicateWith.blobPath);
-							for (int j=0; j<pathSegments.size(); j++) 
-								params.set(j+1, pathSegments.get(j));
-							
-							ProjectBlobPage.fillParams(params, state);
-							
-							PageParametersEncoder paramsEncoder = new PageParametersEncoder();
-							String url  = "/" + build.getProject().getPath() + "/~files/" + paramsEncoder.encodePageParameters(params);
-							String message = String.format(""
-									+ "Duplicated with '%s' at <a href='%s'>line %s - %s</a>", 
-									HtmlEscape.escapeHtml5(duplicateWith.blobPath), url, duplicateWith.range.getFromRow()+1, 
-									duplicateWith.range.getToRow()+1);
-							CodeProblem problem = new CodeProblem(Severity.LOW, "Code Duplication", duplication.blobPath, 
-									duplication.range, message);
+				}
+				if (duplications.size() >= 2) {
+					List<CodeProblem> problemsOfDuplication = new ArrayList<>();
+					for (int i=0; i<duplications.size(); i++) {
+						CodeDuplication duplication = duplications.get(i);
+						CodeDuplication duplicateWith;
+						if (i == duplications.size()-1)
+							duplicateWith = duplications.get(0);
+						else
+							duplicateWith = duplications.get(i+1);
+						
+						PageParameters params = new PageParameters();
+						ProjectBlobPage.State state = new ProjectBlobPage.State();
+						state.blobIdent = new BlobIdent();
+						state.problemReport = getReportName();
+						state.position = BlobRenderer.getSourcePosition(duplicateWith.range); 
+						
+						params.set(0, build.getCommitHash());
+						List<String> pathSegments = Splitter.on("/").splitToList(duplicateWith.blobPath);
+						for (int j=0; j<pathSegments.size(); j++) 
+							params.set(j+1, pathSegments.get(j));
+						
+						ProjectBlobPage.fillParams(params, state);
+						
+						PageParametersEncoder paramsEncoder = new PageParametersEncoder();
+						String url  = "/" + build.getProject().getPath() + "/~files/" + paramsEncoder.encodePageParameters(params);
+						String message = String.format(""
+								+ "Duplicated with '%s' at <a href='%s'>line %s - %s</a>", 
+								HtmlEscape.escapeHtml5(duplicateWith.blobPath), url, duplicateWith.range.getFromRow()+1, 
+								duplicateWith.range.getToRow()+1);
+						problemsOfDuplication.add(new CodeProblem(Severity.LOW, "Code Duplication", duplication.blobPath, 
+								duplication.range, message));
+					}
+					commit(file, () -> {
+						for (CodeProblem problem: problemsOfDuplication) {
 							problems.add(problem);
 							List<CodeProblem> problemsOfFile = problemsByFile.get(problem.getBlobPath());
 							if (problemsOfFile == null) {
@@ -134,14 +131,16 @@ public class PublishCPDReportStep extends PublishProblemReportStep {
 							}
 							problemsOfFile.add(problem);
 						}
-					}
+					});
 				}
-			} catch (DocumentException e) {
-				logger.warning("Ignored SpotBugs report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
-		}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				logger.warning("Ignored CPD report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
+			}
+			
+		}.pump();
 		
 		for (Map.Entry<String, List<CodeProblem>> entry: problemsByFile.entrySet())
 			writeFileProblems(build, entry.getKey(), entry.getValue());
@@ -1,7 +1,6 @@
 package io.onedev.server.plugin.report.jacoco;
 
 import io.onedev.commons.codeassist.InputSuggestion;
-import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.OneDev;
 import io.onedev.server.annotation.Editable;
@@ -13,21 +12,17 @@ import io.onedev.server.codequality.CoverageStatus;
 import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.coverage.*;
 import io.onedev.server.search.code.CodeSearchManager;
-import io.onedev.server.util.XmlUtils;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
+import io.onedev.server.util.xml.XmlFragmentPumper;
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
 
 import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Editable(order=9920, group=StepGroup.PUBLISH_REPORTS, name="JaCoCo Coverage")
 public class PublishJacocoReportStep extends PublishCoverageReportStep {
@@ -62,68 +57,74 @@ public class PublishJacocoReportStep extends PublishCoverageReportStep {
 	@Override
 	protected CoverageReport createReport(Build build, File inputDir, File reportDir, TaskLogger logger) {
 		int baseLen = inputDir.getAbsolutePath().length() + 1;
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
 
 		List<CategoryCoverageInfo> packageCoverages = new ArrayList<>();
-		var totalAndCoveredInfo = new TotalAndCoveredInfo(0, 0, 0, 0, 0, 0, 0, 0);
+		var totalAndCoveredInfoRef = new AtomicReference<>(new TotalAndCoveredInfo(0, 0, 0, 0, 0, 0, 0, 0));
 		
 		CodeSearchManager searchManager = OneDev.getInstance(CodeSearchManager.class);
 		
-		for (File file: getPatternSet().listFiles(inputDir)) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing JaCoCo report '" + relativePath + "'...");
-			Document doc;
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				doc = reader.read(new StringReader(XmlUtils.stripDoctype(xml)));
-				for (Element packageElement: doc.getRootElement().elements("package")) {
-					String packageName = packageElement.attributeValue("name");
-					var packageTotalAndCoveredInfo = getTotalAndCoveredInfo(packageElement);
-					List<ItemCoverageInfo> fileCoverages = new ArrayList<>();
-					
-					for (Element fileElement: packageElement.elements("sourcefile")) {
-						String fileName = fileElement.attributeValue("name");
-						var fileTotalAndCoveredInfo = getTotalAndCoveredInfo(fileElement);
-						String blobPath = searchManager.findBlobPathBySuffix(build.getProject(), build.getCommitId(), 
-								packageName + "/" + fileName);
-						if (blobPath != null) {
-							fileCoverages.add(new ItemCoverageInfo(fileName, fileTotalAndCoveredInfo.getCoverageInfo(), blobPath));
-							Map<Integer, CoverageStatus> lineCoverages = new HashMap<>();
-							for (Element lineElement: fileElement.elements("line")) {
-								int lineNum = Integer.parseInt(lineElement.attributeValue("nr")) - 1;
-								CoverageStatus coverageStatus;
-								int mi = Integer.parseInt(lineElement.attributeValue("mi"));
-								int ci = Integer.parseInt(lineElement.attributeValue("ci"));
-								int mb = Integer.parseInt(lineElement.attributeValue("mb"));
-								int cb = Integer.parseInt(lineElement.attributeValue("cb"));
-								if (mi == 0 && mb == 0)
-									coverageStatus = CoverageStatus.COVERED;
-								else if (ci == 0 && cb == 0)
-									coverageStatus = CoverageStatus.NOT_COVERED;
-								else
-									coverageStatus = CoverageStatus.PARTIALLY_COVERED;
-								lineCoverages.put(lineNum, coverageStatus);
-							}
-							writeLineCoverages(build, blobPath, lineCoverages);
-						} else {
-							logger.warning("Can not map file '" + fileName + "' under package '" 
-									+ packageName + "' to blob path, ignoring coverage info...");
+		new XmlFragmentPumper(getPatternSet().listFiles(inputDir), "*/package") {
+
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing JaCoCo report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element packageElement) {
+				String packageName = packageElement.attributeValue("name");
+				var packageTotalAndCoveredInfo = getTotalAndCoveredInfo(packageElement);
+				List<ItemCoverageInfo> fileCoverages = new ArrayList<>();
+				
+				for (Element fileElement: packageElement.elements("sourcefile")) {
+					String fileName = fileElement.attributeValue("name");
+					var fileTotalAndCoveredInfo = getTotalAndCoveredInfo(fileElement);
+					String blobPath = searchManager.findBlobPathBySuffix(build.getProject(), build.getCommitId(), 
+							packageName + "/" + fileName);
+					if (blobPath != null) {
+						fileCoverages.add(new ItemCoverageInfo(fileName, fileTotalAndCoveredInfo.getCoverageInfo(), blobPath));
+						Map<Integer, CoverageStatus> lineCoverages = new HashMap<>();
+						for (Element lineElement: fileElement.elements("line")) {
+							int lineNum = Integer.parseInt(lineElement.attributeValue("nr")) - 1;
+							CoverageStatus coverageStatus;
+							int mi = Integer.parseInt(lineElement.attributeValue("mi"));
+							int ci = Integer.parseInt(lineElement.attributeValue("ci"));
+							int mb = Integer.parseInt(lineElement.attributeValue("mb"));
+							int cb = Integer.parseInt(lineElement.attributeValue("cb"));
+							if (mi == 0 && mb == 0)
+								coverageStatus = CoverageStatus.COVERED;
+							else if (ci == 0 && cb == 0)
+								coverageStatus = CoverageStatus.NOT_COVERED;
+							else
+								coverageStatus = CoverageStatus.PARTIALLY_COVERED;
+							lineCoverages.put(lineNum, coverageStatus);
 						}
+						commit(file, () -> writeLineCoverages(build, blobPath, lineCoverages));
+					} else {
+						logger.warning("Can not map file '" + fileName + "' under package '" 
+								+ packageName + "' to blob path, ignoring coverage info...");
 					}
-					
-					packageCoverages.add(new CategoryCoverageInfo(packageName, packageTotalAndCoveredInfo.getCoverageInfo(), fileCoverages));
 				}
-				totalAndCoveredInfo = totalAndCoveredInfo.mergeWith(getTotalAndCoveredInfo(doc.getRootElement()));
-			} catch (DocumentException e) {
-				logger.warning("Ignored clover report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+				
+				var packageCoverage = new CategoryCoverageInfo(packageName, packageTotalAndCoveredInfo.getCoverageInfo(), fileCoverages);
+				commit(file, () -> packageCoverages.add(packageCoverage));
 			}
-		}
+
+			@Override
+			protected void processed(File file, Element root) {
+				if (root != null)
+					totalAndCoveredInfoRef.set(totalAndCoveredInfoRef.get().mergeWith(getTotalAndCoveredInfo(root)));
+			}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				logger.warning("Ignored JaCoCo report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
+			}
+			
+		}.pump();
 		
 		if (!packageCoverages.isEmpty()) 
-			return new CoverageReport(totalAndCoveredInfo.getCoverageInfo(), packageCoverages);
+			return new CoverageReport(totalAndCoveredInfoRef.get().getCoverageInfo(), packageCoverages);
 		else 
 			return null;
 	}
@@ -35,50 +35,55 @@ public class JUnitReportParser {
 			return testCases;
 		}
 		
-		for (Element testSuiteElement : rootElements) {
-			String name = testSuiteElement.attributeValue("name");
-			long duration = getDouble(testSuiteElement.attributeValue("time"));
-			int tests = getInt(testSuiteElement.attributeValue("tests"));
-			int failures =getInt(testSuiteElement.attributeValue("failures"));
-			int errors = getInt(testSuiteElement.attributeValue("errors"));
+		for (Element testSuiteElement : rootElements) 
+			testCases.addAll(parseTestSuite(build, testSuiteElement));
+		return testCases;
+	}
+	
+	public static List<TestCase> parseTestSuite(Build build, Element testSuiteElement) {
+		List<TestCase> testCases = new ArrayList<>();
+		String name = testSuiteElement.attributeValue("name");
+		long duration = getDouble(testSuiteElement.attributeValue("time"));
+		int tests = getInt(testSuiteElement.attributeValue("tests"));
+		int failures =getInt(testSuiteElement.attributeValue("failures"));
+		int errors = getInt(testSuiteElement.attributeValue("errors"));
 
-			int skipped = 0;
-			String skippedString = testSuiteElement.attributeValue("skipped");
-			if (StringUtils.isNotBlank(skippedString))
-				skipped = getInt(skippedString);
+		int skipped = 0;
+		String skippedString = testSuiteElement.attributeValue("skipped");
+		if (StringUtils.isNotBlank(skippedString))
+			skipped = getInt(skippedString);
 
-			Status status;
-			if (failures != 0 || errors != 0)
-				status = Status.NOT_PASSED;
-			else if (skipped == tests)
-				status = Status.NOT_RUN;
-			else
-				status = Status.PASSED;
-			
-			String blobPath = OneDev.getInstance(CodeSearchManager.class).findBlobPathBySymbol(
-					build.getProject(), build.getCommitId(), name, ".");
+		Status status;
+		if (failures != 0 || errors != 0)
+			status = Status.NOT_PASSED;
+		else if (skipped == tests)
+			status = Status.NOT_RUN;
+		else
+			status = Status.PASSED;
+		
+		String blobPath = OneDev.getInstance(CodeSearchManager.class).findBlobPathBySymbol(
+				build.getProject(), build.getCommitId(), name, ".");
 
-			TestSuite testSuite = new TestSuite(name, status, duration, null, blobPath);
+		TestSuite testSuite = new TestSuite(name, status, duration, null, blobPath);
 
-			for (Element testCaseElement: testSuiteElement.elements("testcase")) {
-				name = testCaseElement.attributeValue("name");
-				if (testCaseElement.element("skipped") != null) {
-					testCases.add(new TestCase(testSuite, name, Status.NOT_RUN, "skipped", 0, null));
-				} else {
-					duration = getDouble(testCaseElement.attributeValue("time"));
-					status = Status.PASSED;
-					String message = null;
-					Element failureElement = testCaseElement.element("failure");
-					Element errorElement = testCaseElement.element("error");
-					if (failureElement != null) {
-						status = Status.NOT_PASSED;
-						message = failureElement.getText();
-					} else if (errorElement != null) {
-						status = Status.NOT_PASSED;
-						message = errorElement.getText();
-					}
-					testCases.add(new TestCase(testSuite, name, status, null, duration, message));
+		for (Element testCaseElement: testSuiteElement.elements("testcase")) {
+			name = testCaseElement.attributeValue("name");
+			if (testCaseElement.element("skipped") != null) {
+				testCases.add(new TestCase(testSuite, name, Status.NOT_RUN, "skipped", 0, null));
+			} else {
+				duration = getDouble(testCaseElement.attributeValue("time"));
+				status = Status.PASSED;
+				String message = null;
+				Element failureElement = testCaseElement.element("failure");
+				Element errorElement = testCaseElement.element("error");
+				if (failureElement != null) {
+					status = Status.NOT_PASSED;
+					message = failureElement.getText();
+				} else if (errorElement != null) {
+					status = Status.NOT_PASSED;
+					message = errorElement.getText();
 				}
+				testCases.add(new TestCase(testSuite, name, status, null, duration, message));
 			}
 		}
 		return testCases;
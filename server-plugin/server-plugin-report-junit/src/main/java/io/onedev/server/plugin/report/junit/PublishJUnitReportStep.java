@@ -1,15 +1,14 @@
 package io.onedev.server.plugin.report.junit;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
-import org.dom4j.DocumentException;
-import org.dom4j.io.SAXReader;
 import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
+
+import org.dom4j.Element;
 
 import com.google.common.collect.Lists;
 
@@ -22,7 +21,7 @@ import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.unittest.PublishUnitTestReportStep;
 import io.onedev.server.plugin.report.unittest.UnitTestReport;
 import io.onedev.server.plugin.report.unittest.UnitTestReport.TestCase;
-import io.onedev.server.util.XmlUtils;
+import io.onedev.server.util.xml.XmlFragmentPumper;
 import io.onedev.server.annotation.Editable;
 import io.onedev.server.annotation.Interpolative;
 import io.onedev.server.annotation.Patterns;
@@ -59,24 +58,29 @@ public class PublishJUnitReportStep extends PublishUnitTestReportStep {
 
 	@Override
 	protected UnitTestReport createReport(Build build, File inputDir, TaskLogger logger) {
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
-		
 		List<TestCase> testCases = new ArrayList<>();
 		int baseLen = inputDir.getAbsolutePath().length()+1;
-		for (File file: FileUtils.listFiles(inputDir, Lists.newArrayList("**"), Lists.newArrayList())) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing JUnit test report '" + relativePath + "'...");
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				xml = XmlUtils.stripDoctype(xml);
-				testCases.addAll(JUnitReportParser.parse(build, reader.read(new StringReader(xml))));
-			} catch (DocumentException e) {
-				logger.warning("Ignored test report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+		Collection<File> files = FileUtils.listFiles(inputDir, Lists.newArrayList("**"), Lists.newArrayList());
+		new XmlFragmentPumper(files, "testsuite", "testsuites/testsuite") {
+
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing JUnit test report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element fragment) {
+				var testCasesOfSuite = JUnitReportParser.parseTestSuite(build, fragment);
+				commit(file, () -> testCases.addAll(testCasesOfSuite));
 			}
-		}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				logger.warning("Ignored test report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
+			}
+
+		}.pump();
+
 		if (!testCases.isEmpty()) 
 			return new UnitTestReport(testCases, true);
 		else 
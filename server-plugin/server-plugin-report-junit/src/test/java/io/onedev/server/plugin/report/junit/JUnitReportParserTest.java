@@ -8,12 +8,15 @@ import io.onedev.server.model.Build;
 import io.onedev.server.model.Project;
 import io.onedev.server.plugin.report.unittest.UnitTestReport;
 import io.onedev.server.plugin.report.unittest.UnitTestReport.Status;
+import io.onedev.server.plugin.report.unittest.UnitTestReport.TestCase;
 import io.onedev.server.search.code.CodeSearchManager;
 import io.onedev.server.search.code.hit.QueryHit;
 import io.onedev.server.search.code.query.BlobQuery;
 import io.onedev.server.search.code.query.TooGeneralQueryException;
+import io.onedev.server.util.xml.StreamingXmlReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.dom4j.DocumentException;
+import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
 import org.eclipse.jgit.lib.ObjectId;
 import org.jetbrains.annotations.Nullable;
@@ -21,8 +24,10 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.internal.util.collections.Sets;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -129,6 +134,60 @@ public class JUnitReportParserTest extends AppLoaderMocker {
 		}
 	}
 
+	@Test
+	public void testStreamingJUnitReport() {
+		try (InputStream is = Resources.getResource(JUnitReportParserTest.class, "test-results.xml").openStream()) {
+			Mockito.when(AppLoader.getInstance(CodeSearchManager.class)).thenReturn(new CodeSearchManager() {
+
+				@Override
+				public List<QueryHit> search(Project project, ObjectId commit, BlobQuery query)
+						throws TooGeneralQueryException {
+					return null;
+				}
+
+				@Override
+				public List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath) {
+					return null;
+				}
+
+				@Override
+				public List<Symbol> getSymbols(IndexSearcher searcher, ObjectId blobId, String blobPath) {
+					return null;
+				}
+
+				@Override
+				public String findBlobPathBySuffix(Project project, ObjectId commit, String blobPathSuffix) {
+					return "Test.java";
+				}
+
+				@Nullable
+				@Override
+				public String findBlobPathBySymbol(Project project, ObjectId commitId, String symbolFQN, String fqnSeparator) {
+					return "Test.java";
+				}
+
+			});
+
+			Build build = new Build();
+			build.setCommitHash(ObjectId.zeroId().name());
+
+			List<TestCase> testCases = new ArrayList<>();
+			StreamingXmlReader reader = new StreamingXmlReader("testsuite", "testsuites/testsuite");
+			Element root = reader.read(is, fragment -> testCases.addAll(JUnitReportParser.parseTestSuite(build, fragment)));
+			UnitTestReport report = new UnitTestReport(testCases, true);
+
+			assertEquals("testsuites", root.getName());
+			assertEquals(0, root.elements("testsuite").size());
+			assertEquals(2, report.getTestSuites().size());
+			assertEquals(2, report.getTestCases(null, null, Sets.newSet(Status.PASSED)).size());
+			assertEquals(4, report.getTestCases(null, null, Sets.newSet(Status.NOT_PASSED)).size());
+			assertEquals(2, report.getTestCases(null, null, Sets.newSet(Status.NOT_RUN)).size());
+
+		} catch (IOException|XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	@Override
 	protected void setup() {
 	}
@@ -1,7 +1,6 @@
 package io.onedev.server.plugin.report.pmd;
 
 import io.onedev.commons.codeassist.InputSuggestion;
-import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.PlanarRange;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.annotation.Editable;
@@ -15,18 +14,13 @@ import io.onedev.server.git.BlobIdent;
 import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.problem.ProblemReport;
 import io.onedev.server.plugin.report.problem.PublishProblemReportStep;
-import io.onedev.server.util.XmlUtils;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
+import io.onedev.server.util.xml.XmlFragmentPumper;
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
 import org.unbescape.html.HtmlEscape;
 
 import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -60,56 +54,58 @@ public class PublishPMDReportStep extends PublishProblemReportStep {
 	@Override
 	protected ProblemReport createReport(Build build, File inputDir, File reportDir, TaskLogger logger) {
 		int baseLen = inputDir.getAbsolutePath().length() + 1;
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
 
 		List<CodeProblem> problems = new ArrayList<>();
-		for (File file: getPatternSet().listFiles(inputDir)) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing PMD report '" + relativePath + "'...");
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				Document doc = reader.read(new StringReader(XmlUtils.stripDoctype(xml)));
+		new XmlFragmentPumper(getPatternSet().listFiles(inputDir), "*/file") {
 
-				for (Element fileElement: doc.getRootElement().elements("file")) {
-					String blobPath = build.getBlobPath(fileElement.attributeValue("name"));
-					if (blobPath != null) {
-						BlobIdent blobIdent = new BlobIdent(build.getCommitHash(), blobPath);
-						if (build.getProject().getBlob(blobIdent, false) != null) {
-							List<CodeProblem> problemsOfFile = new ArrayList<>();
-							for (Element violationElement: fileElement.elements("violation")) {
-								int beginLine = Integer.parseInt(violationElement.attributeValue("beginline"));
-								int endLine = Integer.parseInt(violationElement.attributeValue("endline"));
-								int beginColumn = Integer.parseInt(violationElement.attributeValue("begincolumn"));
-								int endColumn = Integer.parseInt(violationElement.attributeValue("endcolumn"));
-								PlanarRange range = new PlanarRange(beginLine-1, beginColumn-1, endLine-1, endColumn, TAB_WIDTH);
-								
-								String type = violationElement.attributeValue("rule");
-								
-								Severity severity;
-								int priority = Integer.parseInt(violationElement.attributeValue("priority"));
-								if (priority <= 2)
-									severity = Severity.HIGH;
-								else if (priority <= 3)
-									severity = Severity.MEDIUM;
-								else
-									severity = Severity.LOW;
-								
-								String message = HtmlEscape.escapeHtml5(violationElement.getText());
-								CodeProblem problem = new CodeProblem(severity, type, blobPath, range, message);
-								problems.add(problem);
-								problemsOfFile.add(problem);
-							}
-							writeFileProblems(build, blobPath, problemsOfFile);
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing PMD report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element fileElement) {
+				String blobPath = build.getBlobPath(fileElement.attributeValue("name"));
+				if (blobPath != null) {
+					BlobIdent blobIdent = new BlobIdent(build.getCommitHash(), blobPath);
+					if (build.getProject().getBlob(blobIdent, false) != null) {
+						List<CodeProblem> problemsOfFile = new ArrayList<>();
+						for (Element violationElement: fileElement.elements("violation")) {
+							int beginLine = Integer.parseInt(violationElement.attributeValue("beginline"));
+							int endLine = Integer.parseInt(violationElement.attributeValue("endline"));
+							int beginColumn = Integer.parseInt(violationElement.attributeValue("begincolumn"));
+							int endColumn = Integer.parseInt(violationElement.attributeValue("endcolumn"));
+							PlanarRange range = new PlanarRange(beginLine-1, beginColumn-1, endLine-1, endColumn, TAB_WIDTH);
+							
+							String type = violationElement.attributeValue("rule");
+							
+							Severity severity;
+							int priority = Integer.parseInt(violationElement.attributeValue("priority"));
+							if (priority <= 2)
+								severity = Severity.HIGH;
+							else if (priority <= 3)
+								severity = Severity.MEDIUM;
+							else
+								severity = Severity.LOW;
+							
+							String message = HtmlEscape.escapeHtml5(violationElement.getText());
+							CodeProblem problem = new CodeProblem(severity, type, blobPath, range, message);
+							problemsOfFile.add(problem);
 						}
+						commit(file, () -> {
+							problems.addAll(problemsOfFile);
+							writeFileProblems(build, blobPath, problemsOfFile);
+						});
 					}
 				}
-			} catch (DocumentException e) {
-				logger.warning("Ignored SpotBugs report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
-		}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				logger.warning("Ignored PMD report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
+			}
+			
+		}.pump();
 
 		if (!problems.isEmpty())
 			return new ProblemReport(problems);
@@ -5,6 +5,7 @@ import io.onedev.server.OneDev;
 import io.onedev.server.cluster.ClusterTask;
 import io.onedev.server.codequality.CodeProblem;
 import io.onedev.server.codequality.CodeProblemContribution;
+import io.onedev.server.codequality.CodeProblemStore;
 import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Build;
@@ -19,14 +20,10 @@ import io.onedev.server.web.page.project.StatisticsMenuContribution;
 import io.onedev.server.web.page.project.builds.detail.BuildTab;
 import io.onedev.server.web.page.project.builds.detail.BuildTabContribution;
 import io.onedev.server.web.page.project.builds.detail.report.BuildReportTab;
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
 import javax.annotation.Nullable;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -145,12 +142,9 @@ public class ProblemModule extends AbstractPluginModule {
 				if (categoryDir.exists()) {
 					for (File reportDir: categoryDir.listFiles()) {
 						if (!isVersionFile(reportDir) && (reportName == null || reportName.equals(reportDir.getName()))) { 
-							File file = new File(reportDir, ProblemReport.FILES + "/" + blobPath);
-							if (file.exists()) {
-								try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
-									problems.put(reportDir.getName(), (List<CodeProblem>) SerializationUtils.deserialize(is));
-								}
-							}
+							var problemsOfFile = CodeProblemStore.read(reportDir, blobPath);
+							if (problemsOfFile != null)
+								problems.put(reportDir.getName(), problemsOfFile);
 						}
 					}
 				}
@@ -26,8 +26,6 @@ public class ProblemReport implements Serializable {
 	public static final String CATEGORY = "problem";
 	
 	private static final String REPORT = "report.ser";
-
-	public static final String FILES = "files";
 	
 	private final List<CodeProblem> problems;
 	
@@ -9,14 +9,15 @@ import io.onedev.server.annotation.Editable;
 import io.onedev.server.buildspec.step.PublishReportStep;
 import io.onedev.server.codequality.CodeProblem;
 import io.onedev.server.codequality.CodeProblem.Severity;
+import io.onedev.server.codequality.CodeProblemStore;
 import io.onedev.server.entitymanager.BuildMetricManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.ProblemMetric;
 import io.onedev.server.persistence.dao.Dao;
-import org.apache.commons.lang3.SerializationUtils;
+import io.onedev.server.util.pathindex.PathIndexWriter;
 
-import java.io.*;
+import java.io.File;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +26,8 @@ public abstract class PublishProblemReportStep extends PublishReportStep {
 
 	private static final long serialVersionUID = 1L;
 	
+	private transient PathIndexWriter problemsWriter;
+	
 	@Override
 	public Map<String, byte[]> run(Build build, File inputDir, TaskLogger logger) {
 		File reportDir = new File(build.getStorageDir(), ProblemReport.CATEGORY + "/" + getReportName());
@@ -32,7 +35,14 @@ public abstract class PublishProblemReportStep extends PublishReportStep {
 		ProblemReport report = LockUtils.write(ProblemReport.getReportLockName(build), () -> {
 			FileUtils.createDir(reportDir);
 			try {
-				ProblemReport aReport = createReport(build, inputDir, reportDir, logger);
+				ProblemReport aReport;
+				problemsWriter = CodeProblemStore.newWriter(reportDir);
+				try {
+					aReport = createReport(build, inputDir, reportDir, logger);
+				} finally {
+					problemsWriter.close();
+					problemsWriter = null;
+				}
 				if (aReport != null) {
 					aReport.writeTo(reportDir);
 					OneDev.getInstance(ProjectManager.class).directoryModified(
@@ -75,14 +85,7 @@ public abstract class PublishProblemReportStep extends PublishReportStep {
 	}
 	
 	protected void writeFileProblems(Build build, String blobPath, List<CodeProblem> problemsOfFile) {
-		File reportDir = new File(build.getStorageDir(), ProblemReport.CATEGORY + "/" + getReportName());
-		File violationsFile = new File(reportDir, ProblemReport.FILES + "/" + blobPath);
-		FileUtils.createDir(violationsFile.getParentFile());
-		try (OutputStream os = new FileOutputStream(violationsFile)) {
-			SerializationUtils.serialize((Serializable) problemsOfFile, os);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		CodeProblemStore.write(problemsWriter, blobPath, problemsOfFile);
 	}
 
 	protected abstract ProblemReport createReport(Build build, File inputDir, File reportDir, TaskLogger logger);
@@ -1,26 +1,20 @@
 package io.onedev.server.plugin.report.spotbugs;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nullable;
+import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.lang3.StringUtils;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
-import javax.validation.constraints.NotEmpty;
 import org.unbescape.html.HtmlEscape;
 
 import io.onedev.commons.codeassist.InputSuggestion;
-import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.PlanarRange;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.buildspec.BuildSpec;
@@ -31,7 +25,7 @@ import io.onedev.server.git.BlobIdent;
 import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.problem.ProblemReport;
 import io.onedev.server.plugin.report.problem.PublishProblemReportStep;
-import io.onedev.server.util.XmlUtils;
+import io.onedev.server.util.xml.XmlFragmentPumper;
 import io.onedev.server.annotation.Editable;
 import io.onedev.server.annotation.Interpolative;
 import io.onedev.server.annotation.Patterns;
@@ -64,73 +58,91 @@ public class PublishSpotBugsReportStep extends PublishProblemReportStep {
 	@Override
 	protected ProblemReport createReport(Build build, File inputDir, File reportDir, TaskLogger logger) {
 		int baseLen = inputDir.getAbsolutePath().length() + 1;
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
 
 		List<CodeProblem> problems = new ArrayList<>();
 		Map<String, List<CodeProblem>> problemsByFile = new HashMap<>();
-		for (File file: getPatternSet().listFiles(inputDir)) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing SpotBugs report '" + relativePath + "'...");
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				Document doc = reader.read(new StringReader(XmlUtils.stripDoctype(xml)));
+		Map<File, String> blobDirs = new HashMap<>();
+		new XmlFragmentPumper(getPatternSet().listFiles(inputDir), "*/Project", "*/BugInstance") {
+
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing SpotBugs report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element fragment) {
+				if (fragment.getName().equals("Project")) {
+					String blobDir = build.getBlobPath(fragment.elementText("SrcDir"));
+					if (blobDir != null)
+						blobDirs.put(file, blobDir);
+					return;
+				} 
+				
+				// Project element always comes before BugInstance elements in SpotBugs report
+				String blobDir = blobDirs.get(file);
+				if (blobDir == null)
+					return;
 				
-				Element projectElement = doc.getRootElement().element("Project");
-				String blobDir = build.getBlobPath(projectElement.elementText("SrcDir"));
-				if (blobDir != null) {
-					for (Element bugElement: doc.getRootElement().elements("BugInstance")) {
-						Element sourceElement = bugElement.element("SourceLine");
-						String blobPath = sourceElement.attributeValue("sourcepath");
-						if (blobDir.length() != 0)
-							blobPath = blobDir + "/" + blobPath;
-						BlobIdent blobIdent = new BlobIdent(build.getCommitHash(), blobPath);
-						if (build.getProject().getBlob(blobIdent, false) != null) {
-							String type = bugElement.attributeValue("type");
-							
-							Severity severity;
-							String priority = bugElement.attributeValue("priority");
-							if (priority.equals("1"))
-								severity = Severity.HIGH;
-							else if (priority.equals("2"))
-								severity = Severity.MEDIUM;
-							else
-								severity = Severity.LOW;
-							
-							String message = bugElement.elementText("LongMessage");
-							if (StringUtils.isBlank(message))
-								message = bugElement.elementText("ShortMessage");
-							
-							message = HtmlEscape.escapeHtml5(message);
-							
-							PlanarRange range = getRange(bugElement, true);
-
-							if (range == null)
-								range = getRange(bugElement.element("Field"), false);
-							if (range == null)
-								range = getRange(bugElement.element("Method"), false);
-							if (range == null)
-								range = getRange(bugElement.element("Class"), false);
-							if (range == null) 
-								range = new PlanarRange(0, -1, 0, -1);
-
-							CodeProblem problem = new CodeProblem(severity, type, blobPath, range, message); 
-							problems.add(problem);
-							List<CodeProblem> problemsOfFile = problemsByFile.get(blobPath);
-							if (problemsOfFile == null) {
-								problemsOfFile = new ArrayList<>();
-								problemsByFile.put(blobPath, problemsOfFile);
-							}
-							problemsOfFile.add(problem);
+				Element bugElement = fragment;
+				Element sourceElement = bugElement.element("SourceLine");
+				String blobPath = sourceElement.attributeValue("sourcepath");
+				if (blobDir.length() != 0)
+					blobPath = blobDir + "/" + blobPath;
+				BlobIdent blobIdent = new BlobIdent(build.getCommitHash(), blobPath);
+				if (build.getProject().getBlob(blobIdent, false) != null) {
+					String type = bugElement.attributeValue("type");
+					
+					Severity severity;
+					String priority = bugElement.attributeValue("priority");
+					if (priority.equals("1"))
+						severity = Severity.HIGH;
+					else if (priority.equals("2"))
+						severity = Severity.MEDIUM;
+					else
+						severity = Severity.LOW;
+					
+					String message = bugElement.elementText("LongMessage");
+					if (StringUtils.isBlank(message))
+						message = bugElement.elementText("ShortMessage");
+					
+					message = HtmlEscape.escapeHtml5(message);
+					
+					PlanarRange range = getRange(bugElement, true);
+
+					if (range == null)
+						range = getRange(bugElement.element("Field"), false);
+					if (range == null)
+						range = getRange(bugElement.element("Method"), false);
+					if (range == null)
+						range = getRange(bugElement.element("Class"), false);
+					if (range == null) 
+						range = new PlanarRange(0, -1, 0, -1);
+
+					CodeProblem problem = new CodeProblem(severity, type, blobPath, range, message); 
+					commit(file, () -> {
+						problems.add(problem);
+						List<CodeProblem> problemsOfFile = problemsByFile.get(problem.getBlobPath());
+						if (problemsOfFile == null) {
+							problemsOfFile = new ArrayList<>();
+							problemsByFile.put(problem.getBlobPath(), problemsOfFile);
 						}
-					}
+						problemsOfFile.add(problem);
+					});
 				}
-			} catch (DocumentException e) {
-				logger.warning("Ignored SpotBugs report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
 			}
-		}
+
+			@Override
+			protected void processed(File file, Element root) {
+				blobDirs.remove(file);
+			}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				blobDirs.remove(file);
+				logger.warning("Ignored SpotBugs report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
+			}
+			
+		}.pump();
 
 		for (Map.Entry<String, List<CodeProblem>> entry: problemsByFile.entrySet()) 
 			writeFileProblems(build, entry.getKey(), entry.getValue());
@@ -3,7 +3,6 @@ package io.onedev.server.plugin.report.trx;
 import com.google.common.collect.Lists;
 import io.onedev.commons.codeassist.InputSuggestion;
 import io.onedev.commons.utils.FileUtils;
-import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.TaskLogger;
 import io.onedev.server.annotation.Editable;
 import io.onedev.server.annotation.Interpolative;
@@ -14,16 +13,15 @@ import io.onedev.server.model.Build;
 import io.onedev.server.plugin.report.unittest.PublishUnitTestReportStep;
 import io.onedev.server.plugin.report.unittest.UnitTestReport;
 import io.onedev.server.plugin.report.unittest.UnitTestReport.TestCase;
-import io.onedev.server.util.XmlUtils;
-import org.dom4j.DocumentException;
-import org.dom4j.io.SAXReader;
+import io.onedev.server.util.xml.XmlFragmentPumper;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
 
 import javax.validation.constraints.NotEmpty;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @Editable(order=7100, group=StepGroup.PUBLISH_REPORTS, name="TRX (.net unit test)")
@@ -58,24 +56,32 @@ public class PublishTRXReportStep extends PublishUnitTestReportStep {
 
 	@Override
 	protected UnitTestReport createReport(Build build, File inputDir, TaskLogger logger) {
-		SAXReader reader = new SAXReader();
-		XmlUtils.disallowDocTypeDecl(reader);
-		
 		List<TestCase> testCases = new ArrayList<>();
 		int baseLen = inputDir.getAbsolutePath().length()+1;
-		for (File file: FileUtils.listFiles(inputDir, Lists.newArrayList("**"), Lists.newArrayList())) {
-			String relativePath = file.getAbsolutePath().substring(baseLen);
-			logger.log("Processing TRX report '" + relativePath + "'...");
-			try {
-				String xml = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
-				xml = XmlUtils.stripDoctype(StringUtils.removeBOM(xml));
-				testCases.addAll(TRXReportParser.parse(build, reader.read(new StringReader(xml))));
-			} catch (DocumentException e) {
-				logger.warning("Ignored TRX report '" + relativePath + "' as it is not a valid XML");
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+		Collection<File> files = FileUtils.listFiles(inputDir, Lists.newArrayList("**"), Lists.newArrayList());
+		
+		// TRX report cross references test definitions and results, so we have to parse 
+		// whole document, while files can still be parsed in parallel
+		new XmlFragmentPumper(files, "TestRun") {
+
+			@Override
+			protected void processing(File file) {
+				logger.log("Processing TRX report '" + file.getAbsolutePath().substring(baseLen) + "'...");
+			}
+
+			@Override
+			protected void process(File file, Element testRunElement) {
+				var testCasesOfRun = TRXReportParser.parse(build, DocumentHelper.createDocument(testRunElement));
+				commit(file, () -> testCases.addAll(testCasesOfRun));
+			}
+
+			@Override
+			protected void invalid(File file, XMLStreamException exception) {
+				logger.warning("Ignored TRX report '" + file.getAbsolutePath().substring(baseLen) + "' as it is not a valid XML");
 			}
-		}
+			
+		}.pump();
+		
 		if (!testCases.isEmpty()) 
 			return new UnitTestReport(testCases, true);
 		else 